@@ -0,0 +1,141 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Adapts the JDBC fetch size of a query to the size of its rows. The query starts with the fetch size of the session; during
+ * the first {@link #TUNING_BATCHES} fetches, the size of the rows and the time of the round trips to the database are
+ * measured, and the fetch size is set so that a fetch holds about the memory budget of the session: narrow rows are fetched
+ * in large batches, wide rows in small ones. The fetch size is only increased if the round trips take noticeable time, since
+ * otherwise larger fetches just cost memory.
+ * <p>
+ * Drivers that only honor the fetch size when the statement is executed ignore the adjustment of the running query; the
+ * fetch size found is remembered by the session, so that the next execution of the same query starts with it.
+ * <p>
+ * Usage: {@link #apply(Statement)} before the statement is executed, then read the rows with {@link #next(ResultSet)} and
+ * report the size of each row with {@link #rowFetched(long)}, as long as {@link #isTuning()}.
+ */
+public final class AdaptiveFetchSize {
+
+    public static final int MIN_FETCH_SIZE = 10;
+    public static final int MAX_FETCH_SIZE = 50000;
+
+    /** the number of fetches, that are measured. */
+    private static final int TUNING_BATCHES = 3;
+
+    /** round trips faster than this are not worth larger fetches. */
+    private static final long MIN_ROUND_TRIP_NANOS = 1000 * 1000L;
+
+    private final SQLSession _session;
+    private final String _key;
+    private final long _memoryBudget;
+    private int _fetchSize;
+    private boolean _tuning;
+    private int _batches;
+    private int _batchRows;
+    private long _batchBytes;
+    private long _roundTripNanos;
+
+    /**
+     * @param key
+     *            identifies the query, so that its fetch size can be remembered.
+     * @param memoryBudget
+     *            the number of bytes a fetch should hold; 0 to keep the initial fetch size.
+     */
+    AdaptiveFetchSize(final SQLSession session, final String key, final int initialFetchSize, final long memoryBudget) {
+        _session = session;
+        _key = key;
+        _memoryBudget = memoryBudget;
+        _fetchSize = initialFetchSize;
+        _tuning = memoryBudget > 0;
+    }
+
+    public int getFetchSize() {
+        return _fetchSize;
+    }
+
+    /**
+     * @return if the size of the rows fetched is still measured.
+     */
+    public boolean isTuning() {
+        return _tuning;
+    }
+
+    /**
+     * set the initial fetch size of the statement; must be called before it is executed.
+     */
+    public void apply(final Statement stmt) {
+        try {
+            stmt.setFetchSize(_fetchSize);
+        } catch (final Exception e) {
+            /* ignore; not supported by the driver. */
+        }
+    }
+
+    /**
+     * move to the next row of the result set; measures the round trips to the database while tuning.
+     */
+    public boolean next(final ResultSet rset) throws SQLException {
+        if (!_tuning) {
+            return rset.next();
+        }
+        final long start = System.nanoTime();
+        final boolean result = rset.next();
+        // the row that needs a round trip takes longest.
+        _roundTripNanos = Math.max(_roundTripNanos, System.nanoTime() - start);
+        if (result && _batchRows >= _fetchSize) {
+            adjust(rset);
+        }
+        return result;
+    }
+
+    /**
+     * report the size of the row just fetched; approximately the memory it takes in the driver.
+     */
+    public void rowFetched(final long bytes) {
+        if (_tuning) {
+            ++_batchRows;
+            _batchBytes += bytes;
+        }
+    }
+
+    private void adjust(final ResultSet rset) {
+        final long bytesPerRow = Math.max(1, _batchBytes / _batchRows);
+        int fetchSize = (int) Math.max(MIN_FETCH_SIZE, Math.min(MAX_FETCH_SIZE, _memoryBudget / bytesPerRow));
+        if (fetchSize > _fetchSize && _roundTripNanos < MIN_ROUND_TRIP_NANOS) {
+            fetchSize = _fetchSize; // the database is close; not worth the memory.
+        }
+        // small changes are not worth it.
+        if (Math.abs(fetchSize - _fetchSize) * 4 > _fetchSize) {
+            try {
+                rset.setFetchSize(fetchSize);
+            } catch (final Exception e) {
+                /* only honored at execute time; the next execution uses it. */
+            }
+            _fetchSize = fetchSize;
+            _session.rememberFetchSize(_key, fetchSize);
+        }
+        _batchRows = 0;
+        _batchBytes = 0;
+        _roundTripNanos = 0;
+        _tuning = ++_batches < TUNING_BATCHES;
+    }
+
+    /**
+     * @return the approximate memory a string value takes.
+     */
+    public static long sizeOf(final String value) {
+        return value != null ? 2 * value.length() : 0;
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -282,6 +282,8 @@ public class CommandDispatcher implements ReadlineCompleter {
             } catch (final Throwable e) {
                 Logger.error("Error in command execution: ", e);
                 informAfterListeners(session, givenCommand, Command.EXEC_FAILED);
+            } finally {
+                HenPlus.out().flush();
             }
         }
     }
@@ -0,0 +1,221 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Connections to the database of a session, that read the database as of the same point in time; so tables read in parallel
+ * on different connections are consistent with each other, e.g. the rows referenced by a foreign key are there. How this is
+ * achieved depends on the database:
+ * <ul>
+ * <li>PostgreSQL: the snapshot of a repeatable read transaction is exported and imported by the other connections.</li>
+ * <li>MySQL: all connections start a consistent snapshot while a global read lock is held for a moment. Without the
+ * privilege for the lock, the snapshots are just started together.</li>
+ * <li>Oracle: read-only transactions, that are started together.</li>
+ * <li>SQL Server: transactions with snapshot isolation, that are started together; only if enabled for the database.</li>
+ * </ul>
+ * Transactions, that are started together, see the same state, unless another transaction commits in the milliseconds
+ * between. Other databases read without a common snapshot.
+ */
+public final class ConnectionSnapshot {
+
+    private final List<Connection> _connections;
+    private final Timestamp _time;
+    private final String _description;
+    private final boolean _exact;
+
+    private ConnectionSnapshot(final List<Connection> connections, final String description, final boolean exact) {
+        _connections = connections;
+        _time = new Timestamp(System.currentTimeMillis());
+        _description = description;
+        _exact = exact;
+    }
+
+    /**
+     * start the transactions of the given connections at the same snapshot, as far as the database supports it. If that
+     * fails, the connections read without a common snapshot.
+     */
+    static ConnectionSnapshot begin(final List<Connection> connections) throws SQLException {
+        final String product = String.valueOf(connections.get(0).getMetaData().getDatabaseProductName()).toLowerCase();
+        try {
+            if (product.indexOf("postgres") >= 0) {
+                final ConnectionSnapshot exported = exportSnapshot(connections);
+                if (exported != null) {
+                    return exported;
+                }
+                // before 9.2; at least start together.
+                return beginTogether(connections, Connection.TRANSACTION_REPEATABLE_READ, "SELECT 1");
+            }
+            if (product.indexOf("mysql") >= 0 || product.indexOf("mariadb") >= 0) {
+                return consistentSnapshot(connections);
+            }
+            if (product.indexOf("oracle") >= 0) {
+                return beginTogether(connections, -1, "SET TRANSACTION READ ONLY");
+            }
+            if (product.indexOf("sql server") >= 0) {
+                // fails, if snapshot isolation is not enabled; serializable instead would lock out all writers.
+                return beginTogether(connections, -1, "SET TRANSACTION ISOLATION LEVEL SNAPSHOT", "SELECT 1");
+            }
+        } catch (final SQLException e) {
+            rollback(connections);
+        }
+        return new ConnectionSnapshot(connections, null, false);
+    }
+
+    /**
+     * the connections; the transactions must not be ended, as long as the snapshot is needed.
+     */
+    public List<Connection> getConnections() {
+        return _connections;
+    }
+
+    /**
+     * @return the point in time the connections read the database as of.
+     */
+    public Timestamp getTime() {
+        return _time;
+    }
+
+    /**
+     * @return how the snapshot has been taken or <code>null</code>, if the connections do not share a snapshot.
+     */
+    public String getDescription() {
+        return _description;
+    }
+
+    /**
+     * @return if the database guarantees, that all connections see the same state.
+     */
+    public boolean isExact() {
+        return _exact;
+    }
+
+    /**
+     * end the transactions and close the connections.
+     */
+    public void close() {
+        for (final Connection conn : _connections) {
+            try {
+                conn.rollback();
+            } catch (final Exception e) {
+            }
+            try {
+                conn.close();
+            } catch (final Exception e) {
+            }
+        }
+    }
+
+    private static ConnectionSnapshot exportSnapshot(final List<Connection> connections) throws SQLException {
+        final Connection exporter = connections.get(0);
+        exporter.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        final String snapshotId;
+        try {
+            snapshotId = queryString(exporter, "SELECT pg_export_snapshot()");
+        } catch (final SQLException e) {
+            exporter.rollback();
+            return null;
+        }
+        // the exporting transaction stays open, as long as the snapshot is used.
+        for (int i = 1; i < connections.size(); ++i) {
+            final Connection conn = connections.get(i);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            execute(conn, "SET TRANSACTION SNAPSHOT '" + snapshotId + "'");
+        }
+        return new ConnectionSnapshot(connections, "exported snapshot " + snapshotId, true);
+    }
+
+    private static ConnectionSnapshot consistentSnapshot(final List<Connection> connections) throws SQLException {
+        final Connection coordinator = connections.get(0);
+        boolean locked;
+        try {
+            execute(coordinator, "FLUSH TABLES WITH READ LOCK");
+            locked = true;
+        } catch (final SQLException e) {
+            locked = false; // needs the RELOAD privilege.
+        }
+        try {
+            final ConnectionSnapshot snapshot = beginTogether(connections, Connection.TRANSACTION_REPEATABLE_READ,
+                    "START TRANSACTION WITH CONSISTENT SNAPSHOT");
+            if (!locked) {
+                return snapshot;
+            }
+            return new ConnectionSnapshot(connections, "consistent snapshot under a global read lock", true);
+        } finally {
+            if (locked) {
+                execute(coordinator, "UNLOCK TABLES");
+            }
+        }
+    }
+
+    /**
+     * start a transaction on every connection, one right after the other.
+     *
+     * @param isolation
+     *            the isolation level to set or -1 to keep the current one.
+     * @param statements
+     *            the statements to execute on each connection.
+     */
+    private static ConnectionSnapshot beginTogether(final List<Connection> connections, final int isolation,
+            final String... statements) throws SQLException {
+        if (isolation >= 0) {
+            for (final Connection conn : connections) {
+                conn.setTransactionIsolation(isolation);
+            }
+        }
+        for (final Connection conn : connections) {
+            for (final String sql : statements) {
+                execute(conn, sql);
+            }
+        }
+        return new ConnectionSnapshot(connections, "transactions started together", false);
+    }
+
+    private static void rollback(final List<Connection> connections) {
+        for (final Connection conn : connections) {
+            try {
+                conn.rollback();
+            } catch (final SQLException e) {
+            }
+        }
+    }
+
+    private static void execute(final Connection conn, final String sql) throws SQLException {
+        final Statement stmt = conn.createStatement();
+        try {
+            stmt.execute(sql);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private static String queryString(final Connection conn, final String sql) throws SQLException {
+        final Statement stmt = conn.createStatement();
+        try {
+            final ResultSet rset = stmt.executeQuery(sql);
+            try {
+                if (!rset.next()) {
+                    throw new SQLException("no result for " + sql);
+                }
+                return rset.getString(1);
+            } finally {
+                rset.close();
+            }
+        } finally {
+            stmt.close();
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -56,6 +56,8 @@ public final class HenPlus implements Interruptable {
     private static final String HISTORY_NAME = "history";
     private static final String HENPLUSDIR = ".henplus";
     private static final String PROMPT = "Hen*Plus> ";
+    /** the characters of query results buffered before they are written to stdout. */
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
 
     public static final byte LINE_EXECUTED = 1;
     public static final byte LINE_EMPTY = 2;
@@ -116,11 +118,19 @@ public final class HenPlus implements Interruptable {
         _fromTerminal = Readline.hasTerminal();
         _quiet |= !_fromTerminal; // not from terminal: always quiet.
 
+        // results are buffered; messages are written right away, as they tell about the progress, after the results printed
+        // before them.
+        final PrintStreamOutputDevice output;
+        final PrintStreamOutputDevice msg;
         if (_fromTerminal) {
-            setOutput(new TerminalOutputDevice(System.out), new TerminalOutputDevice(System.err));
+            output = new TerminalOutputDevice(System.out, OUTPUT_BUFFER_SIZE);
+            msg = new TerminalOutputDevice(System.err);
         } else {
-            setOutput(new PrintStreamOutputDevice(System.out), new PrintStreamOutputDevice(System.err));
+            output = new PrintStreamOutputDevice(System.out, OUTPUT_BUFFER_SIZE);
+            msg = new PrintStreamOutputDevice(System.err);
         }
+        msg.setPrecedingDevice(output);
+        setOutput(output, msg);
 
         initializeCommands(argv);
         readCommandLineOptions(argv);
@@ -190,7 +200,7 @@ public final class HenPlus implements Interruptable {
 
         _dispatcher.register(new ImportCommand(_objectLister));
         // _dispatcher.register(new ExportCommand());
-        _dispatcher.register(new DumpCommand(_objectLister, loadCommand));
+        _dispatcher.register(new DumpCommand(_objectLister, loadCommand, _henplusProperties));
 
         _dispatcher.register(new ShellCommand());
         _dispatcher.register(new SpoolCommand(this));
@@ -413,6 +423,7 @@ public final class HenPlus implements Interruptable {
              * Readline.readline() return..
              */
             SigIntHandler.getInstance().pushInterruptable(this);
+            _output.flush();
 
             try {
                 cmdLine = _fromTerminal ? Readline.readline(displayPrompt, false) : readlineFromFile();
@@ -494,6 +505,9 @@ public final class HenPlus implements Interruptable {
             }
             Readline.cleanup();
         } finally {
+            if (_output != null) {
+                _output.flush();
+            }
             _alreadyShutDown = true;
         }
         /*
@@ -5,48 +5,173 @@
 package henplus;
 
 import java.io.PrintStream;
+import java.util.Timer;
+import java.util.TimerTask;
 
 /**
- * The OutputDevice to write to.
+ * The OutputDevice to write to. It may buffer the text printed, so that it is not written piece by piece, e.g. cell by cell
+ * of a table: the buffer is written if it is full and on {@link #flush()}. Text is written a moment after it has been printed
+ * at the latest, by a timer thread, so that it shows up even while the printing thread waits, e.g. for the next row of a
+ * slow query. The buffer of a preceding device is written before anything is written to this device, see
+ * {@link #setPrecedingDevice(OutputDevice)}.
  */
 public class PrintStreamOutputDevice implements OutputDevice {
 
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    /** buffered lines are written after this time at the latest, so that slowly printed tables show up as they grow. */
+    private static final long MAX_DELAY_MILLIS = 200;
+
+    /** writes the buffers of all devices, that have not been written in time; created with the first buffered text. */
+    private static Timer writeTimer;
+
     private final PrintStream _outStream;
+    private final int _bufferSize;
+    private final StringBuilder _buffer;
+    private TimerTask _delayedWrite;
+    private OutputDevice _preceding;
 
     public PrintStreamOutputDevice(final PrintStream out) {
+        this(out, 0);
+    }
+
+    /**
+     * @param bufferSize
+     *            the number of characters buffered; 0 writes all text right away.
+     */
+    public PrintStreamOutputDevice(final PrintStream out, final int bufferSize) {
         _outStream = out;
+        _bufferSize = bufferSize;
+        _buffer = bufferSize > 0 ? new StringBuilder(bufferSize + 1024) : null;
+    }
+
+    /**
+     * @param preceding
+     *            the device, that is flushed before anything is written to this device; so the messages written to this
+     *            device show up after the buffered results printed before them.
+     */
+    public synchronized void setPrecedingDevice(final OutputDevice preceding) {
+        _preceding = preceding;
     }
 
     @Override
-    public void flush() {
+    public synchronized void flush() {
+        flushPreceding();
+        writeBuffer();
         _outStream.flush();
     }
 
     @Override
-    public void write(final byte[] buffer, final int off, final int len) {
-        _outStream.write(buffer, off, len);
+    public synchronized void write(final byte[] buffer, final int off, final int len) {
+        flushPreceding();
+        writeBuffer();
+        writeBytes(buffer, off, len);
     }
 
     @Override
-    public void print(final String s) {
-        _outStream.print(s);
+    public synchronized void print(final String s) {
+        flushPreceding();
+        if (_buffer == null) {
+            _outStream.print(s);
+            return;
+        }
+        _buffer.append(s);
+        buffered();
     }
 
     @Override
-    public void println(final String s) {
-        _outStream.println(s);
+    public synchronized void println(final String s) {
+        flushPreceding();
+        if (_buffer == null) {
+            _outStream.println(s);
+            return;
+        }
+        _buffer.append(s).append(LINE_SEPARATOR);
+        buffered();
     }
 
     @Override
-    public void println() {
-        _outStream.println();
+    public synchronized void println() {
+        flushPreceding();
+        if (_buffer == null) {
+            _outStream.println();
+            return;
+        }
+        _buffer.append(LINE_SEPARATOR);
+        buffered();
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
+        writeBuffer();
         _outStream.close();
     }
 
+    /**
+     * write bytes to the stream; called with the lock of this device held.
+     */
+    protected void writeBytes(final byte[] buffer, final int off, final int len) {
+        _outStream.write(buffer, off, len);
+    }
+
+    private void flushPreceding() {
+        if (_preceding != null) {
+            _preceding.flush();
+        }
+    }
+
+    /**
+     * text has been added to the buffer: write it, if the buffer is full, or have it written in time.
+     */
+    private void buffered() {
+        if (_buffer.length() >= _bufferSize) {
+            writeBuffer();
+        } else if (_delayedWrite == null) {
+            _delayedWrite = new TimerTask() {
+
+                @Override
+                public void run() {
+                    delayedWrite(this);
+                }
+            };
+            getWriteTimer().schedule(_delayedWrite, MAX_DELAY_MILLIS);
+        }
+    }
+
+    private static synchronized Timer getWriteTimer() {
+        if (writeTimer == null) {
+            writeTimer = new Timer("henplus output writer", true);
+        }
+        return writeTimer;
+    }
+
+    /**
+     * called by the timer thread; the buffer may have been written meanwhile.
+     */
+    private synchronized void delayedWrite(final TimerTask task) {
+        if (_delayedWrite == task) {
+            writeBuffer();
+            _outStream.flush();
+        }
+    }
+
+    private void writeBuffer() {
+        if (_delayedWrite != null) {
+            _delayedWrite.cancel();
+            _delayedWrite = null;
+        }
+        if (_buffer != null && _buffer.length() > 0) {
+            writeText(_buffer);
+            _buffer.setLength(0);
+        }
+    }
+
+    /**
+     * write buffered text to the stream; called with the lock of this device held.
+     */
+    protected void writeText(final CharSequence text) {
+        _outStream.append(text);
+    }
+
     @Override
     public void attributeBold() { /* no attributes */
     }
@@ -6,6 +6,7 @@ package henplus;
 
 import henplus.property.BooleanPropertyHolder;
 import henplus.property.EnumeratedPropertyHolder;
+import henplus.property.PropertyHolder;
 import henplus.sqlmodel.Table;
 
 import java.io.BufferedReader;
@@ -17,8 +18,11 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.SortedSet;
@@ -39,6 +43,15 @@ public class SQLSession implements Interruptable {
 
     private final PropertyRegistry _propertyRegistry;
     private volatile boolean _interrupted;
+    private volatile int _fetchSize;
+    private volatile int _fetchMemoryKB;
+    private final Map<String, Integer> _fetchSizes;
+
+    private static final int DEFAULT_FETCH_SIZE = 200;
+    private static final int DEFAULT_FETCH_MEMORY_KB = 2048;
+
+    /** number of queries, whose fetch size is remembered. */
+    private static final int REMEMBERED_FETCH_SIZES = 100;
 
     /**
      * creates a new SQL session. Open the database connection, initializes the readline library
@@ -51,6 +64,15 @@ public class SQLSession implements Interruptable {
         _username = user;
         _password = password;
         _propertyRegistry = new PropertyRegistry();
+        _fetchSize = DEFAULT_FETCH_SIZE;
+        _fetchMemoryKB = DEFAULT_FETCH_MEMORY_KB;
+        _fetchSizes = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Integer> eldest) {
+                return size() > REMEMBERED_FETCH_SIZES;
+            }
+        };
 
         Driver driver = null;
         // HenPlus.msg().println("connect to '" + url + "'");
@@ -91,6 +113,8 @@ public class SQLSession implements Interruptable {
         _propertyRegistry.registerProperty("auto-commit", new AutoCommitProperty());
         _propertyRegistry.registerProperty("read-only", new ReadOnlyProperty());
         _propertyRegistry.registerProperty("isolation-level", new IsolationLevelProperty(availableIsolations, currentIsolation));
+        _propertyRegistry.registerProperty("fetch-size", new FetchSizeProperty());
+        _propertyRegistry.registerProperty("fetch-memory-kb", new FetchMemoryProperty());
     }
 
     private void printTransactionIsolation(final DatabaseMetaData meta, final int iLevel, final String descript, final int current)
@@ -119,6 +143,29 @@ public class SQLSession implements Interruptable {
         return _url;
     }
 
+    /**
+     * create the fetch size for a query, that adapts to the size of its rows.
+     *
+     * @param key
+     *            identifies the query, e.g. its statement; it starts with the fetch size found by its last execution.
+     */
+    public AdaptiveFetchSize createFetchSize(final String key) {
+        Integer fetchSize;
+        synchronized (_fetchSizes) {
+            fetchSize = _fetchSizes.get(key);
+        }
+        if (fetchSize == null) {
+            fetchSize = Integer.valueOf(_fetchSize);
+        }
+        return new AdaptiveFetchSize(this, key, fetchSize.intValue(), 1024L * _fetchMemoryKB);
+    }
+
+    void rememberFetchSize(final String key, final int fetchSize) {
+        synchronized (_fetchSizes) {
+            _fetchSizes.put(key, Integer.valueOf(fetchSize));
+        }
+    }
+
     public SQLMetaData getMetaData(final SortedSet<String> tableNames) {
         if (_metaData == null) {
             _metaData = new SQLMetaDataBuilder().getMetaData(this, tableNames);
@@ -158,18 +205,7 @@ public class SQLSession implements Interruptable {
             _conn = null;
         }
 
-        final Properties props = new Properties();
-        /*
-         * FIXME make generic plugin for specific database drivers that handle
-         * the specific stuff. For now this is a quick hack.
-         */
-        if (_url.startsWith("jdbc:oracle:")) {
-            /*
-             * this is needed to make comment in oracle show up in the remarks
-             * http://forums.oracle.com/forums/thread.jsp?forum=99&thread=225790
-             */
-            props.setProperty("remarksReporting", "true");
-        }
+        final Properties props = getConnectionProperties();
 
         /*
          * try to connect directly with the url. Several JDBC-Drivers allow to
@@ -204,6 +240,64 @@ public class SQLSession implements Interruptable {
         _connectTime = System.currentTimeMillis();
     }
 
+    private Properties getConnectionProperties() {
+        final Properties props = new Properties();
+        /*
+         * FIXME make generic plugin for specific database drivers that handle
+         * the specific stuff. For now this is a quick hack.
+         */
+        if (_url.startsWith("jdbc:oracle:")) {
+            /*
+             * this is needed to make comment in oracle show up in the remarks
+             * http://forums.oracle.com/forums/thread.jsp?forum=99&thread=225790
+             */
+            props.setProperty("remarksReporting", "true");
+        }
+        return props;
+    }
+
+    /**
+     * opens another, independent connection to the same database with the credentials of this session; used by commands that
+     * want to work on several connections in parallel. Unlike {@link #connect()}, this never prompts for a password. The caller
+     * is responsible to close the returned connection.
+     */
+    public Connection createConnection() throws SQLException {
+        final Properties props = getConnectionProperties();
+        if (_username != null && _password != null) {
+            props.setProperty("user", _username);
+            props.setProperty("password", _password);
+        }
+        final Connection conn = DriverManager.getConnection(_url, props);
+        try {
+            conn.setAutoCommit(false);
+        } catch (final SQLException ignoreMe) {
+        }
+        return conn;
+    }
+
+    /**
+     * opens the given number of connections with {@link #createConnection()}, whose transactions all read the database as of
+     * the same point in time, as far as the database supports it; see {@link ConnectionSnapshot}. The caller is responsible to
+     * close the snapshot.
+     */
+    public ConnectionSnapshot createSnapshot(final int count) throws SQLException {
+        final List<Connection> connections = new ArrayList<Connection>(count);
+        try {
+            for (int i = 0; i < count; ++i) {
+                connections.add(createConnection());
+            }
+            return ConnectionSnapshot.begin(connections);
+        } catch (final SQLException e) {
+            for (final Connection conn : connections) {
+                try {
+                    conn.close();
+                } catch (final SQLException ignoreMe) {
+                }
+            }
+            throw e;
+        }
+    }
+
     private void promptUserPassword() throws IOException {
         HenPlus.msg().println("============ authorization required ===");
         final BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
@@ -459,6 +553,97 @@ public class SQLSession implements Interruptable {
             return "sets the transaction isolation level";
         }
     }
+
+    private static int parsePositive(String value) {
+        value = value.trim();
+        final int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("cannot parse '" + value + "' as integer");
+        }
+        if (result < 0) {
+            throw new IllegalArgumentException("value cannot be negative");
+        }
+        return result;
+    }
+
+    private class FetchSizeProperty extends PropertyHolder {
+
+        FetchSizeProperty() {
+            super(String.valueOf(DEFAULT_FETCH_SIZE));
+        }
+
+        @Override
+        protected String propertyChanged(final String newValue) throws Exception {
+            final int fetchSize = parsePositive(newValue);
+            if (fetchSize < AdaptiveFetchSize.MIN_FETCH_SIZE || fetchSize > AdaptiveFetchSize.MAX_FETCH_SIZE) {
+                throw new IllegalArgumentException("fetch size must be between " + AdaptiveFetchSize.MIN_FETCH_SIZE + " and "
+                        + AdaptiveFetchSize.MAX_FETCH_SIZE);
+            }
+            _fetchSize = fetchSize;
+            synchronized (_fetchSizes) {
+                _fetchSizes.clear(); // start over.
+            }
+            return String.valueOf(fetchSize);
+        }
+
+        @Override
+        public String getDefaultValue() {
+            return String.valueOf(DEFAULT_FETCH_SIZE);
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "number of rows fetched at once, initially";
+        }
+
+        @Override
+        public String getLongDescription() {
+            return "\tThe number of rows a query fetches from the database in\n"
+                    + "\tone round trip, until it has measured the size of its\n"
+                    + "\trows; see 'fetch-memory-kb'.";
+        }
+    }
+
+    private class FetchMemoryProperty extends PropertyHolder {
+
+        FetchMemoryProperty() {
+            super(String.valueOf(DEFAULT_FETCH_MEMORY_KB));
+        }
+
+        @Override
+        protected String propertyChanged(final String newValue) throws Exception {
+            final int memory = parsePositive(newValue);
+            _fetchMemoryKB = memory;
+            synchronized (_fetchSizes) {
+                _fetchSizes.clear();
+            }
+            return String.valueOf(memory);
+        }
+
+        @Override
+        public String getDefaultValue() {
+            return String.valueOf(DEFAULT_FETCH_MEMORY_KB);
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "memory in KB a fetch of rows should take";
+        }
+
+        @Override
+        public String getLongDescription() {
+            return "\tQueries, dumps and the rendering of results measure the\n"
+                    + "\tsize of the rows during the first fetches and adjust\n"
+                    + "\tthe number of rows fetched at once, so that a fetch\n"
+                    + "\ttakes about this much memory: narrow rows are fetched\n"
+                    + "\tin large batches, wide rows in small ones. The fetch\n"
+                    + "\tsize found is used for the next execution of the same\n"
+                    + "\tquery, as some drivers ignore changes of the running\n"
+                    + "\tquery. 0 keeps the 'fetch-size'.";
+        }
+    }
 }
 
 /*
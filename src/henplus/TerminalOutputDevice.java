@@ -19,6 +19,14 @@ public class TerminalOutputDevice extends PrintStreamOutputDevice {
         super(out);
     }
 
+    /**
+     * @param bufferSize
+     *            the number of characters buffered; 0 writes all text right away.
+     */
+    public TerminalOutputDevice(final PrintStream out, final int bufferSize) {
+        super(out, bufferSize);
+    }
+
     @Override
     public void attributeBold() {
         print(BOLD);
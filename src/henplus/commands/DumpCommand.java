@@ -5,15 +5,43 @@
 package henplus.commands;
 
 import henplus.AbstractCommand;
+import henplus.AdaptiveFetchSize;
+import henplus.ConnectionSnapshot;
 import henplus.CommandDispatcher;
 import henplus.HenPlus;
 import henplus.Interruptable;
+import henplus.PropertyRegistry;
 import henplus.SQLMetaData;
 import henplus.SQLMetaDataBuilder;
 import henplus.SQLSession;
 import henplus.SigIntHandler;
 import henplus.Version;
+import henplus.dump.Base64;
+import henplus.dump.BinaryDump;
+import henplus.dump.BlockDecoder;
+import henplus.dump.BlockReader;
+import henplus.dump.BlockWriter;
+import henplus.dump.ColumnBuffer;
+import henplus.dump.ColumnWriter;
+import henplus.dump.DumpCheckpoint;
+import henplus.dump.DumpIndex;
+import henplus.dump.DumpLexer;
+import henplus.dump.DumpWatermarks;
+import henplus.dump.DumpWriter;
+import henplus.dump.FastLoad;
+import henplus.dump.IndexingOutputStream;
+import henplus.dump.InsertBatch;
+import henplus.dump.MetaProperty;
+import henplus.dump.MultiMemberGZIPInputStream;
+import henplus.dump.ParallelGZIPOutputStream;
+import henplus.dump.RingBuffer;
+import henplus.dump.RowCountEstimator;
+import henplus.dump.RowSlot;
+import henplus.dump.SectionInputStream;
 import henplus.logging.Logger;
+import henplus.property.EnumeratedPropertyHolder;
+import henplus.property.PropertyHolder;
+import henplus.sqlmodel.PrimaryKey;
 import henplus.sqlmodel.Table;
 import henplus.util.DependencyResolver;
 import henplus.util.DependencyResolver.ResolverResult;
@@ -23,18 +51,25 @@ import henplus.view.TableRenderer;
 import henplus.view.util.CancelWriter;
 import henplus.view.util.NameCompleter;
 import henplus.view.util.ProgressWriter;
-
+import henplus.view.util.Telemetry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.LineNumberReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.io.Reader;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
@@ -42,22 +77,26 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Time;
 import java.sql.Timestamp;
-import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.StringTokenizer;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 
 /**
  * Dump out and read that dump of a table; database-independently. This reads directly from the stream, so only needs not much
@@ -80,75 +119,76 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
     }
 
     private static final String FILE_ENCODING = "UTF-8";
+    /** version of the text format written. */
     private static final int DUMP_VERSION = 1;
+    /** version of the binary format written. */
+    private static final int BINARY_DUMP_VERSION = 2;
+    /**
+     * version written for tables with BLOB columns, whose bytes are dumped since then (base64 encoded in the text format)
+     * instead of the string the driver returns for them; this is the highest version that can be read.
+     */
+    private static final int BLOB_DUMP_VERSION = 3;
     private static final String NULL_STR = "NULL";
-    private static final Map<Integer, String> JDBCTYPE2TYPENAME = new HashMap<Integer, String>();
-
-    // differentiated types by dump
-    private static final String[] TYPES = new String[9];
-    private static final int HP_STRING = 0;
-    private static final int HP_INTEGER = 1;
-    private static final int HP_NUMERIC = 2;
-    private static final int HP_DOUBLE = 3;
-    private static final int HP_DATE = 4;
-    private static final int HP_TIME = 5;
-    private static final int HP_TIMESTAMP = 6;
-    private static final int HP_BLOB = 7;
-    private static final int HP_CLOB = 8;
+    private static final String ROW_SEPARATOR = "\n\t";
 
-    static {
-        TYPES[HP_STRING] = "STRING";
-        TYPES[HP_INTEGER] = "INTEGER";
-        TYPES[HP_NUMERIC] = "NUMERIC";
-        TYPES[HP_DOUBLE] = "DOUBLE";
-        TYPES[HP_DATE] = "DATE";
-        TYPES[HP_TIME] = "TIME";
-        TYPES[HP_TIMESTAMP] = "TIMESTAMP";
-        TYPES[HP_BLOB] = "BLOB";
-        TYPES[HP_CLOB] = "CLOB";
-
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.CHAR)), TYPES[HP_STRING]);
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.VARCHAR)), TYPES[HP_STRING]);
-
-        // hope that, 'OTHER' can be read/written as String..
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.OTHER)), TYPES[HP_STRING]);
-
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.LONGVARBINARY)), TYPES[HP_BLOB]);
-        // CLOB not supported .. try string.
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.LONGVARCHAR)), TYPES[HP_STRING]);
-
-        // not supported yet.
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.BLOB)), TYPES[HP_BLOB]);
-        // CLOB not supported .. try string.
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.CLOB)), TYPES[HP_STRING]);
-
-        // generic float.
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.DOUBLE)), TYPES[HP_DOUBLE]);
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.FLOAT)), TYPES[HP_DOUBLE]);
-
-        // generic numeric. could be integer or double
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.BIGINT)), TYPES[HP_NUMERIC]);
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.NUMERIC)), TYPES[HP_NUMERIC]);
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.DECIMAL)), TYPES[HP_NUMERIC]);
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.BOOLEAN)), TYPES[HP_NUMERIC]);
-        // generic integer.
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.INTEGER)), TYPES[HP_INTEGER]);
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.SMALLINT)), TYPES[HP_INTEGER]);
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.TINYINT)), TYPES[HP_INTEGER]);
-
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.DATE)), TYPES[HP_DATE]);
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.TIME)), TYPES[HP_TIME]);
-        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.TIMESTAMP)), TYPES[HP_TIMESTAMP]);
-    }
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** number of rows that may be fetched ahead of the writer thread; must be a power of two. */
+    private static final int PIPELINE_SLOTS = 1024;
+
+    /** how dump-out determines the number of rows of a table; see {@link RowCountProperty}. */
+    private static final String[] ROW_COUNT_MODES = { "statistics", "auto", "count" };
+    private static final int ROW_COUNT_STATISTICS = 0;
+    private static final int ROW_COUNT_AUTO = 1;
+    private static final int ROW_COUNT_COUNT = 2;
+
+    /** the phases of dump-out measured by the telemetry: waiting for the database, formatting the rows and writing them. */
+    private static final String[] DUMP_OUT_PHASES = { "fetch", "serialize", "io" };
+    private static final int PHASE_FETCH = 0;
+    private static final int PHASE_SERIALIZE = 1;
+    private static final int PHASE_WRITE = 2;
+
+    /** the phases of dump-in; the rest of the time is spent parsing. */
+    private static final String[] DUMP_IN_PHASES = { "read", "insert" };
+    private static final int PHASE_READ = 0;
+    private static final int PHASE_INSERT = 1;
+
+    /** the configuration file that keeps the high-water marks of incremental dumps. */
+    private static final String WATERMARKS_FILENAME = "dump-watermarks";
 
     private final ListUserObjectsCommand _tableCompleter;
     private final LoadCommand _fileOpener;
     private volatile boolean _running;
-
-    public DumpCommand(final ListUserObjectsCommand tc, final LoadCommand lc) {
+    private volatile boolean _binaryOutput;
+    private volatile PrintStream _indexedDump;
+    private volatile IndexingOutputStream _indexOut;
+    private volatile Timestamp _snapshotTime;
+    private volatile Telemetry _telemetry;
+    private ImportCheckpoints _checkpoints;
+    private FastLoad _fastLoad;
+    private RejectFile _rejects;
+    private DumpWatermarks _watermarks;
+    private String _watermarkColumn;
+    private int _batchSize;
+    private int _rowCountMode;
+
+    public DumpCommand(final ListUserObjectsCommand tc, final LoadCommand lc, final PropertyRegistry registry) {
         _tableCompleter = tc;
         _fileOpener = lc;
         _running = false;
+        _batchSize = DEFAULT_BATCH_SIZE;
+        _rowCountMode = ROW_COUNT_STATISTICS;
+        registry.registerProperty("dump-in-batch-size", new BatchSizeProperty());
+        registry.registerProperty("dump-row-count", new RowCountProperty());
+        registry.registerProperty("telemetry-log", new TelemetryLogProperty());
+    }
+
+    public void setBatchSize(final int batchSize) {
+        _batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return _batchSize;
     }
 
     /**
@@ -208,6 +248,7 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
             }
             PrintStream out = null;
             beginInterruptableSection();
+            startTelemetry(cmd, DUMP_OUT_PHASES);
             try {
                 out = openOutputStream(fileName, FILE_ENCODING);
                 final int result = dumpSelect(session, tabName, statement.toString(), out, FILE_ENCODING);
@@ -219,6 +260,7 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                 if (out != null) {
                     out.close();
                 }
+                stopTelemetry();
                 endInterruptableSection();
             }
         } else if ("dump-conditional".equals(cmd)) {
@@ -229,10 +271,18 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
             if (argc < 2) {
                 return SYNTAX_ERROR;
             }
-            final String fileName = (String) st.nextElement();
+            String fileName = (String) st.nextElement();
+            String incrementalColumn = null;
+            if ("-incremental".equals(fileName)) {
+                if (argc < 4) {
+                    return SYNTAX_ERROR;
+                }
+                incrementalColumn = st.nextToken();
+                fileName = st.nextToken();
+            }
             final String tabName = (String) st.nextElement();
             String whereClause = null;
-            if (argc >= 3) {
+            if (st.hasMoreTokens()) {
                 whereClause = st.nextToken("\n"); // till EOL
                 whereClause = whereClause.trim();
                 if (whereClause.toUpperCase().startsWith("WHERE")) {
@@ -242,18 +292,24 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
             }
             PrintStream out = null;
             beginInterruptableSection();
+            startTelemetry(cmd, DUMP_OUT_PHASES);
             try {
+                startIncremental(incrementalColumn);
                 out = openOutputStream(fileName, FILE_ENCODING);
                 final int result = dumpTable(session, tabName, whereClause, out, FILE_ENCODING);
+                finishIncremental(result);
                 return result;
             } catch (final Exception e) {
                 Logger.error("failed: ", e);
                 e.printStackTrace();
                 return EXEC_FAILED;
             } finally {
+                _watermarks = null;
+                _watermarkColumn = null;
                 if (out != null) {
                     out.close();
                 }
+                stopTelemetry();
                 endInterruptableSection();
             }
         } else if ("dump-out".equals(cmd)) {
@@ -264,16 +320,73 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
             if (argc < 2) {
                 return SYNTAX_ERROR;
             }
-            final String fileName = (String) st.nextElement();
+            String fileName = (String) st.nextElement();
+            int argsLeft = argc - 1;
+            int parallelism = 1;
+            int splits = 1;
+            boolean binary = false;
+            String incrementalColumn = null;
+            while (fileName.startsWith("-")) {
+                // option, its value, filename and at least one table.
+                if (argsLeft < 3) {
+                    return SYNTAX_ERROR;
+                }
+                final String optionValue = st.nextToken();
+                if ("-format".equals(fileName)) {
+                    if ("binary".equals(optionValue)) {
+                        binary = true;
+                    } else if ("text".equals(optionValue)) {
+                        binary = false;
+                    } else {
+                        Logger.error("format 'text' or 'binary' expected: %s", optionValue);
+                        return SYNTAX_ERROR;
+                    }
+                } else if ("-incremental".equals(fileName)) {
+                    incrementalColumn = optionValue;
+                } else {
+                    int value;
+                    try {
+                        value = Integer.parseInt(optionValue);
+                    } catch (final NumberFormatException e) {
+                        Logger.error("number of connections expected for %s: %s", fileName, e.getMessage());
+                        return SYNTAX_ERROR;
+                    }
+                    if (value < 1) {
+                        Logger.error("number of connections for %s must be at least 1", fileName);
+                        return SYNTAX_ERROR;
+                    }
+                    if ("-parallel".equals(fileName)) {
+                        parallelism = value;
+                    } else if ("-split".equals(fileName)) {
+                        splits = value;
+                    } else {
+                        Logger.error("unknown option '%s'", fileName);
+                        return SYNTAX_ERROR;
+                    }
+                }
+                fileName = st.nextToken();
+                argsLeft -= 2;
+            }
+            if (parallelism > 1 && splits > 1) {
+                Logger.error("-parallel and -split cannot be combined");
+                return SYNTAX_ERROR;
+            }
             PrintStream out = null;
             final String tabName = null;
             beginInterruptableSection();
+            startTelemetry(cmd, DUMP_OUT_PHASES);
             try {
                 final long startTime = System.currentTimeMillis();
+                startIncremental(incrementalColumn);
                 final Set<String> alreadyDumped = new HashSet<String>(); // which tables got already
                 // dumped?
 
-                out = openOutputStream(fileName, FILE_ENCODING);
+                final File indexFile = _fileOpener.openFile(fileName + DumpIndex.SUFFIX);
+                indexFile.delete(); // an old index does not match the new dump.
+                _indexOut = new IndexingOutputStream(openMeteredOutputStream(fileName));
+                out = new PrintStream(_indexOut, false, FILE_ENCODING);
+                _indexedDump = out;
+                _binaryOutput = binary;
                 final Set<String> tableSet = new LinkedHashSet<String>();
 
                 /*
@@ -334,13 +447,20 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                 if (tableSequence.size() > 1) {
                     Logger.info("%s tables to dump.", tableSequence.size());
                 }
-                final Iterator it = tableSequence.iterator();
-                while (_running && it.hasNext()) {
-                    final String table = (String) it.next();
-                    if (!alreadyDumped.contains(table)) {
-                        final int result = dumpTable(session, table, null, out, FILE_ENCODING, alreadyDumped);
-                        if (result != SUCCESS) {
-                            dumpResult = result;
+                final File spoolDir = _fileOpener.openFile(fileName).getAbsoluteFile().getParentFile();
+                if (parallelism > 1 && tableSequence.size() > 1) {
+                    dumpResult = dumpTablesParallel(session, tableSequence, parallelism, spoolDir, out, FILE_ENCODING);
+                } else if (splits > 1) {
+                    dumpResult = dumpTablesSplit(session, tableSequence, splits, spoolDir, out, FILE_ENCODING);
+                } else {
+                    final Iterator it = tableSequence.iterator();
+                    while (_running && it.hasNext()) {
+                        final String table = (String) it.next();
+                        if (!alreadyDumped.contains(table)) {
+                            final int result = dumpTable(session, table, null, out, FILE_ENCODING, alreadyDumped);
+                            if (result != SUCCESS) {
+                                dumpResult = result;
+                            }
                         }
                     }
                 }
@@ -353,6 +473,11 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                     HenPlus.msg().println();
                 }
 
+                if (_running) {
+                    _indexOut.getIndex().write(indexFile);
+                }
+                finishIncremental(dumpResult);
+
                 /* 4) warn about cycles */
                 if (resolverResult != null && resolverResult.getCyclicDependencies() != null
                         && resolverResult.getCyclicDependencies().size() > 0) {
@@ -381,9 +506,15 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                 e.printStackTrace();
                 return EXEC_FAILED;
             } finally {
+                _binaryOutput = false;
+                _watermarks = null;
+                _watermarkColumn = null;
+                _indexedDump = null;
+                _indexOut = null;
                 if (out != null) {
                     out.close();
                 }
+                stopTelemetry();
                 endInterruptableSection();
             }
         } else if ("dump-in".equals(cmd)) {
@@ -391,45 +522,269 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                 HenPlus.msg().println("not connected. Only verify-dump possible.");
                 return EXEC_FAILED;
             }
-            if (argc < 1 || argc > 2) {
+            if (argc < 1) {
                 return SYNTAX_ERROR;
             }
-            final String fileName = (String) st.nextElement();
+            String fileName = (String) st.nextElement();
+            boolean resume = false;
+            boolean fastLoad = false;
+            String rejectsName = null;
+            int argsLeft = argc - 1;
+            while ("-resume".equals(fileName) || "-fast-load".equals(fileName) || "-rejects".equals(fileName)) {
+                if (argsLeft < 1) {
+                    return SYNTAX_ERROR;
+                }
+                if ("-resume".equals(fileName)) {
+                    resume = true;
+                } else if ("-fast-load".equals(fileName)) {
+                    fastLoad = true;
+                } else {
+                    if (argsLeft < 2) {
+                        return SYNTAX_ERROR;
+                    }
+                    rejectsName = (String) st.nextElement();
+                    --argsLeft;
+                }
+                fileName = (String) st.nextElement();
+                --argsLeft;
+            }
             int commitPoint = -1;
-            if (argc == 2) {
-                try {
-                    final String val = (String) st.nextElement();
+            final List<String> tables = new ArrayList<String>();
+            while (st.hasMoreElements()) {
+                final String val = (String) st.nextElement();
+                if (commitPoint < 0 && tables.isEmpty() && isNumber(val)) {
                     commitPoint = Integer.valueOf(val).intValue();
-                } catch (final NumberFormatException e) {
-                    HenPlus.msg().println("commit point number expected: " + e);
-                    return SYNTAX_ERROR;
+                } else {
+                    tables.add(val);
                 }
             }
-            return retryReadDump(fileName, session, commitPoint);
+            return retryReadDump(fileName, session, commitPoint, tables.isEmpty() ? null : tables, resume, fastLoad,
+                    rejectsName);
         } else if ("verify-dump".equals(cmd)) {
-            if (argc != 1) {
+            if (argc < 1) {
                 return SYNTAX_ERROR;
             }
             final String fileName = (String) st.nextElement();
-            return retryReadDump(fileName, null, -1);
+            final List<String> tables = new ArrayList<String>();
+            while (st.hasMoreElements()) {
+                tables.add((String) st.nextElement());
+            }
+            return retryReadDump(fileName, null, -1, tables.isEmpty() ? null : tables, false, false, null);
         }
         return SYNTAX_ERROR;
     }
 
     /**
-     * reads a dump and does a retry if the file encoding does not match.
+     * reads a dump. If dump-in commits, the position of each commit is recorded in a checkpoint file, so that an interrupted
+     * import can be resumed.
+     *
+     * @param tables
+     *            the tables to read or <code>null</code> for all tables of the dump.
+     * @param resume
+     *            continue after the position found in the checkpoint file.
+     * @param fastLoad
+     *            drop the foreign keys and non-unique indexes of the tables while loading.
+     * @param rejectsName
+     *            the file the rows the database rejected are written to or <code>null</code>.
      */
-    private int retryReadDump(final String fileName, final SQLSession session, final int commitPoint) {
-        LineNumberReader in = null;
+    private int retryReadDump(final String fileName, final SQLSession session, final int commitPoint,
+            final List<String> tables, final boolean resume, final boolean fastLoad, final String rejectsName) {
         final boolean hot = session != null;
         beginInterruptableSection();
+        startTelemetry(hot ? "dump-in" : "verify-dump", DUMP_IN_PHASES);
+        _telemetry.setBatchSize(hot ? _batchSize : -1);
+        try {
+            final File restoreFile = _fileOpener.openFile(fileName + FastLoad.SUFFIX);
+            if (fastLoad) {
+                _fastLoad = new FastLoad(restoreFile);
+                if (_fastLoad.getPendingCount() > 0) {
+                    HenPlus.msg().println(_fastLoad.getPendingCount() + " indexes and foreign keys dropped by an interrupted"
+                            + " fast load are recreated at the end.");
+                }
+            } else if (hot && restoreFile.exists()) {
+                HenPlus.msg().println("WARNING: an interrupted fast load dropped indexes and foreign keys; load '"
+                        + restoreFile + "' to recreate them.");
+            }
+            List<DumpIndex.Entry> sections = null;
+            if (tables != null) {
+                sections = findSections(fileName, tables);
+                if (sections == null) {
+                    return EXEC_FAILED;
+                }
+            }
+            if (hot && (commitPoint > 0 || resume)) {
+                _checkpoints = createImportCheckpoints(fileName, resume);
+                if (_checkpoints == null) {
+                    return EXEC_FAILED;
+                }
+            }
+            if (hot && rejectsName != null) {
+                // the rejects of the import resumed are kept.
+                _rejects = new RejectFile(rejectsName, resume);
+            }
+            int result = readDump(fileName, session, hot, commitPoint, sections);
+            if (_checkpoints != null) {
+                if (result == SUCCESS && _running) {
+                    _checkpoints.finished();
+                } else {
+                    _checkpoints.printResumeHint(fileName);
+                }
+            }
+            if (_fastLoad != null) {
+                final FastLoad loaded = _fastLoad;
+                _fastLoad = null;
+                if (!finishFastLoad(session, loaded, restoreFile, result == SUCCESS && _running)) {
+                    result = EXEC_FAILED;
+                }
+            }
+            return result;
+        } catch (final Exception e) {
+            HenPlus.msg().println("failed: " + e.getMessage());
+            e.printStackTrace();
+            if (_checkpoints != null || _fastLoad != null) {
+                rollback(session);
+            }
+            if (_checkpoints != null) {
+                _checkpoints.printResumeHint(fileName);
+            }
+            return EXEC_FAILED;
+        } finally {
+            _checkpoints = null;
+            if (_rejects != null) {
+                closeRejects();
+            }
+            if (_fastLoad != null) {
+                final FastLoad interrupted = _fastLoad;
+                _fastLoad = null;
+                finishFastLoad(session, interrupted, _fileOpener.openFile(fileName + FastLoad.SUFFIX), false);
+            }
+            stopTelemetry();
+            endInterruptableSection();
+        }
+    }
+
+    /**
+     * drop the foreign keys and non-unique indexes of the table before it is loaded in a fast load.
+     */
+    private void prepareFastLoad(final Connection conn, final String tableName) throws SQLException, IOException {
+        final int dropped = _fastLoad.prepareTable(conn, tableName);
+        if (dropped > 0) {
+            HenPlus.msg().println("fast load: dropped " + dropped + " indexes and foreign keys of " + tableName);
+        }
+        printFastLoadProblems(_fastLoad);
+    }
+
+    /**
+     * commit the load and recreate the indexes and foreign keys dropped, in parallel on additional connections where the
+     * database allows it.
+     *
+     * @return if everything has been recreated.
+     */
+    private boolean finishFastLoad(final SQLSession session, final FastLoad fastLoad, final File restoreFile,
+            final boolean complete) {
+        if (fastLoad.getPendingCount() == 0) {
+            return true;
+        }
+        final List<Connection> connections = new ArrayList<Connection>();
+        try {
+            // the restore must not wait for locks of the load.
+            if (complete) {
+                session.getConnection().commit();
+            } else {
+                rollback(session);
+            }
+            connections.add(session.getConnection());
+            final int parallel = Math.min(Runtime.getRuntime().availableProcessors(), fastLoad.getPendingCount());
+            try {
+                while (connections.size() < parallel) {
+                    connections.add(session.createConnection());
+                }
+            } catch (final SQLException e) {
+                // recreate on the connections we got.
+            }
+            HenPlus.msg().println("fast load: recreating " + fastLoad.getPendingCount() + " indexes and foreign keys on "
+                    + connections.size() + " connections..");
+            final long startTime = System.currentTimeMillis();
+            final int restored = fastLoad.restore(connections);
+            HenPlus.msg().print("fast load: recreated " + restored + " indexes and foreign keys in ");
+            TimeRenderer.printTime(System.currentTimeMillis() - startTime, HenPlus.msg());
+            HenPlus.msg().println();
+        } catch (final Exception e) {
+            HenPlus.msg().println("fast load: restore failed: " + e.getMessage());
+        } finally {
+            for (int i = 1; i < connections.size(); ++i) {
+                try {
+                    connections.get(i).close();
+                } catch (final SQLException e) {
+                }
+            }
+        }
+        printFastLoadProblems(fastLoad);
+        if (fastLoad.getPendingCount() > 0) {
+            HenPlus.msg().println("WARNING: " + fastLoad.getPendingCount() + " indexes and foreign keys could not be"
+                    + " recreated; they are listed in '" + restoreFile + "'.");
+            return false;
+        }
+        return true;
+    }
+
+    private void closeRejects() {
+        final RejectFile rejects = _rejects;
+        _rejects = null;
+        try {
+            rejects.close();
+        } catch (final IOException e) {
+            HenPlus.msg().println("WARNING: " + e.getMessage());
+        }
+        if (rejects.getRows() > 0) {
+            HenPlus.msg().println(rejects.getRows() + " rejected rows written to '" + rejects.getFileName() + "'.");
+        }
+    }
+
+    private void printFastLoadProblems(final FastLoad fastLoad) {
+        for (final String problem : fastLoad.takeProblems()) {
+            HenPlus.msg().println("fast load: " + problem);
+        }
+    }
+
+    /**
+     * reads a dump and does a retry if the file encoding does not match.
+     */
+    private int readDump(final String fileName, final SQLSession session, final boolean hot, final int commitPoint,
+            final List<DumpIndex.Entry> sections) throws Exception {
+        DumpLexer in = null;
+        DataInputStream binaryIn = null;
         try {
             String fileEncoding = FILE_ENCODING;
             boolean retryPossible = true;
             do {
                 try {
-                    in = openInputReader(fileName, fileEncoding);
-                    while (skipWhite(in)) {
+                    if (sections != null) {
+                        for (final DumpIndex.Entry section : sections) {
+                            final int result = readSection(fileName, section, fileEncoding, session, hot, commitPoint);
+                            retryPossible = false;
+                            if (!_running) {
+                                HenPlus.msg().println("interrupted.");
+                                return result;
+                            }
+                            if (result != SUCCESS) {
+                                return result;
+                            }
+                        }
+                        return SUCCESS;
+                    }
+                    final BufferedInputStream stream = openInputStream(fileName,
+                            _checkpoints != null ? _checkpoints.getResumeOffset() : 0);
+                    if (isBinaryDump(stream)) {
+                        binaryIn = new DataInputStream(stream);
+                        final int result = readBinaryDump(binaryIn, session, hot, commitPoint);
+                        if (!_running) {
+                            HenPlus.msg().println("interrupted.");
+                        }
+                        return result;
+                    }
+                    in = new DumpLexer(new InputStreamReader(stream, fileEncoding));
+                    while (in.skipWhite()) {
                         final int result = readTableDump(in, fileEncoding, session, hot, commitPoint);
                         retryPossible = false;
                         if (!_running) {
@@ -450,39 +805,214 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                 }
             } while (retryPossible);
             return SUCCESS;
-        } catch (final Exception e) {
-            HenPlus.msg().println("failed: " + e.getMessage());
-            e.printStackTrace();
-            return EXEC_FAILED;
         } finally {
             try {
                 if (in != null) {
                     in.close();
                 }
+                if (binaryIn != null) {
+                    binaryIn.close();
+                }
             } catch (final IOException e) {
                 HenPlus.msg().println("closing file failed.");
             }
-            endInterruptableSection();
+        }
+    }
+
+    /**
+     * @return the checkpoints for a dump-in of the given file or <code>null</code>, if the checkpoint to resume from is not
+     *         usable.
+     */
+    private ImportCheckpoints createImportCheckpoints(final String fileName, final boolean resume) throws IOException {
+        final File dumpFile = _fileOpener.openFile(fileName);
+        final File checkpointFile = _fileOpener.openFile(fileName + DumpCheckpoint.SUFFIX);
+        final File indexFile = _fileOpener.openFile(fileName + DumpIndex.SUFFIX);
+        final DumpIndex index = indexFile.exists() ? DumpIndex.read(indexFile) : null;
+        DumpCheckpoint resumeFrom = null;
+        if (resume) {
+            if (!checkpointFile.exists()) {
+                HenPlus.msg().println("no checkpoint '" + checkpointFile + "' found to resume from.");
+                return null;
+            }
+            resumeFrom = DumpCheckpoint.read(checkpointFile);
+            if (resumeFrom.getDumpLength() != dumpFile.length()) {
+                HenPlus.msg().println("checkpoint '" + checkpointFile + "' does not belong to this dump; its length differs.");
+                return null;
+            }
+            HenPlus.msg().println("resume at table " + resumeFrom.getTableName() + " after " + resumeFrom.getRows() + " rows");
+        } else if (checkpointFile.exists()) {
+            HenPlus.msg().println("note: starting from the beginning; use 'dump-in -resume' to continue a previous import.");
+        }
+        return new ImportCheckpoints(checkpointFile, dumpFile.length(), index, resumeFrom);
+    }
+
+    /**
+     * record, that the rows of the table up to the given number are committed.
+     */
+    private void saveCheckpoint(final String tableName, final long rows) throws IOException {
+        if (_checkpoints != null) {
+            _checkpoints.committed(tableName, rows);
+        }
+    }
+
+    /**
+     * roll back the rows inserted after the last checkpoint, so that the checkpoint is exactly where a resume has to start.
+     */
+    private void rollback(final SQLSession session) {
+        try {
+            final Connection conn = session.getConnection();
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+            }
+        } catch (final SQLException e) {
+            HenPlus.msg().println("rollback failed: " + e.getMessage());
+        }
+    }
+
+    private static boolean isNumber(final String val) {
+        try {
+            Integer.parseInt(val);
+            return true;
+        } catch (final NumberFormatException e) {
+            return false;
         }
     }
 
     private PrintStream openOutputStream(final String fileName, final String encoding) throws IOException {
+        return new PrintStream(openMeteredOutputStream(fileName), false, encoding);
+    }
+
+    /**
+     * open the file a dump is written to; the bytes written are counted by the telemetry of the dump.
+     */
+    private OutputStream openMeteredOutputStream(final String fileName) throws IOException {
+        final Telemetry telemetry = _telemetry;
+        final OutputStream outStream = new FileOutputStream(_fileOpener.openFile(fileName));
+        if (fileName.endsWith(".gz")) {
+            return telemetry.meter(new ParallelGZIPOutputStream(telemetry.meter(outStream, true, PHASE_WRITE)), false, -1);
+        }
+        return new BufferedOutputStream(telemetry.meter(outStream, false, PHASE_WRITE), 65536);
+    }
+
+    /**
+     * @param append
+     *            append to the file; a compressed file then gets another gzip member, which is read like one stream.
+     */
+    private OutputStream openRawOutputStream(final String fileName, final boolean append) throws IOException {
         final File f = _fileOpener.openFile(fileName);
-        OutputStream outStream = new FileOutputStream(f);
+        final OutputStream outStream = new FileOutputStream(f, append);
         if (fileName.endsWith(".gz")) {
-            outStream = new GZIPOutputStream(outStream, 4096);
+            return new ParallelGZIPOutputStream(outStream);
+        }
+        return new BufferedOutputStream(outStream, 65536);
+    }
+
+    /**
+     * open the dump and skip the given number of bytes of the uncompressed dump.
+     */
+    private BufferedInputStream openInputStream(final String fileName, final long offset) throws IOException {
+        final InputStream in = openRawInputStream(fileName);
+        long toSkip = offset;
+        while (toSkip > 0) {
+            final long skipped = in.skip(toSkip);
+            if (skipped > 0) {
+                toSkip -= skipped;
+            } else if (in.read() >= 0) {
+                --toSkip;
+            } else {
+                in.close();
+                throw new EOFException("dump is shorter than " + offset + " bytes");
+            }
         }
-        return new PrintStream(outStream, false, encoding);
+        return new BufferedInputStream(in, 65536);
     }
 
-    private LineNumberReader openInputReader(final String fileName, final String fileEncoding) throws IOException {
+    /**
+     * open the dump to read; the bytes read are counted by the telemetry of the dump-in.
+     */
+    private InputStream openRawInputStream(final String fileName) throws IOException {
+        final Telemetry telemetry = _telemetry;
         final File f = _fileOpener.openFile(fileName);
-        InputStream inStream = new FileInputStream(f);
+        final InputStream inStream = new FileInputStream(f);
         if (fileName.endsWith(".gz")) {
-            inStream = new GZIPInputStream(inStream);
+            return telemetry.meter(new MultiMemberGZIPInputStream(telemetry.meter(inStream, true, PHASE_READ)), false, -1);
+        }
+        return telemetry.meter(inStream, false, PHASE_READ);
+    }
+
+    /**
+     * find the given tables in the index of the dump.
+     *
+     * @return the index entries in the order of the dump or <code>null</code>, if a table cannot be found.
+     */
+    private List<DumpIndex.Entry> findSections(final String fileName, final List<String> tables) throws IOException {
+        final File indexFile = _fileOpener.openFile(fileName + DumpIndex.SUFFIX);
+        if (!indexFile.exists()) {
+            HenPlus.msg().println("no index '" + indexFile + "' found; it is written by dump-out and needed to read single tables.");
+            return null;
+        }
+        final DumpIndex index = DumpIndex.read(indexFile);
+        final Set<DumpIndex.Entry> selected = new HashSet<DumpIndex.Entry>();
+        for (final String table : tables) {
+            final DumpIndex.Entry entry = index.getEntry(table);
+            if (entry == null) {
+                HenPlus.msg().println("table '" + table + "' not found in the index of the dump.");
+                return null;
+            }
+            selected.add(entry);
+        }
+        // keep the order of the dump, that takes care of the dependencies between the tables.
+        final List<DumpIndex.Entry> result = new ArrayList<DumpIndex.Entry>();
+        for (final DumpIndex.Entry entry : index.getEntries()) {
+            if (selected.contains(entry)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * read the dump of a single table, that is found with the index of the dump. Only this part of the file is read; the dumps
+     * of the tables before are skipped without parsing them.
+     */
+    private int readSection(final String fileName, final DumpIndex.Entry section, final String fileEncoding,
+            final SQLSession session, final boolean hot, final int commitPoint) throws Exception {
+        final InputStream rawIn = openRawInputStream(fileName);
+        try {
+            final SectionInputStream sectionIn = new SectionInputStream(rawIn, section);
+            final BufferedInputStream stream = new BufferedInputStream(sectionIn, 65536);
+            final int result;
+            if (isBinaryDump(stream)) {
+                result = readBinaryDump(new DataInputStream(stream), session, hot, commitPoint);
+            } else {
+                final DumpLexer in = new DumpLexer(new InputStreamReader(stream, fileEncoding));
+                if (!in.skipWhite()) {
+                    throw new IOException("empty dump of table " + section.getTableName());
+                }
+                result = readTableDump(in, fileEncoding, session, hot, commitPoint);
+            }
+            if (result == SUCCESS && _running) {
+                sectionIn.verify();
+            }
+            return result;
+        } finally {
+            rawIn.close();
         }
-        final Reader fileIn = new InputStreamReader(inStream, fileEncoding);
-        return new LineNumberReader(fileIn);
+    }
+
+    /**
+     * check, if the stream starts with a binary dump; the stream is reset to its beginning.
+     */
+    private boolean isBinaryDump(final BufferedInputStream in) throws IOException {
+        final byte[] magic = new byte[BinaryDump.MAGIC.length];
+        in.mark(magic.length);
+        int len = 0;
+        int n;
+        while (len < magic.length && (n = in.read(magic, len, magic.length - len)) > 0) {
+            len += n;
+        }
+        in.reset();
+        return Arrays.equals(magic, BinaryDump.MAGIC);
     }
 
     // to make the field-name and field-type nicely aligned
@@ -507,182 +1037,335 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
 
     private int dumpSelect(final SQLSession session, final String exportTable, final String statement, final PrintStream dumpOut,
             final String fileEncoding) throws Exception {
-        return dumpTable(session, new SelectDumpSource(session, exportTable, statement), dumpOut, fileEncoding);
+        return dumpTable(session, new SelectDumpSource(session, exportTable, statement), dumpOut, fileEncoding, true);
     }
 
-    private int dumpTable(final SQLSession session, String tabName, final String whereClause, final PrintStream dumpOut,
+    private int dumpTable(final SQLSession session, final String tabName, final String whereClause, final PrintStream dumpOut,
             final String fileEncoding) throws Exception {
+        return dumpTable(session, createTableDumpSource(session, tabName, whereClause), dumpOut, fileEncoding, true);
+    }
 
-        // asking for meta data is only possible with the correct
-        // table name.
-        boolean correctName = true;
-        if (tabName.startsWith("\"")) {
-            // tabName = stripQuotes(tabName);
-            correctName = false;
-        }
+    /**
+     * Dump the given tables with a pool of worker threads, each working on its own connection to the database. Every table is
+     * dumped into a temporary file first; these files are then appended to the dump in the order of the table sequence, so that
+     * the result is exactly the same as if the tables had been dumped one after another.
+     */
+    private int dumpTablesParallel(final SQLSession session, final List<String> tableSequence, final int parallelism,
+            final File spoolDir, final PrintStream dumpOut, final String fileEncoding) throws Exception {
+        final Set<String> tables = new LinkedHashSet<String>(tableSequence);
+        final List<TableDumpJob> jobs = new ArrayList<TableDumpJob>();
+        final int workers = Math.min(parallelism, tables.size());
+        final WorkerConnections connections = new WorkerConnections(session, workers);
+        final ExecutorService executor = Executors.newFixedThreadPool(workers);
+        int dumpResult = SUCCESS;
+        try {
+            useSnapshot(session, connections.getSnapshot());
+            for (final String table : tables) {
+                final TableDumpJob job = new TableDumpJob(session, createTableDumpSource(session, table, null, false),
+                        connections, spoolDir, fileEncoding);
+                job.submit(executor);
+                jobs.add(job);
+            }
 
-        // separate schama and table.
-        String schema = null;
-        final int schemaDelim = tabName.indexOf('.');
-        if (schemaDelim > 0) {
-            schema = tabName.substring(0, schemaDelim);
-            tabName = tabName.substring(schemaDelim + 1);
+            int done = 0;
+            final Iterator<TableDumpJob> it = jobs.iterator();
+            while (_running && it.hasNext()) {
+                final TableDumpJob job = it.next();
+                beginIndexEntry(dumpOut, job.getTableName());
+                final long rows = job.appendTo(dumpOut, 0).longValue();
+                if (rows < 0) {
+                    dumpResult = EXEC_FAILED;
+                } else {
+                    endIndexEntry(dumpOut, rows);
+                }
+                ++done;
+                HenPlus.msg().println("dumped " + job.getTableName() + " (" + done + "/" + jobs.size() + ")");
+            }
+        } finally {
+            executor.shutdownNow();
+            for (final TableDumpJob job : jobs) {
+                job.removeSpoolFile();
+            }
+            _snapshotTime = null;
+            connections.close();
         }
+        return dumpResult;
+    }
 
-        if (correctName) {
-            final String alternative = _tableCompleter.correctTableName(tabName);
-            if (alternative != null && !alternative.equals(tabName)) {
-                tabName = alternative;
-                HenPlus.out().println("dumping table: '" + tabName + "' (corrected name)");
+    /**
+     * Dump the given tables one after another, but split each table by ranges of its primary key, that are fetched in parallel.
+     */
+    private int dumpTablesSplit(final SQLSession session, final List<String> tableSequence, final int splits,
+            final File spoolDir, final PrintStream dumpOut, final String fileEncoding) throws Exception {
+        final Set<String> tables = new LinkedHashSet<String>(tableSequence);
+        final WorkerConnections connections = new WorkerConnections(session, splits);
+        final ExecutorService executor = Executors.newFixedThreadPool(splits);
+        int dumpResult = SUCCESS;
+        try {
+            useSnapshot(session, connections.getSnapshot());
+            final Iterator<String> it = tables.iterator();
+            while (_running && it.hasNext()) {
+                final TableDumpSource source = createTableDumpSource(session, it.next(), null, false);
+                final int result = dumpTableSplit(session, source, splits, connections, executor, spoolDir, dumpOut, fileEncoding);
+                if (result != SUCCESS) {
+                    dumpResult = result;
+                }
             }
+        } finally {
+            executor.shutdownNow();
+            _snapshotTime = null;
+            connections.close();
         }
-        final TableDumpSource tableSource = new TableDumpSource(schema, tabName, session);
-        tableSource.setWhereClause(whereClause);
-        return dumpTable(session, tableSource, dumpOut, fileEncoding);
+        return dumpResult;
     }
 
-    private int dumpTable(final SQLSession session, final DumpSource dumpSource, final PrintStream dumpOut,
+    /**
+     * Dump a single table, whose rows are fetched in ranges of its primary key over several connections in parallel. The rows of
+     * all ranges end up in the same data section of the table dump. Tables that do not have a single numeric primary key column
+     * are dumped the usual way.
+     */
+    private int dumpTableSplit(final SQLSession session, final TableDumpSource source, final int splits,
+            final WorkerConnections connections, final ExecutorService executor, final File spoolDir, final PrintStream dumpOut,
             final String fileEncoding) throws Exception {
         final long startTime = System.currentTimeMillis();
-        final MetaProperty[] metaProps = dumpSource.getMetaProperties();
+        final MetaProperty[] metaProps = source.getMetaProperties();
         if (metaProps.length == 0) {
-            HenPlus.msg().println("No fields in " + dumpSource.getDescription() + " found.");
+            HenPlus.msg().println("No fields in " + source.getDescription() + " found.");
             return EXEC_FAILED;
         }
+        // the high-water mark, the ranges and the row count must be read from the snapshot the rows are dumped from.
+        final String[] ranges;
+        final long expectedRows;
+        final Connection conn = connections.take();
+        try {
+            source.setConnection(conn);
+            if (_watermarkColumn != null) {
+                applyWatermark(session, source);
+            }
+            ranges = source.getKeyRanges(splits);
+            if (ranges == null) {
+                return dumpTable(session, source, dumpOut, fileEncoding, true);
+            }
+            HenPlus.msg().println("dump " + source.getTableName() + " in " + ranges.length + " key ranges:");
+            expectedRows = source.getExpectedRows();
+        } finally {
+            source.setConnection(null);
+            connections.release(conn);
+        }
+        writeTableHeader(session, source, metaProps, expectedRows, dumpOut, fileEncoding);
 
-        HenPlus.msg().println("dump " + dumpSource.getTableName() + ":");
-
-        dumpOut.println("(tabledump '" + dumpSource.getTableName() + "'");
-        dumpOut.println("  (file-encoding '" + fileEncoding + "')");
-        dumpOut.println("  (dump-version " + DUMP_VERSION + " " + DUMP_VERSION + ")");
-        /*
-         * if (whereClause != null) { dumpOut.print("  (where-clause ");
-         * quoteString(dumpOut, whereClause); dumpOut.println(")"); }
-         */
-        dumpOut.println("  (henplus-version '" + Version.getVersion() + "')");
-        dumpOut.println("  (time '" + new Timestamp(System.currentTimeMillis()) + "')");
-        dumpOut.print("  (database-info ");
-        quoteString(dumpOut, session.getDatabaseInfo());
-        dumpOut.println(")");
+        final List<RangeDumpJob> jobs = new ArrayList<RangeDumpJob>();
+        long rows = 0;
+        try {
+            for (int i = 0; i < ranges.length; ++i) {
+                final RangeDumpJob job = new RangeDumpJob(source.restrict(ranges[i]), metaProps, connections, spoolDir,
+                        fileEncoding);
+                job.submit(executor);
+                jobs.add(job);
+            }
+            final ProgressWriter progressWriter = new ProgressWriter(ranges.length, HenPlus.msg());
+            int done = 0;
+            final Iterator<RangeDumpJob> it = jobs.iterator();
+            while (_running && it.hasNext()) {
+                // the first row of each range is preceded by a row separator, unless it is the very first row.
+                final int skipBytes = rows == 0 && !_binaryOutput ? ROW_SEPARATOR.length() : 0;
+                final long rangeRows = it.next().appendTo(dumpOut, skipBytes).longValue();
+                rows += rangeRows;
+                progressWriter.update(++done);
+            }
+            progressWriter.finish();
+        } finally {
+            for (final RangeDumpJob job : jobs) {
+                job.cancel();
+                job.removeSpoolFile();
+            }
+        }
+        if (!_running) {
+            // the rows of the remaining ranges are missing; leave the table dump incomplete.
+            HenPlus.msg().println(" == INTERRUPTED after " + rows + " rows of " + source.getTableName() + " ==");
+            return EXEC_FAILED;
+        }
+        writeTableFooter(dumpOut, rows);
+        printDumpStatistics(source.getTableName(), rows, source.isExactRowCount() ? expectedRows : -1, startTime);
+        return SUCCESS;
+    }
 
-        final long expectedRows = dumpSource.getExpectedRows();
-        dumpOut.println("  (estimated-rows '" + expectedRows + "')");
+    /**
+     * start measuring the throughput of a dump; it is shown in the progress and logged to the telemetry log.
+     */
+    private void startTelemetry(final String operation, final String[] phases) {
+        _telemetry = new Telemetry(operation, phases);
+        _telemetry.start();
+    }
 
-        dumpOut.print("  (meta (");
-        for (int i = 0; i < metaProps.length; ++i) {
-            final MetaProperty p = metaProps[i];
-            printWidth(dumpOut, p.fieldName, p.renderWidth(), i != 0);
+    private void stopTelemetry() {
+        final Telemetry telemetry = _telemetry;
+        _telemetry = null;
+        telemetry.stop();
+        if (telemetry.getRows() > 0) {
+            HenPlus.msg().println("throughput: " + telemetry.getSummary());
         }
-        dumpOut.println(")");
-        dumpOut.print("\t(");
-        for (int i = 0; i < metaProps.length; ++i) {
-            final MetaProperty p = metaProps[i];
-            printWidth(dumpOut, p.typeName, p.renderWidth(), i != 0);
+    }
+
+    /**
+     * the tables of a parallel dump are read as of the time of the snapshot of the worker connections; it is written to the
+     * headers of the tables.
+     */
+    private void useSnapshot(final SQLSession session, final ConnectionSnapshot snapshot) {
+        if (snapshot.getDescription() == null) {
+            HenPlus.msg().println("note: " + session.getDatabaseInfo() + " has no snapshot shared by several connections;"
+                    + " the tables may be dumped as of slightly different times.");
+            return;
         }
-        dumpOut.println("))");
+        HenPlus.msg().println("dumping as of " + snapshot.getTime() + " (" + snapshot.getDescription() + ")");
+        _snapshotTime = snapshot.getTime();
+    }
 
-        dumpOut.print("  (data ");
-        ResultSet rset = null;
-        Statement stmt = null;
-        try {
-            long rows = 0;
-            final ProgressWriter progressWriter = new ProgressWriter(expectedRows, HenPlus.msg());
-            rset = dumpSource.getResultSet();
-            stmt = dumpSource.getStatement();
-            boolean isFirst = true;
-            while (_running && rset.next()) {
-                ++rows;
-                progressWriter.update(rows);
-                if (!isFirst) {
-                    dumpOut.print("\n\t");
-                }
-                isFirst = false;
-                dumpOut.print("(");
-
-                for (int i = 0; i < metaProps.length; ++i) {
-                    final int col = i + 1;
-                    final int thisType = metaProps[i].getType();
-                    switch (thisType) {
-                        case HP_INTEGER:
-                        case HP_NUMERIC:
-                        case HP_DOUBLE: {
-                            final String val = rset.getString(col);
-                            if (rset.wasNull()) {
-                                dumpOut.print(NULL_STR);
-                            } else {
-                                dumpOut.print(val);
-                            }
-                            break;
-                        }
+    /**
+     * @return the time written to the header of a table dump.
+     */
+    private Timestamp getDumpTime() {
+        final Timestamp snapshotTime = _snapshotTime;
+        return snapshotTime != null ? snapshotTime : new Timestamp(System.currentTimeMillis());
+    }
 
-                        case HP_TIMESTAMP: {
-                            final Timestamp val = rset.getTimestamp(col);
-                            if (rset.wasNull()) {
-                                dumpOut.print(NULL_STR);
-                            } else {
-                                quoteString(dumpOut, val.toString());
-                            }
-                            break;
-                        }
+    private TableDumpSource createTableDumpSource(final SQLSession session, final String tabName, final String whereClause)
+            throws SQLException {
+        return createTableDumpSource(session, tabName, whereClause, true);
+    }
 
-                        case HP_TIME: {
-                            final Time val = rset.getTime(col);
-                            if (rset.wasNull()) {
-                                dumpOut.print(NULL_STR);
-                            } else {
-                                quoteString(dumpOut, val.toString());
-                            }
-                            break;
-                        }
+    /**
+     * @param withWatermark
+     *            restrict an incremental dump to the rows above the high-water mark right away. Otherwise, the caller does
+     *            so with {@link #applyWatermark(SQLSession, TableDumpSource)}, once the connection to dump from is set; the
+     *            high-water mark must be read in the same snapshot as the rows.
+     */
+    private TableDumpSource createTableDumpSource(final SQLSession session, String tabName, final String whereClause,
+            final boolean withWatermark) throws SQLException {
 
-                        case HP_DATE: {
-                            final java.sql.Date val = rset.getDate(col);
-                            if (rset.wasNull()) {
-                                dumpOut.print(NULL_STR);
-                            } else {
-                                quoteString(dumpOut, val.toString());
-                            }
-                            break;
-                        }
+        // asking for meta data is only possible with the correct
+        // table name.
+        boolean correctName = true;
+        if (tabName.startsWith("\"")) {
+            // tabName = stripQuotes(tabName);
+            correctName = false;
+        }
 
-                        case HP_BLOB: // we try our best by reading BLOB/CLOB
-                        case HP_CLOB: // as String (known not to work on Oracle)
-                        case HP_STRING: {
-                            final String val = rset.getString(col);
-                            if (rset.wasNull()) {
-                                dumpOut.print(NULL_STR);
-                            } else {
-                                quoteString(dumpOut, val);
-                            }
-                            break;
-                        }
+        // separate schama and table.
+        String schema = null;
+        final int schemaDelim = tabName.indexOf('.');
+        if (schemaDelim > 0) {
+            schema = tabName.substring(0, schemaDelim);
+            tabName = tabName.substring(schemaDelim + 1);
+        }
 
-                        default:
-                            throw new IllegalArgumentException("type " + TYPES[thisType] + " not supported yet");
-                    }
-                    if (metaProps.length > col) {
-                        dumpOut.print(",");
-                    } else {
-                        dumpOut.print(")");
-                    }
-                }
+        if (correctName) {
+            final String alternative = _tableCompleter.correctTableName(tabName);
+            if (alternative != null && !alternative.equals(tabName)) {
+                tabName = alternative;
+                HenPlus.out().println("dumping table: '" + tabName + "' (corrected name)");
             }
-            progressWriter.finish();
-            dumpOut.println(")");
-            dumpOut.println("  (rows " + rows + "))\n");
+        }
+        final TableDumpSource source = new TableDumpSource(schema, tabName, session, _rowCountMode);
+        source.setWhereClause(whereClause);
+        if (withWatermark && _watermarkColumn != null) {
+            applyWatermark(session, source);
+        }
+        return source;
+    }
+
+    /**
+     * start an incremental dump of the given column, if it is not <code>null</code>.
+     */
+    private void startIncremental(final String column) {
+        _watermarkColumn = column;
+        if (column != null) {
+            _watermarks = new DumpWatermarks(HenPlus.getInstance().createConfigurationContainer(WATERMARKS_FILENAME));
+        }
+    }
+
+    /**
+     * store the high-water marks of an incremental dump; only if all tables have been dumped, otherwise the next dump repeats
+     * this one.
+     */
+    private void finishIncremental(final int result) {
+        if (_watermarks != null && _running && result == SUCCESS) {
+            _watermarks.store();
+        }
+    }
+
+    /**
+     * restrict the source of an incremental dump to the rows above the high-water mark of the last incremental dump. The new
+     * high-water mark is read on the connection of the source and stored when the dump is complete. Called by the workers of
+     * a parallel dump as well.
+     */
+    private void applyWatermark(final SQLSession session, final TableDumpSource source) throws SQLException {
+        final String url = session.getURL();
+        final String from = _watermarks.get(url, source.getTableName(), _watermarkColumn);
+        final Watermark watermark = source.startIncremental(_watermarkColumn, from);
+        if (watermark.getNext() != null) {
+            _watermarks.set(url, source.getTableName(), _watermarkColumn, watermark.getNext());
+        }
+        HenPlus.msg().println("incremental dump of " + source.getTableName() + ": "
+                + describeWatermark(watermark.getColumnName(), watermark.getFrom(), watermark.getTo()));
+    }
+
+    private static String describeWatermark(final String column, final String from, final String to) {
+        return column + (from != null ? " above " + from : "") + (to != null ? " up to " + to : " (no new rows)");
+    }
+
+    /**
+     * dump the table from the dump source.
+     */
+    private int dumpTable(final SQLSession session, final DumpSource dumpSource, final PrintStream dumpOut,
+            final String fileEncoding, final boolean verbose) throws Exception {
+        return dumpTableRows(session, dumpSource, dumpOut, fileEncoding, verbose) < 0 ? EXEC_FAILED : SUCCESS;
+    }
+
+    /**
+     * dump the table from the dump source.
+     * 
+     * @param verbose
+     *            print progress and statistics; 'false' for the workers of a parallel dump that must not interfere with each
+     *            other on the screen.
+     * @return the number of rows dumped or -1, if the dump source has no columns.
+     */
+    private long dumpTableRows(final SQLSession session, final DumpSource dumpSource, final PrintStream dumpOut,
+            final String fileEncoding, final boolean verbose) throws Exception {
+        final long startTime = System.currentTimeMillis();
+        final MetaProperty[] metaProps = dumpSource.getMetaProperties();
+        if (metaProps.length == 0) {
+            HenPlus.msg().println("No fields in " + dumpSource.getDescription() + " found.");
+            return -1;
+        }
+
+        if (verbose) {
+            HenPlus.msg().println("dump " + dumpSource.getTableName() + ":");
+        }
 
-            HenPlus.msg().print("(" + rows + " rows)\n");
-            final long execTime = System.currentTimeMillis() - startTime;
+        final long expectedRows = dumpSource.getExpectedRows();
+        writeTableHeader(session, dumpSource, metaProps, expectedRows, dumpOut, fileEncoding);
 
-            HenPlus.msg().print("dumping '" + dumpSource.getTableName() + "' took ");
-            TimeRenderer.printTime(execTime, HenPlus.msg());
-            HenPlus.msg().print(" total; ");
-            TimeRenderer.printFraction(execTime, rows, HenPlus.msg());
-            HenPlus.msg().println(" / row");
-            if (expectedRows >= 0 && rows != expectedRows) {
-                HenPlus.msg().println(
-                        " == Warning: 'select count(*)' in the" + " beginning resulted in " + expectedRows
-                                + " but the dump exported " + rows + " rows == ");
+        long rows = 0;
+        ResultSet rset = null;
+        Statement stmt = null;
+        try {
+            _telemetry.setTable(dumpSource.getTableName());
+            final ProgressWriter progressWriter = verbose ? new ProgressWriter(expectedRows, HenPlus.msg(), _telemetry) : null;
+            rset = dumpSource.getResultSet();
+            stmt = dumpSource.getStatement();
+            rows = dumpRows(rset, dumpSource.getFetchSize(), metaProps, dumpOut, fileEncoding, false);
+            if (progressWriter != null) {
+                progressWriter.finish();
+            }
+            writeTableFooter(dumpOut, rows);
+
+            // an estimate is not expected to match.
+            final long countedRows = dumpSource.isExactRowCount() ? expectedRows : -1;
+            if (verbose) {
+                printDumpStatistics(dumpSource.getTableName(), rows, countedRows, startTime);
+            } else if (countedRows >= 0 && rows != countedRows) {
+                printRowCountWarning(rows, countedRows);
             }
 
             if (!_running) {
@@ -708,36 +1391,329 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                 }
             }
         }
-        return SUCCESS;
+        return rows;
     }
 
-    private Number readNumber(final LineNumberReader in) throws IOException {
-        String token = readToken(in);
-        // separated sign.
-        if (token.length() == 1 && (token.equals("+") || token.equals("-"))) {
-            token += readToken(in);
+    private void writeTableHeader(final SQLSession session, final DumpSource source, final MetaProperty[] metaProps,
+            final long expectedRows, final PrintStream dumpOut, final String fileEncoding) throws IOException {
+        final String tableName = source.getTableName();
+        final Watermark watermark = source.getWatermark();
+        beginIndexEntry(dumpOut, tableName);
+        if (_binaryOutput) {
+            writeBinaryTableHeader(session, tableName, watermark, metaProps, expectedRows, dumpOut);
+            return;
         }
-        if (token.equals(NULL_STR)) {
-            return null;
+        dumpOut.println("(tabledump '" + tableName + "'");
+        dumpOut.println("  (file-encoding '" + fileEncoding + "')");
+        final int version = dumpVersion(metaProps, DUMP_VERSION);
+        dumpOut.println("  (dump-version " + version + " " + version + ")");
+        /*
+         * if (whereClause != null) { dumpOut.print("  (where-clause ");
+         * quoteString(dumpOut, whereClause); dumpOut.println(")"); }
+         */
+        dumpOut.println("  (henplus-version '" + Version.getVersion() + "')");
+        dumpOut.println("  (time '" + getDumpTime() + "')");
+        dumpOut.print("  (database-info ");
+        quoteString(dumpOut, session.getDatabaseInfo());
+        dumpOut.println(")");
+
+        dumpOut.println("  (estimated-rows '" + expectedRows + "')");
+        if (watermark != null) {
+            dumpOut.print("  (watermark-column ");
+            quoteString(dumpOut, watermark.getColumnName());
+            dumpOut.println(")");
+            if (watermark.getFrom() != null) {
+                dumpOut.print("  (watermark-from ");
+                quoteString(dumpOut, watermark.getFrom());
+                dumpOut.println(")");
+            }
+            if (watermark.getTo() != null) {
+                dumpOut.print("  (watermark-to ");
+                quoteString(dumpOut, watermark.getTo());
+                dumpOut.println(")");
+            }
+        }
+
+        writeMetaData(metaProps, dumpOut);
+        dumpOut.print("  (data ");
+    }
+
+    private void writeMetaData(final MetaProperty[] metaProps, final PrintStream dumpOut) {
+        dumpOut.print("  (meta (");
+        for (int i = 0; i < metaProps.length; ++i) {
+            final MetaProperty p = metaProps[i];
+            printWidth(dumpOut, p.fieldName, p.renderWidth(), i != 0);
+        }
+        dumpOut.println(")");
+        dumpOut.print("\t(");
+        for (int i = 0; i < metaProps.length; ++i) {
+            final MetaProperty p = metaProps[i];
+            printWidth(dumpOut, p.typeName, p.renderWidth(), i != 0);
         }
+        dumpOut.println("))");
+    }
+
+    private void writeTableFooter(final PrintStream dumpOut, final long rows) throws IOException {
+        if (_binaryOutput) {
+            new BlockWriter().writeEnd(dumpOut, rows);
+        } else {
+            dumpOut.println(")");
+            dumpOut.println("  (rows " + rows + "))\n");
+        }
+        endIndexEntry(dumpOut, rows);
+    }
+
+    /**
+     * the dump of a table starts; remember its position, if it is written to the dump file of dump-out.
+     */
+    private void beginIndexEntry(final PrintStream dumpOut, final String tableName) {
+        if (dumpOut == _indexedDump) {
+            _indexOut.beginTable(tableName);
+        }
+    }
+
+    private void endIndexEntry(final PrintStream dumpOut, final long rows) {
+        if (dumpOut == _indexedDump) {
+            _indexOut.endTable(rows);
+        }
+    }
+
+    /**
+     * write the magic bytes and the header of a binary table dump. The header is preceded by its length, so that later versions
+     * may add fields.
+     */
+    private void writeBinaryTableHeader(final SQLSession session, final String tableName, final Watermark watermark,
+            final MetaProperty[] metaProps, final long expectedRows, final PrintStream dumpOut) throws IOException {
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(header);
+        final int version = dumpVersion(metaProps, BINARY_DUMP_VERSION);
+        out.writeInt(version);
+        out.writeInt(version);
+        out.writeUTF(tableName);
+        out.writeUTF(Version.getVersion());
+        out.writeUTF(getDumpTime().toString());
+        out.writeUTF(String.valueOf(session.getDatabaseInfo()));
+        out.writeLong(expectedRows);
+        out.writeInt(metaProps.length);
+        for (int i = 0; i < metaProps.length; ++i) {
+            out.writeUTF(metaProps[i].fieldName);
+            out.writeUTF(metaProps[i].typeName);
+        }
+        out.writeBoolean(watermark != null);
+        if (watermark != null) {
+            out.writeUTF(watermark.getColumnName());
+            writeOptionalUTF(out, watermark.getFrom());
+            writeOptionalUTF(out, watermark.getTo());
+        }
+        out.flush();
+        dumpOut.write(BinaryDump.MAGIC, 0, BinaryDump.MAGIC.length);
+        final DataOutputStream lengthOut = new DataOutputStream(dumpOut);
+        lengthOut.writeInt(header.size());
+        lengthOut.flush();
+        header.writeTo(dumpOut);
+    }
+
+    private static void writeOptionalUTF(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readOptionalUTF(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * @return the version of the dump of a table with the given columns; tables without BLOB columns are written in the
+     *         version, that older versions of henplus can read.
+     */
+    private static int dumpVersion(final MetaProperty[] metaProps, final int version) {
+        for (int i = 0; i < metaProps.length; ++i) {
+            if (metaProps[i].getType() == MetaProperty.HP_BLOB) {
+                return BLOB_DUMP_VERSION;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * dumps before {@link #BLOB_DUMP_VERSION} contain the strings the driver returned for BLOBs; these are imported as strings,
+     * as before.
+     */
+    private static void readBlobsAsStrings(final MetaProperty[] metaProps, final int dumpVersion) {
+        if (dumpVersion >= BLOB_DUMP_VERSION) {
+            return;
+        }
+        for (int i = 0; i < metaProps.length; ++i) {
+            if (metaProps[i].type == MetaProperty.HP_BLOB) {
+                metaProps[i].type = MetaProperty.HP_STRING;
+            }
+        }
+    }
+
+    private void printDumpStatistics(final String tableName, final long rows, final long expectedRows, final long startTime) {
+        HenPlus.msg().print("(" + rows + " rows)\n");
+        final long execTime = System.currentTimeMillis() - startTime;
+
+        HenPlus.msg().print("dumping '" + tableName + "' took ");
+        TimeRenderer.printTime(execTime, HenPlus.msg());
+        HenPlus.msg().print(" total; ");
+        TimeRenderer.printFraction(execTime, rows, HenPlus.msg());
+        HenPlus.msg().println(" / row");
+        if (expectedRows >= 0 && rows != expectedRows) {
+            printRowCountWarning(rows, expectedRows);
+        }
+    }
+
+    private void printRowCountWarning(final long rows, final long expectedRows) {
+        HenPlus.msg().println(
+                " == Warning: 'select count(*)' in the" + " beginning resulted in " + expectedRows + " but the dump exported "
+                        + rows + " rows == ");
+    }
+
+    /**
+     * write the rows of the result set to the data section of a dump. The rows are fetched in this thread and serialized by a
+     * separate writer thread, so that fetching from the database overlaps with formatting and compressing the output; both are
+     * connected by a ring of {@link #PIPELINE_SLOTS} reusable row slots.
+     * 
+     * @param separateFirstRow
+     *            write the row separator before the first row as well; used if the rows are appended to rows already written.
+     *            Not needed for binary dumps, whose blocks can simply be concatenated.
+     * @return the number of rows written.
+     */
+    private long dumpRows(final ResultSet rset, final AdaptiveFetchSize fetchSize, final MetaProperty[] metaProps,
+            final PrintStream dumpOut, final String fileEncoding, final boolean separateFirstRow) throws SQLException,
+            IOException {
+        final ColumnWriter[] writers = ColumnWriter.create(rset.getMetaData(), metaProps);
+        final Telemetry telemetry = _telemetry;
+        telemetry.setBatchSize(fetchSize.getFetchSize());
+        for (int i = 0; i < writers.length; ++i) {
+            if (writers[i].isStreaming()) {
+                return dumpRowsDirect(rset, fetchSize, writers, dumpOut, fileEncoding, separateFirstRow, telemetry);
+            }
+        }
+        final RowSlot[] slots = new RowSlot[PIPELINE_SLOTS];
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = new RowSlot(writers.length);
+        }
+        final RingBuffer<RowSlot> ring = new RingBuffer<RowSlot>(slots);
+        final RowSerializer serializer;
+        if (_binaryOutput) {
+            serializer = new RowSerializer(ring, writers, null, dumpOut, false, telemetry);
+        } else {
+            serializer = new RowSerializer(ring, writers, new DumpWriter(dumpOut, fileEncoding), null, separateFirstRow,
+                    telemetry);
+        }
+        serializer.start();
+        final Telemetry.Clock clock = telemetry.createClock();
+        long rows = 0;
+        boolean complete = false;
         try {
-            if (token.indexOf('.') > 0) {
-                return Double.valueOf(token);
+            clock.enter(PHASE_FETCH);
+            while (_running && fetchSize.next(rset)) {
+                // waiting for a free slot is time the serializer needs.
+                clock.enter(-1);
+                final RowSlot slot = ring.claim();
+                if (slot == null) {
+                    break; // the serializer failed.
+                }
+                clock.enter(PHASE_FETCH);
+                for (int i = 0; i < writers.length; ++i) {
+                    writers[i].fetch(rset, slot);
+                }
+                if (fetchSize.isTuning()) {
+                    fetchSize.rowFetched(slot.estimateSize());
+                    telemetry.setBatchSize(fetchSize.getFetchSize());
+                }
+                ring.publish();
+                ++rows;
+                clock.addRow();
             }
-            if (token.length() < 10) {
-                return Integer.valueOf(token);
-            } else if (token.length() < 19) {
-                return Long.valueOf(token);
+            complete = true;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            _running = false;
+            complete = true;
+        } finally {
+            if (complete) {
+                ring.close();
             } else {
-                return new BigDecimal(token);
+                ring.abort();
             }
-        } catch (final NumberFormatException e) {
-            raiseException(in, "Number format " + token + ": " + e.getMessage());
+            clock.finish();
+            serializer.awaitTermination();
+        }
+        serializer.checkFailure();
+        return rows;
+    }
+
+    /**
+     * write the rows in this thread, each row right after it is fetched. Used for tables with LOB columns, as their streams
+     * are only valid until the next row is fetched.
+     */
+    private long dumpRowsDirect(final ResultSet rset, final AdaptiveFetchSize fetchSize, final ColumnWriter[] writers,
+            final PrintStream dumpOut, final String fileEncoding, final boolean separateFirstRow, final Telemetry telemetry)
+            throws SQLException, IOException {
+        final RowSlot row = new RowSlot(writers.length);
+        final DumpWriter out = _binaryOutput ? null : new DumpWriter(dumpOut, fileEncoding);
+        // large LOBs are written to LOB blocks in front of the block of their row.
+        final BlockWriter block = _binaryOutput ? new BlockWriter(dumpOut) : null;
+        final Telemetry.Clock clock = telemetry.createClock();
+        long rows = 0;
+        clock.enter(PHASE_FETCH);
+        while (_running && fetchSize.next(rset)) {
+            for (int i = 0; i < writers.length; ++i) {
+                writers[i].fetch(rset, row);
+            }
+            if (fetchSize.isTuning()) {
+                fetchSize.rowFetched(row.estimateSize());
+                telemetry.setBatchSize(fetchSize.getFetchSize());
+            }
+            // the LOB streams are fetched while they are written.
+            clock.enter(PHASE_SERIALIZE);
+            if (block != null) {
+                writeRow(writers, row, block);
+                if (block.isFull()) {
+                    block.writeTo(dumpOut);
+                }
+            } else {
+                if (rows > 0 || separateFirstRow) {
+                    out.writeSyntax(ROW_SEPARATOR);
+                }
+                writeRow(writers, row, out);
+            }
+            ++rows;
+            clock.addRow();
+            clock.enter(PHASE_FETCH);
+        }
+        clock.enter(PHASE_SERIALIZE);
+        if (block != null) {
+            block.writeTo(dumpOut);
+            dumpOut.flush();
+        } else {
+            out.flush();
+        }
+        clock.finish();
+        return rows;
+    }
+
+    private static void writeRow(final ColumnWriter[] writers, final RowSlot row, final DumpWriter out) throws IOException {
+        out.writeSyntax('(');
+        for (int i = 0; i < writers.length; ++i) {
+            writers[i].write(row, out);
+            out.writeSyntax(i + 1 < writers.length ? ',' : ')');
         }
-        return null;
     }
 
-    private int readTableDump(final LineNumberReader reader, final String fileEncoding, final SQLSession session,
+    private static void writeRow(final ColumnWriter[] writers, final RowSlot row, final BlockWriter out) throws IOException {
+        for (int i = 0; i < writers.length; ++i) {
+            writers[i].writeBinary(row, out);
+        }
+        out.endRow();
+    }
+
+    private int readTableDump(final DumpLexer reader, final String fileEncoding, final SQLSession session,
             final boolean hot, final int commitPoint) throws IOException, SQLException, InterruptedException {
         MetaProperty[] metaProperty = null;
         String tableName = null;
@@ -747,313 +1723,823 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
         String databaseInfo = null;
         String dumpTime = null;
         String whereClause = null;
+        String watermarkColumn = null;
+        String watermarkFrom = null;
+        String watermarkTo = null;
         String token;
         long importedRows = -1;
         long expectedRows = -1;
         long estimatedRows = -1;
         long problemRows = -1;
+        long skipRows = 0;
         Connection conn = null;
         PreparedStatement stmt = null;
+        InsertBatch batch = null;
 
-        expect(reader, '(');
-        token = readToken(reader);
+        reader.expect('(');
+        token = reader.readToken();
         if (!"tabledump".equals(token)) {
-            raiseException(reader, "'tabledump' expected");
+            throw reader.error("'tabledump' expected");
         }
-        tableName = readString(reader);
+        tableName = reader.readString();
         final long startTime = System.currentTimeMillis();
         while (_running) {
-            skipWhite(reader);
+            reader.skipWhite();
             final int rawChar = reader.read();
             if (rawChar == -1) {
                 return SUCCESS; // EOF reached.
             }
-            char inCh = (char) rawChar;
-            if (inCh == ')') {
-                break;
+            char inCh = (char) rawChar;
+            if (inCh == ')') {
+                break;
+            }
+            if (inCh != '(') {
+                throw reader.error("'(' or ')' expected");
+            }
+            token = reader.readToken();
+
+            if ("dump-version".equals(token)) {
+                token = reader.readToken();
+                try {
+                    dumpVersion = Integer.valueOf(token).intValue();
+                } catch (final Exception e) {
+                    throw reader.error("expected dump version number");
+                }
+                token = reader.readToken();
+                try {
+                    compatibleVersion = Integer.valueOf(token).intValue();
+                } catch (final Exception e) {
+                    throw reader.error("expected compatible version number");
+                }
+                checkSupported(compatibleVersion);
+                reader.expect(')');
+            } else if ("file-encoding".equals(token)) {
+                token = reader.readString();
+                if (!token.equals(fileEncoding)) {
+                    throw new EncodingMismatchException(token);
+                }
+                reader.expect(')');
+            } else if ("henplus-version".equals(token)) {
+                token = reader.readString();
+                henplusVersion = token;
+                reader.expect(')');
+            } else if ("rows".equals(token)) {
+                token = reader.readToken();
+                expectedRows = Integer.valueOf(token).intValue();
+                reader.expect(')');
+            } else if ("estimated-rows".equals(token)) {
+                token = reader.readString();
+                estimatedRows = Integer.valueOf(token).intValue();
+                reader.expect(')');
+            } else if ("database-info".equals(token)) {
+                databaseInfo = reader.readString();
+                reader.expect(')');
+            } else if ("where-clause".equals(token)) {
+                whereClause = reader.readString();
+                reader.expect(')');
+            } else if ("time".equals(token)) {
+                dumpTime = reader.readString();
+                reader.expect(')');
+            } else if ("watermark-column".equals(token)) {
+                watermarkColumn = reader.readString();
+                reader.expect(')');
+            } else if ("watermark-from".equals(token)) {
+                watermarkFrom = reader.readString();
+                reader.expect(')');
+            } else if ("watermark-to".equals(token)) {
+                watermarkTo = reader.readString();
+                reader.expect(')');
+            } else if ("errors".equals(token)) {
+                // the messages of a reject file; one for each row.
+                do {
+                    reader.readString();
+                    reader.skipWhite();
+                    inCh = (char) reader.read();
+                } while (inCh == ',');
+                if (inCh != ')') {
+                    throw reader.error("',' or ')' expected");
+                }
+            } else if ("meta".equals(token)) {
+                if (dumpVersion < 0 || compatibleVersion < 0) {
+                    throw reader.error("cannot read meta data without dump-version information");
+                }
+                metaProperty = parseMetaData(reader);
+                readBlobsAsStrings(metaProperty, dumpVersion);
+            } else if ("data".equals(token)) {
+                if (metaProperty == null) {
+                    throw reader.error("no meta-data available");
+                }
+                if (tableName == null) {
+                    throw reader.error("no table name known");
+                }
+                if (_checkpoints != null) {
+                    skipRows = _checkpoints.rowsToSkip(tableName);
+                }
+                if (skipRows == Long.MAX_VALUE) {
+                    HenPlus.msg().println("skipping table " + tableName + "; imported before.");
+                } else {
+                    if (hot) {
+                        conn = session.getConnection();
+                        if (_fastLoad != null) {
+                            prepareFastLoad(conn, tableName);
+                        }
+                        stmt = prepareInsert(conn, tableName, metaProperty);
+                        batch = new InsertBatch(stmt, metaProperty, _batchSize, new InsertListener(tableName, metaProperty));
+                    }
+                    printImportHeader(hot, henplusVersion, tableName, databaseInfo, dumpTime, dumpVersion, whereClause);
+                    if (watermarkColumn != null) {
+                        HenPlus.msg().println("incremental         : "
+                                + describeWatermark(watermarkColumn, watermarkFrom, watermarkTo));
+                    }
+                    if (skipRows > 0) {
+                        HenPlus.msg().println("skipping the first " + skipRows + " rows; imported before.");
+                    }
+                }
+
+                _telemetry.setTable(tableName);
+                final ProgressWriter progressWriter = new ProgressWriter(skipRows == Long.MAX_VALUE ? -1 : estimatedRows,
+                        HenPlus.msg(), _telemetry);
+                importedRows = 0;
+                problemRows = 0;
+                _running = true;
+                try {
+                    while (_running) {
+                        reader.skipWhite();
+                        inCh = (char) reader.read();
+                        if (inCh == ')') {
+                            break;
+                        }
+                        if (inCh != '(') {
+                            throw reader.error("'(' or ')' expected");
+                        }
+                        // we are now at the beginning of the row.
+                        ++importedRows;
+                        _telemetry.addRows(1);
+                        final boolean insert = batch != null && importedRows > skipRows;
+                        for (int i = 0; i < metaProperty.length; ++i) {
+                            if (insert) {
+                                batch.readValue(i, reader);
+                            } else {
+                                skipValue(metaProperty[i], reader);
+                            }
+                            reader.expect(i + 1 < metaProperty.length ? ',' : ')');
+                        }
+                        if (insert) {
+                            batch.addRow();
+
+                            // commit every once in a while.
+                            if (commitPoint > 0 && importedRows % commitPoint == 0) {
+                                batch.execute();
+                                conn.commit();
+                                saveCheckpoint(tableName, importedRows);
+                            }
+                        }
+                    }
+                    if (batch != null) {
+                        batch.execute();
+                        problemRows = batch.getProblemRows();
+                    }
+                } finally {
+                    if (batch != null) {
+                        batch.discard(); // rows read, but not inserted due to a failure.
+                    }
+                }
+                progressWriter.finish();
+            } else {
+                HenPlus.msg().println("ignoring unknown token " + token);
+                dumpTime = reader.readString();
+                reader.expect(')');
+            }
+        }
+
+        if (skipRows == Long.MAX_VALUE) {
+            return SUCCESS;
+        }
+        finishTableImport(hot, commitPoint, conn, stmt, metaProperty, expectedRows, importedRows, problemRows, startTime);
+        if (hot && commitPoint >= 0) {
+            saveCheckpoint(tableName, Math.max(importedRows, skipRows));
+        }
+        return SUCCESS;
+    }
+
+    private PreparedStatement prepareInsert(final Connection conn, final String tableName, final MetaProperty[] metaProperty)
+            throws SQLException {
+        final StringBuilder prep = new StringBuilder("INSERT INTO ");
+        prep.append(tableName);
+        prep.append(" (");
+        for (int i = 0; i < metaProperty.length; ++i) {
+            prep.append(metaProperty[i].fieldName);
+            if (i + 1 < metaProperty.length) {
+                prep.append(",");
+            }
+        }
+        prep.append(") VALUES (");
+        for (int i = 0; i < metaProperty.length; ++i) {
+            prep.append("?");
+            if (i + 1 < metaProperty.length) {
+                prep.append(",");
+            }
+        }
+        prep.append(")");
+        // HenPlus.msg().println(prep.toString());
+        return conn.prepareStatement(prep.toString());
+    }
+
+    private void printImportHeader(final boolean hot, final String henplusVersion, final String tableName,
+            final String databaseInfo, final String dumpTime, final int dumpVersion, final String whereClause) {
+        HenPlus.msg().println(
+                (hot ? "importing" : "verifying") + " table dump created with HenPlus " + henplusVersion
+                        + "\nfor table           : " + tableName + "\nfrom database       : " + databaseInfo
+                        + "\nat                  : " + dumpTime + "\ndump format version : " + dumpVersion);
+        if (whereClause != null) {
+            HenPlus.msg().println("projection          : " + whereClause);
+        }
+    }
+
+    /**
+     * final commit and statistics after the data of a table has been read.
+     */
+    private void finishTableImport(final boolean hot, final int commitPoint, final Connection conn,
+            final PreparedStatement stmt, final MetaProperty[] metaProperty, final long expectedRows, final long importedRows,
+            final long problemRows, final long startTime) throws SQLException {
+        // return final count.
+        finishProblemReports();
+
+        if (!hot) {
+            printMetaDataInfo(metaProperty);
+        }
+
+        // final commit, if commitPoints are enabled.
+        if (hot && commitPoint >= 0) {
+            conn.commit();
+        }
+
+        // we're done.
+        if (stmt != null) {
+            try {
+                stmt.close();
+            } catch (final Exception e) {
+            }
+        }
+
+        if (expectedRows >= 0 && expectedRows != importedRows) {
+            HenPlus.msg().println("WARNING: expected " + expectedRows + " but got " + importedRows + " rows");
+        } else {
+            HenPlus.msg().println("ok. ");
+        }
+        HenPlus.msg().print("(" + importedRows + " rows total");
+        if (hot) {
+            HenPlus.msg().print(" / " + problemRows + " with errors");
+        }
+        HenPlus.msg().print("; ");
+        final long execTime = System.currentTimeMillis() - startTime;
+        TimeRenderer.printTime(execTime, HenPlus.msg());
+        HenPlus.msg().print(" total; ");
+        TimeRenderer.printFraction(execTime, importedRows, HenPlus.msg());
+        HenPlus.msg().println(" / row)");
+    }
+
+    /**
+     * read the table dumps of a binary dump file.
+     */
+    private int readBinaryDump(final DataInputStream in, final SQLSession session, final boolean hot, final int commitPoint)
+            throws IOException, SQLException, InterruptedException {
+        final byte[] magic = new byte[BinaryDump.MAGIC.length];
+        while (_running) {
+            final int first = in.read();
+            if (first == -1) {
+                return SUCCESS; // EOF reached.
+            }
+            magic[0] = (byte) first;
+            in.readFully(magic, 1, magic.length - 1);
+            if (!Arrays.equals(magic, BinaryDump.MAGIC)) {
+                throw new IOException("binary table dump expected");
+            }
+            final int result = readBinaryTableDump(in, session, hot, commitPoint);
+            if (result != SUCCESS) {
+                return result;
+            }
+        }
+        return SUCCESS;
+    }
+
+    /**
+     * read a table of a binary dump. The blocks are checked and decoded by a pool of threads, while the rows are inserted in
+     * the order of the file with the connection of the session.
+     */
+    private int readBinaryTableDump(final DataInputStream in, final SQLSession session, final boolean hot,
+            final int commitPoint) throws IOException, SQLException, InterruptedException {
+        final byte[] headerBytes = new byte[in.readInt()];
+        in.readFully(headerBytes);
+        final DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes));
+        final int dumpVersion = header.readInt();
+        checkSupported(header.readInt());
+        final String tableName = header.readUTF();
+        final String henplusVersion = header.readUTF();
+        final String dumpTime = header.readUTF();
+        final String databaseInfo = header.readUTF();
+        final long estimatedRows = header.readLong();
+        final MetaProperty[] metaProperty = new MetaProperty[header.readInt()];
+        for (int i = 0; i < metaProperty.length; ++i) {
+            metaProperty[i] = new MetaProperty(header.readUTF());
+            metaProperty[i].setTypeName(header.readUTF());
+        }
+        readBlobsAsStrings(metaProperty, dumpVersion);
+        String watermark = null;
+        if (header.available() > 0 && header.readBoolean()) {
+            final String column = header.readUTF();
+            final String from = readOptionalUTF(header);
+            watermark = describeWatermark(column, from, readOptionalUTF(header));
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final long skipRows = _checkpoints != null ? _checkpoints.rowsToSkip(tableName) : 0;
+        if (skipRows == Long.MAX_VALUE) {
+            HenPlus.msg().println("skipping table " + tableName + "; imported before.");
+            long blockNumber = 0;
+            BlockReader block;
+            while (_running && !(block = BlockReader.read(in, blockNumber++)).isEnd()) {
+                // the blocks need not even be decoded.
+                block.dispose();
+            }
+            return SUCCESS;
+        }
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        InsertBatch batch = null;
+        if (hot) {
+            conn = session.getConnection();
+            if (_fastLoad != null) {
+                prepareFastLoad(conn, tableName);
+            }
+            stmt = prepareInsert(conn, tableName, metaProperty);
+            batch = new InsertBatch(stmt, metaProperty, _batchSize, new InsertListener(tableName, metaProperty));
+        }
+        printImportHeader(hot, henplusVersion, tableName, databaseInfo, dumpTime, dumpVersion, null);
+        if (watermark != null) {
+            HenPlus.msg().println("incremental         : " + watermark);
+        }
+        if (skipRows > 0) {
+            HenPlus.msg().println("skipping the first " + skipRows + " rows; imported before.");
+        }
+
+        _telemetry.setTable(tableName);
+        final ProgressWriter progressWriter = new ProgressWriter(estimatedRows, HenPlus.msg(), _telemetry);
+        final int decoders = Runtime.getRuntime().availableProcessors();
+        final ExecutorService pool = Executors.newFixedThreadPool(decoders);
+        final LinkedList<Future<BlockDecoder>> pending = new LinkedList<Future<BlockDecoder>>();
+        long importedRows = 0;
+        long expectedRows = -1;
+        try {
+            long blockNumber = 0;
+            boolean end = false;
+            while (_running && (!end || !pending.isEmpty())) {
+                // keep the decoders busy, but do not read the whole file into memory.
+                while (!end && pending.size() < 2 * decoders) {
+                    final BlockReader block = BlockReader.read(in, blockNumber++);
+                    if (block.isEnd()) {
+                        block.verify();
+                        expectedRows = block.readLong();
+                        end = true;
+                    } else if (pending.isEmpty() && importedRows + block.getRowCount() <= skipRows) {
+                        importedRows += block.getRowCount(); // imported before; no need to decode it.
+                        _telemetry.addRows(block.getRowCount());
+                        block.dispose();
+                    } else {
+                        pending.add(pool.submit(new BlockDecoder(block, metaProperty)));
+                    }
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+                final BlockDecoder decoded = getDecoded(pending.removeFirst());
+                final ColumnBuffer[] columns = decoded.getColumns();
+                for (int i = 0; i < columns.length; ++i) {
+                    metaProperty[i].updateMaxLength(columns[i].getMaxLength());
+                }
+                final long previousRows = importedRows;
+                importedRows += decoded.getRowCount();
+                if (batch != null) {
+                    batch.addRows(columns, (int) Math.max(0, skipRows - previousRows), decoded.getRowCount());
+                    // commit every once in a while.
+                    if (commitPoint > 0 && importedRows / commitPoint != previousRows / commitPoint) {
+                        conn.commit();
+                        saveCheckpoint(tableName, importedRows);
+                    }
+                }
+                _telemetry.addRows(decoded.getRowCount());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        progressWriter.finish();
+        final long problemRows = batch != null ? batch.getProblemRows() : 0;
+        finishTableImport(hot, commitPoint, conn, stmt, metaProperty, expectedRows, importedRows, problemRows, startTime);
+        if (hot && commitPoint >= 0) {
+            saveCheckpoint(tableName, Math.max(importedRows, skipRows));
+        }
+        return SUCCESS;
+    }
+
+    private static BlockDecoder getDecoded(final Future<BlockDecoder> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(String.valueOf(cause));
+        }
+    }
+
+    public MetaProperty[] parseMetaData(final DumpLexer in) throws IOException {
+        final List<MetaProperty> metaList = new ArrayList<MetaProperty>();
+        in.expect('(');
+        while (true) {
+            final String colName = in.readString();
+            metaList.add(new MetaProperty(colName));
+            in.skipWhite();
+            final char inCh = (char) in.read();
+            if (inCh == ')') {
+                break;
+            }
+            if (inCh != ',') {
+                throw in.error("',' or ')' expected");
+            }
+        }
+        in.expect('(');
+        final MetaProperty[] result = metaList.toArray(new MetaProperty[metaList.size()]);
+        for (int i = 0; i < result.length; ++i) {
+            final String typeName = in.readString();
+            result[i].setTypeName(typeName);
+            in.expect(i + 1 < result.length ? ',' : ')');
+        }
+        in.expect(')');
+        return result;
+    }
+
+    /**
+     * Takes the rows fetched by {@link DumpCommand#dumpRows} from the ring and writes them; runs in its own thread. Failures
+     * abort the ring, so that the fetching thread stops as well, and are rethrown by {@link #checkFailure()}.
+     */
+    private static final class RowSerializer implements Runnable {
+
+        private final RingBuffer<RowSlot> _ring;
+        private final ColumnWriter[] _writers;
+        private final DumpWriter _out;
+        private final PrintStream _binaryOut;
+        private final boolean _separateFirstRow;
+        private final Telemetry _telemetry;
+        private final Thread _thread;
+        private volatile Throwable _failure;
+
+        /**
+         * @param out
+         *            the writer for a text dump or <code>null</code>.
+         * @param binaryOut
+         *            the stream to write blocks of a binary dump to or <code>null</code>.
+         * @param telemetry
+         *            measures the time spent serializing.
+         */
+        RowSerializer(final RingBuffer<RowSlot> ring, final ColumnWriter[] writers, final DumpWriter out,
+                final PrintStream binaryOut, final boolean separateFirstRow, final Telemetry telemetry) {
+            _ring = ring;
+            _writers = writers;
+            _out = out;
+            _binaryOut = binaryOut;
+            _separateFirstRow = separateFirstRow;
+            _telemetry = telemetry;
+            _thread = new Thread(this, "henplus dump writer");
+            _thread.setDaemon(true);
+        }
+
+        public void start() {
+            _thread.start();
+        }
+
+        public void run() {
+            final Telemetry.Clock clock = _telemetry.createClock();
+            try {
+                if (_binaryOut != null) {
+                    writeBlocks(clock);
+                } else {
+                    writeText(clock);
+                }
+            } catch (final Throwable e) {
+                _failure = e;
+                _ring.abort();
+            } finally {
+                clock.finish();
+            }
+        }
+
+        /**
+         * the time waiting for the next row is not measured.
+         */
+        private void writeText(final Telemetry.Clock clock) throws InterruptedException, IOException {
+            boolean isFirst = !_separateFirstRow;
+            RowSlot row;
+            while ((row = _ring.take()) != null) {
+                clock.enter(PHASE_SERIALIZE);
+                if (!isFirst) {
+                    _out.writeSyntax(ROW_SEPARATOR);
+                }
+                isFirst = false;
+                writeRow(_writers, row, _out);
+                _ring.release();
+                clock.enter(-1);
+            }
+            clock.enter(PHASE_SERIALIZE);
+            _out.flush();
+        }
+
+        private void writeBlocks(final Telemetry.Clock clock) throws InterruptedException, IOException {
+            final BlockWriter block = new BlockWriter();
+            RowSlot row;
+            while ((row = _ring.take()) != null) {
+                clock.enter(PHASE_SERIALIZE);
+                writeRow(_writers, row, block);
+                _ring.release();
+                if (block.isFull()) {
+                    block.writeTo(_binaryOut);
+                }
+                clock.enter(-1);
+            }
+            clock.enter(PHASE_SERIALIZE);
+            block.writeTo(_binaryOut);
+            _binaryOut.flush();
+        }
+
+        /**
+         * wait until all rows are written; the ring must have been closed or aborted before.
+         */
+        public void awaitTermination() {
+            boolean interrupted = false;
+            while (_thread.isAlive()) {
+                try {
+                    _thread.join();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void checkFailure() throws IOException {
+            final Throwable failure = _failure;
+            if (failure == null) {
+                return;
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
             }
-            if (inCh != '(') {
-                raiseException(reader, "'(' or ')' expected");
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
             }
-            token = readToken(reader);
+            final IOException e = new IOException("writing dump failed: " + failure);
+            e.initCause(failure);
+            throw e;
+        }
+    }
 
-            if ("dump-version".equals(token)) {
-                token = readToken(reader);
-                try {
-                    dumpVersion = Integer.valueOf(token).intValue();
-                } catch (final Exception e) {
-                    raiseException(reader, "expected dump version number");
-                }
-                token = readToken(reader);
-                try {
-                    compatibleVersion = Integer.valueOf(token).intValue();
-                } catch (final Exception e) {
-                    raiseException(reader, "expected compatible version number");
-                }
-                checkSupported(compatibleVersion);
-                expect(reader, ')');
-            } else if ("file-encoding".equals(token)) {
-                token = readString(reader);
-                if (!token.equals(fileEncoding)) {
-                    throw new EncodingMismatchException(token);
-                }
-                expect(reader, ')');
-            } else if ("henplus-version".equals(token)) {
-                token = readString(reader);
-                henplusVersion = token;
-                expect(reader, ')');
-            } else if ("rows".equals(token)) {
-                token = readToken(reader);
-                expectedRows = Integer.valueOf(token).intValue();
-                expect(reader, ')');
-            } else if ("estimated-rows".equals(token)) {
-                token = readString(reader);
-                estimatedRows = Integer.valueOf(token).intValue();
-                expect(reader, ')');
-            } else if ("database-info".equals(token)) {
-                databaseInfo = readString(reader);
-                expect(reader, ')');
-            } else if ("where-clause".equals(token)) {
-                whereClause = readString(reader);
-                expect(reader, ')');
-            } else if ("time".equals(token)) {
-                dumpTime = readString(reader);
-                expect(reader, ')');
-            } else if ("meta".equals(token)) {
-                if (dumpVersion < 0 || compatibleVersion < 0) {
-                    raiseException(reader, "cannot read meta data without dump-version information");
-                }
-                metaProperty = parseMetaData(reader);
-            } else if ("data".equals(token)) {
-                if (metaProperty == null) {
-                    raiseException(reader, "no meta-data available");
-                }
-                if (tableName == null) {
-                    raiseException(reader, "no table name known");
-                }
-                if (hot) {
-                    final StringBuilder prep = new StringBuilder("INSERT INTO ");
-                    prep.append(tableName);
-                    prep.append(" (");
-                    for (int i = 0; i < metaProperty.length; ++i) {
-                        prep.append(metaProperty[i].fieldName);
-                        if (i + 1 < metaProperty.length) {
-                            prep.append(",");
-                        }
-                    }
-                    prep.append(") VALUES (");
-                    for (int i = 0; i < metaProperty.length; ++i) {
-                        prep.append("?");
-                        if (i + 1 < metaProperty.length) {
-                            prep.append(",");
-                        }
-                    }
-                    prep.append(")");
-                    // HenPlus.msg().println(prep.toString());
-                    conn = session.getConnection();
-                    stmt = conn.prepareStatement(prep.toString());
-                }
+    /**
+     * read a value in verify mode; only its format and length is checked.
+     */
+    private static void skipValue(final MetaProperty meta, final DumpLexer in) throws IOException {
+        switch (meta.type) {
+            case MetaProperty.HP_NUMERIC:
+            case MetaProperty.HP_DOUBLE:
+            case MetaProperty.HP_INTEGER:
+                in.skipNumber();
+                break;
 
-                HenPlus.msg().println(
-                        (hot ? "importing" : "verifying") + " table dump created with HenPlus " + henplusVersion
-                                + "\nfor table           : " + tableName + "\nfrom database       : " + databaseInfo
-                                + "\nat                  : " + dumpTime + "\ndump format version : " + dumpVersion);
-                if (whereClause != null) {
-                    HenPlus.msg().println("projection          : " + whereClause);
+            case MetaProperty.HP_BLOB: {
+                // decode the value to check it; only the number of bytes is kept.
+                final Base64.DecodingWriter decoder = new Base64.DecodingWriter(null);
+                if (in.readString(decoder) >= 0) {
+                    decoder.close();
+                    meta.updateMaxLength(decoder.getLength());
                 }
+                break;
+            }
 
-                final ProgressWriter progressWriter = new ProgressWriter(estimatedRows, HenPlus.msg());
-                importedRows = 0;
-                problemRows = 0;
-                _running = true;
-                while (_running) {
-                    skipWhite(reader);
-                    inCh = (char) reader.read();
-                    if (inCh == ')') {
-                        break;
-                    }
-                    if (inCh != '(') {
-                        raiseException(reader, "'(' or ')' expected");
-                    }
-                    // we are now at the beginning of the row.
-                    ++importedRows;
-                    progressWriter.update(importedRows);
-                    for (int i = 0; i < metaProperty.length; ++i) {
-                        final int col = i + 1;
-                        final int type = metaProperty[i].type;
-                        switch (type) {
-                            case HP_NUMERIC:
-                            case HP_DOUBLE:
-                            case HP_INTEGER: {
-                                final Number number = readNumber(reader);
-                                if (stmt != null) {
-                                    if (number == null) {
-                                        if (type == HP_NUMERIC) {
-                                            stmt.setNull(col, Types.NUMERIC);
-                                        } else if (type == HP_INTEGER) {
-                                            stmt.setNull(col, Types.INTEGER);
-                                        } else if (type == HP_DOUBLE) {
-                                            stmt.setNull(col, Types.DOUBLE);
-                                        }
-                                    } else {
-                                        if (number instanceof Integer) {
-                                            stmt.setInt(col, number.intValue());
-                                        } else if (number instanceof Long) {
-                                            stmt.setLong(col, number.longValue());
-                                        } else if (number instanceof Double) {
-                                            stmt.setDouble(col, number.doubleValue());
-                                        } else if (number instanceof BigDecimal) {
-                                            stmt.setBigDecimal(col, (BigDecimal) number);
-                                        }
-                                    }
-                                }
-                                break;
-                            }
+            case MetaProperty.HP_TIMESTAMP:
+            case MetaProperty.HP_TIME:
+            case MetaProperty.HP_DATE:
+            case MetaProperty.HP_CLOB:
+            case MetaProperty.HP_STRING:
+                meta.updateMaxLength(in.skipString());
+                break;
 
-                            case HP_TIMESTAMP: {
-                                final String val = readString(reader);
-                                metaProperty[i].updateMaxLength(val);
-                                if (stmt != null) {
-                                    if (val == null) {
-                                        stmt.setTimestamp(col, null);
-                                    } else {
-                                        stmt.setTimestamp(col, Timestamp.valueOf(val));
-                                    }
-                                }
-                                break;
-                            }
+            default:
+                throw new IllegalArgumentException("type " + MetaProperty.typeName(meta.type) + " not supported yet");
+        }
+    }
 
-                            case HP_TIME: {
-                                final String val = readString(reader);
-                                metaProperty[i].updateMaxLength(val);
-                                if (stmt != null) {
-                                    if (val == null) {
-                                        stmt.setTime(col, null);
-                                    } else {
-                                        stmt.setTime(col, Time.valueOf(val));
-                                    }
-                                }
-                                break;
-                            }
+    /**
+     * Reports the rows of a table, that the database rejected, and writes them to the reject file, if there is one.
+     */
+    private final class InsertListener implements InsertBatch.Listener {
 
-                            case HP_DATE: {
-                                final String val = readString(reader);
-                                metaProperty[i].updateMaxLength(val);
-                                if (stmt != null) {
-                                    if (val == null) {
-                                        stmt.setDate(col, null);
-                                    } else {
-                                        stmt.setDate(col, java.sql.Date.valueOf(val));
-                                    }
-                                }
-                                break;
-                            }
+        private final String _tableName;
+        private final MetaProperty[] _metaProperty;
 
-                            case HP_BLOB: // we try our best by reading BLOB/CLOB
-                            case HP_CLOB: // as String (known not to work on Oracle
-                            case HP_STRING: {
-                                final String val = readString(reader);
-                                metaProperty[i].updateMaxLength(val);
-                                if (stmt != null) {
-                                    stmt.setString(col, val);
-                                }
-                                break;
-                            }
+        InsertListener(final String tableName, final MetaProperty[] metaProperty) {
+            _tableName = tableName;
+            _metaProperty = metaProperty;
+        }
 
-                            default:
-                                throw new IllegalArgumentException("type " + TYPES[metaProperty[i].type] + " not supported yet");
-                        }
-                        expect(reader, i + 1 < metaProperty.length ? ',' : ')');
-                    }
-                    try {
-                        if (stmt != null) {
-                            stmt.execute();
-                        }
-                    } catch (final SQLException e) {
-                        String msg = e.getMessage();
-                        // oracle adds CR for some reason.
-                        if (msg != null) {
-                            msg = msg.trim();
-                        }
-                        reportProblem(msg);
-                        ++problemRows;
-                    }
+        public void rejected(final ColumnBuffer[] columns, final int row, final String msg) throws IOException {
+            reportProblem(msg);
+            if (_rejects != null) {
+                _rejects.write(_tableName, _metaProperty, columns, row, msg);
+            }
+        }
 
-                    // commit every once in a while.
-                    if (hot && commitPoint >= 0 && importedRows % commitPoint == 0) {
-                        conn.commit();
-                    }
-                }
-                progressWriter.finish();
+        public void executed(final long nanos) {
+            _telemetry.addTime(PHASE_INSERT, nanos);
+        }
+    }
+
+    /**
+     * The rows of a dump-in, that the database rejected. They are written as text dump, that can be read with dump-in again
+     * once the rows are fixed; the messages of the database follow the rows of each table in the section 'errors', one for
+     * each row.
+     */
+    private final class RejectFile {
+
+        private final String _fileName;
+        private final PrintStream _out;
+        private final DumpWriter _writer;
+        private final List<String> _errors;
+        private String _tableName;
+        private long _rows;
+
+        /**
+         * @param append
+         *            keep the rows rejected before.
+         */
+        RejectFile(final String fileName, final boolean append) throws IOException {
+            _fileName = fileName;
+            _out = new PrintStream(openRawOutputStream(fileName, append), false, FILE_ENCODING);
+            _writer = new DumpWriter(_out, FILE_ENCODING);
+            _errors = new ArrayList<String>();
+            _tableName = null;
+            _rows = 0;
+        }
+
+        /**
+         * write a rejected row; the section of its table is started with the first row.
+         */
+        public void write(final String tableName, final MetaProperty[] metaProps, final ColumnBuffer[] columns,
+                final int row, final String error) throws IOException {
+            if (!tableName.equals(_tableName)) {
+                endTable();
+                beginTable(tableName, metaProps);
             } else {
-                HenPlus.msg().println("ignoring unknown token " + token);
-                dumpTime = readString(reader);
-                expect(reader, ')');
+                _writer.writeSyntax(ROW_SEPARATOR);
+            }
+            _writer.writeSyntax('(');
+            for (int i = 0; i < columns.length; ++i) {
+                columns[i].write(row, _writer);
+                _writer.writeSyntax(i + 1 < columns.length ? ',' : ')');
+            }
+            _writer.flush();
+            _errors.add(String.valueOf(error));
+            ++_rows;
+        }
+
+        private void beginTable(final String tableName, final MetaProperty[] metaProps) {
+            _tableName = tableName;
+            _out.println("(tabledump '" + tableName + "'");
+            _out.println("  (file-encoding '" + FILE_ENCODING + "')");
+            final int version = dumpVersion(metaProps, DUMP_VERSION);
+            _out.println("  (dump-version " + version + " " + version + ")");
+            _out.println("  (henplus-version '" + Version.getVersion() + "')");
+            _out.println("  (time '" + new Timestamp(System.currentTimeMillis()) + "')");
+            writeMetaData(metaProps, _out);
+            _out.print("  (data ");
+        }
+
+        private void endTable() {
+            if (_tableName == null) {
+                return;
             }
+            _out.println(")");
+            _out.println("  (rows " + _errors.size() + ")");
+            _out.print("  (errors ");
+            for (int i = 0; i < _errors.size(); ++i) {
+                if (i > 0) {
+                    _out.print("," + ROW_SEPARATOR);
+                }
+                quoteString(_out, _errors.get(i));
+            }
+            _out.println("))\n");
+            _errors.clear();
+            _tableName = null;
         }
 
-        // return final count.
-        finishProblemReports();
-
-        if (!hot) {
-            printMetaDataInfo(metaProperty);
+        /**
+         * @return the number of rows written.
+         */
+        public long getRows() {
+            return _rows;
         }
 
-        // final commit, if commitPoints are enabled.
-        if (hot && commitPoint >= 0) {
-            conn.commit();
+        public String getFileName() {
+            return _fileName;
         }
 
-        // we're done.
-        if (stmt != null) {
-            try {
-                stmt.close();
-            } catch (final Exception e) {
+        public void close() throws IOException {
+            endTable();
+            _out.close();
+            if (_out.checkError()) {
+                throw new IOException("cannot write '" + _fileName + "'");
             }
         }
+    }
 
-        if (expectedRows >= 0 && expectedRows != importedRows) {
-            HenPlus.msg().println("WARNING: expected " + expectedRows + " but got " + importedRows + " rows");
-        } else {
-            HenPlus.msg().println("ok. ");
+    /**
+     * The checkpoints of a dump-in. After each commit, the position is written to the checkpoint file; when resuming, the rows
+     * committed before are skipped.
+     */
+    private static final class ImportCheckpoints {
+
+        private final File _file;
+        private final long _dumpLength;
+        private final DumpIndex _index;
+        private DumpCheckpoint _resumeFrom;
+        private boolean _saved;
+
+        ImportCheckpoints(final File file, final long dumpLength, final DumpIndex index, final DumpCheckpoint resumeFrom) {
+            _file = file;
+            _dumpLength = dumpLength;
+            _index = index;
+            _resumeFrom = resumeFrom;
+            _saved = resumeFrom != null;
         }
-        HenPlus.msg().print("(" + importedRows + " rows total");
-        if (hot) {
-            HenPlus.msg().print(" / " + problemRows + " with errors");
+
+        /**
+         * @return the position of the uncompressed dump to start reading at.
+         */
+        public long getResumeOffset() {
+            return _resumeFrom != null && _resumeFrom.getTableOffset() > 0 ? _resumeFrom.getTableOffset() : 0;
         }
-        HenPlus.msg().print("; ");
-        final long execTime = System.currentTimeMillis() - startTime;
-        TimeRenderer.printTime(execTime, HenPlus.msg());
-        HenPlus.msg().print(" total; ");
-        TimeRenderer.printFraction(execTime, importedRows, HenPlus.msg());
-        HenPlus.msg().println(" / row)");
-        return SUCCESS;
-    }
 
-    public MetaProperty[] parseMetaData(final LineNumberReader in) throws IOException {
-        final List<MetaProperty> metaList = new ArrayList<MetaProperty>();
-        expect(in, '(');
-        while (true) {
-            final String colName = readString(in);
-            metaList.add(new MetaProperty(colName));
-            skipWhite(in);
-            final char inCh = (char) in.read();
-            if (inCh == ')') {
-                break;
+        /**
+         * @return the number of rows at the beginning of the table, that have been imported before; Long.MAX_VALUE, if the
+         *         table comes before the table of the checkpoint and thus has been imported completely.
+         */
+        public long rowsToSkip(final String tableName) {
+            if (_resumeFrom == null) {
+                return 0;
             }
-            if (inCh != ',') {
-                raiseException(in, "',' or ')' expected");
+            if (!_resumeFrom.getTableName().equals(tableName)) {
+                return Long.MAX_VALUE;
             }
+            final long rows = _resumeFrom.getRows();
+            _resumeFrom = null;
+            return rows;
         }
-        expect(in, '(');
-        final MetaProperty[] result = metaList.toArray(new MetaProperty[metaList.size()]);
-        for (int i = 0; i < result.length; ++i) {
-            final String typeName = readString(in);
-            result[i].setTypeName(typeName);
-            expect(in, i + 1 < result.length ? ',' : ')');
+
+        public void committed(final String tableName, final long rows) throws IOException {
+            long offset = -1;
+            if (_index != null) {
+                final DumpIndex.Entry entry = _index.getEntry(tableName);
+                if (entry != null) {
+                    offset = entry.getOffset();
+                }
+            }
+            new DumpCheckpoint(_dumpLength, tableName, offset, rows).write(_file);
+            _saved = true;
+        }
+
+        /**
+         * the import is complete; the checkpoint is not needed anymore.
+         */
+        public void finished() {
+            if (_resumeFrom != null) {
+                HenPlus.msg().println("WARNING: table " + _resumeFrom.getTableName() + " of the checkpoint not found in the dump.");
+                return;
+            }
+            _file.delete();
+        }
+
+        public void printResumeHint(final String fileName) {
+            if (_saved) {
+                HenPlus.msg().println("the committed rows are recorded in '" + _file + "';\ncontinue with 'dump-in -resume "
+                        + fileName + " ...'");
+            }
         }
-        expect(in, ')');
-        return result;
     }
 
     String lastProblem = null;
@@ -1085,19 +2571,11 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
     }
 
     public void checkSupported(final int version) throws IllegalArgumentException {
-        if (version <= 0 || version > DUMP_VERSION) {
+        if (version <= 0 || version > BLOB_DUMP_VERSION) {
             throw new IllegalArgumentException("incompatible dump-version");
         }
     }
 
-    public void expect(final LineNumberReader in, final char ch) throws IOException {
-        skipWhite(in);
-        final char inCh = (char) in.read();
-        if (ch != inCh) {
-            raiseException(in, "'" + ch + "' expected");
-        }
-    }
-
     private void quoteString(final PrintStream out, final String in) {
         final StringBuilder buf = new StringBuilder();
         buf.append("'");
@@ -1113,91 +2591,6 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
         out.print(buf.toString());
     }
 
-    /**
-     * skip whitespace. return false, if EOF reached.
-     */
-    private boolean skipWhite(final Reader in) throws IOException {
-        in.mark(1);
-        int c;
-        while ((c = in.read()) > 0) {
-            if (!Character.isWhitespace((char) c)) {
-                in.reset();
-                return true;
-            }
-            in.mark(1);
-        }
-        return false;
-    }
-
-    private String readToken(final LineNumberReader in) throws IOException {
-        skipWhite(in);
-        final StringBuilder token = new StringBuilder();
-        in.mark(1);
-        int c;
-        while ((c = in.read()) > 0) {
-            final char ch = (char) c;
-            if (Character.isWhitespace(ch) || ch == ';' || ch == ',' || ch == '(' || ch == ')') {
-                in.reset();
-                break;
-            }
-            token.append(ch);
-            in.mark(1);
-        }
-        return token.toString();
-    }
-
-    /**
-     * read a string. This is either NULL without quotes or a quoted string.
-     */
-    private String readString(final LineNumberReader in) throws IOException {
-        int nullParseState = 0;
-        int c;
-        while ((c = in.read()) > 0) {
-            final char ch = (char) c;
-            // unless we already parse the NULL string, skip whitespaces.
-            if (nullParseState == 0 && Character.isWhitespace(ch)) {
-                continue;
-            }
-            if (ch == '\'') {
-                break; // -> opening string.
-            }
-            if (Character.toUpperCase(ch) == NULL_STR.charAt(nullParseState)) {
-                ++nullParseState;
-                if (nullParseState == NULL_STR.length()) {
-                    return null;
-                }
-                continue;
-            }
-            raiseException(in, "unecpected character '" + ch + "'");
-        }
-
-        // ok, we found an opening quote.
-        final StringBuilder result = new StringBuilder();
-        while ((c = in.read()) > 0) {
-            if (c == '\\') {
-                c = in.read();
-                if (c < 0) {
-                    raiseException(in, "excpected character after backslash escape");
-                }
-                result.append((char) c);
-                continue;
-            }
-            final char ch = (char) c;
-            if (ch == '\'') {
-                break; // End Of String.
-            }
-            result.append((char) c);
-        }
-        return result.toString();
-    }
-
-    /**
-     * convenience method to throw Exceptions containing the line number.
-     */
-    private void raiseException(final LineNumberReader in, final String msg) throws IOException {
-        throw new IOException("line " + (in.getLineNumber() + 1) + ": " + msg);
-    }
-
     private void printMetaDataInfo(final MetaProperty[] prop) {
         HenPlus.out().println();
         META_HEADERS[0].resetWidth();
@@ -1241,6 +2634,14 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
         }
 
         if ("dump-conditional".equals(cmd)) {
+            if (partialCommand.indexOf("-incremental") > 0) {
+                if (argc < 2) {
+                    return null; // the column; the table is not known yet.
+                }
+                st.nextElement(); // discard option and its value.
+                st.nextElement();
+                argc -= 2;
+            }
             if (argc == 0) {
                 return new FileCompletionIterator(partialCommand, lastWord);
             } else if (argc == 1) {
@@ -1256,6 +2657,15 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                 return compl.getAlternatives(lastWord);
             }
         } else if ("dump-out".equals(cmd)) {
+            if (partialCommand.indexOf("-parallel") > 0 || partialCommand.indexOf("-split") > 0) {
+                argc -= 2; // option and its value.
+            }
+            if (partialCommand.indexOf("-format") > 0) {
+                argc -= 2;
+            }
+            if (partialCommand.indexOf("-incremental") > 0) {
+                argc -= 2;
+            }
             // this is true for dump-out und verify-dump
             if (argc == 0) {
                 return new FileCompletionIterator(partialCommand, lastWord);
@@ -1305,6 +2715,20 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
             if (argc == 0) {
                 return new FileCompletionIterator(partialCommand, lastWord);
             }
+            // dump-in and verify-dump: the tables found in the index.
+            final String fileName = (String) st.nextElement();
+            try {
+                final File indexFile = _fileOpener.openFile(fileName + DumpIndex.SUFFIX);
+                if (indexFile.exists()) {
+                    final List<String> tables = new ArrayList<String>();
+                    for (final DumpIndex.Entry entry : DumpIndex.read(indexFile).getEntries()) {
+                        tables.add(entry.getTableName());
+                    }
+                    return new NameCompleter(tables).getAlternatives(lastWord);
+                }
+            } catch (final IOException e) {
+                // no completion then.
+            }
         }
         return null;
     }
@@ -1320,15 +2744,16 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
     @Override
     public String getSynopsis(final String cmd) {
         if ("dump-out".equals(cmd)) {
-            return cmd + " <filename> (<tablename> | <prefix>* | *)+;";
+            return cmd + " [-parallel <connections> | -split <connections>] [-format text|binary]"
+                    + " [-incremental <column>] <filename> (<tablename> | <prefix>* | *)+;";
         } else if ("dump-conditional".equals(cmd)) {
-            return cmd + " <filename> <tablename> [<where-clause>]";
+            return cmd + " [-incremental <column>] <filename> <tablename> [<where-clause>]";
         } else if ("dump-select".equals(cmd)) {
             return cmd + " <filename> <exported-tablename> select ...";
         } else if ("dump-in".equals(cmd)) {
-            return cmd + " <filename> [<commit-intervall>]";
+            return cmd + " [-resume] [-fast-load] [-rejects <rejectfile>] <filename> [<commit-intervall>] [<tablename> ...]";
         } else if ("verify-dump".equals(cmd)) {
-            return cmd + " <filename>";
+            return cmd + " <filename> [<tablename> ...]";
         }
         return cmd;
     }
@@ -1344,6 +2769,50 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                     + "\tyou are able to use wildcards (*) to match all tables or\n" + "\ta specific set of tables.\n"
                     + "\tE.g. you might specify \"*\" to match all tables, or\"tb_*\"\n"
                     + "\tto match all tables starting with \"tb_\".\n" + "\n"
+                    + "\tWith the option '-parallel <connections>', the given number\n"
+                    + "\tof additional connections to the database is opened and\n"
+                    + "\tthe tables are dumped concurrently. The resulting file is\n"
+                    + "\tthe same as without this option.\n" + "\n"
+                    + "\tThe progress is shown relative to the number of rows\n"
+                    + "\ttaken from the statistics of the database; see the\n"
+                    + "\tproperty 'dump-row-count' to count them instead.\n" + "\n"
+                    + "\tFor big tables, the option '-split <connections>' splits\n"
+                    + "\teach table into ranges of its primary key, that are\n"
+                    + "\tfetched in parallel on the given number of additional\n"
+                    + "\tconnections. This works for tables with a single numeric\n"
+                    + "\tprimary key column; other tables are dumped as usual.\n" + "\n"
+                    + "\tWith -parallel and -split, the additional connections\n"
+                    + "\tread the database as of the same point in time, where\n"
+                    + "\tthe database supports it: PostgreSQL exports a snapshot\n"
+                    + "\tto them, MySQL starts their consistent snapshots under a\n"
+                    + "\tshort global read lock; Oracle and SQL Server (with\n"
+                    + "\tsnapshot isolation) start their transactions together.\n"
+                    + "\tThis time is written to the '(time ...)' of the tables.\n" + "\n"
+                    + "\tWith '-format binary', the rows are written in a compact\n"
+                    + "\tbinary format (dump-version 2) instead of the text format\n"
+                    + "\tshown below. It is stored in checksummed blocks of rows,\n"
+                    + "\tthat dump-in and verify-dump decode on all processors.\n"
+                    + "\tBoth formats are recognized automatically when reading.\n" + "\n"
+                    + "\tBLOB and CLOB columns are streamed, so values of any size\n"
+                    + "\tcan be dumped; BLOBs are written base64 encoded. Tables\n"
+                    + "\twith BLOBs get dump-version 3 and are read as they were\n"
+                    + "\tdumped: dump-in inserts their values as streams, larger\n"
+                    + "\tvalues are buffered in temporary files.\n" + "\n"
+                    + "\tWith '-incremental <column>', only the rows added since\n"
+                    + "\tthe last incremental dump are dumped. The column must\n"
+                    + "\tgrow with every insert, like a sequence or a creation\n"
+                    + "\ttimestamp. The highest value dumped of each table is\n"
+                    + "\twritten to the dump header and to the file\n"
+                    + "\t'dump-watermarks' in the henplus configuration directory\n"
+                    + "\twhen the dump completes; the next incremental dump only\n"
+                    + "\tcontains the rows above it. Rows with NULL in the column\n"
+                    + "\tare never dumped, and since dump-in only inserts, rows\n"
+                    + "\tthat have been updated are not part of the dump.\n" + "\n"
+                    + "\tOn a terminal, the progress shows the current rows/s,\n"
+                    + "\tMB/s and the share of the time spent fetching from the\n"
+                    + "\tdatabase, serializing and writing; the totals are printed\n"
+                    + "\tat the end. The property 'telemetry-log' names a file the\n"
+                    + "\tsamples are logged to every second.\n" + "\n"
                     + "\tThe dump-format allows to read in the data back into\n"
                     + "\tthe database ('dump-in' command). And unlike pure SQL-insert\n"
                     + "\tstatements, this works even across databases.\n"
@@ -1360,7 +2829,8 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                     + "\tcanonical 'create table' statement - so the table must\n"
                     + "\talready exist at import time. Both these features will\n" + "\tbe in later versions of HenPlus.";
         } else if ("dump-conditional".equals(cmd)) {
-            dsc = "\tLike dump-out, but dump only the rows of a single table\n" + "\tthat match the where clause.";
+            dsc = "\tLike dump-out, but dump only the rows of a single table\n" + "\tthat match the where clause.\n"
+                    + "\tThe option '-incremental <column>' works like with\n" + "\tdump-out.";
         } else if ("dump-in".equals(cmd)) {
             dsc = "\tRead back in the data that has been dumped out with the\n"
                     + "\t'dump-out' command. If the filename ends with '.gz',\n"
@@ -1376,7 +2846,36 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                     + "\tyou specify the commit-interval. The commit-interval specify\n"
                     + "\tthe number of inserts, that are executed before an commit\n"
                     + "\tis done. For a large amount of data this option is\n"
-                    + "\tnecessary, since otherwise your rollback-segments\n" + "\tmight get a problem ;-)";
+                    + "\tnecessary, since otherwise your rollback-segments\n" + "\tmight get a problem ;-)\n\n"
+                    + "\tThe rows are sent to the database in batches; see the\n"
+                    + "\tproperty 'dump-in-batch-size'. If a batch fails, it is\n"
+                    + "\tsplit until the rows the database rejects are found.\n"
+                    + "\tWith -rejects, these rows are written to the given file\n"
+                    + "\tas text dump, followed by the error message for each\n"
+                    + "\trow; once fixed, it can be read with dump-in again.\n"
+                    + "\tA resumed import appends to the file.\n\n"
+                    + "\tIf table names are given, only these tables are read.\n"
+                    + "\tdump-out writes an index '<filename>.idx' next to the\n"
+                    + "\tdump, that tells where each table starts; the tables in\n"
+                    + "\tfront of them are skipped without reading them (unless\n"
+                    + "\tthe dump is gzip'ed; then they are only unpacked).\n\n"
+                    + "\tWith a commit-interval, the position of every commit is\n"
+                    + "\trecorded in the file '<filename>.checkpoint'. If the\n"
+                    + "\timport fails, the rows inserted after the last commit\n"
+                    + "\tare rolled back; 'dump-in -resume <filename> ...' then\n"
+                    + "\tcontinues after the last commit. The rows before are\n"
+                    + "\tskipped without inserting them; with the index of the\n"
+                    + "\tdump, the tables before are not even read. The\n"
+                    + "\tcheckpoint is removed when the import is complete.\n\n"
+                    + "\tWith -fast-load, the foreign keys and non-unique indexes\n"
+                    + "\tof each table are dropped before its rows are inserted\n"
+                    + "\tand recreated when the import is finished, in parallel\n"
+                    + "\ton additional connections. Primary keys and unique\n"
+                    + "\tindexes are kept. The statements to recreate them are\n"
+                    + "\twritten to '<filename>.restore.sql' before anything is\n"
+                    + "\tdropped; if the import is interrupted, load this file\n"
+                    + "\tor continue with 'dump-in -resume -fast-load ...'.\n"
+                    + "\tSince dropping is DDL, the import is committed.";
         } else if ("verify-dump".equals(cmd)) {
             dsc = "\tLike dump-in, but a 'dry run'. Won't change anything\n"
                     + "\tbut parses the whole file to determine whether it has\n"
@@ -1384,9 +2883,133 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                     + "\treported as it were a 'dump-in'. Problems that might\n"
                     + "\toccur in a 'real' import in the database (that might\n"
                     + "\tdetect, that the import would create duplicate keys for\n"
-                    + "\tinstance) can not be determined, of course.";
+                    + "\tinstance) can not be determined, of course.\n"
+                    + "\tLike with dump-in, single tables can be verified using\n"
+                    + "\tthe index of the dump.";
+        }
+        return dsc;
+    }
+
+    private class BatchSizeProperty extends PropertyHolder {
+
+        public BatchSizeProperty() {
+            super(String.valueOf(DEFAULT_BATCH_SIZE));
+        }
+
+        @Override
+        protected String propertyChanged(String newValue) throws Exception {
+            newValue = newValue.trim();
+            int newIntValue;
+            try {
+                newIntValue = Integer.parseInt(newValue);
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("cannot parse '" + newValue + "' as integer");
+            }
+            if (newIntValue < 1) {
+                throw new IllegalArgumentException("value cannot be less than 1");
+            }
+            setBatchSize(newIntValue);
+            return newValue;
+        }
+
+        @Override
+        public String getDefaultValue() {
+            return String.valueOf(DEFAULT_BATCH_SIZE);
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "number of rows inserted at once by dump-in";
+        }
+
+        @Override
+        public String getLongDescription() {
+            return "\tThe number of rows dump-in sends to the database in one\n"
+                    + "\tJDBC batch. Larger batches save round trips to the\n"
+                    + "\tdatabase. If a batch fails, its rows are inserted one\n"
+                    + "\tby one to report the problematic rows. Set to 1 to\n"
+                    + "\tinsert each row on its own.";
+        }
+    }
+
+    private class RowCountProperty extends EnumeratedPropertyHolder {
+
+        public RowCountProperty() {
+            super(ROW_COUNT_MODES);
+            propertyValue = ROW_COUNT_MODES[ROW_COUNT_STATISTICS];
+        }
+
+        @Override
+        protected void enumeratedPropertyChanged(final int index, final String value) throws Exception {
+            _rowCountMode = index;
+        }
+
+        @Override
+        public String getDefaultValue() {
+            return ROW_COUNT_MODES[ROW_COUNT_STATISTICS];
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "how dump-out determines the number of rows of a table";
+        }
+
+        @Override
+        public String getLongDescription() {
+            return "\tdump-out shows its progress relative to the number of rows\n"
+                    + "\tof the table. With 'statistics', this number is taken\n"
+                    + "\tfrom the statistics of the database (e.g. the row count\n"
+                    + "\tof the last analyze); tables without statistics and\n"
+                    + "\tdumps with a where clause are dumped without progress.\n"
+                    + "\tWith 'auto', the rows are counted with 'select count(*)'\n"
+                    + "\tin these cases. With 'count', they are always counted;\n"
+                    + "\tthis scans the table an additional time, but dump-out\n"
+                    + "\twarns if it does not dump the number of rows counted.";
+        }
+    }
+
+    private class TelemetryLogProperty extends PropertyHolder {
+
+        public TelemetryLogProperty() {
+            super("off");
+        }
+
+        @Override
+        protected String propertyChanged(String newValue) throws Exception {
+            newValue = newValue.trim();
+            if ("off".equals(newValue) || newValue.length() == 0) {
+                Telemetry.setLogFile(null);
+                return "off";
+            }
+            final File logFile = _fileOpener.openFile(newValue);
+            try {
+                new FileOutputStream(logFile, true).close();
+            } catch (final IOException e) {
+                throw new IllegalArgumentException("cannot write '" + logFile + "': " + e.getMessage());
+            }
+            Telemetry.setLogFile(logFile);
+            return newValue;
+        }
+
+        @Override
+        public String getDefaultValue() {
+            return "off";
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "file the throughput of dumps is logged to";
+        }
+
+        @Override
+        public String getLongDescription() {
+            return "\tWhile dump-out, dump-in or import run, their throughput is\n"
+                    + "\tsampled every second: rows/s, MB/s of the raw and of the\n"
+                    + "\tcompressed data, the share of the time spent in each phase\n"
+                    + "\tand the current batch size. The samples are appended to\n"
+                    + "\tthis file, one line of key=value pairs each, followed by\n"
+                    + "\tthe totals of the operation. 'off' writes no log.";
         }
-        return dsc;
     }
 
     /**
@@ -1404,7 +3027,23 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
 
         ResultSet getResultSet() throws SQLException;
 
+        /**
+         * @return the fetch size of the result set; valid after {@link #getResultSet()}.
+         */
+        AdaptiveFetchSize getFetchSize();
+
         long getExpectedRows();
+
+        /**
+         * @return if the expected rows have been counted; otherwise they are an estimate, that is only good for showing the
+         *         progress.
+         */
+        boolean isExactRowCount();
+
+        /**
+         * @return the range of an incremental dump or <code>null</code>.
+         */
+        Watermark getWatermark();
     }
 
     private static class SelectDumpSource implements DumpSource {
@@ -1415,6 +3054,7 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
         private MetaProperty[] _meta;
         private Statement _workingStatement;
         private ResultSet _resultSet;
+        private AdaptiveFetchSize _fetchSize;
 
         SelectDumpSource(final SQLSession session, final String exportTable, final String sqlStat) {
             _session = session;
@@ -1433,7 +3073,7 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
             final int cols = rsMeta.getColumnCount();
             _meta = new MetaProperty[cols];
             for (int i = 0; i < cols; ++i) {
-                _meta[i] = new MetaProperty(rsMeta.getColumnName(i + 1), rsMeta.getColumnType(i + 1));
+                _meta[i] = createMetaProperty(rsMeta.getColumnName(i + 1), rsMeta.getColumnType(i + 1));
             }
             return _meta;
         }
@@ -1459,19 +3099,159 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                 return _resultSet;
             }
             _workingStatement = _session.createStatement();
-            try {
-                _workingStatement.setFetchSize(1000);
-            } catch (final Exception e) {
-                // ignore
-            }
+            _fetchSize = _session.createFetchSize(_sqlStat);
+            _fetchSize.apply(_workingStatement);
             _resultSet = _workingStatement.executeQuery(_sqlStat);
             return _resultSet;
         }
 
+        @Override
+        public AdaptiveFetchSize getFetchSize() {
+            return _fetchSize;
+        }
+
         @Override
         public long getExpectedRows() {
             return -1;
         }
+
+        @Override
+        public boolean isExactRowCount() {
+            return false;
+        }
+
+        @Override
+        public Watermark getWatermark() {
+            return null;
+        }
+    }
+
+    /**
+     * The range of values of the column of an incremental dump: the rows above the high-water mark of the last incremental dump
+     * up to the maximum of the column at the time of the dump.
+     */
+    private static final class Watermark {
+
+        private final MetaProperty _column;
+        private final String _from;
+        private final String _to;
+
+        /**
+         * @param from
+         *            the high-water mark of the last dump or <code>null</code>, if this is the first dump.
+         * @param to
+         *            the maximum of the column or <code>null</code>, if there are no rows above the high-water mark.
+         */
+        Watermark(final MetaProperty column, final String from, final String to) {
+            _column = column;
+            _from = from;
+            _to = to;
+        }
+
+        public String getColumnName() {
+            return _column.fieldName;
+        }
+
+        public String getFrom() {
+            return _from;
+        }
+
+        public String getTo() {
+            return _to;
+        }
+
+        /**
+         * @return the high-water mark for the next incremental dump.
+         */
+        public String getNext() {
+            return _to != null ? _to : _from;
+        }
+
+        public String getCondition() {
+            if (_to == null) {
+                return "1 = 0"; // nothing new.
+            }
+            final String upper = _column.fieldName + " <= " + sqlLiteral(_column, _to);
+            if (_from == null) {
+                return upper;
+            }
+            return _column.fieldName + " > " + sqlLiteral(_column, _from) + " AND " + upper;
+        }
+    }
+
+    /**
+     * create the meta data of a column for dump-out; columns of types the dump does not know are dumped as String.
+     */
+    private static MetaProperty createMetaProperty(final String fieldName, final int jdbcType) {
+        if (!MetaProperty.isSupported(jdbcType)) {
+            HenPlus.msg().println("cannot handle type '" + jdbcType + "' for field '" + fieldName + "'; trying String..");
+        }
+        return new MetaProperty(fieldName, jdbcType);
+    }
+
+    /**
+     * the value of the column as SQL literal; dates and times in the JDBC escape syntax, that the driver translates for its
+     * database.
+     */
+    private static String sqlLiteral(final MetaProperty column, final String value) {
+        switch (column.getType()) {
+            case MetaProperty.HP_INTEGER:
+            case MetaProperty.HP_NUMERIC:
+            case MetaProperty.HP_DOUBLE:
+                try {
+                    return new BigDecimal(value).toString();
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException("invalid high-water mark for " + column.fieldName + ": " + value);
+                }
+
+            case MetaProperty.HP_TIMESTAMP:
+                return "{ts '" + value + "'}";
+
+            case MetaProperty.HP_DATE:
+                return "{d '" + value + "'}";
+
+            case MetaProperty.HP_TIME:
+                return "{t '" + value + "'}";
+
+            default:
+                return "'" + value.replace("'", "''") + "'";
+        }
+    }
+
+    /**
+     * read the maximum of the watermark column in the text representation of the dump.
+     */
+    private static String readWatermark(final ResultSet rset, final MetaProperty column) throws SQLException {
+        final Object value;
+        switch (column.getType()) {
+            case MetaProperty.HP_INTEGER:
+            case MetaProperty.HP_NUMERIC: {
+                final BigDecimal number = rset.getBigDecimal(1);
+                return number != null ? number.toPlainString() : null;
+            }
+
+            case MetaProperty.HP_DOUBLE: {
+                final double number = rset.getDouble(1);
+                return rset.wasNull() ? null : Double.toString(number);
+            }
+
+            case MetaProperty.HP_TIMESTAMP:
+                value = rset.getTimestamp(1);
+                break;
+
+            case MetaProperty.HP_DATE:
+                value = rset.getDate(1);
+                break;
+
+            case MetaProperty.HP_TIME:
+                value = rset.getTime(1);
+                break;
+
+            default:
+                value = rset.getString(1);
+                break;
+        }
+        return value != null ? value.toString() : null;
     }
 
     private static class TableDumpSource implements DumpSource {
@@ -1482,11 +3262,17 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
         private MetaProperty[] _meta;
         private Statement _workingStatement;
         private String _whereClause;
+        private Watermark _watermark;
+        private Connection _connection;
+        private AdaptiveFetchSize _fetchSize;
+        private final int _rowCountMode;
+        private boolean _exactRowCount;
 
-        TableDumpSource(final String schema, final String table, final SQLSession session) {
+        TableDumpSource(final String schema, final String table, final SQLSession session, final int rowCountMode) {
             _session = session;
             _schema = schema;
             _table = table;
+            _rowCountMode = rowCountMode;
         }
 
         @Override
@@ -1503,6 +3289,188 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
             _whereClause = whereClause;
         }
 
+        /**
+         * dump only the rows with a value of the given column above the high-water mark of the last incremental dump, up to the
+         * current maximum of the column; this becomes the next high-water mark. Rows with NULL in the column are not dumped.
+         *
+         * @param from
+         *            the high-water mark of the last incremental dump or <code>null</code> for the first one.
+         */
+        public Watermark startIncremental(final String columnName, final String from) throws SQLException {
+            MetaProperty column = null;
+            final MetaProperty[] meta = getMetaProperties();
+            for (int i = 0; i < meta.length; ++i) {
+                if (meta[i].fieldName.equalsIgnoreCase(columnName)) {
+                    column = meta[i];
+                }
+            }
+            if (column == null) {
+                throw new IllegalArgumentException("no column " + columnName + " in table " + _table);
+            }
+            if (column.getType() == MetaProperty.HP_BLOB || column.getType() == MetaProperty.HP_CLOB) {
+                throw new IllegalArgumentException("LOB column " + columnName + " cannot be used for incremental dumps");
+            }
+            String condition = _whereClause;
+            if (from != null) {
+                final String lower = column.fieldName + " > " + sqlLiteral(column, from);
+                condition = condition == null ? lower : "(" + condition + ") AND " + lower;
+            }
+            final StringBuilder maxStmt = new StringBuilder("SELECT max(");
+            maxStmt.append(column.fieldName).append(") FROM ").append(_table);
+            if (condition != null) {
+                maxStmt.append(" WHERE ").append(condition);
+            }
+            Statement stmt = null;
+            ResultSet rset = null;
+            try {
+                stmt = createStatement();
+                rset = stmt.executeQuery(maxStmt.toString());
+                final String to = rset.next() ? readWatermark(rset, column) : null;
+                _watermark = new Watermark(column, from, to);
+                return _watermark;
+            } finally {
+                if (rset != null) {
+                    try {
+                        rset.close();
+                    } catch (final Exception e) {
+                    }
+                }
+                if (stmt != null) {
+                    try {
+                        stmt.close();
+                    } catch (final Exception e) {
+                    }
+                }
+            }
+        }
+
+        @Override
+        public Watermark getWatermark() {
+            return _watermark;
+        }
+
+        /**
+         * the where clause given, restricted to the range of an incremental dump.
+         */
+        private String getWhereClause() {
+            if (_watermark == null) {
+                return _whereClause;
+            }
+            final String condition = _watermark.getCondition();
+            return _whereClause == null ? condition : "(" + _whereClause + ") AND " + condition;
+        }
+
+        /**
+         * use the given connection instead of the connection of the session; used by the workers of a parallel dump.
+         */
+        public void setConnection(final Connection connection) {
+            _connection = connection;
+        }
+
+        private Connection getConnection() {
+            return _connection != null ? _connection : _session.getConnection();
+        }
+
+        /**
+         * create a source for the same table, that only dumps the rows that match the additional condition.
+         */
+        public TableDumpSource restrict(final String condition) {
+            final TableDumpSource result = new TableDumpSource(_schema, _table, _session, _rowCountMode);
+            result._meta = _meta;
+            result._watermark = _watermark;
+            result.setWhereClause(_whereClause == null ? condition : "(" + _whereClause + ") AND " + condition);
+            return result;
+        }
+
+        /**
+         * determine the conditions that split this table into ranges of its primary key of roughly the same size. This is only
+         * possible if the primary key consists of a single numeric column. The ranges are determined from the minimum and maximum
+         * key; the first and the last range are open, so that all rows are covered.
+         * 
+         * @return the conditions of the ranges or <code>null</code>, if the table cannot be split.
+         */
+        public String[] getKeyRanges(final int splits) throws SQLException {
+            final Connection conn = getConnection();
+            final PrimaryKey pk = new SQLMetaDataBuilder().getPrimaryKey(conn.getMetaData(), _table);
+            if (pk == null || pk.getColumns().size() != 1) {
+                return null;
+            }
+            final String keyColumn = (String) pk.getColumns().keySet().iterator().next();
+            MetaProperty keyProperty = null;
+            for (int i = 0; i < _meta.length; ++i) {
+                if (_meta[i].fieldName.equals(keyColumn)) {
+                    keyProperty = _meta[i];
+                }
+            }
+            if (keyProperty == null || keyProperty.getType() != MetaProperty.HP_INTEGER
+                    && keyProperty.getType() != MetaProperty.HP_NUMERIC) {
+                return null;
+            }
+
+            BigInteger min;
+            BigInteger max;
+            Statement stmt = null;
+            ResultSet rset = null;
+            try {
+                stmt = createStatement();
+                final StringBuilder rangeStmt = new StringBuilder("SELECT min(");
+                rangeStmt.append(keyColumn).append("), max(").append(keyColumn).append(") FROM ").append(_table);
+                final String whereClause = getWhereClause();
+                if (whereClause != null) {
+                    rangeStmt.append(" WHERE ").append(whereClause);
+                }
+                rset = stmt.executeQuery(rangeStmt.toString());
+                if (!rset.next()) {
+                    return null;
+                }
+                final BigDecimal minValue = rset.getBigDecimal(1);
+                final BigDecimal maxValue = rset.getBigDecimal(2);
+                if (minValue == null || maxValue == null) {
+                    return null; // empty table.
+                }
+                min = minValue.toBigInteger();
+                max = maxValue.toBigInteger();
+            } finally {
+                if (rset != null) {
+                    try {
+                        rset.close();
+                    } catch (final Exception e) {
+                    }
+                }
+                if (stmt != null) {
+                    try {
+                        stmt.close();
+                    } catch (final Exception e) {
+                    }
+                }
+            }
+
+            final BigInteger span = max.subtract(min).add(BigInteger.ONE);
+            final int count = span.compareTo(BigInteger.valueOf(splits)) < 0 ? span.intValue() : splits;
+            if (count < 2) {
+                return null;
+            }
+            final String[] result = new String[count];
+            BigInteger lower = null;
+            for (int i = 0; i < count; ++i) {
+                final BigInteger upper = i + 1 < count ? min.add(span.multiply(BigInteger.valueOf(i + 1)).divide(
+                        BigInteger.valueOf(count))) : null;
+                if (lower == null) {
+                    result[i] = keyColumn + " < " + upper;
+                } else if (upper == null) {
+                    result[i] = keyColumn + " >= " + lower;
+                } else {
+                    result[i] = keyColumn + " >= " + lower + " AND " + keyColumn + " < " + upper;
+                }
+                lower = upper;
+            }
+            return result;
+        }
+
+        private Statement createStatement() throws SQLException {
+            return _connection != null ? _connection.createStatement() : _session.createStatement();
+        }
+
         @Override
         public Statement getStatement() {
             return _workingStatement;
@@ -1515,7 +3483,7 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
             }
 
             final List<MetaProperty> metaList = new ArrayList<MetaProperty>();
-            final Connection conn = _session.getConnection();
+            final Connection conn = getConnection();
             ResultSet rset = null;
             try {
                 /*
@@ -1531,7 +3499,7 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                         continue;
                     }
                     doubleCheck.add(columnName);
-                    metaList.add(new MetaProperty(columnName, rset.getInt(5)));
+                    metaList.add(createMetaProperty(columnName, rset.getInt(5)));
                 }
             } finally {
                 if (rset != null) {
@@ -1557,31 +3525,58 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
             }
 
             selectStmt.append(" FROM ").append(_table);
-            if (_whereClause != null) {
-                selectStmt.append(" WHERE ").append(_whereClause);
-            }
-            _workingStatement = _session.createStatement();
-            try {
-                _workingStatement.setFetchSize(1000);
-            } catch (final Exception e) {
-                // ignore
+            final String whereClause = getWhereClause();
+            if (whereClause != null) {
+                selectStmt.append(" WHERE ").append(whereClause);
             }
+            _workingStatement = createStatement();
+            // all ranges of a split table have rows of the same size.
+            _fetchSize = _session.createFetchSize("dump-out " + _table);
+            _fetchSize.apply(_workingStatement);
             return _workingStatement.executeQuery(selectStmt.toString());
         }
 
+        @Override
+        public AdaptiveFetchSize getFetchSize() {
+            return _fetchSize;
+        }
+
         @Override
         public long getExpectedRows() {
-            final CancelWriter selectInfo = new CancelWriter(HenPlus.msg());
+            final String whereClause = getWhereClause();
+            _exactRowCount = false;
+            if (_rowCountMode != ROW_COUNT_COUNT && whereClause == null) {
+                final long rows = RowCountEstimator.estimate(getConnection(), _schema, _table);
+                if (rows >= 0 || _rowCountMode == ROW_COUNT_STATISTICS) {
+                    return rows;
+                }
+            } else if (_rowCountMode == ROW_COUNT_STATISTICS) {
+                return -1; // the statistics do not tell, how many rows match.
+            }
+            _exactRowCount = true;
+            return countRows(whereClause);
+        }
+
+        @Override
+        public boolean isExactRowCount() {
+            return _exactRowCount;
+        }
+
+        private long countRows(final String whereClause) {
+            // workers of a parallel dump must not write to the screen concurrently.
+            final CancelWriter selectInfo = _connection == null ? new CancelWriter(HenPlus.msg()) : null;
             Statement stmt = null;
             ResultSet rset = null;
             try {
-                selectInfo.print("determining number of rows...");
-                stmt = _session.createStatement();
+                if (selectInfo != null) {
+                    selectInfo.print("determining number of rows...");
+                }
+                stmt = createStatement();
                 final StringBuilder countStmt = new StringBuilder("SELECT count(*) from ");
                 countStmt.append(_table);
-                if (_whereClause != null) {
+                if (whereClause != null) {
                     countStmt.append(" WHERE ");
-                    countStmt.append(_whereClause);
+                    countStmt.append(whereClause);
                 }
                 rset = stmt.executeQuery(countStmt.toString());
                 rset.next();
@@ -1601,87 +3596,210 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
                     } catch (final Exception e) {
                     }
                 }
-                selectInfo.cancel();
+                if (selectInfo != null) {
+                    selectInfo.cancel();
+                }
             }
         }
     }
 
-    private static class MetaProperty {
+    /**
+     * The connections of the workers of a parallel dump. They share a snapshot of the database, so that the tables dumped on
+     * different connections are consistent with each other.
+     */
+    private static final class WorkerConnections {
 
-        private int _maxLen;
-        public final String fieldName;
-        public int type;
-        public String typeName;
+        private final ConnectionSnapshot _snapshot;
+        private final BlockingQueue<Connection> _idle;
 
-        public MetaProperty(final String fieldName) {
-            this.fieldName = fieldName;
-            _maxLen = -1;
+        WorkerConnections(final SQLSession session, final int count) throws SQLException {
+            Logger.info("opening %s connections for parallel dump.", count);
+            _snapshot = session.createSnapshot(count);
+            _idle = new ArrayBlockingQueue<Connection>(count);
+            _idle.addAll(_snapshot.getConnections());
         }
 
-        public MetaProperty(final String fieldName, final int jdbcType) {
-            this.fieldName = fieldName;
-            this.typeName = JDBCTYPE2TYPENAME.get(Integer.valueOf(jdbcType));
-            if (this.typeName == null) {
-                HenPlus.msg().println("cannot handle type '" + jdbcType + "' for field '" + this.fieldName + "'; trying String..");
-                this.type = HP_STRING;
-                this.typeName = TYPES[this.type];
-            } else {
-                this.type = findType(typeName);
-            }
-            _maxLen = -1;
+        public ConnectionSnapshot getSnapshot() {
+            return _snapshot;
         }
 
-        public String getFieldName() {
-            return fieldName;
+        public Connection take() throws InterruptedException {
+            return _idle.take();
         }
 
-        public String getTypeName() {
-            return typeName;
+        public void release(final Connection conn) {
+            _idle.add(conn);
         }
 
-        public void setTypeName(final String typeName) {
-            this.type = findType(typeName);
-            this.typeName = typeName;
+        public void close() {
+            _snapshot.close();
         }
+    }
 
-        public void updateMaxLength(final String val) {
-            if (val != null) {
-                updateMaxLength(val.length());
-            }
+    /**
+     * A part of a parallel dump. It is written by a worker thread, using one of the worker connections, to a temporary spool file.
+     * The spool files are then appended to the dump by the main thread in the original order.
+     */
+    private abstract class SpoolJob<T> implements Callable<T> {
+
+        private final WorkerConnections _connections;
+        private final File _spoolDir;
+        private final String _fileEncoding;
+        private Future<T> _future;
+        private volatile File _spoolFile;
+
+        SpoolJob(final WorkerConnections connections, final File spoolDir, final String fileEncoding) {
+            _connections = connections;
+            _spoolDir = spoolDir;
+            _fileEncoding = fileEncoding;
         }
 
-        public void updateMaxLength(final int maxLen) {
-            if (maxLen > _maxLen) {
-                _maxLen = maxLen;
-            }
+        /**
+         * write this part of the dump using the given connection.
+         */
+        protected abstract T dump(Connection conn, PrintStream out, String fileEncoding) throws Exception;
+
+        public void submit(final ExecutorService executor) {
+            _future = executor.submit(this);
+        }
+
+        public void cancel() {
+            _future.cancel(true);
         }
 
-        public int getMaxLength() {
-            return _maxLen;
+        @Override
+        public T call() throws Exception {
+            final Connection conn = _connections.take();
+            PrintStream out = null;
+            try {
+                _spoolFile = File.createTempFile("henplus-", ".dump-part", _spoolDir);
+                _spoolFile.deleteOnExit();
+                // compress fast; this saves much more disk i/o than it costs.
+                out = new PrintStream(new ParallelGZIPOutputStream(new FileOutputStream(_spoolFile), Deflater.BEST_SPEED), false,
+                        _fileEncoding);
+                final T result = dump(conn, out, _fileEncoding);
+                if (out.checkError()) {
+                    throw new IOException("writing spool file " + _spoolFile + " failed");
+                }
+                return result;
+            } finally {
+                if (out != null) {
+                    out.close();
+                }
+                _connections.release(conn);
+            }
         }
 
         /**
-         * find the type in the array. uses linear search, but this is only a small list.
+         * wait for this job to finish and append its spool file to the output.
+         * 
+         * @param skipBytes
+         *            the number of bytes to skip at the beginning of the spool file.
          */
-        private int findType(String typeNameArg) {
-            if (typeNameArg == null) {
-                throw new IllegalArgumentException("empty type ?");
+        public T appendTo(final PrintStream dumpOut, final int skipBytes) throws Exception {
+            final T result;
+            try {
+                result = _future.get();
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
             }
-            typeNameArg = typeNameArg.toUpperCase();
-            for (int i = 0; i < TYPES.length; ++i) {
-                if (TYPES[i].equals(typeNameArg)) {
-                    return i;
+            final InputStream in = new MultiMemberGZIPInputStream(new FileInputStream(_spoolFile));
+            try {
+                long toSkip = skipBytes;
+                while (toSkip > 0 && in.read() >= 0) {
+                    --toSkip;
                 }
+                final byte[] buffer = new byte[65536];
+                int len;
+                while ((len = in.read(buffer)) > 0) {
+                    dumpOut.write(buffer, 0, len);
+                }
+            } finally {
+                in.close();
+            }
+            removeSpoolFile();
+            return result;
+        }
+
+        public void removeSpoolFile() {
+            if (_spoolFile != null) {
+                _spoolFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Dumps a complete table of a parallel dump.
+     */
+    private final class TableDumpJob extends SpoolJob<Long> {
+
+        private final SQLSession _session;
+        private final TableDumpSource _source;
+
+        TableDumpJob(final SQLSession session, final TableDumpSource source, final WorkerConnections connections,
+                final File spoolDir, final String fileEncoding) {
+            super(connections, spoolDir, fileEncoding);
+            _session = session;
+            _source = source;
+        }
+
+        public String getTableName() {
+            return _source.getTableName();
+        }
+
+        @Override
+        protected Long dump(final Connection conn, final PrintStream out, final String fileEncoding) throws Exception {
+            _source.setConnection(conn);
+            if (_watermarkColumn != null) {
+                applyWatermark(_session, _source);
             }
-            throw new IllegalArgumentException("invalid type " + typeNameArg);
+            return Long.valueOf(dumpTableRows(_session, _source, out, fileEncoding, false));
         }
+    }
+
+    /**
+     * Dumps the rows of a key range of a table, that is split into several ranges. Each row is preceded by a row separator.
+     */
+    private final class RangeDumpJob extends SpoolJob<Long> {
+
+        private final TableDumpSource _source;
+        private final MetaProperty[] _metaProps;
 
-        public int getType() {
-            return type;
+        RangeDumpJob(final TableDumpSource source, final MetaProperty[] metaProps, final WorkerConnections connections,
+                final File spoolDir, final String fileEncoding) {
+            super(connections, spoolDir, fileEncoding);
+            _source = source;
+            _metaProps = metaProps;
         }
 
-        public int renderWidth() {
-            return Math.max(typeName.length(), fieldName.length());
+        @Override
+        protected Long dump(final Connection conn, final PrintStream out, final String fileEncoding) throws Exception {
+            _source.setConnection(conn);
+            ResultSet rset = null;
+            try {
+                rset = _source.getResultSet();
+                final long rows = dumpRows(rset, _source.getFetchSize(), _metaProps, out, fileEncoding, true);
+                if (!_running) {
+                    _source.getStatement().cancel();
+                }
+                return Long.valueOf(rows);
+            } finally {
+                if (rset != null) {
+                    try {
+                        rset.close();
+                    } catch (final Exception e) {
+                    }
+                }
+                if (_source.getStatement() != null) {
+                    try {
+                        _source.getStatement().close();
+                    } catch (final Exception e) {
+                    }
+                }
+            }
         }
     }
 
@@ -1699,12 +3817,6 @@ public class DumpCommand extends AbstractCommand implements Interruptable {
             return _encoding;
         }
     }
-
-    // reading BLOBs.
-    // private static class Base64InputStream extends InputStream { }
-
-    // reading CLOBs
-    // private static class Base64Reader extends Reader { }
 }
 
 /*
@@ -11,6 +11,7 @@ import henplus.HenPlus;
 import henplus.Interruptable;
 import henplus.SQLSession;
 import henplus.SigIntHandler;
+import henplus.dump.InsertBatch;
 import henplus.importparser.IgnoreTypeParser;
 import henplus.importparser.ImportParser;
 import henplus.importparser.QuotedStringParser;
@@ -18,14 +19,22 @@ import henplus.importparser.TypeParser;
 import henplus.importparser.ValueRecipient;
 import henplus.logging.Logger;
 import henplus.view.util.NameCompleter;
+import henplus.view.util.ProgressWriter;
+import henplus.view.util.Telemetry;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.Reader;
 import java.nio.charset.Charset;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
@@ -45,8 +54,14 @@ public class ImportCommand extends AbstractCommand {
 
     private static final String DEFAULT_ROW_DELIM = "\n";
     private static final String DEFAULT_COL_DELIM = "\t";
+    private static final String DEFAULT_ENCODING = "ISO-8859-1";
     private static final String COMMAND_QUOTES = "\"\"''()";
 
+    /** the phases of an import measured by the telemetry; the rest of the time is spent parsing. */
+    private static final String[] IMPORT_PHASES = { "read", "insert" };
+    private static final int PHASE_READ = 0;
+    private static final int PHASE_INSERT = 1;
+
     private final ListUserObjectsCommand _tableCompleter;
 
     /**
@@ -104,6 +119,10 @@ public class ImportCommand extends AbstractCommand {
         }
         final ImportConfiguration config = parser.getConfig();
 
+        SqlImportProcessor importProcessor = null;
+        final Telemetry telemetry = new Telemetry(cmd, IMPORT_PHASES);
+        final Telemetry.Clock clock = telemetry.createClock();
+        ProgressWriter progressWriter = null;
         try {
             final long startTime = System.currentTimeMillis();
             final long startRow = config.getStartRow();
@@ -118,12 +137,23 @@ public class ImportCommand extends AbstractCommand {
             } else if ("import-check".equals(cmd)) {
                 innerRecipient = new CountRecipient();
             } else if ("import".equals(cmd)) {
-                innerRecipient = new SqlImportProcessor(session, config);
+                importProcessor = new SqlImportProcessor(session.getConnection(), config, clock);
+                innerRecipient = importProcessor;
             }
 
-            final FilterRecipient filterRecipient = new FilterRecipient(startRow, endRow, innerRecipient);
+            final FilterRecipient filterRecipient = new FilterRecipient(startRow, endRow, innerRecipient, clock);
             SigIntHandler.getInstance().pushInterruptable(filterRecipient);
-            importFile(config, filterRecipient);
+            telemetry.start();
+            if (!"import-print".equals(cmd)) {
+                // the number of rows is not known; just the rates are shown.
+                progressWriter = new ProgressWriter(-1, HenPlus.msg(), telemetry);
+            }
+            importFile(config, filterRecipient, telemetry);
+            clock.finish();
+            telemetry.stop();
+            if (progressWriter != null) {
+                progressWriter.finish();
+            }
             final long readRows = filterRecipient.getRowCount();
             final long processedRows = innerRecipient.getRowCount();
 
@@ -135,19 +165,42 @@ public class ImportCommand extends AbstractCommand {
             TimeRenderer.printFraction(execTime, readRows, HenPlus.msg());
             HenPlus.msg().println(" / row");
             HenPlus.msg().println("processed " + processedRows + " rows");
+            if (readRows > 0) {
+                HenPlus.msg().println("throughput: " + telemetry.getSummary());
+            }
+            if (importProcessor != null && importProcessor.getRejectedRows() > 0) {
+                HenPlus.msg().println(importProcessor.getRejectedRows() + " rejected rows written to '"
+                        + config.getRejectFile() + "'; the messages of the database to '" + config.getRejectFile()
+                        + ".errors'");
+            }
         } catch (final Exception e) {
             e.printStackTrace();
             return EXEC_FAILED;
+        } finally {
+            telemetry.stop();
+            if (progressWriter != null) {
+                progressWriter.finish();
+            }
+            if (importProcessor != null) {
+                importProcessor.close();
+            }
         }
         return SUCCESS;
     }
 
-    private void importFile(final ImportConfiguration config, final ValueRecipient recipient) throws Exception {
+    /**
+     * @param telemetry
+     *            counts the bytes read.
+     */
+    private void importFile(final ImportConfiguration config, final ValueRecipient recipient, final Telemetry telemetry)
+            throws Exception {
         final File file = new File(config.getFilename());
-        final String encoding = config.getEncoding() != null ? config.getEncoding() : "ISO-8859-1";
+        final String encoding = config.getEncoding() != null ? config.getEncoding() : DEFAULT_ENCODING;
         InputStream fileIn = new FileInputStream(file);
         if (config.getFilename().endsWith(".gz")) {
-            fileIn = new GZIPInputStream(fileIn);
+            fileIn = telemetry.meter(new GZIPInputStream(telemetry.meter(fileIn, true, PHASE_READ)), false, -1);
+        } else {
+            fileIn = telemetry.meter(fileIn, false, PHASE_READ);
         }
         final Reader reader = new InputStreamReader(fileIn, encoding);
         final int colCount = config.getColumns().length;
@@ -179,14 +232,21 @@ public class ImportCommand extends AbstractCommand {
         private final long _startRow;
         private final long _endRow;
         private final ValueRecipient _target;
+        private final Telemetry.Clock _clock;
         private long _rows;
         private volatile boolean _finished;
 
-        public FilterRecipient(final long startRow, final long endRow, final ValueRecipient target) {
+        /**
+         * @param clock
+         *            counts the rows read.
+         */
+        public FilterRecipient(final long startRow, final long endRow, final ValueRecipient target,
+                final Telemetry.Clock clock) {
             _rows = 0;
             _startRow = startRow;
             _endRow = endRow;
             _target = target;
+            _clock = clock;
         }
 
         private boolean expressionMatches() {
@@ -228,6 +288,13 @@ public class ImportCommand extends AbstractCommand {
             }
         }
 
+        @Override
+        public void setRowSource(final char[] buffer, final int start, final int length) {
+            if (rangeValid()) {
+                _target.setRowSource(buffer, start, length);
+            }
+        }
+
         @Override
         public void interrupt() {
             _finished = true;
@@ -245,6 +312,7 @@ public class ImportCommand extends AbstractCommand {
                 deligeeFinish = _target.finishRow();
             }
             _rows++;
+            _clock.addRow();
             return deligeeFinish || _finished || _endRow >= 0 && _rows >= _endRow;
         }
     }
@@ -269,6 +337,10 @@ public class ImportCommand extends AbstractCommand {
         public void setDate(final int fieldNumber, final Calendar cal) {
         }
 
+        @Override
+        public void setRowSource(final char[] buffer, final int start, final int length) {
+        }
+
         @Override
         public boolean finishRow() {
             ++_rows;
@@ -360,6 +432,10 @@ public class ImportCommand extends AbstractCommand {
             }
         }
 
+        @Override
+        public void setRowSource(final char[] buffer, final int start, final int length) {
+        }
+
         @Override
         public long getRowCount() {
             return _rows;
@@ -373,13 +449,38 @@ public class ImportCommand extends AbstractCommand {
         }
     }
 
-    private static final class SqlImportProcessor implements RowCountingRecipient {
+    /**
+     * Inserts the rows. If a reject file is configured, rows the database rejects are written to it as they were read, so that
+     * they can be fixed and imported with the same options again; the messages of the database are written to a file next to
+     * it, one line for each row. Otherwise the first rejected row stops the import.
+     * <p>
+     * Within a transaction, each row is inserted after a savepoint, that a rejected row is rolled back to; otherwise databases
+     * like PostgreSQL would reject all rows after the first failure, because the transaction is aborted.
+     */
+    static final class SqlImportProcessor implements RowCountingRecipient {
 
         private long _rows;
+        private long _rejectedRows;
         private final PreparedStatement _stmt;
+        private final String _rowDelimiter;
+        private PrintWriter _rejects;
+        private PrintWriter _errors;
+        private char[] _rowBuffer;
+        private int _rowStart;
+        private int _rowLength;
+        private final Telemetry.Clock _clock;
+        private final boolean _savepoints;
 
-        public SqlImportProcessor(final SQLSession session, final ImportConfiguration config) throws Exception {
+        /**
+         * @param clock
+         *            measures the time spent inserting.
+         */
+        public SqlImportProcessor(final Connection conn, final ImportConfiguration config, final Telemetry.Clock clock)
+                throws Exception {
+            _clock = clock;
             _rows = 0;
+            _rejectedRows = 0;
+            _rowDelimiter = config.getRowDelimiter() != null ? config.getRowDelimiter() : DEFAULT_ROW_DELIM;
             final StringBuilder cmd = new StringBuilder("insert into ");
             cmd.append(config.getTable()).append(" (");
             boolean isFirst = true;
@@ -406,7 +507,14 @@ public class ImportCommand extends AbstractCommand {
             cmd.append(")");
             final String stmtString = cmd.toString();
             Logger.info("INSERTING WITH " + stmtString);
-            _stmt = session.getConnection().prepareStatement(stmtString);
+            _stmt = conn.prepareStatement(stmtString);
+            _savepoints = config.getRejectFile() != null && InsertBatch.useSavepoints(_stmt);
+            if (config.getRejectFile() != null) {
+                final String encoding = config.getEncoding() != null ? config.getEncoding() : DEFAULT_ENCODING;
+                _rejects = new PrintWriter(new OutputStreamWriter(new FileOutputStream(config.getRejectFile()), encoding));
+                _errors = new PrintWriter(new OutputStreamWriter(new FileOutputStream(config.getRejectFile() + ".errors"),
+                        encoding));
+            }
         }
 
         @Override
@@ -424,17 +532,70 @@ public class ImportCommand extends AbstractCommand {
             throw new UnsupportedOperationException("not yet.");
         }
 
+        @Override
+        public void setRowSource(final char[] buffer, final int start, final int length) {
+            _rowBuffer = buffer;
+            _rowStart = start;
+            _rowLength = length;
+        }
+
         @Override
         public long getRowCount() {
             return _rows;
         }
 
+        public long getRejectedRows() {
+            return _rejectedRows;
+        }
+
         @Override
         public boolean finishRow() throws Exception {
             _rows++;
-            _stmt.execute();
+            _clock.enter(PHASE_INSERT);
+            final Savepoint savepoint = _savepoints ? _stmt.getConnection().setSavepoint() : null;
+            try {
+                _stmt.execute();
+                if (savepoint != null) {
+                    releaseSavepoint(savepoint);
+                }
+            } catch (final SQLException e) {
+                if (_rejects == null) {
+                    throw e;
+                }
+                if (savepoint != null) {
+                    _stmt.getConnection().rollback(savepoint);
+                }
+                _rejects.write(_rowBuffer, _rowStart, _rowLength);
+                _rejects.write(_rowDelimiter);
+                String msg = String.valueOf(e.getMessage());
+                // one line for each row.
+                msg = msg.trim().replace('\n', ' ').replace('\r', ' ');
+                _errors.println(msg);
+                ++_rejectedRows;
+            } finally {
+                _clock.enter(-1);
+            }
             return false;
         }
+
+        private void releaseSavepoint(final Savepoint savepoint) {
+            try {
+                _stmt.getConnection().releaseSavepoint(savepoint);
+            } catch (final SQLException e) {
+                // oracle does not release savepoints; they end with the transaction.
+            }
+        }
+
+        public void close() {
+            try {
+                _stmt.close();
+            } catch (final SQLException e) {
+            }
+            if (_rejects != null) {
+                _rejects.close();
+                _errors.close();
+            }
+        }
     }
 
     /**
@@ -448,7 +609,8 @@ public class ImportCommand extends AbstractCommand {
     @Override
     public String getSynopsis(final String cmd) {
         return cmd + " from <filename> into <tablename> columns (col1[:type][,col2[:type]]) [column-delim \"\\t\"]"
-                + " [row-delim \"\\n\"] [encoding <encoding>] [start-row <number>] [row-count|end-row <number>]\n"
+                + " [row-delim \"\\n\"] [encoding <encoding>] [start-row <number>] [row-count|end-row <number>]"
+                + " [reject-file <filename>]\n"
                 + "\tcol could be a column name or '-' if the column is to be ignored\n"
                 + "\tthe optional type can be one of [string,number,date]";
     }
@@ -462,6 +624,12 @@ public class ImportCommand extends AbstractCommand {
             dsc = "\tImport the content of the file into table according to the format\n";
         }
         dsc += "\tIf the filename ends with '.gz', the\n" + "\tcontent is unzipped automatically\n\n";
+        if ("import".equals(cmd)) {
+            dsc += "\tRows the database rejects stop the import, unless a\n"
+                    + "\treject-file is given: then they are written to it as\n"
+                    + "\tthey were read, and the messages of the database to\n"
+                    + "\t'<reject-file>.errors', one line for each row.\n";
+        }
         return dsc;
     }
 
@@ -486,6 +654,7 @@ public class ImportCommand extends AbstractCommand {
                                                        */
         { "start-row", null }, /* integer */
         { "row-count", null }, /* integer */
+        { "reject-file", new FilenameCompleterFactory() }, /* (+) filename */
         // { "end-row", null } /* integer */
         };
 
@@ -609,6 +778,8 @@ public class ImportCommand extends AbstractCommand {
                     _config.setStartRow(Long.parseLong(commandValue));
                 } else if ("row-count".equals(commandName)) {
                     _config.setRowCount(Long.parseLong(commandValue));
+                } else if ("reject-file".equals(commandName)) {
+                    _config.setRejectFile(commandValue);
                 } else {
                     // end-row missing.
                     addError("unknown option '" + commandName + "'");
@@ -658,6 +829,9 @@ public class ImportCommand extends AbstractCommand {
                     completer.addName("row-count");
                     completer.addName("end-row");
                 }
+                if (_config.getRejectFile() == null) {
+                    completer.addName("reject-file");
+                }
             }
             return completer.getAlternatives(partial);
         }
@@ -667,7 +841,7 @@ public class ImportCommand extends AbstractCommand {
         }
     }
 
-    private static final class ImportConfiguration {
+    static final class ImportConfiguration {
 
         private String _filename;
         private String _schema;
@@ -677,6 +851,7 @@ public class ImportCommand extends AbstractCommand {
         private Charset _charset;
         private long _startRow = -1;
         private long _rowCount = -1;
+        private String _rejectFile;
         private String[] _columns;
 
         public void setFilename(final String filename) {
@@ -750,6 +925,14 @@ public class ImportCommand extends AbstractCommand {
             return _rowCount;
         }
 
+        public void setRejectFile(final String rejectFile) {
+            _rejectFile = rejectFile;
+        }
+
+        public String getRejectFile() {
+            return _rejectFile;
+        }
+
         public void setRawColumns(final String commaDelimColumns) {
             if (!commaDelimColumns.startsWith("(")) {
                 throw new IllegalArgumentException("columns must start with '('");
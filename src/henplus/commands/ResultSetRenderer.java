@@ -4,11 +4,14 @@
  */
 package henplus.commands;
 
+import henplus.AdaptiveFetchSize;
 import henplus.HenPlus;
 import henplus.Interruptable;
 import henplus.OutputDevice;
+import henplus.dump.RingBuffer;
 import henplus.view.Column;
 import henplus.view.ColumnMetaData;
+import henplus.view.ResultWriter;
 import henplus.view.TableRenderer;
 
 import java.io.Reader;
@@ -23,28 +26,56 @@ import java.sql.Types;
  */
 public class ResultSetRenderer implements Interruptable {
 
+    /** display sizes wider than this are not taken as column width; wider values widen the column when printed. */
+    private static final int MAX_DISPLAY_SIZE = 60;
+
     private final ResultSet _rset;
     private final ResultSetMetaData _meta;
     private final TableRenderer _table;
+    /** the number of characters of a CLOB shown in a table. */
+    private static final long CLOB_LIMIT = 8192;
+
+    private final OutputDevice _out;
+    private final boolean _enableHeader;
+    private ResultWriter _writer;
+    private Column[] _reusableRow;
     private final int _columns;
     private final int[] _showColumns;
 
     private boolean _beyondLimit;
-    private long _firstRowTime;
-    private final long _clobLimit = 8192;
+    private volatile long _firstRowTime;
+    private long _clobLimit;
     private final int _rowLimit;
     private volatile boolean _running;
+    private AdaptiveFetchSize _fetchSize;
+    private int _prefetchRows;
+    private RingBuffer<PrefetchedRow> _ring;
 
     public ResultSetRenderer(final ResultSet rset, final String columnDelimiter, final boolean enableHeader,
             final boolean enableFooter, final int limit, final OutputDevice out, final int[] show) throws SQLException {
+        this(rset, columnDelimiter, enableHeader, enableFooter, limit, TableRenderer.DEFAULT_SAMPLE_ROWS, out, show);
+    }
+
+    /**
+     * @param sampleRows
+     *            the number of rows, whose values determine the width of the columns, before the table is printed; the rows
+     *            after are printed as they are fetched. With 0 the widths are taken from the display sizes of the columns.
+     */
+    public ResultSetRenderer(final ResultSet rset, final String columnDelimiter, final boolean enableHeader,
+            final boolean enableFooter, final int limit, final int sampleRows, final OutputDevice out, final int[] show)
+            throws SQLException {
         _rset = rset;
         _beyondLimit = false;
         _firstRowTime = -1;
         _showColumns = show;
         _rowLimit = limit;
+        _clobLimit = CLOB_LIMIT;
         _meta = rset.getMetaData();
         _columns = show != null ? show.length : _meta.getColumnCount();
-        _table = new TableRenderer(getDisplayMeta(_meta), out, columnDelimiter, enableHeader, enableFooter);
+        _table = new TableRenderer(getDisplayMeta(_meta, sampleRows == 0), out, columnDelimiter, enableHeader, enableFooter,
+                sampleRows);
+        _out = out;
+        _enableHeader = enableHeader;
     }
 
     public ResultSetRenderer(final ResultSet rset, final String columnDelimiter, final boolean enableHeader,
@@ -52,10 +83,49 @@ public class ResultSetRenderer implements Interruptable {
         this(rset, columnDelimiter, enableHeader, enableFooter, limit, out, null);
     }
 
+    /**
+     * adapt the fetch size of the result set to the size of its rows while rendering.
+     */
+    public void setFetchSize(final AdaptiveFetchSize fetchSize) {
+        _fetchSize = fetchSize;
+    }
+
+    /**
+     * write the rows in one of the {@link ResultWriter#FORMATS} instead of an aligned table. CLOBs are not truncated then, as
+     * the program reading the output would take a truncated value for the complete one.
+     */
+    public void setResultFormat(final int format) throws SQLException {
+        if (format == ResultWriter.FORMAT_ALIGNED) {
+            _writer = null;
+            _clobLimit = CLOB_LIMIT;
+            return;
+        }
+        _clobLimit = Long.MAX_VALUE;
+        final String[] labels = new String[_columns];
+        final int[] types = new int[_columns];
+        for (int i = 0; i < _columns; ++i) {
+            final int col = _showColumns != null ? _showColumns[i] : i + 1;
+            labels[i] = _meta.getColumnLabel(col);
+            types[i] = _meta.getColumnType(col);
+        }
+        _writer = ResultWriter.create(format, _out, labels, types);
+    }
+
+    /**
+     * fetch up to the given number of rows ahead in a background thread, while the rows fetched before are printed; 0 to fetch
+     * and print in turn. An interrupt must not come from the signal handler then, as it wakes up the waiting threads.
+     */
+    public void setPrefetchRows(final int prefetchRows) {
+        _prefetchRows = prefetchRows;
+    }
+
     // Interruptable interface.
     @Override
     public synchronized void interrupt() {
         _running = false;
+        if (_ring != null) {
+            _ring.abort();
+        }
     }
 
     public ColumnMetaData[] getDisplayMetaData() {
@@ -78,6 +148,9 @@ public class ResultSetRenderer implements Interruptable {
                 restLimit -= r;
             }
         } catch (final Exception e) {
+            if (_writer != null) {
+                throw new SQLException("cannot read CLOB: " + e);
+            }
             HenPlus.msg().println(e.toString());
         }
         if (restLimit == 0) {
@@ -91,45 +164,153 @@ public class ResultSetRenderer implements Interruptable {
 
         _running = true;
         try {
-            while (_running && _rset.next()) {
-                final Column[] currentRow = new Column[_columns];
-                for (int i = 0; i < _columns; ++i) {
-                    final int col = _showColumns != null ? _showColumns[i] : i + 1;
-                    String colString;
-                    if (_meta.getColumnType(col) == Types.CLOB) {
-                        colString = readClob(_rset.getClob(col));
-                    } else {
-                        colString = _rset.getString(col);
+            if (_prefetchRows > 0) {
+                rows = renderPrefetched();
+            } else {
+                final String[] values = new String[_columns];
+                startTable();
+                while (_running && (_fetchSize != null ? _fetchSize.next(_rset) : _rset.next())) {
+                    fetchRow(values);
+                    addRow(values);
+                    ++rows;
+                    if (rows >= _rowLimit) {
+                        _beyondLimit = true;
+                        break;
                     }
-                    final Column thisCol = new Column(colString);
-                    currentRow[i] = thisCol;
                 }
-                if (_firstRowTime < 0) {
-                    // read first row completely.
-                    _firstRowTime = System.currentTimeMillis();
+                if (!_running) {
+                    cancelStatement();
                 }
-                _table.addRow(currentRow);
+            }
+
+            closeTable();
+        } finally {
+            _rset.close();
+        }
+        return rows;
+    }
+
+    /**
+     * fetch the rows in a background thread, while this thread prints the rows fetched before.
+     */
+    private int renderPrefetched() throws SQLException {
+        final int size = Integer.highestOneBit(Math.max(1, _prefetchRows - 1)) << 1;
+        final PrefetchedRow[] slots = new PrefetchedRow[size];
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = new PrefetchedRow(_columns);
+        }
+        final RingBuffer<PrefetchedRow> ring = new RingBuffer<PrefetchedRow>(slots);
+        final Prefetcher prefetcher = new Prefetcher(ring);
+        synchronized (this) {
+            _ring = ring;
+            if (!_running) {
+                ring.abort(); // interrupted already.
+            }
+        }
+        prefetcher.start();
+        int rows = 0;
+        try {
+            startTable();
+            PrefetchedRow row;
+            while (_running && (row = ring.take()) != null) {
+                addRow(row.values);
+                ring.release();
                 ++rows;
                 if (rows >= _rowLimit) {
                     _beyondLimit = true;
                     break;
                 }
             }
-
-            _table.closeTable();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            _running = false;
+        } finally {
+            // stops the prefetcher, if it has not reached the end.
+            ring.abort();
             if (!_running) {
-                try {
-                    _rset.getStatement().cancel();
-                } catch (final Exception e) {
-                    HenPlus.msg().println("cancel statement failed: " + e.getMessage());
-                }
+                cancelStatement(); // the prefetcher may wait for the next rows.
+            }
+            prefetcher.awaitTermination();
+            synchronized (this) {
+                _ring = null;
             }
-        } finally {
-            _rset.close();
+        }
+        if (_running && prefetcher.getFailure() != null) {
+            throw prefetcher.getFailure();
         }
         return rows;
     }
 
+    private void cancelStatement() {
+        try {
+            _rset.getStatement().cancel();
+        } catch (final Exception e) {
+            HenPlus.msg().println("cancel statement failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * read the values of the current row of the result set.
+     */
+    private void fetchRow(final String[] values) throws SQLException {
+        long rowSize = 0;
+        for (int i = 0; i < _columns; ++i) {
+            final int col = _showColumns != null ? _showColumns[i] : i + 1;
+            String colString;
+            if (_meta.getColumnType(col) == Types.CLOB) {
+                colString = readClob(_rset.getClob(col));
+            } else {
+                colString = _rset.getString(col);
+            }
+            values[i] = colString;
+            rowSize += AdaptiveFetchSize.sizeOf(colString);
+        }
+        if (_fetchSize != null) {
+            _fetchSize.rowFetched(rowSize);
+        }
+        if (_firstRowTime < 0) {
+            // read first row completely.
+            _firstRowTime = System.currentTimeMillis();
+        }
+    }
+
+    private void startTable() {
+        if (_writer != null && _enableHeader) {
+            _writer.writeHeader();
+        }
+    }
+
+    /**
+     * print the row; the values may be reused afterwards.
+     */
+    private void addRow(final String[] values) {
+        if (_writer != null) {
+            _writer.writeRow(values);
+            return;
+        }
+        Column[] row = _reusableRow;
+        if (row != null) {
+            for (int i = 0; i < _columns; ++i) {
+                row[i].setValue(values[i]);
+            }
+        } else {
+            row = new Column[_columns];
+            for (int i = 0; i < _columns; ++i) {
+                row[i] = new Column(values[i]);
+            }
+        }
+        // a row cached by the table must not be reused.
+        _reusableRow = _table.addRow(row) ? row : null;
+    }
+
+    private void closeTable() {
+        if (_writer != null) {
+            _writer.close();
+        } else {
+            _table.closeTable();
+        }
+    }
+
     public boolean limitReached() {
         return _beyondLimit;
     }
@@ -141,7 +322,7 @@ public class ResultSetRenderer implements Interruptable {
     /**
      * determine meta data necesary for display.
      */
-    private ColumnMetaData[] getDisplayMeta(final ResultSetMetaData m) throws SQLException {
+    private ColumnMetaData[] getDisplayMeta(final ResultSetMetaData m, final boolean useDisplaySize) throws SQLException {
         final ColumnMetaData[] result = new ColumnMetaData[_columns];
 
         for (int i = 0; i < result.length; ++i) {
@@ -161,10 +342,84 @@ public class ResultSetRenderer implements Interruptable {
                     alignment = ColumnMetaData.ALIGN_RIGHT;
                     break;
             }
-            result[i] = new ColumnMetaData(columnLabel, alignment);
+            final int width = useDisplaySize ? Math.min(m.getColumnDisplaySize(col), MAX_DISPLAY_SIZE) : 0;
+            result[i] = new ColumnMetaData(columnLabel, alignment, -1, width);
         }
         return result;
     }
+
+    /**
+     * The values of a row fetched ahead.
+     */
+    private static final class PrefetchedRow {
+
+        final String[] values;
+
+        PrefetchedRow(final int columns) {
+            values = new String[columns];
+        }
+    }
+
+    /**
+     * Fetches the rows into the ring until the end of the result, the row limit or until the ring is aborted by the printing
+     * thread.
+     */
+    private final class Prefetcher implements Runnable {
+
+        private final RingBuffer<PrefetchedRow> _prefetched;
+        private final Thread _thread;
+        private volatile SQLException _failure;
+
+        Prefetcher(final RingBuffer<PrefetchedRow> ring) {
+            _prefetched = ring;
+            _thread = new Thread(this, "henplus prefetch");
+            _thread.setDaemon(true);
+        }
+
+        void start() {
+            _thread.start();
+        }
+
+        @Override
+        public void run() {
+            int rows = 0;
+            try {
+                while (rows < _rowLimit && (_fetchSize != null ? _fetchSize.next(_rset) : _rset.next())) {
+                    final PrefetchedRow row = _prefetched.claim();
+                    if (row == null) {
+                        break; // aborted.
+                    }
+                    fetchRow(row.values);
+                    _prefetched.publish();
+                    ++rows;
+                }
+            } catch (final SQLException e) {
+                _failure = e;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                _prefetched.close();
+            }
+        }
+
+        void awaitTermination() {
+            boolean interrupted = false;
+            while (_thread.isAlive()) {
+                try {
+                    _thread.join();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        SQLException getFailure() {
+            return _failure;
+        }
+    }
 }
 
 /*
@@ -6,6 +6,7 @@
 package henplus.commands;
 
 import henplus.AbstractCommand;
+import henplus.AdaptiveFetchSize;
 import henplus.CommandDispatcher;
 import henplus.HenPlus;
 import henplus.PropertyRegistry;
@@ -13,7 +14,10 @@ import henplus.SQLSession;
 import henplus.SigIntHandler;
 import henplus.logging.Logger;
 import henplus.property.BooleanPropertyHolder;
+import henplus.property.EnumeratedPropertyHolder;
 import henplus.property.PropertyHolder;
+import henplus.view.ResultWriter;
+import henplus.view.TableRenderer;
 import henplus.view.util.CancelWriter;
 import henplus.view.util.NameCompleter;
 
@@ -54,10 +58,14 @@ public final class SQLCommand extends AbstractCommand {
     private Statement _stmt;
     private String _columnDelimiter;
     private int _rowLimit;
+    private int _sampleRows;
+    private int _prefetchRows;
+    private int _resultFormat;
     private boolean _showHeader;
     private boolean _showFooter;
     private volatile boolean _running;
     private StatementCanceller _statementCanceller;
+    private volatile ResultSetRenderer _renderer;
 
     protected SQLCommand(final ListUserObjectsCommand tc) {
         _columnDelimiter = "|";
@@ -71,10 +79,14 @@ public final class SQLCommand extends AbstractCommand {
         _tableCompleter = tc;
         _columnDelimiter = "|";
         _rowLimit = 2000;
+        _sampleRows = TableRenderer.DEFAULT_SAMPLE_ROWS;
         _showHeader = true;
         _showFooter = true;
         registry.registerProperty("column-delimiter", new SQLColumnDelimiterProperty());
         registry.registerProperty("sql-result-limit", new RowLimitProperty());
+        registry.registerProperty("sql-result-sample-rows", new SampleRowsProperty());
+        registry.registerProperty("sql-result-prefetch", new PrefetchRowsProperty());
+        registry.registerProperty("sql-result-format", new ResultFormatProperty());
         registry.registerProperty("sql-result-showheader", new ShowHeaderProperty());
         registry.registerProperty("sql-result-showfooter", new ShowFooterProperty());
         _statementCanceller = new StatementCanceller(new CurrentStatementCancelTarget());
@@ -140,6 +152,34 @@ public final class SQLCommand extends AbstractCommand {
         return _rowLimit;
     }
 
+    public void setSampleRows(final int sampleRows) {
+        _sampleRows = sampleRows;
+    }
+
+    public int getSampleRows() {
+        return _sampleRows;
+    }
+
+    public void setPrefetchRows(final int prefetchRows) {
+        _prefetchRows = prefetchRows;
+    }
+
+    public int getPrefetchRows() {
+        return _prefetchRows;
+    }
+
+    /**
+     * @param resultFormat
+     *            one of the {@link ResultWriter#FORMATS}.
+     */
+    public void setResultFormat(final int resultFormat) {
+        _resultFormat = resultFormat;
+    }
+
+    public int getResultFormat() {
+        return _resultFormat;
+    }
+
     public void setShowHeader(final boolean b) {
         _showHeader = b;
     }
@@ -168,6 +208,10 @@ public final class SQLCommand extends AbstractCommand {
                 HenPlus.msg().flush();
                 final CancelWriter info = new CancelWriter(HenPlus.msg());
                 info.print("please wait");
+                final ResultSetRenderer renderer = _renderer;
+                if (renderer != null) {
+                    renderer.interrupt();
+                }
                 _stmt.cancel();
                 info.cancel();
                 HenPlus.msg().println("done.");
@@ -224,11 +268,8 @@ public final class SQLCommand extends AbstractCommand {
                 session.println(".done.");
             } else {
                 _stmt = session.createStatement();
-                try {
-                    _stmt.setFetchSize(200);
-                } catch (final Exception e) {
-                    /* ignore */
-                }
+                final AdaptiveFetchSize fetchSize = session.createFetchSize(command);
+                fetchSize.apply(_stmt);
 
                 _statementCanceller.arm();
                 _longRunningDisplay.arm();
@@ -244,10 +285,24 @@ public final class SQLCommand extends AbstractCommand {
                     rset = _stmt.getResultSet();
                     ResultSetRenderer renderer;
                     renderer = new ResultSetRenderer(rset, getColumnDelimiter(), isShowHeader(), isShowFooter(), getRowLimit(),
-                            HenPlus.out());
-                    SigIntHandler.getInstance().pushInterruptable(renderer);
-                    final int rows = renderer.execute();
-                    SigIntHandler.getInstance().popInterruptable();
+                            getSampleRows(), HenPlus.out(), null);
+                    renderer.setFetchSize(fetchSize);
+                    renderer.setPrefetchRows(getPrefetchRows());
+                    renderer.setResultFormat(getResultFormat());
+                    final int rows;
+                    if (getPrefetchRows() > 0) {
+                        // the renderer wakes up its threads on interrupt; so it is interrupted by the statement canceller.
+                        _renderer = renderer;
+                        try {
+                            rows = renderer.execute();
+                        } finally {
+                            _renderer = null;
+                        }
+                    } else {
+                        SigIntHandler.getInstance().pushInterruptable(renderer);
+                        rows = renderer.execute();
+                        SigIntHandler.getInstance().popInterruptable();
+                    }
                     if (renderer.limitReached()) {
                         session.println("limit of " + getRowLimit() + " rows reached ..");
                         session.print("> ");
@@ -592,6 +647,127 @@ public final class SQLCommand extends AbstractCommand {
         }
     }
 
+    private class SampleRowsProperty extends PropertyHolder {
+
+        public SampleRowsProperty() {
+            super(String.valueOf(SQLCommand.this.getSampleRows()));
+        }
+
+        @Override
+        protected String propertyChanged(String newValue) throws Exception {
+            newValue = newValue.trim();
+            int newIntValue;
+            try {
+                newIntValue = Integer.parseInt(newValue);
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("cannot parse '" + newValue + "' as integer");
+            }
+            if (newIntValue < 0) {
+                throw new IllegalArgumentException("value cannot be less than 0");
+            }
+            SQLCommand.this.setSampleRows(newIntValue);
+            return newValue;
+        }
+
+        @Override
+        public String getDefaultValue() {
+            return String.valueOf(TableRenderer.DEFAULT_SAMPLE_ROWS);
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "set the number of rows the column widths are taken from";
+        }
+
+        @Override
+        public String getLongDescription() {
+            return "\tThe first rows of a query result are read, before the\n"
+                    + "\ttable is printed, to find the width of its columns. The\n"
+                    + "\trows after are printed as they are fetched, so large\n"
+                    + "\tresults do not fill the memory; a value wider than its\n"
+                    + "\tcolumn widens the column from that row on. With 0, the\n"
+                    + "\twidths are taken from the display sizes the database\n"
+                    + "\treports for the columns and every row is printed at once.";
+        }
+    }
+
+    private class PrefetchRowsProperty extends PropertyHolder {
+
+        public PrefetchRowsProperty() {
+            super(String.valueOf(SQLCommand.this.getPrefetchRows()));
+        }
+
+        @Override
+        protected String propertyChanged(String newValue) throws Exception {
+            newValue = newValue.trim();
+            int newIntValue;
+            try {
+                newIntValue = Integer.parseInt(newValue);
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("cannot parse '" + newValue + "' as integer");
+            }
+            if (newIntValue < 0 || newIntValue > AdaptiveFetchSize.MAX_FETCH_SIZE) {
+                throw new IllegalArgumentException("value must be between 0 and " + AdaptiveFetchSize.MAX_FETCH_SIZE);
+            }
+            SQLCommand.this.setPrefetchRows(newIntValue);
+            return newValue;
+        }
+
+        @Override
+        public String getDefaultValue() {
+            return "0";
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "set the number of rows fetched ahead while printing";
+        }
+
+        @Override
+        public String getLongDescription() {
+            return "\tIf greater than 0, the rows of a query result are fetched\n"
+                    + "\tin a background thread, up to this number of rows ahead\n"
+                    + "\tof the rows printed; so waiting for the database and\n"
+                    + "\tprinting overlap. With 0, rows are fetched and printed\n"
+                    + "\tin turn.";
+        }
+    }
+
+    private class ResultFormatProperty extends EnumeratedPropertyHolder {
+
+        public ResultFormatProperty() {
+            super(ResultWriter.FORMATS);
+            propertyValue = ResultWriter.FORMATS[ResultWriter.FORMAT_ALIGNED];
+        }
+
+        @Override
+        protected void enumeratedPropertyChanged(final int index, final String value) throws Exception {
+            setResultFormat(index);
+        }
+
+        @Override
+        public String getDefaultValue() {
+            return ResultWriter.FORMATS[ResultWriter.FORMAT_ALIGNED];
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "set the format query results are printed in";
+        }
+
+        @Override
+        public String getLongDescription() {
+            return "\t'aligned' prints query results as table. For other\n"
+                    + "\tprograms, e.g. in batch jobs, the results can be printed\n"
+                    + "\tas 'csv', comma separated values, 'tsv', tab separated\n"
+                    + "\tvalues with \\N for NULL, or 'jsonl', one JSON object\n"
+                    + "\tper row. These formats are written row by row as the\n"
+                    + "\trows are fetched, without determining column widths.\n"
+                    + "\tThe header line of csv and tsv follows the property\n"
+                    + "\tsql-result-showheader.";
+        }
+    }
+
     private class ShowHeaderProperty extends BooleanPropertyHolder {
 
         public ShowHeaderProperty() {
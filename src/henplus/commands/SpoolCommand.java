@@ -10,17 +10,25 @@ import henplus.OutputDevice;
 import henplus.PrintStreamOutputDevice;
 import henplus.SQLSession;
 
+import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Date;
 import java.util.Stack;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * prepared ..
  */
 public final class SpoolCommand extends AbstractCommand {
 
+    /** characters buffered, before they are handed to the writer thread. */
+    private static final int SPOOL_BUFFER_SIZE = 64 * 1024;
+    /** buffers waiting for the writer thread; printing waits, if the disk falls that far behind. */
+    private static final int SPOOL_QUEUE_SIZE = 16;
+
     private final Stack<OutputDevice> _outStack;
     private final Stack<OutputDevice> _msgStack;
 
@@ -86,7 +94,8 @@ public final class SpoolCommand extends AbstractCommand {
 
     private void openSpool(final String filename) throws IOException {
         // open file
-        final OutputDevice spool = new PrintStreamOutputDevice(new PrintStream(new FileOutputStream(filename)));
+        final OutputDevice spool = new SpoolDevice(new PrintStream(new BufferedOutputStream(new FileOutputStream(filename),
+                SPOOL_BUFFER_SIZE)));
         HenPlus.getInstance().setOutput(openStackedDevice(_outStack, spool), openStackedDevice(_msgStack, spool));
         HenPlus.msg().println("-- open spool at " + new Date());
     }
@@ -122,6 +131,107 @@ public final class SpoolCommand extends AbstractCommand {
         return dsc;
     }
 
+    /**
+     * Writes to a spool file. The text printed is buffered and then handed to a writer thread, so that printing does not wait
+     * for the disk. The file is flushed, whenever the writer has nothing more to write.
+     */
+    private static final class SpoolDevice extends PrintStreamOutputDevice implements Runnable {
+
+        private static final Object END = new Object();
+
+        private final PrintStream _file;
+        private final BlockingQueue<Object> _queue;
+        private final Thread _writer;
+        private boolean _closed;
+
+        public SpoolDevice(final PrintStream file) {
+            super(file, SPOOL_BUFFER_SIZE);
+            _file = file;
+            _queue = new ArrayBlockingQueue<Object>(SPOOL_QUEUE_SIZE);
+            _closed = false;
+            _writer = new Thread(this, "henplus spool writer");
+            _writer.setDaemon(true);
+            _writer.start();
+        }
+
+        @Override
+        protected void writeText(final CharSequence text) {
+            if (!_closed) {
+                enqueue(text.toString());
+            }
+        }
+
+        @Override
+        protected void writeBytes(final byte[] buffer, final int off, final int len) {
+            if (!_closed) {
+                final byte[] copy = new byte[len];
+                System.arraycopy(buffer, off, copy, 0, len);
+                enqueue(copy);
+            }
+        }
+
+        /**
+         * writes the rest and closes the file; the device is shared by the output and the message stack, so it is closed
+         * twice.
+         */
+        @Override
+        public synchronized void close() {
+            if (_closed) {
+                return;
+            }
+            flush();
+            enqueue(END);
+            _closed = true;
+            boolean interrupted = false;
+            while (_writer.isAlive()) {
+                try {
+                    _writer.join();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            super.close();
+        }
+
+        @Override
+        public void run() {
+            try {
+                Object chunk;
+                while ((chunk = _queue.take()) != END) {
+                    if (chunk instanceof String) {
+                        _file.print((String) chunk);
+                    } else {
+                        final byte[] bytes = (byte[]) chunk;
+                        _file.write(bytes, 0, bytes.length);
+                    }
+                    if (_queue.isEmpty()) {
+                        _file.flush();
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void enqueue(final Object chunk) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    _queue.put(chunk);
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * A stream that writes to two output streams. On close, only the second, stacked stream is closed.
      */
@@ -0,0 +1,179 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Base64 encoding (RFC 2045 alphabet, without line breaks) of the BLOB values of text dumps. Both directions work on chunks,
+ * so that values of any size can be converted without holding them in memory.
+ */
+public final class Base64 {
+
+    private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+    private static final byte[] DECODE = new byte[128];
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; ++i) {
+            DECODE[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private Base64() {
+    }
+
+    /**
+     * @return the number of characters needed to encode the given number of bytes.
+     */
+    public static int encodedLength(final int len) {
+        return (len + 2) / 3 * 4;
+    }
+
+    /**
+     * encode the bytes as US-ASCII characters into the destination. Only the last chunk of a value may have a length, that is
+     * not a multiple of three, since it is padded with '='.
+     *
+     * @return the number of bytes written to the destination; see {@link #encodedLength(int)}.
+     */
+    public static int encode(final byte[] src, final int off, final int len, final byte[] dest, final int destOff) {
+        int d = destOff;
+        int i = off;
+        final int end = off + len;
+        for (; i + 3 <= end; i += 3) {
+            final int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | src[i + 2] & 0xff;
+            dest[d++] = ALPHABET[bits >>> 18];
+            dest[d++] = ALPHABET[bits >>> 12 & 0x3f];
+            dest[d++] = ALPHABET[bits >>> 6 & 0x3f];
+            dest[d++] = ALPHABET[bits & 0x3f];
+        }
+        if (i < end) {
+            final int bits = (src[i] & 0xff) << 16 | (i + 1 < end ? (src[i + 1] & 0xff) << 8 : 0);
+            dest[d++] = ALPHABET[bits >>> 18];
+            dest[d++] = ALPHABET[bits >>> 12 & 0x3f];
+            dest[d++] = i + 1 < end ? ALPHABET[bits >>> 6 & 0x3f] : (byte) '=';
+            dest[d++] = '=';
+        }
+        return d - destOff;
+    }
+
+    /**
+     * A writer, that decodes the base64 characters written to it and writes the bytes to an output stream. Whitespace is
+     * ignored; {@link #close()} checks, that the value is complete.
+     */
+    public static final class DecodingWriter extends Writer {
+
+        private final OutputStream _out;
+        private final byte[] _bytes;
+        private int _len;
+        private long _length;
+        private int _bits;
+        private int _count;
+        private int _padding;
+
+        /**
+         * @param out
+         *            the stream to write the decoded bytes to or <code>null</code>, if the value is only checked.
+         */
+        public DecodingWriter(final OutputStream out) {
+            _out = out;
+            _bytes = new byte[out != null ? 3 * 1024 : 3];
+            _len = 0;
+            _length = 0;
+            _bits = 0;
+            _count = 0;
+            _padding = 0;
+        }
+
+        @Override
+        public void write(final int c) throws IOException {
+            if (c == '=') {
+                ++_padding;
+                ++_count;
+                if (_count == 4) {
+                    finishQuantum();
+                }
+                return;
+            }
+            final int value = c < DECODE.length ? DECODE[c] : -1;
+            if (value < 0) {
+                if (Character.isWhitespace((char) c)) {
+                    return;
+                }
+                throw new IOException("invalid base64 character '" + (char) c + "'");
+            }
+            if (_padding > 0) {
+                throw new IOException("base64 data after padding");
+            }
+            _bits = _bits << 6 | value;
+            if (++_count == 4) {
+                finishQuantum();
+            }
+        }
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) throws IOException {
+            for (int i = off; i < off + len; ++i) {
+                write(cbuf[i]);
+            }
+        }
+
+        private void finishQuantum() throws IOException {
+            if (_padding > 2) {
+                throw new IOException("invalid base64 padding");
+            }
+            if (_len + 3 > _bytes.length) {
+                flush();
+            }
+            final int bits = _bits << 6 * _padding;
+            _bytes[_len++] = (byte) (bits >>> 16);
+            if (_padding < 2) {
+                _bytes[_len++] = (byte) (bits >>> 8);
+            }
+            if (_padding < 1) {
+                _bytes[_len++] = (byte) bits;
+            }
+            _length += 3 - _padding;
+            _bits = 0;
+            _count = 0;
+            if (_padding > 0) {
+                _padding = 3; // no more quanta allowed.
+            }
+        }
+
+        /**
+         * @return the number of bytes decoded so far.
+         */
+        public long getLength() {
+            return _length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (_len > 0 && _out != null) {
+                _out.write(_bytes, 0, _len);
+            }
+            _len = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_count != 0) {
+                throw new IOException("incomplete base64 data");
+            }
+            flush();
+            if (_out != null) {
+                _out.close();
+            }
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,68 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+/**
+ * Constants of the binary dump format (dump-version 2). A table dump consists of
+ * <ul>
+ * <li>the {@link #MAGIC} bytes,</li>
+ * <li>the length of the header and the header itself: dump-version, compatible version, table name, henplus version, time,
+ * database info, estimated rows and name and type of each column; readers ignore header fields they do not know,</li>
+ * <li>the data blocks; each block starts with the {@link #SYNC} marker followed by the number of rows, the length of the data
+ * and its CRC32. The rows are stored one after the other, each as its values with their length or type tag (see
+ * {@link BlockWriter}),</li>
+ * <li>the final block, that has zero rows and contains the total number of rows.</li>
+ * </ul>
+ * LOBs larger than {@link #LOB_CHUNK_SIZE} are not stored within the block of their row, but in chunks in LOB blocks, that
+ * are written while the LOB is read and precede the block of the row. LOB blocks have the same header, with {@link #LOB_CHUNK}
+ * or {@link #LOB_LAST} as number of rows; so neither writing nor reading a dump holds a large LOB in memory.
+ * As every block is self-contained, blocks can be checked and decoded in parallel, and the sync markers allow to find the next
+ * block from any position in the file.
+ */
+public final class BinaryDump {
+
+    /** the first bytes of every binary table dump; not a valid start of a text dump. */
+    public static final byte[] MAGIC = { (byte) 0x89, 'H', 'P', 'D', 'U', 'M', 'P', '\n' };
+
+    /** marks the beginning of each block. */
+    public static final byte[] SYNC = { (byte) 0xd4, 0x1c, (byte) 0x93, 0x6e, (byte) 0xb2, 0x07, (byte) 0xf5, 0x38, 0x4a,
+            (byte) 0xe1, 0x6d, (byte) 0x90, 0x2b, (byte) 0xc8, 0x57, (byte) 0xaf };
+
+    /** number of rows after which a block is finished. */
+    public static final int BLOCK_ROWS = 4096;
+    /** size of the data after which a block is finished, even if it has less rows. */
+    public static final int BLOCK_BYTES = 1024 * 1024;
+
+    /** value tag: NULL. */
+    public static final int VALUE_NULL = 0;
+    /** value tag of numbers: a long as zig-zag encoded variable length integer. */
+    public static final int VALUE_LONG = 1;
+    /** value tag of numbers: the 8 bytes of a double. */
+    public static final int VALUE_DOUBLE = 2;
+    /** value tag of numbers: a decimal number as length-prefixed ASCII string. */
+    public static final int VALUE_DECIMAL = 3;
+    /**
+     * value tag of date, time and timestamp values: the fields follow as variable length integers. Value tag of LOBs: the
+     * length and the bytes follow.
+     */
+    public static final int VALUE_PRESENT = 1;
+    /** value tag of LOBs: the value is in the LOB blocks in front of the block of its row. */
+    public static final int VALUE_EXTERNAL = 2;
+
+    /** LOBs up to this size are stored within the block of their row; larger ones in LOB blocks of this size. */
+    public static final int LOB_CHUNK_SIZE = LobBuffer.MEMORY_LIMIT;
+    /** number of rows of a LOB block, that is continued by the next LOB block. */
+    public static final int LOB_CHUNK = -1;
+    /** number of rows of the last LOB block of a LOB. */
+    public static final int LOB_LAST = -2;
+
+    private BinaryDump() {
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
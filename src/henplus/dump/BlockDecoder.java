@@ -0,0 +1,53 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * Checks and decodes a block of a binary dump; runs in a thread of the decoder pool, so that the blocks are decoded in
+ * parallel while the rows of previous blocks are inserted.
+ */
+public final class BlockDecoder implements Callable<BlockDecoder> {
+
+    private final BlockReader _block;
+    private final MetaProperty[] _metaProperty;
+    private ColumnBuffer[] _columns;
+
+    public BlockDecoder(final BlockReader block, final MetaProperty[] metaProperty) {
+        _block = block;
+        _metaProperty = metaProperty;
+    }
+
+    public BlockDecoder call() throws IOException {
+        _block.verify();
+        final int rows = _block.getRowCount();
+        final ColumnBuffer[] columns = ColumnBuffer.create(_metaProperty, rows);
+        for (int row = 0; row < rows; ++row) {
+            for (int i = 0; i < columns.length; ++i) {
+                columns[i].read(_block, row);
+            }
+        }
+        if (!_block.isConsumed()) {
+            throw _block.error("unexpected data after last row");
+        }
+        _columns = columns;
+        return this;
+    }
+
+    public ColumnBuffer[] getColumns() {
+        return _columns;
+    }
+
+    public int getRowCount() {
+        return _block.getRowCount();
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,379 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A block of a binary dump as read from the file. Reading the block from the stream only checks the sync marker; the
+ * checksum is verified and the values are decoded by {@link #verify()} and the read methods, that may be called in another
+ * thread. See {@link BlockWriter} for the encoding of the values.
+ * <p>
+ * The LOB blocks in front of a block are read with it; their chunks are verified and collected in {@link LobBuffer}s, that
+ * spill large LOBs to temporary files, and handed out by {@link #readBytes()} and {@link #readChars()}.
+ */
+public final class BlockReader {
+
+    private final long _number;
+    private final int _rows;
+    private final byte[] _data;
+    private final int _crc;
+    private int _pos;
+    private final List<LobBuffer> _lobs;
+    private int _nextLob;
+
+    private BlockReader(final long number, final int rows, final byte[] data, final int crc, final List<LobBuffer> lobs) {
+        _number = number;
+        _rows = rows;
+        _data = data;
+        _crc = crc;
+        _pos = 0;
+        _lobs = lobs;
+        _nextLob = 0;
+    }
+
+    /**
+     * read the next block from the stream, with the LOB blocks in front of it.
+     *
+     * @param number
+     *            the number of the block within the table; used in error messages.
+     */
+    public static BlockReader read(final DataInputStream in, final long number) throws IOException {
+        final List<LobBuffer> lobs = new ArrayList<LobBuffer>();
+        try {
+            byte[] chunk = null;
+            LobBuffer lob = null;
+            OutputStream lobOut = null;
+            while (true) {
+                readSync(in, number);
+                final int rows = in.readInt();
+                final int len = in.readInt();
+                final int crc = in.readInt();
+                if (rows >= 0 && len >= 0) {
+                    if (lob != null) {
+                        throw new IOException("block " + number + ": last chunk of LOB " + (lobs.size() + 1) + " missing");
+                    }
+                    return new BlockReader(number, rows, readData(in, len, number), crc, lobs);
+                }
+                if (rows != BinaryDump.LOB_CHUNK && rows != BinaryDump.LOB_LAST || len < 0
+                        || len > BinaryDump.LOB_CHUNK_SIZE) {
+                    throw new IOException("block " + number + ": invalid block header");
+                }
+                if (chunk == null) {
+                    chunk = new byte[BinaryDump.LOB_CHUNK_SIZE];
+                }
+                in.readFully(chunk, 0, len);
+                final CRC32 check = new CRC32();
+                check.update(chunk, 0, len);
+                if ((int) check.getValue() != crc) {
+                    throw new IOException("block " + number + ": checksum mismatch in LOB " + (lobs.size() + 1));
+                }
+                if (lob == null) {
+                    lob = new LobBuffer();
+                    lobs.add(lob);
+                    lobOut = lob.getOutputStream();
+                }
+                lobOut.write(chunk, 0, len);
+                if (rows == BinaryDump.LOB_LAST) {
+                    lobOut.close();
+                    lob = null;
+                }
+            }
+        } catch (final IOException e) {
+            dispose(lobs, 0);
+            throw e;
+        }
+    }
+
+    /**
+     * read the data of a block. A corrupt length does not allocate more memory than there is data; blocks are limited only
+     * by the size of their rows.
+     */
+    private static byte[] readData(final DataInputStream in, final int len, final long number) throws IOException {
+        if (len <= BinaryDump.BLOCK_BYTES) {
+            final byte[] data = new byte[len];
+            in.readFully(data);
+            return data;
+        }
+        byte[] data = new byte[BinaryDump.BLOCK_BYTES];
+        int pos = 0;
+        while (pos < len) {
+            if (pos == data.length) {
+                final byte[] larger = new byte[(int) Math.min(len, 2L * data.length)];
+                System.arraycopy(data, 0, larger, 0, pos);
+                data = larger;
+            }
+            final int n = in.read(data, pos, data.length - pos);
+            if (n < 0) {
+                throw new IOException("block " + number + ": end of file after " + pos + " of " + len + " bytes");
+            }
+            pos += n;
+        }
+        return data;
+    }
+
+    private static void readSync(final DataInputStream in, final long number) throws IOException {
+        final byte[] sync = new byte[BinaryDump.SYNC.length];
+        in.readFully(sync);
+        for (int i = 0; i < sync.length; ++i) {
+            if (sync[i] != BinaryDump.SYNC[i]) {
+                throw new IOException("block " + number + ": sync marker expected");
+            }
+        }
+    }
+
+    /**
+     * @return the number of rows in this block; 0 for the final block of a table.
+     */
+    public int getRowCount() {
+        return _rows;
+    }
+
+    public boolean isEnd() {
+        return _rows == 0;
+    }
+
+    public long getNumber() {
+        return _number;
+    }
+
+    /**
+     * check the checksum of the data.
+     */
+    public void verify() throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(_data, 0, _data.length);
+        if ((int) crc.getValue() != _crc) {
+            throw error("checksum mismatch");
+        }
+    }
+
+    /**
+     * @return true, if all data of the block and all its LOBs have been read.
+     */
+    public boolean isConsumed() {
+        return _pos == _data.length && _nextLob == _lobs.size();
+    }
+
+    /**
+     * release the LOBs, that have not been read; called, if the block is skipped.
+     */
+    public void dispose() {
+        dispose(_lobs, _nextLob);
+        _nextLob = _lobs.size();
+    }
+
+    private static void dispose(final List<LobBuffer> lobs, final int first) {
+        for (int i = first; i < lobs.size(); ++i) {
+            lobs.get(i).dispose();
+        }
+    }
+
+    public IOException error(final String msg) {
+        return new IOException("block " + _number + ": " + msg);
+    }
+
+    public int readByte() throws IOException {
+        if (_pos >= _data.length) {
+            throw error("unexpected end of block");
+        }
+        return _data[_pos++] & 0xff;
+    }
+
+    public int readVarInt() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = readByte();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw error("invalid variable length integer");
+    }
+
+    public long readVarLong() throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final int b = readByte();
+            v |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return v >>> 1 ^ -(v & 1);
+            }
+        }
+        throw error("invalid variable length integer");
+    }
+
+    public long readLong() throws IOException {
+        long result = 0;
+        for (int i = 0; i < 8; ++i) {
+            result = result << 8 | readByte();
+        }
+        return result;
+    }
+
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /**
+     * read a date, time or timestamp written by {@link BlockWriter#writeTemporal(int, java.util.Date)}.
+     */
+    public java.util.Date readTemporal(final int type) throws IOException {
+        int year = 0;
+        int month = 0;
+        int day = 0;
+        int hours = 0;
+        int minutes = 0;
+        int seconds = 0;
+        if (type != MetaProperty.HP_TIME) {
+            year = (int) readVarLong();
+            month = readVarInt();
+            day = readVarInt();
+        }
+        if (type != MetaProperty.HP_DATE) {
+            hours = readVarInt();
+            minutes = readVarInt();
+            seconds = readVarInt();
+        }
+        final TemporalCodec codec = TemporalCodec.forThread();
+        switch (type) {
+            case MetaProperty.HP_DATE:
+                return codec.toDate(year, month, day);
+
+            case MetaProperty.HP_TIME:
+                return codec.toTime(hours, minutes, seconds);
+
+            default:
+                return codec.toTimestamp(year, month, day, hours, minutes, seconds, readVarInt());
+        }
+    }
+
+    /**
+     * read a string.
+     *
+     * @return the string or <code>null</code> for NULL.
+     */
+    public String readString() throws IOException {
+        final int len = readVarInt() - 1;
+        if (len == -1) {
+            return null;
+        }
+        checkLength(len);
+        final String result = new String(_data, _pos, len, "UTF-8");
+        _pos += len;
+        return result;
+    }
+
+    /**
+     * read the bytes of a BLOB.
+     *
+     * @return the bytes or <code>null</code> for NULL.
+     */
+    public LobBuffer readBytes() throws IOException {
+        switch (readByte()) {
+            case BinaryDump.VALUE_NULL:
+                return null;
+
+            case BinaryDump.VALUE_PRESENT: {
+                final int len = readLength();
+                final LobBuffer result = new LobBuffer();
+                final OutputStream out = result.getOutputStream();
+                out.write(_data, _pos, len);
+                out.close();
+                _pos += len;
+                return result;
+            }
+
+            case BinaryDump.VALUE_EXTERNAL:
+                return nextLob();
+
+            default:
+                throw error("invalid LOB tag");
+        }
+    }
+
+    /**
+     * read the characters of a CLOB.
+     *
+     * @return the characters, as written by {@link LobBuffer#getWriter()}, or <code>null</code> for NULL.
+     */
+    public LobBuffer readChars() throws IOException {
+        switch (readByte()) {
+            case BinaryDump.VALUE_NULL:
+                return null;
+
+            case BinaryDump.VALUE_PRESENT: {
+                final int len = readLength();
+                final LobBuffer result = new LobBuffer();
+                final Writer out = result.getWriter();
+                out.write(new String(_data, _pos, len, "UTF-8"));
+                out.close();
+                _pos += len;
+                return result;
+            }
+
+            case BinaryDump.VALUE_EXTERNAL: {
+                // LOB blocks hold the UTF-8 bytes.
+                final LobBuffer utf8 = nextLob();
+                final LobBuffer result = new LobBuffer();
+                try {
+                    final Reader in = new InputStreamReader(utf8.openStream(), "UTF-8");
+                    final Writer out = result.getWriter();
+                    final char[] buf = new char[8192];
+                    int n;
+                    while ((n = in.read(buf)) >= 0) {
+                        out.write(buf, 0, n);
+                    }
+                    out.close();
+                } catch (final IOException e) {
+                    result.dispose();
+                    throw e;
+                } finally {
+                    utf8.dispose();
+                }
+                return result;
+            }
+
+            default:
+                throw error("invalid LOB tag");
+        }
+    }
+
+    private int readLength() throws IOException {
+        final int len = readVarInt();
+        checkLength(len);
+        return len;
+    }
+
+    /**
+     * check the length of a value before it is allocated.
+     */
+    private void checkLength(final int len) throws IOException {
+        if (len < 0 || len > _data.length - _pos) {
+            throw error("value of " + len + " bytes exceeds the remaining " + (_data.length - _pos) + " bytes of the block");
+        }
+    }
+
+    private LobBuffer nextLob() throws IOException {
+        if (_nextLob == _lobs.size()) {
+            throw error("LOB block missing");
+        }
+        return _lobs.get(_nextLob++);
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,367 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.sql.Timestamp;
+import java.util.zip.CRC32;
+
+/**
+ * Collects the rows of a block of a binary dump and writes the block with its sync marker, row count and checksum. Values are
+ * encoded as follows:
+ * <ul>
+ * <li>integers as variable length integers, 7 bits per byte, least significant first; signed values are zig-zag encoded,</li>
+ * <li>strings as the length of their UTF-8 representation plus one (zero for NULL), followed by the UTF-8 bytes,</li>
+ * <li>numbers, dates, timestamps and LOBs with a leading tag byte (see {@link BinaryDump}); the bytes of BLOBs and the UTF-8
+ * bytes of CLOBs follow their length, unless they are written to LOB blocks.</li>
+ * </ul>
+ */
+public final class BlockWriter {
+
+    private static final int HEADER_SIZE = BinaryDump.SYNC.length + 12;
+
+    private final OutputStream _lobOut;
+    private byte[] _buffer;
+    private int _len;
+    private int _rows;
+    private final CRC32 _crc;
+    private final byte[] _header;
+    private byte[] _chunk;
+    private char[] _chars;
+
+    /**
+     * create a writer for blocks without LOBs.
+     */
+    public BlockWriter() {
+        this(null);
+    }
+
+    /**
+     * @param lobOut
+     *            the stream the LOB blocks of large LOBs are written to, while their row is written; the blocks must be written
+     *            to the same stream.
+     */
+    public BlockWriter(final OutputStream lobOut) {
+        _lobOut = lobOut;
+        _buffer = new byte[64 * 1024];
+        _len = 0;
+        _rows = 0;
+        _crc = new CRC32();
+        _header = new byte[HEADER_SIZE];
+        System.arraycopy(BinaryDump.SYNC, 0, _header, 0, BinaryDump.SYNC.length);
+    }
+
+    public void writeByte(final int b) {
+        ensure(1);
+        _buffer[_len++] = (byte) b;
+    }
+
+    /**
+     * write a non-negative int as variable length integer.
+     */
+    public void writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7f) != 0) {
+            _buffer[_len++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        _buffer[_len++] = (byte) value;
+    }
+
+    /**
+     * write a signed long zig-zag encoded as variable length integer, so that small negative numbers are short as well.
+     */
+    public void writeVarLong(final long value) {
+        ensure(10);
+        long v = value << 1 ^ value >> 63;
+        while ((v & ~0x7fL) != 0) {
+            _buffer[_len++] = (byte) (v & 0x7f | 0x80);
+            v >>>= 7;
+        }
+        _buffer[_len++] = (byte) v;
+    }
+
+    public void writeDouble(final double value) {
+        ensure(8);
+        final long bits = Double.doubleToRawLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            _buffer[_len++] = (byte) (bits >>> shift);
+        }
+    }
+
+    /**
+     * write a string or NULL.
+     */
+    public void writeString(final String s) {
+        if (s == null) {
+            writeVarInt(0);
+            return;
+        }
+        final int len = s.length();
+        writeVarInt(utf8Length(s, len) + 1);
+        putUtf8(s, len);
+    }
+
+    /**
+     * write the characters of a CLOB as UTF-8. The characters are encoded chunk by chunk; if they exceed one chunk, the
+     * chunks are written to LOB blocks right away.
+     *
+     * @param in
+     *            the reader or <code>null</code> for NULL.
+     */
+    public void writeString(final Reader in) throws IOException {
+        if (in == null) {
+            writeByte(BinaryDump.VALUE_NULL);
+            return;
+        }
+        final byte[] chunk = getChunk();
+        if (_chars == null) {
+            // at most 3 bytes per char, so that the chars read fit into an empty chunk.
+            _chars = new char[chunk.length / 4];
+        }
+        final char[] chars = _chars;
+        boolean external = false;
+        int len = 0;
+        int carry = 0;
+        int n;
+        while ((n = in.read(chars, carry, chars.length - carry)) >= 0) {
+            final int count = carry + n;
+            // keep a trailing high surrogate for the next read, so that surrogate pairs are encoded together.
+            final int end = count > 0 && Character.isHighSurrogate(chars[count - 1]) ? count - 1 : count;
+            if (len + 3 * end > chunk.length) {
+                writeLobBlock(chunk, len, BinaryDump.LOB_CHUNK);
+                external = true;
+                len = 0;
+            }
+            len = encodeUtf8(CharBuffer.wrap(chars, 0, end), end, chunk, len);
+            carry = count - end;
+            if (carry > 0) {
+                chars[0] = chars[end];
+            }
+        }
+        if (carry > 0) {
+            if (len + 3 > chunk.length) {
+                writeLobBlock(chunk, len, BinaryDump.LOB_CHUNK);
+                external = true;
+                len = 0;
+            }
+            len = encodeUtf8(CharBuffer.wrap(chars, 0, carry), carry, chunk, len);
+        }
+        endLob(chunk, len, external);
+    }
+
+    /**
+     * write the bytes of a BLOB. The bytes are read chunk by chunk; if they exceed one chunk, the chunks are written to LOB
+     * blocks right away.
+     *
+     * @param in
+     *            the stream or <code>null</code> for NULL.
+     */
+    public void writeBytes(final InputStream in) throws IOException {
+        if (in == null) {
+            writeByte(BinaryDump.VALUE_NULL);
+            return;
+        }
+        final byte[] chunk = getChunk();
+        boolean external = false;
+        int len = 0;
+        int n;
+        while ((n = in.read(chunk, len, chunk.length - len)) >= 0) {
+            len += n;
+            if (len == chunk.length) {
+                writeLobBlock(chunk, len, BinaryDump.LOB_CHUNK);
+                external = true;
+                len = 0;
+            }
+        }
+        endLob(chunk, len, external);
+    }
+
+    /**
+     * write the last chunk of a LOB: to the block of the row, if it is the only one, otherwise to the last LOB block.
+     */
+    private void endLob(final byte[] chunk, final int len, final boolean external) throws IOException {
+        if (external) {
+            writeLobBlock(chunk, len, BinaryDump.LOB_LAST);
+            writeByte(BinaryDump.VALUE_EXTERNAL);
+            return;
+        }
+        writeByte(BinaryDump.VALUE_PRESENT);
+        writeVarInt(len);
+        ensure(len);
+        System.arraycopy(chunk, 0, _buffer, _len, len);
+        _len += len;
+    }
+
+    private void writeLobBlock(final byte[] chunk, final int len, final int marker) throws IOException {
+        if (_lobOut == null) {
+            throw new IllegalStateException("no stream for LOB blocks");
+        }
+        writeBlock(_lobOut, marker, chunk, len);
+    }
+
+    private byte[] getChunk() {
+        if (_chunk == null) {
+            _chunk = new byte[BinaryDump.LOB_CHUNK_SIZE];
+        }
+        return _chunk;
+    }
+
+    private void putUtf8(final CharSequence s, final int len) {
+        ensure(utf8Length(s, len));
+        _len = encodeUtf8(s, len, _buffer, _len);
+    }
+
+    /**
+     * @return the position after the encoded characters.
+     */
+    private static int encodeUtf8(final CharSequence s, final int len, final byte[] buf, int pos) {
+        for (int i = 0; i < len; ++i) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xc0 | c >> 6);
+                buf[pos++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[pos++] = (byte) (0xf0 | cp >> 18);
+                buf[pos++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                buf[pos++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                buf[pos++] = (byte) (0x80 | cp & 0x3f);
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                buf[pos++] = '?'; // unpaired surrogate: not representable.
+            } else {
+                buf[pos++] = (byte) (0xe0 | c >> 12);
+                buf[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buf[pos++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * write the fields of a date, time or timestamp to a binary dump. The local fields are stored rather than the milliseconds,
+     * so that the values do not depend on the time zone, as with the text format.
+     */
+    public void writeTemporal(final int type, final java.util.Date val) {
+        final TemporalCodec codec = TemporalCodec.forThread();
+        codec.split(val.getTime());
+        if (type != MetaProperty.HP_TIME) {
+            writeVarLong(codec.getYear());
+            writeVarInt(codec.getMonth());
+            writeVarInt(codec.getDay());
+        }
+        if (type != MetaProperty.HP_DATE) {
+            writeVarInt(codec.getHours());
+            writeVarInt(codec.getMinutes());
+            writeVarInt(codec.getSeconds());
+        }
+        if (type == MetaProperty.HP_TIMESTAMP) {
+            writeVarInt(((Timestamp) val).getNanos());
+        }
+    }
+
+    /**
+     * the current row is complete.
+     */
+    public void endRow() {
+        ++_rows;
+    }
+
+    public int getRows() {
+        return _rows;
+    }
+
+    /**
+     * @return true, if the block has enough rows or data to be written.
+     */
+    public boolean isFull() {
+        return _rows >= BinaryDump.BLOCK_ROWS || _len >= BinaryDump.BLOCK_BYTES;
+    }
+
+    /**
+     * write the block, if it contains any rows, and start a new one.
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        if (_rows == 0) {
+            return;
+        }
+        writeBlock(out);
+    }
+
+    /**
+     * write the final block of a table, that contains the total number of rows.
+     */
+    public void writeEnd(final OutputStream out, final long totalRows) throws IOException {
+        _len = 0;
+        _rows = 0;
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            _buffer[_len++] = (byte) (totalRows >>> shift);
+        }
+        writeBlock(out);
+    }
+
+    private void writeBlock(final OutputStream out) throws IOException {
+        writeBlock(out, _rows, _buffer, _len);
+        _len = 0;
+        _rows = 0;
+    }
+
+    private void writeBlock(final OutputStream out, final int rows, final byte[] data, final int len) throws IOException {
+        _crc.reset();
+        _crc.update(data, 0, len);
+        int pos = BinaryDump.SYNC.length;
+        pos = putInt(_header, pos, rows);
+        pos = putInt(_header, pos, len);
+        putInt(_header, pos, (int) _crc.getValue());
+        out.write(_header, 0, _header.length);
+        out.write(data, 0, len);
+    }
+
+    private static int putInt(final byte[] buf, int pos, final int value) {
+        buf[pos++] = (byte) (value >>> 24);
+        buf[pos++] = (byte) (value >>> 16);
+        buf[pos++] = (byte) (value >>> 8);
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int utf8Length(final CharSequence s, final int len) {
+        int result = len;
+        for (int i = 0; i < len; ++i) {
+            final char c = s.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    result += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    result += 2; // 4 bytes for 2 chars
+                    ++i;
+                } else if (!Character.isHighSurrogate(c) && !Character.isLowSurrogate(c)) {
+                    result += 2;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void ensure(final int n) {
+        if (_len + n > _buffer.length) {
+            final byte[] larger = new byte[Math.max(_buffer.length * 2, _len + n)];
+            System.arraycopy(_buffer, 0, larger, 0, _len);
+            _buffer = larger;
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,511 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * The values of one column for the rows read from a dump, until they are inserted in a batch.
+ */
+public abstract class ColumnBuffer {
+
+    protected final MetaProperty _meta;
+    protected final int _col;
+
+    ColumnBuffer(final MetaProperty meta, final int col) {
+        _meta = meta;
+        _col = col;
+    }
+
+    /**
+     * read the value of this column for the given row from the dump.
+     */
+    public abstract void read(DumpLexer in, int row) throws IOException;
+
+    /**
+     * read the value of this column for the given row from a block of a binary dump. This does not update the meta data,
+     * as blocks are read in parallel; see {@link #getMaxLength()}.
+     */
+    public abstract void read(BlockReader in, int row) throws IOException;
+
+    /**
+     * the maximum length of the values read from binary blocks.
+     */
+    public long getMaxLength() {
+        return -1;
+    }
+
+    /**
+     * bind the value of the given row to the insert statement.
+     */
+    public abstract void bind(PreparedStatement stmt, int row) throws SQLException;
+
+    /**
+     * write the value of the given row in the format of a text dump.
+     */
+    public abstract void write(int row, DumpWriter out) throws IOException;
+
+    /**
+     * the values of the given rows have been inserted and are not needed anymore.
+     */
+    public void release(final int first, final int count) {
+    }
+
+    /**
+     * create the buffers for the values of the given columns.
+     */
+    public static ColumnBuffer[] create(final MetaProperty[] metaProperty, final int size) {
+        final ColumnBuffer[] columns = new ColumnBuffer[metaProperty.length];
+        for (int i = 0; i < metaProperty.length; ++i) {
+            switch (metaProperty[i].type) {
+                case MetaProperty.HP_NUMERIC:
+                case MetaProperty.HP_DOUBLE:
+                case MetaProperty.HP_INTEGER:
+                    columns[i] = new NumberColumn(metaProperty[i], i + 1, size);
+                    break;
+
+                case MetaProperty.HP_BLOB:
+                case MetaProperty.HP_CLOB:
+                    columns[i] = new LobColumn(metaProperty[i], i + 1, size);
+                    break;
+
+                default:
+                    columns[i] = new ValueColumn(metaProperty[i], i + 1, size);
+                    break;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * the length of the text representation of a date, time or timestamp, as seen by verify-dump.
+     */
+    private static int temporalLength(final int type, final java.util.Date val) {
+        switch (type) {
+            case MetaProperty.HP_DATE:
+                return 10; // yyyy-mm-dd
+
+            case MetaProperty.HP_TIME:
+                return 8; // hh:mm:ss
+
+            default: {
+                // yyyy-mm-dd hh:mm:ss.f with trailing zeros of the nanos removed
+                int nanos = ((Timestamp) val).getNanos();
+                if (nanos == 0) {
+                    return 21;
+                }
+                int digits = 9;
+                while (nanos % 10 == 0) {
+                    nanos /= 10;
+                    --digits;
+                }
+                return 20 + digits;
+            }
+        }
+    }
+
+    /**
+     * Column of type INTEGER, NUMERIC or DOUBLE. The numbers are parsed by the lexer directly into primitives and kept in a long
+     * array (doubles as their bits), so that reading and binding a number does not create any objects. BigDecimal is only used
+     * for integers that don't fit into a long and for fractions in NUMERIC columns, that need to be exact.
+     */
+    private static final class NumberColumn extends ColumnBuffer {
+
+        private static final byte NULL = 0;
+        private static final byte LONG = 1;
+        private static final byte DOUBLE = 2;
+        private static final byte DECIMAL = 3;
+
+        private final byte[] _kind;
+        private final long[] _values;
+        private BigDecimal[] _decimals;
+        private final int _sqlType;
+
+        NumberColumn(final MetaProperty meta, final int col, final int size) {
+            super(meta, col);
+            _kind = new byte[size];
+            _values = new long[size];
+            _decimals = null;
+            if (meta.type == MetaProperty.HP_NUMERIC) {
+                _sqlType = Types.NUMERIC;
+            } else if (meta.type == MetaProperty.HP_DOUBLE) {
+                _sqlType = Types.DOUBLE;
+            } else {
+                _sqlType = Types.INTEGER;
+            }
+        }
+
+        @Override
+        public void read(final DumpLexer in, final int row) throws IOException {
+            switch (in.readNumberToken()) {
+                case DumpLexer.NUMBER_NULL:
+                    _kind[row] = NULL;
+                    break;
+
+                case DumpLexer.NUMBER_LONG:
+                    if (_meta.type == MetaProperty.HP_DOUBLE) {
+                        setDouble(row, in.getLongValue());
+                    } else {
+                        _kind[row] = LONG;
+                        _values[row] = in.getLongValue();
+                    }
+                    break;
+
+                case DumpLexer.NUMBER_BIG_INTEGER:
+                    if (_meta.type == MetaProperty.HP_DOUBLE) {
+                        setDouble(row, in.getDoubleValue());
+                    } else {
+                        setDecimal(row, in.getDecimalValue());
+                    }
+                    break;
+
+                default: // NUMBER_FRACTION
+                    if (_meta.type == MetaProperty.HP_NUMERIC) {
+                        setDecimal(row, in.getDecimalValue());
+                    } else {
+                        setDouble(row, in.getDoubleValue());
+                    }
+                    break;
+            }
+        }
+
+        @Override
+        public void read(final BlockReader in, final int row) throws IOException {
+            switch (in.readByte()) {
+                case BinaryDump.VALUE_NULL:
+                    _kind[row] = NULL;
+                    break;
+
+                case BinaryDump.VALUE_LONG: {
+                    final long value = in.readVarLong();
+                    if (_meta.type == MetaProperty.HP_DOUBLE) {
+                        setDouble(row, value);
+                    } else {
+                        _kind[row] = LONG;
+                        _values[row] = value;
+                    }
+                    break;
+                }
+
+                case BinaryDump.VALUE_DOUBLE:
+                    setDouble(row, in.readDouble());
+                    break;
+
+                case BinaryDump.VALUE_DECIMAL: {
+                    final String val = in.readString();
+                    try {
+                        final BigDecimal value = new BigDecimal(val);
+                        if (_meta.type == MetaProperty.HP_DOUBLE) {
+                            setDouble(row, value.doubleValue());
+                        } else {
+                            setDecimal(row, value);
+                        }
+                    } catch (final RuntimeException e) {
+                        throw in.error("Number format " + val);
+                    }
+                    break;
+                }
+
+                default:
+                    throw in.error("invalid number");
+            }
+        }
+
+        private void setDouble(final int row, final double value) {
+            _kind[row] = DOUBLE;
+            _values[row] = Double.doubleToRawLongBits(value);
+        }
+
+        private void setDecimal(final int row, final BigDecimal value) {
+            if (_decimals == null) {
+                _decimals = new BigDecimal[_kind.length];
+            }
+            _kind[row] = DECIMAL;
+            _decimals[row] = value;
+        }
+
+        @Override
+        public void bind(final PreparedStatement stmt, final int row) throws SQLException {
+            switch (_kind[row]) {
+                case NULL:
+                    stmt.setNull(_col, _sqlType);
+                    break;
+
+                case LONG: {
+                    final long value = _values[row];
+                    if (value == (int) value) {
+                        stmt.setInt(_col, (int) value);
+                    } else {
+                        stmt.setLong(_col, value);
+                    }
+                    break;
+                }
+
+                case DOUBLE:
+                    stmt.setDouble(_col, Double.longBitsToDouble(_values[row]));
+                    break;
+
+                default:
+                    stmt.setBigDecimal(_col, _decimals[row]);
+                    break;
+            }
+        }
+
+        @Override
+        public void write(final int row, final DumpWriter out) throws IOException {
+            switch (_kind[row]) {
+                case NULL:
+                    out.writeNull();
+                    break;
+
+                case LONG:
+                    out.writeLong(_values[row]);
+                    break;
+
+                case DOUBLE:
+                    out.writeDouble(Double.longBitsToDouble(_values[row]));
+                    break;
+
+                default:
+                    out.writeSyntax(_decimals[row].toPlainString());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Column with string or temporal values.
+     */
+    private static final class ValueColumn extends ColumnBuffer {
+
+        private final Object[] _values;
+        private int _maxLength;
+
+        ValueColumn(final MetaProperty meta, final int col, final int size) {
+            super(meta, col);
+            _values = new Object[size];
+            _maxLength = -1;
+        }
+
+        @Override
+        public void read(final BlockReader in, final int row) throws IOException {
+            int length = -1;
+            switch (_meta.type) {
+                case MetaProperty.HP_TIMESTAMP:
+                case MetaProperty.HP_TIME:
+                case MetaProperty.HP_DATE: {
+                    final int tag = in.readByte();
+                    if (tag == BinaryDump.VALUE_NULL) {
+                        _values[row] = null;
+                    } else if (tag == BinaryDump.VALUE_PRESENT) {
+                        final java.util.Date val = in.readTemporal(_meta.type);
+                        _values[row] = val;
+                        length = temporalLength(_meta.type, val);
+                    } else {
+                        throw in.error("invalid " + MetaProperty.typeName(_meta.type));
+                    }
+                    break;
+                }
+
+                default: {
+                    final String val = in.readString();
+                    _values[row] = val;
+                    if (val != null) {
+                        length = val.length();
+                    }
+                    break;
+                }
+            }
+            if (length > _maxLength) {
+                _maxLength = length;
+            }
+        }
+
+        @Override
+        public long getMaxLength() {
+            return _maxLength;
+        }
+
+        @Override
+        public void read(final DumpLexer in, final int row) throws IOException {
+            final Object val;
+            switch (_meta.type) {
+                case MetaProperty.HP_TIMESTAMP:
+                    val = in.readTimestamp();
+                    break;
+
+                case MetaProperty.HP_TIME:
+                    val = in.readTime();
+                    break;
+
+                case MetaProperty.HP_DATE:
+                    val = in.readDate();
+                    break;
+
+                default: // strings and the BLOBs of old dumps.
+                    val = in.readString();
+                    _meta.updateMaxLength((String) val);
+                    break;
+            }
+            if (val instanceof java.util.Date) {
+                _meta.updateMaxLength(temporalLength(_meta.type, (java.util.Date) val));
+            }
+            _values[row] = val;
+        }
+
+        @Override
+        public void bind(final PreparedStatement stmt, final int row) throws SQLException {
+            final Object value = _values[row];
+            switch (_meta.type) {
+                case MetaProperty.HP_TIMESTAMP:
+                    stmt.setTimestamp(_col, (Timestamp) value);
+                    break;
+
+                case MetaProperty.HP_TIME:
+                    stmt.setTime(_col, (Time) value);
+                    break;
+
+                case MetaProperty.HP_DATE:
+                    stmt.setDate(_col, (java.sql.Date) value);
+                    break;
+
+                default:
+                    stmt.setString(_col, (String) value);
+                    break;
+            }
+        }
+
+        @Override
+        public void write(final int row, final DumpWriter out) throws IOException {
+            final Object value = _values[row];
+            if (value == null) {
+                out.writeNull();
+            } else if (value instanceof java.util.Date) {
+                out.writeTemporal((java.util.Date) value);
+            } else {
+                out.writeQuoted((String) value);
+            }
+        }
+    }
+
+    /**
+     * Column of type BLOB or CLOB. The values read from a dump are kept in {@link LobBuffer}s, that spill large values to
+     * temporary files, and are bound as streams; so the memory used does not depend on the size of the values.
+     */
+    private static final class LobColumn extends ColumnBuffer {
+
+        private final Object[] _values;
+        private long _maxLength;
+
+        LobColumn(final MetaProperty meta, final int col, final int size) {
+            super(meta, col);
+            _values = new Object[size];
+            _maxLength = -1;
+        }
+
+        @Override
+        public void read(final DumpLexer in, final int row) throws IOException {
+            release(row, 1);
+            final LobBuffer lob = new LobBuffer();
+            try {
+                final Writer out = _meta.type == MetaProperty.HP_BLOB ? new Base64.DecodingWriter(lob.getOutputStream())
+                        : lob.getWriter();
+                if (in.readString(out) < 0) {
+                    lob.dispose();
+                    return;
+                }
+                out.close();
+            } catch (final IOException e) {
+                lob.dispose();
+                throw e;
+            }
+            _values[row] = lob;
+            _meta.updateMaxLength(_meta.type == MetaProperty.HP_BLOB ? lob.length() : lob.charLength());
+        }
+
+        @Override
+        public void read(final BlockReader in, final int row) throws IOException {
+            release(row, 1);
+            final LobBuffer lob = _meta.type == MetaProperty.HP_BLOB ? in.readBytes() : in.readChars();
+            _values[row] = lob;
+            if (lob != null) {
+                _maxLength = Math.max(_maxLength, _meta.type == MetaProperty.HP_BLOB ? lob.length() : lob.charLength());
+            }
+        }
+
+        @Override
+        public long getMaxLength() {
+            return _maxLength;
+        }
+
+        @Override
+        public void bind(final PreparedStatement stmt, final int row) throws SQLException {
+            final Object value = _values[row];
+            if (value == null) {
+                stmt.setNull(_col, _meta.type == MetaProperty.HP_BLOB ? Types.BLOB : Types.CLOB);
+            } else {
+                final LobBuffer lob = (LobBuffer) value;
+                try {
+                    if (_meta.type == MetaProperty.HP_BLOB) {
+                        stmt.setBinaryStream(_col, lob.openStream(), (int) lob.length());
+                    } else {
+                        stmt.setCharacterStream(_col, lob.openReader(), (int) lob.charLength());
+                    }
+                } catch (final IOException e) {
+                    throw new SQLException("cannot read buffered " + MetaProperty.typeName(_meta.type) + ": " + e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public void write(final int row, final DumpWriter out) throws IOException {
+            final Object value = _values[row];
+            if (value == null) {
+                out.writeNull();
+            } else {
+                final LobBuffer lob = (LobBuffer) value;
+                if (_meta.type == MetaProperty.HP_BLOB) {
+                    final InputStream in = lob.openStream();
+                    try {
+                        out.writeBase64(in);
+                    } finally {
+                        in.close();
+                    }
+                } else {
+                    final Reader in = lob.openReader();
+                    try {
+                        out.writeQuoted(in);
+                    } finally {
+                        in.close();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void release(final int first, final int count) {
+            for (int row = first; row < first + count; ++row) {
+                if (_values[row] != null) {
+                    ((LobBuffer) _values[row]).dispose();
+                }
+                _values[row] = null;
+            }
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,429 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Fetches the value of one column of the current row and writes it to the dump. The writers are selected per column before
+ * the rows are dumped, so that the values are fetched with the getter of their type and formatted directly into the output
+ * buffer.
+ */
+public abstract class ColumnWriter {
+
+    /** NUMERIC columns with scale 0 and up to this precision are dumped with getLong(). */
+    private static final int MAX_LONG_PRECISION = 18;
+
+    protected final int _col;
+    protected final int _index;
+
+    ColumnWriter(final int col) {
+        _col = col;
+        _index = col - 1;
+    }
+
+    /**
+     * fetch the value from the result set into the row slot; called by the thread reading the result set.
+     */
+    public abstract void fetch(ResultSet rset, RowSlot row) throws SQLException;
+
+    /**
+     * write the value from the row slot; called by the writer thread.
+     */
+    public abstract void write(RowSlot row, DumpWriter out) throws IOException;
+
+    /**
+     * write the value from the row slot to a block of a binary dump; called by the writer thread.
+     */
+    public abstract void writeBinary(RowSlot row, BlockWriter out) throws IOException;
+
+    /**
+     * @return true, if the value fetched is a stream, that is only valid until the next row is fetched; then the rows are
+     *         written right after they are fetched instead of by another thread.
+     */
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * select the writer for each column once, before the rows are dumped.
+     */
+    public static ColumnWriter[] create(final ResultSetMetaData meta, final MetaProperty[] metaProps) throws SQLException {
+        final ColumnWriter[] writers = new ColumnWriter[metaProps.length];
+        for (int i = 0; i < metaProps.length; ++i) {
+            final int col = i + 1;
+            final int thisType = metaProps[i].getType();
+            switch (thisType) {
+                case MetaProperty.HP_INTEGER:
+                    writers[i] = new LongColumnWriter(col);
+                    break;
+
+                case MetaProperty.HP_NUMERIC: {
+                    final int jdbcType = meta.getColumnType(col);
+                    if (jdbcType == Types.BIGINT) {
+                        // BIGINT UNSIGNED of MySQL exceeds a long.
+                        writers[i] = meta.isSigned(col) ? new LongColumnWriter(col) : new DecimalColumnWriter(col);
+                    } else if (jdbcType == Types.NUMERIC || jdbcType == Types.DECIMAL) {
+                        final int precision = meta.getPrecision(col);
+                        if (meta.getScale(col) == 0 && precision > 0 && precision <= MAX_LONG_PRECISION) {
+                            writers[i] = new LongColumnWriter(col);
+                        } else {
+                            writers[i] = new DecimalColumnWriter(col);
+                        }
+                    } else {
+                        // e.g. BOOLEAN: leave the representation to the driver.
+                        writers[i] = new NumberStringColumnWriter(col);
+                    }
+                    break;
+                }
+
+                case MetaProperty.HP_DOUBLE:
+                    writers[i] = new DoubleColumnWriter(col);
+                    break;
+
+                case MetaProperty.HP_TIMESTAMP:
+                case MetaProperty.HP_TIME:
+                case MetaProperty.HP_DATE:
+                    writers[i] = new TemporalColumnWriter(col, thisType);
+                    break;
+
+                case MetaProperty.HP_BLOB:
+                    writers[i] = new BlobColumnWriter(col);
+                    break;
+
+                case MetaProperty.HP_CLOB:
+                    writers[i] = new ClobColumnWriter(col);
+                    break;
+
+                case MetaProperty.HP_STRING:
+                    writers[i] = new StringColumnWriter(col);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("type " + MetaProperty.typeName(thisType) + " not supported yet");
+            }
+        }
+        return writers;
+    }
+
+    private static final class LongColumnWriter extends ColumnWriter {
+
+        LongColumnWriter(final int col) {
+            super(col);
+        }
+
+        @Override
+        public void fetch(final ResultSet rset, final RowSlot row) throws SQLException {
+            row._numbers[_index] = rset.getLong(_col);
+            row._nulls[_index] = rset.wasNull();
+        }
+
+        @Override
+        public void write(final RowSlot row, final DumpWriter out) throws IOException {
+            if (row._nulls[_index]) {
+                out.writeNull();
+            } else {
+                out.writeLong(row._numbers[_index]);
+            }
+        }
+
+        @Override
+        public void writeBinary(final RowSlot row, final BlockWriter out) {
+            if (row._nulls[_index]) {
+                out.writeByte(BinaryDump.VALUE_NULL);
+            } else {
+                out.writeByte(BinaryDump.VALUE_LONG);
+                out.writeVarLong(row._numbers[_index]);
+            }
+        }
+    }
+
+    private static final class DoubleColumnWriter extends ColumnWriter {
+
+        DoubleColumnWriter(final int col) {
+            super(col);
+        }
+
+        @Override
+        public void fetch(final ResultSet rset, final RowSlot row) throws SQLException {
+            row._numbers[_index] = Double.doubleToRawLongBits(rset.getDouble(_col));
+            row._nulls[_index] = rset.wasNull();
+        }
+
+        @Override
+        public void write(final RowSlot row, final DumpWriter out) throws IOException {
+            if (row._nulls[_index]) {
+                out.writeNull();
+            } else {
+                out.writeDouble(Double.longBitsToDouble(row._numbers[_index]));
+            }
+        }
+
+        @Override
+        public void writeBinary(final RowSlot row, final BlockWriter out) {
+            if (row._nulls[_index]) {
+                out.writeByte(BinaryDump.VALUE_NULL);
+            } else {
+                out.writeByte(BinaryDump.VALUE_DOUBLE);
+                out.writeDouble(Double.longBitsToDouble(row._numbers[_index]));
+            }
+        }
+    }
+
+    private static final class DecimalColumnWriter extends ColumnWriter {
+
+        DecimalColumnWriter(final int col) {
+            super(col);
+        }
+
+        @Override
+        public void fetch(final ResultSet rset, final RowSlot row) throws SQLException {
+            row._objects[_index] = rset.getBigDecimal(_col);
+        }
+
+        @Override
+        public void write(final RowSlot row, final DumpWriter out) throws IOException {
+            final BigDecimal val = (BigDecimal) row._objects[_index];
+            if (val == null) {
+                out.writeNull();
+            } else if (val.scale() == 0 && val.precision() <= MAX_LONG_PRECISION) {
+                out.writeLong(val.longValue());
+            } else {
+                out.writeSyntax(val.toPlainString());
+            }
+        }
+
+        @Override
+        public void writeBinary(final RowSlot row, final BlockWriter out) {
+            final BigDecimal val = (BigDecimal) row._objects[_index];
+            if (val == null) {
+                out.writeByte(BinaryDump.VALUE_NULL);
+            } else if (val.scale() == 0 && val.precision() <= MAX_LONG_PRECISION) {
+                out.writeByte(BinaryDump.VALUE_LONG);
+                out.writeVarLong(val.longValue());
+            } else {
+                out.writeByte(BinaryDump.VALUE_DECIMAL);
+                out.writeString(val.toPlainString());
+            }
+        }
+    }
+
+    private static final class NumberStringColumnWriter extends ColumnWriter {
+
+        NumberStringColumnWriter(final int col) {
+            super(col);
+        }
+
+        @Override
+        public void fetch(final ResultSet rset, final RowSlot row) throws SQLException {
+            row._objects[_index] = rset.getString(_col);
+        }
+
+        @Override
+        public void write(final RowSlot row, final DumpWriter out) throws IOException {
+            final String val = (String) row._objects[_index];
+            if (val == null) {
+                out.writeNull();
+            } else {
+                out.writeSyntax(val);
+            }
+        }
+
+        @Override
+        public void writeBinary(final RowSlot row, final BlockWriter out) {
+            final String val = (String) row._objects[_index];
+            if (val == null) {
+                out.writeByte(BinaryDump.VALUE_NULL);
+            } else {
+                out.writeByte(BinaryDump.VALUE_DECIMAL);
+                out.writeString(val);
+            }
+        }
+    }
+
+    private static final class TemporalColumnWriter extends ColumnWriter {
+
+        private final int _type;
+
+        TemporalColumnWriter(final int col, final int type) {
+            super(col);
+            _type = type;
+        }
+
+        @Override
+        public void fetch(final ResultSet rset, final RowSlot row) throws SQLException {
+            switch (_type) {
+                case MetaProperty.HP_TIMESTAMP:
+                    row._objects[_index] = rset.getTimestamp(_col);
+                    break;
+
+                case MetaProperty.HP_TIME:
+                    row._objects[_index] = rset.getTime(_col);
+                    break;
+
+                default:
+                    row._objects[_index] = rset.getDate(_col);
+                    break;
+            }
+        }
+
+        @Override
+        public void write(final RowSlot row, final DumpWriter out) throws IOException {
+            final java.util.Date val = (java.util.Date) row._objects[_index];
+            if (val == null) {
+                out.writeNull();
+            } else {
+                out.writeTemporal(val);
+            }
+        }
+
+        @Override
+        public void writeBinary(final RowSlot row, final BlockWriter out) {
+            final java.util.Date val = (java.util.Date) row._objects[_index];
+            if (val == null) {
+                out.writeByte(BinaryDump.VALUE_NULL);
+            } else {
+                out.writeByte(BinaryDump.VALUE_PRESENT);
+                out.writeTemporal(_type, val);
+            }
+        }
+    }
+
+    private static final class StringColumnWriter extends ColumnWriter {
+
+        StringColumnWriter(final int col) {
+            super(col);
+        }
+
+        @Override
+        public void fetch(final ResultSet rset, final RowSlot row) throws SQLException {
+            row._objects[_index] = rset.getString(_col);
+        }
+
+        @Override
+        public void write(final RowSlot row, final DumpWriter out) throws IOException {
+            final String val = (String) row._objects[_index];
+            if (val == null) {
+                out.writeNull();
+            } else {
+                out.writeQuoted(val);
+            }
+        }
+
+        @Override
+        public void writeBinary(final RowSlot row, final BlockWriter out) {
+            out.writeString((String) row._objects[_index]);
+        }
+    }
+
+    /**
+     * BLOB column. The value is fetched as stream and written in chunks (base64 encoded in the text format), so that it is
+     * never held in memory as a whole.
+     */
+    private static final class BlobColumnWriter extends ColumnWriter {
+
+        BlobColumnWriter(final int col) {
+            super(col);
+        }
+
+        @Override
+        public void fetch(final ResultSet rset, final RowSlot row) throws SQLException {
+            row._objects[_index] = rset.getBinaryStream(_col);
+        }
+
+        @Override
+        public void write(final RowSlot row, final DumpWriter out) throws IOException {
+            final InputStream val = (InputStream) row._objects[_index];
+            row._objects[_index] = null;
+            if (val == null) {
+                out.writeNull();
+                return;
+            }
+            try {
+                out.writeBase64(val);
+            } finally {
+                val.close();
+            }
+        }
+
+        @Override
+        public void writeBinary(final RowSlot row, final BlockWriter out) throws IOException {
+            final InputStream val = (InputStream) row._objects[_index];
+            row._objects[_index] = null;
+            try {
+                out.writeBytes(val);
+            } finally {
+                if (val != null) {
+                    val.close();
+                }
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return true;
+        }
+    }
+
+    /**
+     * CLOB column. The value is fetched as reader and written in chunks, so that it is never held in memory as a whole.
+     */
+    private static final class ClobColumnWriter extends ColumnWriter {
+
+        ClobColumnWriter(final int col) {
+            super(col);
+        }
+
+        @Override
+        public void fetch(final ResultSet rset, final RowSlot row) throws SQLException {
+            row._objects[_index] = rset.getCharacterStream(_col);
+        }
+
+        @Override
+        public void write(final RowSlot row, final DumpWriter out) throws IOException {
+            final Reader val = (Reader) row._objects[_index];
+            row._objects[_index] = null;
+            if (val == null) {
+                out.writeNull();
+                return;
+            }
+            try {
+                out.writeQuoted(val);
+            } finally {
+                val.close();
+            }
+        }
+
+        @Override
+        public void writeBinary(final RowSlot row, final BlockWriter out) throws IOException {
+            final Reader val = (Reader) row._objects[_index];
+            row._objects[_index] = null;
+            try {
+                out.writeString(val);
+            } finally {
+                if (val != null) {
+                    val.close();
+                }
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return true;
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,163 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * The position up to which a dump-in has been committed; written next to the dump as '&lt;dumpfile&gt;.checkpoint', so that an
+ * interrupted dump-in can be resumed:
+ *
+ * <pre>
+ * (dump-in-checkpoint
+ *   (dump-length 87557989)
+ *   (table 'student')
+ *   (table-offset 532)
+ *   (rows 350000))
+ * </pre>
+ *
+ * All tables in front of the table are imported completely, the table itself up to the given number of rows. The offset of
+ * the table within the uncompressed dump is taken from the {@link DumpIndex}; it is -1, if the dump has no index.
+ */
+public final class DumpCheckpoint {
+
+    /** appended to the name of the dump file to get the name of the checkpoint file. */
+    public static final String SUFFIX = ".checkpoint";
+
+    private static final String ENCODING = "UTF-8";
+
+    private final long _dumpLength;
+    private final String _tableName;
+    private final long _tableOffset;
+    private final long _rows;
+
+    public DumpCheckpoint(final long dumpLength, final String tableName, final long tableOffset, final long rows) {
+        _dumpLength = dumpLength;
+        _tableName = tableName;
+        _tableOffset = tableOffset;
+        _rows = rows;
+    }
+
+    /**
+     * @return the length of the dump file; used to check, that the checkpoint belongs to the dump.
+     */
+    public long getDumpLength() {
+        return _dumpLength;
+    }
+
+    public String getTableName() {
+        return _tableName;
+    }
+
+    /**
+     * @return the position of the table dump in the uncompressed dump or -1, if it is not known.
+     */
+    public long getTableOffset() {
+        return _tableOffset;
+    }
+
+    /**
+     * @return the number of rows of the table, that are committed.
+     */
+    public long getRows() {
+        return _rows;
+    }
+
+    /**
+     * write the checkpoint. It is written to a temporary file first, that then replaces the previous checkpoint, so that there
+     * is always a complete checkpoint, even if henplus dies while writing it.
+     */
+    public void write(final File file) throws IOException {
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), ENCODING));
+        try {
+            out.println("(dump-in-checkpoint");
+            out.println("  (dump-length " + _dumpLength + ")");
+            out.print("  (table '");
+            for (int i = 0; i < _tableName.length(); ++i) {
+                final char c = _tableName.charAt(i);
+                if (c == '\'' || c == '\\') {
+                    out.print('\\');
+                }
+                out.print(c);
+            }
+            out.println("')");
+            out.println("  (table-offset " + _tableOffset + ")");
+            out.println("  (rows " + _rows + "))");
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("writing checkpoint " + tmpFile + " failed");
+        }
+        // renameTo() does not replace existing files on all platforms.
+        if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file))) {
+            throw new IOException("cannot rename " + tmpFile + " to " + file);
+        }
+    }
+
+    public static DumpCheckpoint read(final File file) throws IOException {
+        final DumpLexer in = new DumpLexer(new InputStreamReader(new FileInputStream(file), ENCODING));
+        try {
+            in.expect('(');
+            if (!"dump-in-checkpoint".equals(in.readToken())) {
+                throw in.error("'dump-in-checkpoint' expected");
+            }
+            long dumpLength = -1;
+            String tableName = null;
+            long tableOffset = -1;
+            long rows = -1;
+            while (true) {
+                in.skipWhite();
+                final int c = in.read();
+                if (c == ')') {
+                    break;
+                }
+                if (c != '(') {
+                    throw in.error("'(' or ')' expected");
+                }
+                final String token = in.readToken();
+                if ("dump-length".equals(token)) {
+                    dumpLength = readLong(in);
+                } else if ("table".equals(token)) {
+                    tableName = in.readString();
+                } else if ("table-offset".equals(token)) {
+                    tableOffset = readLong(in);
+                } else if ("rows".equals(token)) {
+                    rows = readLong(in);
+                } else {
+                    throw in.error("unknown token " + token);
+                }
+                in.expect(')');
+            }
+            if (tableName == null || rows < 0) {
+                throw new IOException(file + ": incomplete checkpoint");
+            }
+            return new DumpCheckpoint(dumpLength, tableName, tableOffset, rows);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long readLong(final DumpLexer in) throws IOException {
+        final String token = in.readToken();
+        try {
+            return Long.parseLong(token);
+        } catch (final NumberFormatException e) {
+            throw in.error("number expected: " + token);
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
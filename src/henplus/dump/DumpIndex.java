@@ -0,0 +1,185 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The index of a dump file, that is written next to the dump as '&lt;dumpfile&gt;.idx'. For every table it contains the position
+ * and length of the table dump within the (uncompressed) dump, the number of rows and the CRC32 of the table dump, so that
+ * single tables can be read without parsing the tables in front of them:
+ *
+ * <pre>
+ * (dumpindex
+ *   (table 'student' 0 812 4 3735928559)
+ *   (table 'course' 812 1057 12 1183716304))
+ * </pre>
+ */
+public final class DumpIndex {
+
+    /** appended to the name of the dump file to get the name of the index. */
+    public static final String SUFFIX = ".idx";
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * The position of a single table dump.
+     */
+    public static final class Entry {
+
+        private final String _tableName;
+        private final long _offset;
+        private final long _length;
+        private final long _rows;
+        private final long _checksum;
+
+        public Entry(final String tableName, final long offset, final long length, final long rows, final long checksum) {
+            _tableName = tableName;
+            _offset = offset;
+            _length = length;
+            _rows = rows;
+            _checksum = checksum;
+        }
+
+        public String getTableName() {
+            return _tableName;
+        }
+
+        /**
+         * @return the position of the first byte of the table dump in the uncompressed dump.
+         */
+        public long getOffset() {
+            return _offset;
+        }
+
+        public long getLength() {
+            return _length;
+        }
+
+        public long getRows() {
+            return _rows;
+        }
+
+        /**
+         * @return the CRC32 of the bytes of the table dump.
+         */
+        public long getChecksum() {
+            return _checksum;
+        }
+    }
+
+    private final List<Entry> _entries;
+
+    public DumpIndex() {
+        _entries = new ArrayList<Entry>();
+    }
+
+    public void add(final Entry entry) {
+        _entries.add(entry);
+    }
+
+    /**
+     * @return the entries in the order of the tables in the dump.
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(_entries);
+    }
+
+    /**
+     * @return the entry of the given table or <code>null</code>, if the table is not contained in the dump. Table names are
+     *         compared case insensitive, like in SQL.
+     */
+    public Entry getEntry(final String tableName) {
+        for (final Entry entry : _entries) {
+            if (entry.getTableName().equalsIgnoreCase(tableName)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public void write(final File file) throws IOException {
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), ENCODING));
+        try {
+            out.print("(dumpindex");
+            for (final Entry entry : _entries) {
+                out.print("\n  (table '");
+                final String name = entry.getTableName();
+                for (int i = 0; i < name.length(); ++i) {
+                    final char c = name.charAt(i);
+                    if (c == '\'' || c == '\\') {
+                        out.print('\\');
+                    }
+                    out.print(c);
+                }
+                out.print("' " + entry.getOffset() + " " + entry.getLength() + " " + entry.getRows() + " "
+                        + entry.getChecksum() + ")");
+            }
+            out.println(")");
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("writing index " + file + " failed");
+        }
+    }
+
+    public static DumpIndex read(final File file) throws IOException {
+        final DumpLexer in = new DumpLexer(new InputStreamReader(new FileInputStream(file), ENCODING));
+        try {
+            final DumpIndex index = new DumpIndex();
+            in.expect('(');
+            if (!"dumpindex".equals(in.readToken())) {
+                throw in.error("'dumpindex' expected");
+            }
+            while (true) {
+                in.skipWhite();
+                final int c = in.read();
+                if (c == ')') {
+                    break;
+                }
+                if (c != '(') {
+                    throw in.error("'(' or ')' expected");
+                }
+                if (!"table".equals(in.readToken())) {
+                    throw in.error("'table' expected");
+                }
+                final String tableName = in.readString();
+                final long offset = readLong(in);
+                final long length = readLong(in);
+                final long rows = readLong(in);
+                final long checksum = readLong(in);
+                in.expect(')');
+                index.add(new Entry(tableName, offset, length, rows, checksum));
+            }
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long readLong(final DumpLexer in) throws IOException {
+        final String token = in.readToken();
+        try {
+            return Long.parseLong(token);
+        } catch (final NumberFormatException e) {
+            throw in.error("number expected: " + token);
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
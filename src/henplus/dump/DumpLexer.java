@@ -0,0 +1,550 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+/**
+ * Tokenizer for the text format of table dumps. It reads the input in large blocks into its own character buffer and keeps
+ * track of the line number itself, so it does not need a LineNumberReader with mark()/reset() for every character. Tokens,
+ * strings and numbers are collected in a scratch buffer that is reused; values that are only checked (as with verify-dump) do
+ * not allocate anything.
+ */
+public final class DumpLexer {
+
+    /** the number read is NULL. */
+    public static final int NUMBER_NULL = 0;
+    /** the number read is integral and fits into a long. */
+    public static final int NUMBER_LONG = 1;
+    /** the number read is integral, but does not fit into a long. */
+    public static final int NUMBER_BIG_INTEGER = 2;
+    /** the number read has a decimal point or an exponent. */
+    public static final int NUMBER_FRACTION = 3;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String NULL_STR = "NULL";
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13,
+            1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final Reader _in;
+    private final char[] _buffer;
+    private int _pos;
+    private int _limit;
+    private int _line;
+
+    private char[] _scratch;
+    private int _scratchLen;
+    private long _longValue;
+
+    public DumpLexer(final Reader in) {
+        _in = in;
+        _buffer = new char[BUFFER_SIZE];
+        _pos = 0;
+        _limit = 0;
+        _line = 0;
+        _scratch = new char[256];
+    }
+
+    /**
+     * the current line number, starting with 1.
+     */
+    public int getLineNumber() {
+        return _line + 1;
+    }
+
+    /**
+     * create an exception containing the current line number.
+     */
+    public IOException error(final String msg) {
+        return new IOException("line " + getLineNumber() + ": " + msg);
+    }
+
+    public void close() throws IOException {
+        _in.close();
+    }
+
+    /**
+     * read the next character.
+     *
+     * @return the character or -1 on EOF.
+     */
+    public int read() throws IOException {
+        if (_pos >= _limit && !fill()) {
+            return -1;
+        }
+        final char c = _buffer[_pos++];
+        if (c == '\n') {
+            ++_line;
+        }
+        return c;
+    }
+
+    /**
+     * skip whitespace.
+     *
+     * @return false, if EOF is reached.
+     */
+    public boolean skipWhite() throws IOException {
+        while (true) {
+            if (_pos >= _limit && !fill()) {
+                return false;
+            }
+            final char c = _buffer[_pos];
+            if (c == '\n') {
+                ++_line;
+            } else if (!Character.isWhitespace(c)) {
+                return true;
+            }
+            ++_pos;
+        }
+    }
+
+    /**
+     * skip whitespace and read the expected character.
+     */
+    public void expect(final char ch) throws IOException {
+        skipWhite();
+        if (read() != ch) {
+            throw error("'" + ch + "' expected");
+        }
+    }
+
+    /**
+     * read a token; that is everything up to the next whitespace, ';', ',', '(' or ')'.
+     */
+    public String readToken() throws IOException {
+        scanToken();
+        return new String(_scratch, 0, _scratchLen);
+    }
+
+    /**
+     * read a string. This is either NULL without quotes or a quoted string.
+     *
+     * @return the string or <code>null</code> for NULL.
+     */
+    public String readString() throws IOException {
+        if (scanString(null, true) < 0) {
+            return null;
+        }
+        return new String(_scratch, 0, _scratchLen);
+    }
+
+    /**
+     * read a date string, parsed with the {@link TemporalCodec} of the current thread without an intermediate string.
+     *
+     * @return the date or <code>null</code> for NULL.
+     */
+    public java.sql.Date readDate() throws IOException {
+        if (scanString(null, true) < 0) {
+            return null;
+        }
+        return TemporalCodec.forThread().parseDate(_scratch, 0, _scratchLen);
+    }
+
+    /**
+     * read a time string; see {@link #readDate()}.
+     */
+    public Time readTime() throws IOException {
+        if (scanString(null, true) < 0) {
+            return null;
+        }
+        return TemporalCodec.forThread().parseTime(_scratch, 0, _scratchLen);
+    }
+
+    /**
+     * read a timestamp string; see {@link #readDate()}.
+     */
+    public Timestamp readTimestamp() throws IOException {
+        if (scanString(null, true) < 0) {
+            return null;
+        }
+        return TemporalCodec.forThread().parseTimestamp(_scratch, 0, _scratchLen);
+    }
+
+    /**
+     * read a string like {@link #readString()}, but pass its characters in chunks to the given writer instead of collecting
+     * them; this way, values of any size (like LOBs) can be read.
+     *
+     * @return the length of the string or -1 for NULL.
+     */
+    public long readString(final Writer out) throws IOException {
+        return scanString(out, false);
+    }
+
+    /**
+     * read a string like {@link #readString()}, but only return its length.
+     *
+     * @return the length of the string or -1 for NULL.
+     */
+    public long skipString() throws IOException {
+        return scanString(null, false);
+    }
+
+    /**
+     * read a number token and classify it; the value is then retrieved with {@link #getLongValue()}, {@link #getDoubleValue()}
+     * or {@link #getDecimalValue()}, depending on the type needed. This way, numbers are parsed directly from the buffer into
+     * primitives without any intermediate objects.
+     *
+     * @return one of {@link #NUMBER_NULL}, {@link #NUMBER_LONG}, {@link #NUMBER_BIG_INTEGER} or {@link #NUMBER_FRACTION}.
+     */
+    public int readNumberToken() throws IOException {
+        if (!scanNumber()) {
+            return NUMBER_NULL;
+        }
+        final char[] digits = _scratch;
+        final int len = _scratchLen;
+        int i = 0;
+        final boolean negative = digits[0] == '-';
+        if (negative || digits[0] == '+') {
+            ++i;
+        }
+        final int firstDigit = i;
+        long value = 0;
+        boolean overflow = false;
+        for (; i < len; ++i) {
+            final int digit = digits[i] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            // accumulate negative, since the range of negative longs is larger.
+            if (value < Long.MIN_VALUE / 10 || value * 10 < Long.MIN_VALUE + digit) {
+                overflow = true;
+            } else {
+                value = value * 10 - digit;
+            }
+        }
+        if (i == len && i > firstDigit) {
+            if (overflow || !negative && value == Long.MIN_VALUE) {
+                return NUMBER_BIG_INTEGER;
+            }
+            _longValue = negative ? value : -value;
+            return NUMBER_LONG;
+        }
+        checkFraction(digits, firstDigit, len);
+        return NUMBER_FRACTION;
+    }
+
+    /**
+     * the value of the last number token of type {@link #NUMBER_LONG}.
+     */
+    public long getLongValue() {
+        return _longValue;
+    }
+
+    /**
+     * the last number token as double.
+     */
+    public double getDoubleValue() throws IOException {
+        final double result = parseDouble(_scratch, _scratchLen);
+        if (Double.isNaN(result)) {
+            try {
+                return Double.parseDouble(new String(_scratch, 0, _scratchLen));
+            } catch (final NumberFormatException e) {
+                throw error("Number format " + new String(_scratch, 0, _scratchLen) + ": " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * the last number token as BigDecimal; for values that don't fit in a long or need an exact fraction.
+     */
+    public BigDecimal getDecimalValue() throws IOException {
+        try {
+            return new BigDecimal(_scratch, 0, _scratchLen);
+        } catch (final NumberFormatException e) {
+            throw error("Number format " + new String(_scratch, 0, _scratchLen) + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * read a number, but only check its format.
+     *
+     * @return false for NULL.
+     */
+    public boolean skipNumber() throws IOException {
+        return readNumberToken() != NUMBER_NULL;
+    }
+
+    /**
+     * check the syntax of a number with a decimal point and/or exponent: digits [. digits] [e [sign] digits].
+     */
+    private void checkFraction(final char[] digits, final int start, final int len) throws IOException {
+        int i = start;
+        int mantissaDigits = 0;
+        while (i < len && digits[i] >= '0' && digits[i] <= '9') {
+            ++i;
+            ++mantissaDigits;
+        }
+        if (i < len && digits[i] == '.') {
+            ++i;
+            while (i < len && digits[i] >= '0' && digits[i] <= '9') {
+                ++i;
+                ++mantissaDigits;
+            }
+        }
+        boolean valid = mantissaDigits > 0;
+        if (valid && i < len && (digits[i] == 'e' || digits[i] == 'E')) {
+            ++i;
+            if (i < len && (digits[i] == '-' || digits[i] == '+')) {
+                ++i;
+            }
+            valid = i < len;
+            while (i < len && digits[i] >= '0' && digits[i] <= '9') {
+                ++i;
+            }
+        }
+        if (!valid || i != len) {
+            throw error("Number format " + new String(digits, 0, len));
+        }
+    }
+
+    /**
+     * fast path to convert a decimal number to a double. If the number has at most 15 significant digits and a decimal
+     * exponent of at most 22, both mantissa and power of ten are exact doubles, so a single multiplication or division yields the
+     * correctly rounded result.
+     *
+     * @return the value or NaN, if the fast path is not possible.
+     */
+    private static double parseDouble(final char[] digits, final int len) {
+        int i = 0;
+        final boolean negative = digits[0] == '-';
+        if (negative || digits[0] == '+') {
+            ++i;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int scale = 0;
+        boolean afterPoint = false;
+        for (; i < len; ++i) {
+            final char c = digits[i];
+            if (c == '.') {
+                afterPoint = true;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (mantissa != 0 || c != '0') {
+                if (++significant > MAX_EXACT_DIGITS) {
+                    return Double.NaN;
+                }
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            if (afterPoint) {
+                ++scale;
+            }
+        }
+        int exponent = 0;
+        if (i < len) {
+            ++i; // 'e' or 'E'
+            boolean negativeExponent = false;
+            if (digits[i] == '-' || digits[i] == '+') {
+                negativeExponent = digits[i] == '-';
+                ++i;
+            }
+            for (; i < len; ++i) {
+                exponent = exponent * 10 + (digits[i] - '0');
+                if (exponent > 1000) {
+                    return Double.NaN;
+                }
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        final int power = exponent - scale;
+        double result = mantissa;
+        if (power < 0) {
+            if (-power >= POWERS_OF_TEN.length) {
+                return Double.NaN;
+            }
+            result /= POWERS_OF_TEN[-power];
+        } else if (power > 0) {
+            if (power >= POWERS_OF_TEN.length) {
+                return Double.NaN;
+            }
+            result *= POWERS_OF_TEN[power];
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * scan a number into the scratch buffer. A separated sign is joined with the number.
+     *
+     * @return false for NULL.
+     */
+    private boolean scanNumber() throws IOException {
+        scanToken();
+        if (_scratchLen == 1 && (_scratch[0] == '+' || _scratch[0] == '-')) {
+            final char sign = _scratch[0];
+            scanToken();
+            ensureScratch(_scratchLen + 1);
+            System.arraycopy(_scratch, 0, _scratch, 1, _scratchLen);
+            _scratch[0] = sign;
+            ++_scratchLen;
+        }
+        if (_scratchLen == 0) {
+            throw error("number expected");
+        }
+        if (_scratchLen == NULL_STR.length() && isNull()) {
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isNull() {
+        for (int i = 0; i < NULL_STR.length(); ++i) {
+            if (_scratch[i] != NULL_STR.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * scan a token into the scratch buffer.
+     */
+    private void scanToken() throws IOException {
+        skipWhite();
+        _scratchLen = 0;
+        while (true) {
+            if (_pos >= _limit && !fill()) {
+                return;
+            }
+            final int start = _pos;
+            while (_pos < _limit) {
+                final char c = _buffer[_pos];
+                if (c == ',' || c == ')' || c == '(' || c == ';' || Character.isWhitespace(c)) {
+                    break;
+                }
+                ++_pos;
+            }
+            appendScratch(start, _pos - start);
+            if (_pos < _limit) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * scan a quoted string. Its characters are collected in the scratch buffer and/or written to the sink.
+     *
+     * @return the length of the string or -1 for NULL.
+     */
+    private long scanString(final Writer sink, final boolean collect) throws IOException {
+        int nullParseState = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            // unless we already parse the NULL string, skip whitespaces.
+            if (nullParseState == 0 && Character.isWhitespace((char) c)) {
+                continue;
+            }
+            if (c == '\'') {
+                break; // -> opening string.
+            }
+            if (Character.toUpperCase((char) c) == NULL_STR.charAt(nullParseState)) {
+                ++nullParseState;
+                if (nullParseState == NULL_STR.length()) {
+                    return -1;
+                }
+                continue;
+            }
+            throw error("unexpected character '" + (char) c + "'");
+        }
+        if (c < 0) {
+            throw error("string expected");
+        }
+
+        // ok, we found an opening quote; pass everything up to the closing quote on in chunks.
+        _scratchLen = 0;
+        long length = 0;
+        while (true) {
+            if (_pos >= _limit && !fill()) {
+                throw error("unterminated string");
+            }
+            final int start = _pos;
+            while (_pos < _limit) {
+                final char ch = _buffer[_pos];
+                if (ch == '\'' || ch == '\\') {
+                    break;
+                }
+                if (ch == '\n') {
+                    ++_line;
+                }
+                ++_pos;
+            }
+            final int len = _pos - start;
+            if (collect) {
+                appendScratch(start, len);
+            }
+            if (sink != null && len > 0) {
+                sink.write(_buffer, start, len);
+            }
+            length += len;
+            if (_pos >= _limit) {
+                continue;
+            }
+            if (_buffer[_pos++] == '\'') {
+                return length; // End Of String.
+            }
+            final int escaped = read();
+            if (escaped < 0) {
+                throw error("expected character after backslash escape");
+            }
+            if (collect) {
+                ensureScratch(_scratchLen + 1);
+                _scratch[_scratchLen++] = (char) escaped;
+            }
+            if (sink != null) {
+                sink.write(escaped);
+            }
+            ++length;
+        }
+    }
+
+    private void appendScratch(final int start, final int len) {
+        if (len == 0) {
+            return;
+        }
+        ensureScratch(_scratchLen + len);
+        System.arraycopy(_buffer, start, _scratch, _scratchLen, len);
+        _scratchLen += len;
+    }
+
+    private void ensureScratch(final int size) {
+        if (size > _scratch.length) {
+            final char[] newScratch = new char[Math.max(size, 2 * _scratch.length)];
+            System.arraycopy(_scratch, 0, newScratch, 0, _scratchLen);
+            _scratch = newScratch;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int len;
+        do {
+            len = _in.read(_buffer, 0, _buffer.length);
+        } while (len == 0);
+        if (len < 0) {
+            _pos = _limit = 0;
+            return false;
+        }
+        _pos = 0;
+        _limit = len;
+        return true;
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command:
+ * "ant -emacs -find build.xml" End:
+ */
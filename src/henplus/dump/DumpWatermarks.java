@@ -0,0 +1,61 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.io.ConfigurationContainer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The high-water marks of incremental dumps. For every database, table and column an incremental dump has been made of, the
+ * highest value of the column dumped is stored, so that the next incremental dump only contains the rows above it. The marks
+ * are kept in the configuration directory of henplus; they are only stored, if the dump completed. The workers of a parallel
+ * dump may access the marks concurrently.
+ */
+public final class DumpWatermarks {
+
+    private final ConfigurationContainer _config;
+    private final Map<String, String> _marks;
+
+    public DumpWatermarks(final ConfigurationContainer config) {
+        _config = config;
+        _marks = new HashMap<String, String>();
+        final Map<?, ?> stored = config.readProperties();
+        for (final Map.Entry<?, ?> entry : stored.entrySet()) {
+            _marks.put((String) entry.getKey(), (String) entry.getValue());
+        }
+    }
+
+    /**
+     * @return the high-water mark of the last incremental dump of the column or <code>null</code>, if there is none.
+     */
+    public synchronized String get(final String url, final String tableName, final String column) {
+        return _marks.get(key(url, tableName, column));
+    }
+
+    public synchronized void set(final String url, final String tableName, final String column, final String value) {
+        _marks.put(key(url, tableName, column), value);
+    }
+
+    /**
+     * write the marks; marks of other tables, that have been written by another henplus in the meantime, are kept.
+     */
+    public synchronized void store() {
+        _config.storeProperties(_marks, true, "high-water marks of incremental dumps");
+    }
+
+    /**
+     * table and column names are compared case insensitive, like in SQL.
+     */
+    private static String key(final String url, final String tableName, final String column) {
+        return url + "|" + tableName.toLowerCase() + "|" + column.toLowerCase();
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
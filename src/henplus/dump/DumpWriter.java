@@ -0,0 +1,352 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Writes the values of a table dump into a reusable byte buffer, that is written to the underlying stream when it is full
+ * or on {@link #flush()}. Numbers are formatted directly into the buffer and strings are quoted and escaped in a single loop;
+ * for the usual encodings, that are compatible with US-ASCII, ASCII characters are stored as they are and only other
+ * characters go through the CharsetEncoder. So writing a row does not need any intermediate strings. Other encodings (like
+ * UTF-16) are simply printed to the PrintStream.
+ * <p>
+ * The PrintStream must be the one the rest of the dump is printed to with the same encoding; the DumpWriter must be flushed
+ * before anything else is printed to it.
+ */
+public final class DumpWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_LONG_CHARS = 20;
+    /** the size of the chunks LOB values are read in; a multiple of three, so that the base64 chunks need no padding. */
+    private static final int LOB_CHUNK_SIZE = 3 * 4096;
+    private static final byte[] NULL_BYTES = { 'N', 'U', 'L', 'L' };
+    private static final byte[] MIN_LONG_BYTES = Long.toString(Long.MIN_VALUE).getBytes();
+
+    private final PrintStream _out;
+    private final CharsetEncoder _encoder;
+    private final boolean _asciiCompatible;
+    private final byte[] _buffer;
+    private final ByteBuffer _byteBuffer;
+    private int _pos;
+    private byte[] _lobBytes;
+    private char[] _lobChars;
+
+    public DumpWriter(final PrintStream out, final String encoding) throws UnsupportedEncodingException {
+        _out = out;
+        final Charset charset;
+        try {
+            charset = Charset.forName(encoding);
+        } catch (final IllegalArgumentException e) {
+            throw new UnsupportedEncodingException(encoding);
+        }
+        _encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _asciiCompatible = isAsciiCompatible(charset);
+        _buffer = new byte[BUFFER_SIZE];
+        _byteBuffer = ByteBuffer.wrap(_buffer);
+        _pos = 0;
+    }
+
+    /**
+     * write a character of the dump syntax; these are all ASCII characters.
+     */
+    public void writeSyntax(final char c) throws IOException {
+        if (!_asciiCompatible) {
+            _out.print(c);
+            return;
+        }
+        if (_pos == _buffer.length) {
+            flushBuffer();
+        }
+        _buffer[_pos++] = (byte) c;
+    }
+
+    /**
+     * write a string of the dump syntax without quoting.
+     */
+    public void writeSyntax(final String s) throws IOException {
+        if (!_asciiCompatible) {
+            _out.print(s);
+            return;
+        }
+        final int len = s.length();
+        ensure(len);
+        if (len > _buffer.length) {
+            _out.print(s);
+            return;
+        }
+        for (int i = 0; i < len; ++i) {
+            _buffer[_pos++] = (byte) s.charAt(i);
+        }
+    }
+
+    public void writeNull() throws IOException {
+        if (!_asciiCompatible) {
+            _out.print("NULL");
+            return;
+        }
+        writeBytes(NULL_BYTES);
+    }
+
+    /**
+     * write a long as decimal number.
+     */
+    public void writeLong(long value) throws IOException {
+        if (!_asciiCompatible) {
+            _out.print(value);
+            return;
+        }
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG_BYTES);
+            return;
+        }
+        ensure(MAX_LONG_CHARS);
+        if (value < 0) {
+            _buffer[_pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            ++digits;
+        }
+        int i = _pos + digits;
+        _pos = i;
+        do {
+            _buffer[--i] = (byte) ('0' + (int) (value % 10));
+            value /= 10;
+        } while (value != 0);
+    }
+
+    /**
+     * write a double, so that it is read back as the same value. Integral values are written without Double.toString().
+     */
+    public void writeDouble(final double value) throws IOException {
+        if (value == (long) value && Math.abs(value) < 1e15 && (value != 0 || 1 / value > 0)) {
+            writeLong((long) value);
+            writeSyntax(".0");
+        } else {
+            writeSyntax(Double.toString(value));
+        }
+    }
+
+    /**
+     * write a string in single quotes; single quotes and backslashes within are escaped with a backslash.
+     */
+    public void writeQuoted(final String s) throws IOException {
+        writeSyntax('\'');
+        writeEscaped(s);
+        writeSyntax('\'');
+    }
+
+    /**
+     * write a date, time or timestamp in single quotes like its <code>toString()</code>; it is formatted by the
+     * {@link TemporalCodec} of the current thread directly into the buffer.
+     */
+    public void writeTemporal(final java.util.Date value) throws IOException {
+        final TemporalCodec codec = TemporalCodec.forThread();
+        final int len = codec.format(value);
+        if (len < 0 || !_asciiCompatible) {
+            writeQuoted(value.toString());
+            return;
+        }
+        final char[] chars = codec.getChars();
+        ensure(len + 2);
+        _buffer[_pos++] = '\'';
+        for (int i = 0; i < len; ++i) {
+            _buffer[_pos++] = (byte) chars[i];
+        }
+        _buffer[_pos++] = '\'';
+    }
+
+    /**
+     * write the characters of the reader as quoted string like {@link #writeQuoted(String)}. They are read in chunks, so that
+     * values of any size (like CLOBs) can be written without holding them in memory.
+     */
+    public void writeQuoted(final Reader in) throws IOException {
+        if (_lobChars == null) {
+            _lobChars = new char[LOB_CHUNK_SIZE];
+        }
+        final char[] chunk = _lobChars;
+        writeSyntax('\'');
+        int len = 0;
+        int n;
+        while ((n = in.read(chunk, len, chunk.length - len)) >= 0) {
+            len += n;
+            // keep a trailing high surrogate for the next chunk, so that surrogate pairs are encoded together.
+            final int end = len > 0 && Character.isHighSurrogate(chunk[len - 1]) ? len - 1 : len;
+            writeEscaped(CharBuffer.wrap(chunk, 0, end));
+            if (end < len) {
+                chunk[0] = chunk[end];
+                len = 1;
+            } else {
+                len = 0;
+            }
+        }
+        if (len > 0) {
+            writeEscaped(CharBuffer.wrap(chunk, 0, len));
+        }
+        writeSyntax('\'');
+    }
+
+    /**
+     * write the bytes of the stream base64 encoded in single quotes. They are read in chunks, so that values of any size (like
+     * BLOBs) can be written without holding them in memory.
+     */
+    public void writeBase64(final InputStream in) throws IOException {
+        if (_lobBytes == null) {
+            _lobBytes = new byte[LOB_CHUNK_SIZE];
+        }
+        final byte[] chunk = _lobBytes;
+        writeSyntax('\'');
+        int len = 0;
+        int n;
+        while ((n = in.read(chunk, len, chunk.length - len)) >= 0) {
+            len += n;
+            if (len == chunk.length) {
+                writeBase64Chunk(chunk, len);
+                len = 0;
+            }
+        }
+        if (len > 0) {
+            writeBase64Chunk(chunk, len);
+        }
+        writeSyntax('\'');
+    }
+
+    private void writeBase64Chunk(final byte[] chunk, final int len) throws IOException {
+        final int encodedLength = Base64.encodedLength(len);
+        if (_asciiCompatible) {
+            ensure(encodedLength);
+            _pos += Base64.encode(chunk, 0, len, _buffer, _pos);
+        } else {
+            final byte[] encoded = new byte[encodedLength];
+            Base64.encode(chunk, 0, len, encoded, 0);
+            _out.print(new String(encoded, "US-ASCII"));
+        }
+    }
+
+    private void writeEscaped(final CharSequence s) throws IOException {
+        final int len = s.length();
+        int i = 0;
+        while (i < len) {
+            if (!_asciiCompatible) {
+                i = printQuoted(s, i, len);
+                continue;
+            }
+            ensure(2);
+            final char c = s.charAt(i);
+            if (c >= 0x80) {
+                // a run of non-ASCII characters; these never need escaping.
+                int end = i + 1;
+                while (end < len && s.charAt(end) >= 0x80) {
+                    ++end;
+                }
+                encode(s, i, end);
+                i = end;
+                continue;
+            }
+            if (c == '\'' || c == '\\') {
+                _buffer[_pos++] = '\\';
+            }
+            _buffer[_pos++] = (byte) c;
+            ++i;
+        }
+    }
+
+    /**
+     * write the buffered bytes to the underlying stream and flush it.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        _out.flush();
+    }
+
+    private int printQuoted(final CharSequence s, final int start, final int len) {
+        int end = start;
+        while (end < len && s.charAt(end) != '\'' && s.charAt(end) != '\\') {
+            ++end;
+        }
+        if (end > start) {
+            _out.print(s.subSequence(start, end).toString());
+            return end;
+        }
+        _out.print('\\');
+        _out.print(s.charAt(start));
+        return start + 1;
+    }
+
+    private void encode(final CharSequence s, final int start, final int end) throws IOException {
+        final CharBuffer in = CharBuffer.wrap(s, start, end);
+        _encoder.reset();
+        _byteBuffer.limit(_buffer.length);
+        _byteBuffer.position(_pos);
+        while (_encoder.encode(in, _byteBuffer, true).isOverflow()) {
+            _pos = _byteBuffer.position();
+            flushBuffer();
+            _byteBuffer.position(0);
+        }
+        while (_encoder.flush(_byteBuffer).isOverflow()) {
+            _pos = _byteBuffer.position();
+            flushBuffer();
+            _byteBuffer.position(0);
+        }
+        _pos = _byteBuffer.position();
+    }
+
+    private void writeBytes(final byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, _buffer, _pos, bytes.length);
+        _pos += bytes.length;
+    }
+
+    private void ensure(final int len) throws IOException {
+        if (_pos + len > _buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (_pos > 0) {
+            _out.write(_buffer, 0, _pos);
+            _pos = 0;
+        }
+    }
+
+    private static boolean isAsciiCompatible(final Charset charset) {
+        final char[] ascii = new char[0x80];
+        for (int i = 0; i < ascii.length; ++i) {
+            ascii[i] = (char) i;
+        }
+        try {
+            final ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(ascii));
+            if (encoded.remaining() != ascii.length) {
+                return false;
+            }
+            for (int i = 0; i < ascii.length; ++i) {
+                if (encoded.get(i) != i) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (final Exception e) {
+            return false;
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,566 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Drops the foreign keys and non-unique indexes of the tables a dump-in loads, and recreates them when the load is finished;
+ * maintaining them row by row makes loading several times slower than building them once. Unique indexes and primary keys
+ * are kept, since they guard the data loaded. PostgreSQL and Oracle tell the statement that recreates an index with all of its
+ * properties, like the access method, operator classes, included columns and conditions. With other databases, the index
+ * is recreated from the JDBC meta data, so indexes it does not fully describe are kept, like partial indexes, indexes on
+ * expressions and indexes without a sort order, which use another access method than a B-tree.
+ * <p>
+ * Before anything is dropped, the statements that recreate it are written to '&lt;dumpfile&gt;.restore.sql', which can be
+ * loaded into henplus if the load is interrupted. A statement is removed from the file as soon as it has been executed; the
+ * file is deleted when everything is restored. If the file exists when a fast load starts, its statements are restored at
+ * the end of that load.
+ */
+public final class FastLoad {
+
+    /** appended to the name of the dump file to get the name of the restore file. */
+    public static final String SUFFIX = ".restore.sql";
+
+    private static final String ENCODING = "UTF-8";
+
+    // columns of DatabaseMetaData.getImportedKeys()
+    private static final int FK_PKTABLE_SCHEM = 2;
+    private static final int FK_PKTABLE_NAME = 3;
+    private static final int FK_PKCOLUMN_NAME = 4;
+    private static final int FK_FKTABLE_SCHEM = 6;
+    private static final int FK_FKCOLUMN_NAME = 8;
+    private static final int FK_KEY_SEQ = 9;
+    private static final int FK_UPDATE_RULE = 10;
+    private static final int FK_DELETE_RULE = 11;
+    private static final int FK_FK_NAME = 12;
+    private static final int FK_DEFERRABILITY = 14;
+
+    // columns of DatabaseMetaData.getIndexInfo()
+    private static final int IDX_TABLE_SCHEM = 2;
+    private static final int IDX_NON_UNIQUE = 4;
+    private static final int IDX_INDEX_NAME = 6;
+    private static final int IDX_TYPE = 7;
+    private static final int IDX_ORDINAL_POSITION = 8;
+    private static final int IDX_COLUMN_NAME = 9;
+    private static final int IDX_ASC_OR_DESC = 10;
+    private static final int IDX_FILTER_CONDITION = 13;
+
+    private final File _file;
+    private final List<String> _indexes;
+    private final List<String> _foreignKeys;
+    private final List<String> _problems;
+
+    /**
+     * @param file
+     *            the restore file; the statements of an interrupted fast load are read from it.
+     */
+    public FastLoad(final File file) throws IOException {
+        _file = file;
+        _indexes = new ArrayList<String>();
+        _foreignKeys = new ArrayList<String>();
+        _problems = new ArrayList<String>();
+        if (file.exists()) {
+            read();
+        }
+    }
+
+    /**
+     * @return the number of indexes and foreign keys, that are to be restored.
+     */
+    public synchronized int getPendingCount() {
+        return _indexes.size() + _foreignKeys.size();
+    }
+
+    /**
+     * @return the problems found since the last call; a failure to drop or recreate an index or foreign key does not stop the
+     *         load.
+     */
+    public synchronized List<String> takeProblems() {
+        final List<String> result = new ArrayList<String>(_problems);
+        _problems.clear();
+        return result;
+    }
+
+    /**
+     * drop the foreign keys and non-unique indexes of the table. The current transaction is committed first, and each drop is
+     * committed, so that a failing drop does not roll back anything else.
+     *
+     * @param tableName
+     *            the name of the table as in the dump, optionally with schema.
+     * @return the number of indexes and foreign keys dropped.
+     */
+    public int prepareTable(final Connection conn, final String tableName) throws SQLException, IOException {
+        final int dot = tableName.lastIndexOf('.');
+        final String schema = dot > 0 ? tableName.substring(0, dot) : null;
+        final String table = dot > 0 ? tableName.substring(dot + 1) : tableName;
+        final DatabaseMetaData meta = conn.getMetaData();
+        final String product = String.valueOf(meta.getDatabaseProductName()).toLowerCase();
+        final boolean mysql = product.indexOf("mysql") >= 0 || product.indexOf("mariadb") >= 0;
+        final boolean dropIndexOnTable = mysql || product.indexOf("sql server") >= 0;
+
+        // drop statement -> statement to recreate it.
+        final Map<String, String> foreignKeys = readForeignKeys(conn, meta, schema, table, tableName, mysql);
+        final List<String> kept = new ArrayList<String>();
+        final PreparedStatement definitions = prepareIndexDefinitions(conn, product);
+        final Map<String, String> indexes;
+        try {
+            indexes = readIndexes(conn, meta, schema, table, tableName, dropIndexOnTable, definitions, kept);
+        } finally {
+            if (definitions != null) {
+                definitions.close();
+            }
+        }
+        synchronized (this) {
+            for (final String problem : kept) {
+                _problems.add(problem);
+            }
+        }
+        if (foreignKeys.isEmpty() && indexes.isEmpty()) {
+            return 0;
+        }
+        synchronized (this) {
+            _foreignKeys.addAll(foreignKeys.values());
+            _indexes.addAll(indexes.values());
+            write();
+        }
+        conn.commit();
+        int dropped = drop(conn, foreignKeys, _foreignKeys);
+        dropped += drop(conn, indexes, _indexes);
+        return dropped;
+    }
+
+    private int drop(final Connection conn, final Map<String, String> statements, final List<String> pending)
+            throws IOException {
+        int dropped = 0;
+        for (final Map.Entry<String, String> entry : statements.entrySet()) {
+            try {
+                execute(conn, entry.getKey());
+                ++dropped;
+            } catch (final SQLException e) {
+                synchronized (this) {
+                    _problems.add(entry.getKey() + ": " + e.getMessage());
+                    pending.remove(entry.getValue()); // still there; nothing to restore.
+                    write();
+                }
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * recreate the dropped indexes, and then the foreign keys, spread over the given connections.
+     *
+     * @return the number of indexes and foreign keys recreated.
+     */
+    public int restore(final List<Connection> connections) throws IOException, InterruptedException {
+        final int restored = restore(connections, _indexes) + restore(connections, _foreignKeys);
+        synchronized (this) {
+            if (getPendingCount() == 0) {
+                _file.delete();
+            }
+        }
+        return restored;
+    }
+
+    private int restore(final List<Connection> connections, final List<String> pending) throws IOException,
+            InterruptedException {
+        final ConcurrentLinkedQueue<String> queue;
+        synchronized (this) {
+            queue = new ConcurrentLinkedQueue<String>(pending);
+        }
+        if (queue.isEmpty()) {
+            return 0;
+        }
+        final int threads = Math.min(connections.size(), queue.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < threads; ++i) {
+                final Connection conn = connections.get(i);
+                results.add(executor.submit(new Callable<Integer>() {
+
+                    @Override
+                    public Integer call() throws IOException {
+                        int done = 0;
+                        String sql;
+                        while (!Thread.currentThread().isInterrupted() && (sql = queue.poll()) != null) {
+                            try {
+                                execute(conn, sql);
+                                ++done;
+                                synchronized (FastLoad.this) {
+                                    pending.remove(sql);
+                                    write();
+                                }
+                            } catch (final SQLException e) {
+                                synchronized (FastLoad.this) {
+                                    _problems.add(sql + ": " + e.getMessage());
+                                }
+                            }
+                        }
+                        return Integer.valueOf(done);
+                    }
+                }));
+            }
+            int restored = 0;
+            for (final Future<Integer> result : results) {
+                try {
+                    restored += result.get().intValue();
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+            return restored;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * execute a DDL statement in its own transaction.
+     */
+    private static void execute(final Connection conn, final String sql) throws SQLException {
+        final Statement stmt = conn.createStatement();
+        try {
+            stmt.execute(sql);
+            if (!conn.getAutoCommit()) {
+                conn.commit();
+            }
+        } catch (final SQLException e) {
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+            }
+            throw e;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private static Map<String, String> readForeignKeys(final Connection conn, final DatabaseMetaData meta,
+            final String schema, final String table, final String tableName, final boolean mysql) throws SQLException {
+        // name -> (key sequence -> column pair)
+        final Map<String, SortedMap<Integer, String[]>> columns = new LinkedHashMap<String, SortedMap<Integer, String[]>>();
+        final Map<String, String> references = new LinkedHashMap<String, String>();
+        final Map<String, String> rules = new LinkedHashMap<String, String>();
+        final ResultSet rset = meta.getImportedKeys(conn.getCatalog(), schema, table);
+        if (rset == null) {
+            return new LinkedHashMap<String, String>();
+        }
+        try {
+            while (rset.next()) {
+                final String name = rset.getString(FK_FK_NAME);
+                if (name == null) {
+                    continue; // cannot be dropped by name.
+                }
+                SortedMap<Integer, String[]> keyColumns = columns.get(name);
+                if (keyColumns == null) {
+                    keyColumns = new TreeMap<Integer, String[]>();
+                    columns.put(name, keyColumns);
+                    final String pkSchema = rset.getString(FK_PKTABLE_SCHEM);
+                    final String fkSchema = rset.getString(FK_FKTABLE_SCHEM);
+                    final String pkTable = rset.getString(FK_PKTABLE_NAME);
+                    references.put(name, pkSchema != null && !pkSchema.equals(fkSchema) ? pkSchema + "." + pkTable
+                            : pkTable);
+                    rules.put(name, rule(" ON DELETE", rset.getShort(FK_DELETE_RULE))
+                            + rule(" ON UPDATE", rset.getShort(FK_UPDATE_RULE))
+                            + deferrability(rset.getShort(FK_DEFERRABILITY)));
+                }
+                keyColumns.put(Integer.valueOf(rset.getShort(FK_KEY_SEQ)), new String[] { rset.getString(FK_FKCOLUMN_NAME),
+                        rset.getString(FK_PKCOLUMN_NAME) });
+            }
+        } finally {
+            rset.close();
+        }
+        final Map<String, String> result = new LinkedHashMap<String, String>();
+        for (final Map.Entry<String, SortedMap<Integer, String[]>> entry : columns.entrySet()) {
+            final String name = entry.getKey();
+            final StringBuilder fkColumns = new StringBuilder();
+            final StringBuilder pkColumns = new StringBuilder();
+            for (final Iterator<String[]> it = entry.getValue().values().iterator(); it.hasNext();) {
+                final String[] pair = it.next();
+                fkColumns.append(pair[0]);
+                pkColumns.append(pair[1]);
+                if (it.hasNext()) {
+                    fkColumns.append(", ");
+                    pkColumns.append(", ");
+                }
+            }
+            final String drop = "ALTER TABLE " + tableName + (mysql ? " DROP FOREIGN KEY " : " DROP CONSTRAINT ") + name;
+            result.put(drop, "ALTER TABLE " + tableName + " ADD CONSTRAINT " + name + " FOREIGN KEY (" + fkColumns
+                    + ") REFERENCES " + references.get(name) + " (" + pkColumns + ")" + rules.get(name));
+        }
+        return result;
+    }
+
+    private static String rule(final String action, final short rule) {
+        switch (rule) {
+            case DatabaseMetaData.importedKeyCascade:
+                return action + " CASCADE";
+
+            case DatabaseMetaData.importedKeySetNull:
+                return action + " SET NULL";
+
+            case DatabaseMetaData.importedKeySetDefault:
+                return action + " SET DEFAULT";
+
+            default:
+                return ""; // no action/restrict; the default everywhere.
+        }
+    }
+
+    private static String deferrability(final short deferrability) {
+        switch (deferrability) {
+            case DatabaseMetaData.importedKeyInitiallyDeferred:
+                return " DEFERRABLE INITIALLY DEFERRED";
+
+            case DatabaseMetaData.importedKeyInitiallyImmediate:
+                return " DEFERRABLE INITIALLY IMMEDIATE";
+
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * @return the query for the statement, that creates an index given by name and schema, or <code>null</code> if the
+     *         database does not tell.
+     */
+    private static PreparedStatement prepareIndexDefinitions(final Connection conn, final String product)
+            throws SQLException {
+        if (product.indexOf("postgres") >= 0) {
+            return conn.prepareStatement("SELECT pg_get_indexdef(c.oid) FROM pg_class c"
+                    + " JOIN pg_namespace n ON n.oid = c.relnamespace WHERE c.relname = ? AND n.nspname = ?");
+        }
+        if (product.indexOf("oracle") >= 0) {
+            return conn.prepareStatement("SELECT DBMS_METADATA.GET_DDL('INDEX', ?, ?) FROM DUAL");
+        }
+        return null;
+    }
+
+    /**
+     * read the non-unique indexes of the table. If the database does not tell the statements, that create them, only those
+     * indexes are read, that can be recreated from the meta data: partial indexes, indexes on expressions, indexes without sort
+     * order and clustered or hashed indexes cannot, so they are kept.
+     *
+     * @param definitions
+     *            the query for the statement, that creates an index, or <code>null</code>.
+     * @param kept
+     *            the reasons the indexes, that are kept, are added to.
+     */
+    private static Map<String, String> readIndexes(final Connection conn, final DatabaseMetaData meta, final String schema,
+            final String table, final String tableName, final boolean dropIndexOnTable, final PreparedStatement definitions,
+            final List<String> kept) throws SQLException {
+        // name -> schema of the index
+        final Map<String, String> names = new LinkedHashMap<String, String>();
+        // name -> (position -> column)
+        final Map<String, SortedMap<Integer, String>> columns = new LinkedHashMap<String, SortedMap<Integer, String>>();
+        // name -> why it cannot be recreated
+        final Map<String, String> keptIndexes = new LinkedHashMap<String, String>();
+        final ResultSet rset = meta.getIndexInfo(conn.getCatalog(), schema, table, false, true);
+        if (rset == null) {
+            return new LinkedHashMap<String, String>();
+        }
+        try {
+            while (rset.next()) {
+                final String name = rset.getString(IDX_INDEX_NAME);
+                if (name == null || rset.getShort(IDX_TYPE) == DatabaseMetaData.tableIndexStatistic
+                        || !rset.getBoolean(IDX_NON_UNIQUE)) {
+                    continue;
+                }
+                if (!names.containsKey(name)) {
+                    names.put(name, rset.getString(IDX_TABLE_SCHEM));
+                }
+                if (definitions != null) {
+                    continue; // the database tells how to recreate it.
+                }
+                final String reason = getKeepReason(rset);
+                if (reason != null) {
+                    if (!keptIndexes.containsKey(name)) {
+                        keptIndexes.put(name, reason);
+                    }
+                    continue;
+                }
+                final String column = rset.getString(IDX_COLUMN_NAME);
+                SortedMap<Integer, String> indexColumns = columns.get(name);
+                if (indexColumns == null) {
+                    indexColumns = new TreeMap<Integer, String>();
+                    columns.put(name, indexColumns);
+                }
+                indexColumns.put(Integer.valueOf(rset.getShort(IDX_ORDINAL_POSITION)),
+                        "D".equals(rset.getString(IDX_ASC_OR_DESC)) ? column + " DESC" : column);
+            }
+        } finally {
+            rset.close();
+        }
+        final Map<String, String> result = new LinkedHashMap<String, String>();
+        for (final Map.Entry<String, String> entry : names.entrySet()) {
+            final String name = entry.getKey();
+            final String create;
+            if (definitions != null) {
+                try {
+                    create = readIndexDefinition(definitions, name, entry.getValue());
+                } catch (final SQLException e) {
+                    keptIndexes.put(name, "definition not available: " + e.getMessage());
+                    continue;
+                }
+                if (create == null) {
+                    keptIndexes.put(name, "definition not found");
+                    continue;
+                }
+            } else {
+                if (keptIndexes.containsKey(name)) {
+                    continue;
+                }
+                final StringBuilder indexColumns = new StringBuilder();
+                for (final Iterator<String> it = columns.get(name).values().iterator(); it.hasNext();) {
+                    indexColumns.append(it.next());
+                    if (it.hasNext()) {
+                        indexColumns.append(", ");
+                    }
+                }
+                create = "CREATE INDEX " + name + " ON " + tableName + " (" + indexColumns + ")";
+            }
+            final String drop = dropIndexOnTable ? "DROP INDEX " + name + " ON " + tableName : "DROP INDEX "
+                    + (schema != null ? schema + "." : "") + name;
+            result.put(drop, create);
+        }
+        for (final Map.Entry<String, String> entry : keptIndexes.entrySet()) {
+            kept.add("index " + entry.getKey() + " of " + tableName + " kept: " + entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * @return the statement, that creates the index, on a single line as needed by the restore file; or <code>null</code> if
+     *         the index is not found.
+     */
+    private static String readIndexDefinition(final PreparedStatement definitions, final String name, final String schema)
+            throws SQLException {
+        definitions.setString(1, name);
+        definitions.setString(2, schema);
+        final ResultSet rset = definitions.executeQuery();
+        try {
+            final String create = rset.next() ? rset.getString(1) : null;
+            // oracle spreads the storage clauses over several lines.
+            return create != null ? create.trim().replaceAll("\\s*[\\r\\n]\\s*", " ") : null;
+        } finally {
+            rset.close();
+        }
+    }
+
+    /**
+     * @return why the index of the current row cannot be recreated from the meta data, or <code>null</code> if it can.
+     */
+    private static String getKeepReason(final ResultSet rset) throws SQLException {
+        final String filter = rset.getString(IDX_FILTER_CONDITION);
+        if (filter != null && filter.length() > 0) {
+            return "partial index (" + filter + ")";
+        }
+        final short type = rset.getShort(IDX_TYPE);
+        if (type == DatabaseMetaData.tableIndexClustered) {
+            return "clustered index";
+        }
+        if (type == DatabaseMetaData.tableIndexHashed) {
+            return "hashed index";
+        }
+        if (rset.getString(IDX_ASC_OR_DESC) == null) {
+            // e.g. full text indexes of MySQL; CREATE INDEX would create a B-tree instead.
+            return "index without sort order";
+        }
+        final String column = rset.getString(IDX_COLUMN_NAME);
+        // oracle names the columns of function based indexes SYS_NC...$, postgres reports the expression.
+        if (column == null || column.length() == 0 || column.startsWith("SYS_NC") && column.endsWith("$")
+                || column.indexOf('(') >= 0) {
+            return "index on an expression";
+        }
+        return null;
+    }
+
+    private void read() throws IOException {
+        final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(_file), ENCODING));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("--")) {
+                    continue;
+                }
+                if (line.endsWith(";")) {
+                    line = line.substring(0, line.length() - 1);
+                }
+                // indexes are created as the database tells, e.g. CREATE BITMAP INDEX.
+                if (line.startsWith("ALTER TABLE")) {
+                    _foreignKeys.add(line);
+                } else {
+                    _indexes.add(line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * write the pending statements, indexes first, like {@link DumpCheckpoint#write(File)} via a temporary file.
+     */
+    private void write() throws IOException {
+        final File tmpFile = new File(_file.getPath() + ".tmp");
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), ENCODING));
+        try {
+            out.println("-- indexes and foreign keys dropped by dump-in -fast-load; they are recreated");
+            out.println("-- when the load is finished. If it has been interrupted, load this file or");
+            out.println("-- resume the dump-in with -fast-load.");
+            for (final String sql : _indexes) {
+                out.println(sql + ";");
+            }
+            for (final String sql : _foreignKeys) {
+                out.println(sql + ";");
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("writing " + tmpFile + " failed");
+        }
+        if (!tmpFile.renameTo(_file) && !(_file.delete() && tmpFile.renameTo(_file))) {
+            throw new IOException("cannot rename " + tmpFile + " to " + _file);
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,73 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Counts the bytes written to a dump and builds its {@link DumpIndex}. It is placed on top of the compression, so that the
+ * positions refer to the uncompressed dump.
+ */
+public final class IndexingOutputStream extends FilterOutputStream {
+
+    private final DumpIndex _index;
+    private final CRC32 _crc;
+    private long _count;
+    private String _tableName;
+    private long _tableOffset;
+
+    public IndexingOutputStream(final OutputStream out) {
+        super(out);
+        _index = new DumpIndex();
+        _crc = new CRC32();
+        _count = 0;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        _crc.update(b);
+        ++_count;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        _crc.update(b, off, len);
+        _count += len;
+    }
+
+    /**
+     * the dump of the given table starts with the next byte written.
+     */
+    public void beginTable(final String tableName) {
+        _tableName = tableName;
+        _tableOffset = _count;
+        _crc.reset();
+    }
+
+    /**
+     * the dump of the current table is complete.
+     */
+    public void endTable(final long rows) {
+        if (_tableName == null) {
+            throw new IllegalStateException("no table started");
+        }
+        _index.add(new DumpIndex.Entry(_tableName, _tableOffset, _count - _tableOffset, rows, _crc.getValue()));
+        _tableName = null;
+    }
+
+    public DumpIndex getIndex() {
+        return _index;
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,297 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.IOException;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+
+/**
+ * Collects the rows read from a dump and inserts them in JDBC batches, which saves a round trip to the database for each row.
+ * The values of the rows are kept column by column until the batch is executed. If a batch fails and the driver does not
+ * tell which rows failed, the batch is split in halves, that are executed again, until the failing rows are found; so a few
+ * bad rows cost a few more round trips instead of inserting the whole batch row by row. The failing rows are passed to the
+ * {@link Listener}, that reports them as without batches and writes them to the reject file, if there is one.
+ * <p>
+ * Within a transaction, each batch is executed after a savepoint, that the batch is rolled back to before its rows are
+ * retried: drivers differ in what remains of a failed batch (Oracle reports all rows as failed, PostgreSQL aborts the
+ * transaction). Without savepoints, only the rows the driver reports as not executed are retried.
+ */
+public final class InsertBatch {
+
+    /**
+     * Is told about the rows, that the database rejected, and the time spent inserting.
+     */
+    public interface Listener {
+
+        /**
+         * a row has been rejected by the database; the import goes on with the next row.
+         *
+         * @param columns
+         *            the values of the rejected row.
+         * @param msg
+         *            the message of the database.
+         */
+        void rejected(ColumnBuffer[] columns, int row, String msg) throws IOException;
+
+        /**
+         * the collected rows have been executed in the given time.
+         */
+        void executed(long nanos);
+    }
+
+    private final PreparedStatement _stmt;
+    private final Listener _listener;
+    private ColumnBuffer[] _columns;
+    private final int _size;
+    private int _count;
+    private int _offset;
+    private long _problemRows;
+    private final boolean _savepoints;
+
+    public InsertBatch(final PreparedStatement stmt, final MetaProperty[] metaProperty, final int batchSize,
+            final Listener listener) {
+        _stmt = stmt;
+        _listener = listener;
+        _savepoints = useSavepoints(stmt);
+        _size = Math.max(batchSize, 1);
+        _columns = ColumnBuffer.create(metaProperty, _size);
+        _count = 0;
+        _offset = 0;
+        _problemRows = 0;
+    }
+
+    /**
+     * @return if the rows of a failed batch can be rolled back to a savepoint before they are retried.
+     */
+    public static boolean useSavepoints(final Statement stmt) {
+        try {
+            final Connection conn = stmt.getConnection();
+            return !conn.getAutoCommit() && conn.getMetaData().supportsSavepoints();
+        } catch (final SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * read the value of the given column of the current row.
+     */
+    public void readValue(final int column, final DumpLexer in) throws IOException {
+        _columns[column].read(in, _count);
+    }
+
+    /**
+     * add the row read with {@link #readValue(int, DumpLexer)} to the batch; executes the batch if it is full.
+     */
+    public void addRow() throws SQLException {
+        ++_count;
+        if (_count == _size) {
+            execute();
+        }
+    }
+
+    /**
+     * insert the rows of a decoded block of a binary dump; they are bound directly from the column buffers of the block.
+     *
+     * @param first
+     *            the first row of the block to insert.
+     */
+    public void addRows(final ColumnBuffer[] columns, final int first, final int rows) throws SQLException {
+        execute();
+        final ColumnBuffer[] own = _columns;
+        _columns = columns;
+        try {
+            for (int start = first; start < rows; start += _size) {
+                _offset = start;
+                _count = Math.min(_size, rows - start);
+                execute();
+            }
+        } finally {
+            _columns = own;
+            _offset = 0;
+            _count = 0;
+        }
+    }
+
+    /**
+     * execute the rows collected so far.
+     */
+    public void execute() throws SQLException {
+        if (_count == 0) {
+            return;
+        }
+        final long start = System.nanoTime();
+        if (_size == 1) {
+            executeSingle(0, false);
+        } else {
+            executeBatch(0, _count);
+        }
+        _listener.executed(System.nanoTime() - start);
+        release(_offset, _count);
+        _count = 0;
+    }
+
+    /**
+     * execute the given rows as batch and isolate the rows that fail.
+     */
+    private void executeBatch(final int first, final int count) throws SQLException {
+        if (count == 1) {
+            executeSingle(first, true);
+            return;
+        }
+        final Savepoint savepoint = setSavepoint();
+        int[] updateCounts;
+        try {
+            for (int i = first; i < first + count; ++i) {
+                bind(i);
+                _stmt.addBatch();
+            }
+            _stmt.executeBatch();
+            releaseSavepoint(savepoint);
+            return;
+        } catch (final BatchUpdateException e) {
+            updateCounts = e.getUpdateCounts();
+            if (savepoint != null) {
+                _stmt.getConnection().rollback(savepoint);
+            } else if (!isReported(updateCounts, count)) {
+                // some rows may have been inserted, but which? Retrying could insert them twice.
+                throw new SQLException("batch insert failed; the driver does not tell which rows have been inserted."
+                        + " Use a transaction or a batch size of 1 to find the failing rows: " + e.getMessage());
+            }
+        } finally {
+            _stmt.clearBatch();
+        }
+        // after a rollback, no counts are bisected too: PostgreSQL does not report any, even if not the first row failed.
+        if (!isReported(updateCounts, count) || savepoint != null && updateCounts.length == 0) {
+            final int half = count / 2;
+            executeBatch(first, half);
+            executeBatch(first + half, count - half);
+        } else if (updateCounts.length == count) {
+            // the driver continued after the failed rows: the rows between them are executed as batches.
+            int start = 0;
+            for (int i = 0; i <= count; ++i) {
+                if (i == count || updateCounts[i] == Statement.EXECUTE_FAILED) {
+                    if (savepoint != null && i > start) {
+                        executeBatch(first + start, i - start);
+                    }
+                    if (i < count) {
+                        executeSingle(first + i, true);
+                    }
+                    start = i + 1;
+                }
+            }
+        } else {
+            // the driver stopped at the first failed row.
+            final int failed = first + updateCounts.length;
+            if (savepoint != null && updateCounts.length > 0) {
+                executeBatch(first, updateCounts.length);
+            }
+            executeSingle(failed, true);
+            if (failed + 1 < first + count) {
+                executeBatch(failed + 1, first + count - failed - 1);
+            }
+        }
+    }
+
+    /**
+     * @return if the update counts of a failed batch tell which rows failed. Some drivers report all rows as failed. Fewer
+     *         counts than rows are those of the rows before the first failed row.
+     */
+    static boolean isReported(final int[] updateCounts, final int count) {
+        if (updateCounts == null || updateCounts.length > count) {
+            return false;
+        }
+        if (updateCounts.length < count) {
+            return true;
+        }
+        for (int i = 0; i < count; ++i) {
+            if (updateCounts[i] != Statement.EXECUTE_FAILED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a savepoint to roll a failing statement back to, or <code>null</code> if not within a transaction or the driver
+     *         does not support savepoints.
+     */
+    private Savepoint setSavepoint() throws SQLException {
+        return _savepoints ? _stmt.getConnection().setSavepoint() : null;
+    }
+
+    private void releaseSavepoint(final Savepoint savepoint) {
+        if (savepoint == null) {
+            return;
+        }
+        try {
+            _stmt.getConnection().releaseSavepoint(savepoint);
+        } catch (final SQLException e) {
+            // oracle does not release savepoints; they end with the transaction.
+        }
+    }
+
+    /**
+     * release the values of the rows, that have not been executed; called, if the import fails.
+     */
+    public void discard() {
+        release(0, _count);
+        _count = 0;
+    }
+
+    private void release(final int first, final int count) {
+        for (int i = 0; i < _columns.length; ++i) {
+            _columns[i].release(first, count);
+        }
+    }
+
+    public long getProblemRows() {
+        return _problemRows;
+    }
+
+    /**
+     * @param guarded
+     *            execute the row after a savepoint, so that the transaction can go on if it fails; used while retrying the
+     *            rows of a failed batch.
+     */
+    private void executeSingle(final int row, final boolean guarded) throws SQLException {
+        bind(row);
+        final Savepoint savepoint = guarded ? setSavepoint() : null;
+        try {
+            _stmt.execute();
+            releaseSavepoint(savepoint);
+        } catch (final SQLException e) {
+            if (savepoint != null) {
+                _stmt.getConnection().rollback(savepoint);
+            }
+            String msg = e.getMessage();
+            // oracle adds CR for some reason.
+            if (msg != null) {
+                msg = msg.trim();
+            }
+            ++_problemRows;
+            try {
+                _listener.rejected(_columns, _offset + row, msg);
+            } catch (final IOException io) {
+                throw new SQLException("cannot write reject file: " + io.getMessage());
+            }
+        }
+    }
+
+    private void bind(final int row) throws SQLException {
+        for (int i = 0; i < _columns.length; ++i) {
+            _columns[i].bind(_stmt, _offset + row);
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
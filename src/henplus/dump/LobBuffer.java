@@ -0,0 +1,177 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Holds a BLOB or CLOB value read from a dump until it is inserted. Small values are kept in memory; as soon as a value
+ * exceeds {@link #MEMORY_LIMIT} bytes, it is spilled to a temporary file, so that the heap used does not depend on the size
+ * of the LOBs. Characters are stored as UTF-16, so that the length of a CLOB is known without decoding it again.
+ * <p>
+ * The buffer is filled with {@link #getOutputStream()} or {@link #getWriter()} and then read with {@link #openStream()} or
+ * {@link #openReader()}; it can be read more than once (e.g. if a batch is retried row by row). {@link #dispose()} must be
+ * called when the value is not needed anymore.
+ */
+public final class LobBuffer {
+
+    /** values up to this size are kept in memory. */
+    public static final int MEMORY_LIMIT = 32 * 1024;
+
+    private static final String CHAR_ENCODING = "UTF-16BE";
+
+    private byte[] _memory;
+    private int _memoryLength;
+    private File _file;
+    private OutputStream _fileOut;
+    private long _length;
+    private InputStream _openStream;
+
+    public LobBuffer() {
+        _memory = new byte[256];
+        _memoryLength = 0;
+        _length = 0;
+    }
+
+    /**
+     * @return the stream to write the bytes of the value to; it must be closed after the value is written.
+     */
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+
+            @Override
+            public void write(final int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                append(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                finishWriting();
+            }
+        };
+    }
+
+    /**
+     * @return the writer to write the characters of the value to; it must be closed after the value is written.
+     */
+    public Writer getWriter() throws IOException {
+        return new OutputStreamWriter(getOutputStream(), CHAR_ENCODING);
+    }
+
+    /**
+     * @return the length of the value in bytes.
+     */
+    public long length() {
+        return _length;
+    }
+
+    /**
+     * @return the length of a value written with {@link #getWriter()} in characters.
+     */
+    public long charLength() {
+        return _length / 2;
+    }
+
+    /**
+     * open a stream to read the value from the beginning; a stream opened before is closed.
+     */
+    public InputStream openStream() throws IOException {
+        closeStream();
+        if (_file == null) {
+            _openStream = new ByteArrayInputStream(_memory, 0, _memoryLength);
+        } else {
+            _openStream = new BufferedInputStream(new FileInputStream(_file));
+        }
+        return _openStream;
+    }
+
+    /**
+     * open a reader to read a value written with {@link #getWriter()} from the beginning.
+     */
+    public Reader openReader() throws IOException {
+        return new InputStreamReader(openStream(), CHAR_ENCODING);
+    }
+
+    /**
+     * release the memory and delete the temporary file.
+     */
+    public void dispose() {
+        closeStream();
+        if (_fileOut != null) {
+            try {
+                _fileOut.close();
+            } catch (final IOException e) {
+            }
+            _fileOut = null;
+        }
+        if (_file != null) {
+            _file.delete();
+            _file = null;
+        }
+        _memory = null;
+    }
+
+    private void append(final byte[] b, final int off, final int len) throws IOException {
+        if (_file == null && _memoryLength + len > MEMORY_LIMIT) {
+            _file = File.createTempFile("henplus-lob", ".tmp");
+            _fileOut = new BufferedOutputStream(new FileOutputStream(_file));
+            _fileOut.write(_memory, 0, _memoryLength);
+            _memory = null;
+            _memoryLength = 0;
+        }
+        if (_file != null) {
+            _fileOut.write(b, off, len);
+        } else {
+            if (_memoryLength + len > _memory.length) {
+                final byte[] memory = new byte[Math.min(MEMORY_LIMIT, Math.max(_memoryLength + len, 2 * _memory.length))];
+                System.arraycopy(_memory, 0, memory, 0, _memoryLength);
+                _memory = memory;
+            }
+            System.arraycopy(b, off, _memory, _memoryLength, len);
+            _memoryLength += len;
+        }
+        _length += len;
+    }
+
+    private void finishWriting() throws IOException {
+        if (_fileOut != null) {
+            final OutputStream out = _fileOut;
+            _fileOut = null;
+            out.close();
+        }
+    }
+
+    private void closeStream() {
+        if (_openStream != null) {
+            try {
+                _openStream.close();
+            } catch (final IOException e) {
+            }
+            _openStream = null;
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,171 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Name and type of a column of a dump. The dump differentiates fewer types than JDBC; the JDBC types are mapped to them, see
+ * {@link #isSupported(int)}.
+ */
+public class MetaProperty {
+
+    // differentiated types by dump
+    public static final int HP_STRING = 0;
+    public static final int HP_INTEGER = 1;
+    public static final int HP_NUMERIC = 2;
+    public static final int HP_DOUBLE = 3;
+    public static final int HP_DATE = 4;
+    public static final int HP_TIME = 5;
+    public static final int HP_TIMESTAMP = 6;
+    public static final int HP_BLOB = 7;
+    public static final int HP_CLOB = 8;
+
+    private static final String[] TYPES = new String[9];
+    private static final Map<Integer, String> JDBCTYPE2TYPENAME = new HashMap<Integer, String>();
+
+    static {
+        TYPES[HP_STRING] = "STRING";
+        TYPES[HP_INTEGER] = "INTEGER";
+        TYPES[HP_NUMERIC] = "NUMERIC";
+        TYPES[HP_DOUBLE] = "DOUBLE";
+        TYPES[HP_DATE] = "DATE";
+        TYPES[HP_TIME] = "TIME";
+        TYPES[HP_TIMESTAMP] = "TIMESTAMP";
+        TYPES[HP_BLOB] = "BLOB";
+        TYPES[HP_CLOB] = "CLOB";
+
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.CHAR)), TYPES[HP_STRING]);
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.VARCHAR)), TYPES[HP_STRING]);
+
+        // hope that, 'OTHER' can be read/written as String..
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.OTHER)), TYPES[HP_STRING]);
+
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.LONGVARBINARY)), TYPES[HP_BLOB]);
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.LONGVARCHAR)), TYPES[HP_STRING]);
+
+        // LOBs are streamed, see ColumnWriter.
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.BLOB)), TYPES[HP_BLOB]);
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.CLOB)), TYPES[HP_CLOB]);
+
+        // generic float.
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.DOUBLE)), TYPES[HP_DOUBLE]);
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.FLOAT)), TYPES[HP_DOUBLE]);
+
+        // generic numeric. could be integer or double
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.BIGINT)), TYPES[HP_NUMERIC]);
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.NUMERIC)), TYPES[HP_NUMERIC]);
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.DECIMAL)), TYPES[HP_NUMERIC]);
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.BOOLEAN)), TYPES[HP_NUMERIC]);
+        // generic integer.
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.INTEGER)), TYPES[HP_INTEGER]);
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.SMALLINT)), TYPES[HP_INTEGER]);
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.TINYINT)), TYPES[HP_INTEGER]);
+
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.DATE)), TYPES[HP_DATE]);
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.TIME)), TYPES[HP_TIME]);
+        JDBCTYPE2TYPENAME.put(Integer.valueOf((Types.TIMESTAMP)), TYPES[HP_TIMESTAMP]);
+    }
+
+    private long _maxLen;
+    public final String fieldName;
+    public int type;
+    public String typeName;
+
+    public MetaProperty(final String fieldName) {
+        this.fieldName = fieldName;
+        _maxLen = -1;
+    }
+
+    /**
+     * @param jdbcType
+     *            the JDBC type of the column; types that are not supported are dumped as String.
+     */
+    public MetaProperty(final String fieldName, final int jdbcType) {
+        this.fieldName = fieldName;
+        this.typeName = JDBCTYPE2TYPENAME.get(Integer.valueOf(jdbcType));
+        if (this.typeName == null) {
+            this.type = HP_STRING;
+            this.typeName = TYPES[this.type];
+        } else {
+            this.type = findType(typeName);
+        }
+        _maxLen = -1;
+    }
+
+    /**
+     * @return true, if the dump has a type for the given JDBC type.
+     */
+    public static boolean isSupported(final int jdbcType) {
+        return JDBCTYPE2TYPENAME.containsKey(Integer.valueOf(jdbcType));
+    }
+
+    /**
+     * @return the name of the given dump type, as written to the dump.
+     */
+    public static String typeName(final int type) {
+        return TYPES[type];
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public void setTypeName(final String typeName) {
+        this.type = findType(typeName);
+        this.typeName = typeName;
+    }
+
+    public void updateMaxLength(final String val) {
+        if (val != null) {
+            updateMaxLength(val.length());
+        }
+    }
+
+    public void updateMaxLength(final long maxLen) {
+        if (maxLen > _maxLen) {
+            _maxLen = maxLen;
+        }
+    }
+
+    public long getMaxLength() {
+        return _maxLen;
+    }
+
+    /**
+     * find the type in the array. uses linear search, but this is only a small list.
+     */
+    private int findType(String typeNameArg) {
+        if (typeNameArg == null) {
+            throw new IllegalArgumentException("empty type ?");
+        }
+        typeNameArg = typeNameArg.toUpperCase();
+        for (int i = 0; i < TYPES.length; ++i) {
+            if (TYPES[i].equals(typeNameArg)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("invalid type " + typeNameArg);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int renderWidth() {
+        return Math.max(typeName.length(), fieldName.length());
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
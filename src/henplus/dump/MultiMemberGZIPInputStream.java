@@ -0,0 +1,183 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a gzip file, that may consist of several members, like the ones written by {@link ParallelGZIPOutputStream} (the
+ * GZIPInputStream of older JDKs stops after the first member). The compressed input is read in large blocks.
+ */
+public final class MultiMemberGZIPInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final InputStream _in;
+    private final byte[] _buffer;
+    private int _pos;
+    private int _limit;
+    private final Inflater _inflater;
+    private final CRC32 _crc;
+    private boolean _inMember;
+    private boolean _eof;
+    private final byte[] _single;
+
+    public MultiMemberGZIPInputStream(final InputStream in) throws IOException {
+        _in = in;
+        _buffer = new byte[BUFFER_SIZE];
+        _pos = 0;
+        _limit = 0;
+        _inflater = new Inflater(true);
+        _crc = new CRC32();
+        _single = new byte[1];
+        _eof = false;
+        if (!readHeader()) {
+            throw new EOFException("empty gzip file");
+        }
+        _inMember = true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(_single, 0, 1) < 0 ? -1 : _single[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (!_eof) {
+            if (!_inMember) {
+                if (!readHeader()) {
+                    _eof = true;
+                    break;
+                }
+                _inMember = true;
+            }
+            final int n;
+            try {
+                n = _inflater.inflate(b, off, len);
+            } catch (final DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+            if (n > 0) {
+                _crc.update(b, off, n);
+                return n;
+            }
+            if (_inflater.finished()) {
+                _pos = _limit - _inflater.getRemaining();
+                readTrailer();
+                _inMember = false;
+            } else if (_inflater.needsDictionary()) {
+                throw new ZipException("unexpected preset dictionary");
+            } else if (_inflater.needsInput()) {
+                if (!fill()) {
+                    throw new EOFException("unexpected end of gzip file");
+                }
+                _inflater.setInput(_buffer, _pos, _limit - _pos);
+                _pos = _limit;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _inflater.end();
+        _in.close();
+    }
+
+    /**
+     * read the header of the next member.
+     *
+     * @return false, if there is no further member.
+     */
+    private boolean readHeader() throws IOException {
+        if (_pos == _limit && !fill()) {
+            return false;
+        }
+        if (readByte() != 0x1f || readByte() != 0x8b) {
+            throw new ZipException("not in gzip format");
+        }
+        if (readByte() != 8) {
+            throw new ZipException("unsupported compression method");
+        }
+        final int flags = readByte();
+        skip(6); // mtime, extra flags, os
+        if ((flags & FEXTRA) != 0) {
+            skip(readByte() | readByte() << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            while (readByte() != 0) {
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readByte() != 0) {
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skip(2);
+        }
+        _inflater.reset();
+        _crc.reset();
+        _inflater.setInput(_buffer, _pos, _limit - _pos);
+        _pos = _limit;
+        return true;
+    }
+
+    private void readTrailer() throws IOException {
+        final long crc = readInt() & 0xffffffffL;
+        final long size = readInt() & 0xffffffffL;
+        if (crc != _crc.getValue()) {
+            throw new ZipException("corrupt gzip file: crc mismatch");
+        }
+        if (size != (_inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("corrupt gzip file: size mismatch");
+        }
+    }
+
+    private int readInt() throws IOException {
+        return readByte() | readByte() << 8 | readByte() << 16 | readByte() << 24;
+    }
+
+    private int readByte() throws IOException {
+        if (_pos == _limit && !fill()) {
+            throw new EOFException("unexpected end of gzip file");
+        }
+        return _buffer[_pos++] & 0xff;
+    }
+
+    private void skip(int n) throws IOException {
+        while (n-- > 0) {
+            readByte();
+        }
+    }
+
+    private boolean fill() throws IOException {
+        final int n = _in.read(_buffer, 0, _buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        _pos = 0;
+        _limit = n;
+        return true;
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,236 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip output stream that compresses on several processors. The data is cut into blocks, that are compressed independently
+ * by a pool of threads shared by all streams; each block becomes a complete gzip member and the members are written in order.
+ * A concatenation of gzip members is a valid gzip file (RFC 1952), that is read by gunzip as well as by
+ * {@link MultiMemberGZIPInputStream}.
+ */
+public final class ParallelGZIPOutputStream extends OutputStream {
+
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final int TRAILER_SIZE = 8;
+
+    private static ExecutorService compressors;
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    };
+
+    private final OutputStream _out;
+    private final int _level;
+    private final int _maxPending;
+    private final LinkedList<Future<Member>> _pending;
+    private final List<byte[]> _freeBlocks;
+    private byte[] _block;
+    private int _blockLen;
+    private boolean _written;
+    private boolean _closed;
+
+    public ParallelGZIPOutputStream(final OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ParallelGZIPOutputStream(final OutputStream out, final int level) {
+        _out = out;
+        _level = level;
+        _maxPending = 2 * Runtime.getRuntime().availableProcessors();
+        _pending = new LinkedList<Future<Member>>();
+        _freeBlocks = new ArrayList<byte[]>();
+        _block = new byte[BLOCK_SIZE];
+        _blockLen = 0;
+        _written = false;
+        _closed = false;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (_blockLen == _block.length) {
+            submitBlock();
+        }
+        _block[_blockLen++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (_blockLen == _block.length) {
+                submitBlock();
+            }
+            final int n = Math.min(len, _block.length - _blockLen);
+            System.arraycopy(b, off, _block, _blockLen, n);
+            _blockLen += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * compress the data written so far and write it to the underlying stream. Each flush ends a gzip member, so it should not
+     * be called too often.
+     */
+    @Override
+    public void flush() throws IOException {
+        submitBlock();
+        while (!_pending.isEmpty()) {
+            writeNextMember();
+        }
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        try {
+            if (!_written && _blockLen == 0) {
+                // an empty file is not a valid gzip file; write an empty member.
+                _pending.add(getCompressors().submit(new Compressor(_block, 0, _level)));
+            }
+            flush();
+        } finally {
+            for (final Future<Member> member : _pending) {
+                member.cancel(true);
+            }
+            _out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (_blockLen == 0) {
+            return;
+        }
+        _pending.add(getCompressors().submit(new Compressor(_block, _blockLen, _level)));
+        _written = true;
+        _block = _freeBlocks.isEmpty() ? new byte[BLOCK_SIZE] : _freeBlocks.remove(_freeBlocks.size() - 1);
+        _blockLen = 0;
+        while (_pending.size() > _maxPending) {
+            writeNextMember();
+        }
+    }
+
+    private void writeNextMember() throws IOException {
+        final Member member;
+        try {
+            member = _pending.removeFirst().get();
+        } catch (final InterruptedException e) {
+            throw new InterruptedIOException("compression interrupted");
+        } catch (final ExecutionException e) {
+            final IOException ioe = new IOException("compression failed: " + e.getCause());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+        _out.write(member.data, 0, member.length);
+        _freeBlocks.add(member.block);
+    }
+
+    private static synchronized ExecutorService getCompressors() {
+        if (compressors == null) {
+            compressors = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+                public Thread newThread(final Runnable r) {
+                    final Thread t = new Thread(r, "henplus gzip");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return compressors;
+    }
+
+    /**
+     * A compressed block.
+     */
+    private static final class Member {
+
+        final byte[] block;
+        final byte[] data;
+        final int length;
+
+        Member(final byte[] block, final byte[] data, final int length) {
+            this.block = block;
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Compresses a block into a complete gzip member: header, raw deflate data and trailer with CRC and size.
+     */
+    private static final class Compressor implements Callable<Member> {
+
+        private final byte[] _block;
+        private final int _len;
+        private final int _level;
+
+        Compressor(final byte[] block, final int len, final int level) {
+            _block = block;
+            _len = len;
+            _level = level;
+        }
+
+        public Member call() {
+            final Deflater deflater = DEFLATER.get();
+            deflater.reset();
+            deflater.setLevel(_level);
+            deflater.setInput(_block, 0, _len);
+            deflater.finish();
+            // deflate never expands more than a few bytes per 16K block.
+            byte[] data = new byte[HEADER.length + _len + (_len >> 12) + 64 + TRAILER_SIZE];
+            System.arraycopy(HEADER, 0, data, 0, HEADER.length);
+            int pos = HEADER.length;
+            while (!deflater.finished()) {
+                if (pos == data.length - TRAILER_SIZE) {
+                    final byte[] larger = new byte[data.length * 2];
+                    System.arraycopy(data, 0, larger, 0, pos);
+                    data = larger;
+                }
+                pos += deflater.deflate(data, pos, data.length - TRAILER_SIZE - pos);
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(_block, 0, _len);
+            pos = writeInt(data, pos, (int) crc.getValue());
+            pos = writeInt(data, pos, _len);
+            return new Member(_block, data, pos);
+        }
+
+        private static int writeInt(final byte[] data, int pos, final int value) {
+            data[pos++] = (byte) value;
+            data[pos++] = (byte) (value >> 8);
+            data[pos++] = (byte) (value >> 16);
+            data[pos++] = (byte) (value >> 24);
+            return pos;
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,152 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+/**
+ * A bounded ring of reusable slots that connects exactly one producer thread with exactly one consumer thread. The producer
+ * {@link #claim()}s the next free slot, fills it and {@link #publish()}es it; the consumer {@link #take()}s the next published
+ * slot, processes it and {@link #release()}s it for reuse. If the ring is full, the producer waits for the consumer and vice
+ * versa; as long as both can proceed, passing a slot only needs volatile reads and writes and no lock. A waiting side yields a
+ * few times before it blocks, as a wake-up is expensive compared to passing a single row.
+ */
+public final class RingBuffer<T> {
+
+    /** how often to yield before waiting on the lock; the other side is usually done with a slot very soon. */
+    private static final int SPIN_COUNT = 64;
+
+    private final T[] _slots;
+    private final int _mask;
+    private final Object _lock;
+
+    /** number of slots published by the producer. */
+    private volatile long _published;
+    /** number of slots released by the consumer. */
+    private volatile long _released;
+    private volatile int _waiting;
+    private volatile boolean _closed;
+    private volatile boolean _aborted;
+
+    /**
+     * @param slots
+     *            the reusable slots; the length must be a power of two.
+     */
+    public RingBuffer(final T[] slots) {
+        if (slots.length == 0 || (slots.length & slots.length - 1) != 0) {
+            throw new IllegalArgumentException("number of slots must be a power of two: " + slots.length);
+        }
+        _slots = slots;
+        _mask = slots.length - 1;
+        _lock = new Object();
+        _published = 0;
+        _released = 0;
+        _waiting = 0;
+        _closed = false;
+        _aborted = false;
+    }
+
+    /**
+     * producer: get the next free slot; waits, while the ring is full.
+     *
+     * @return the slot or <code>null</code>, if the consumer aborted.
+     */
+    public T claim() throws InterruptedException {
+        final long published = _published;
+        for (int spin = 0; spin < SPIN_COUNT && published - _released >= _slots.length && !_aborted; ++spin) {
+            Thread.yield();
+        }
+        if (published - _released >= _slots.length) {
+            synchronized (_lock) {
+                ++_waiting;
+                try {
+                    while (published - _released >= _slots.length && !_aborted) {
+                        _lock.wait();
+                    }
+                } finally {
+                    --_waiting;
+                }
+            }
+        }
+        return _aborted ? null : _slots[(int) published & _mask];
+    }
+
+    /**
+     * producer: hand the slot returned by {@link #claim()} to the consumer.
+     */
+    public void publish() {
+        _published = _published + 1;
+        wakeUp();
+    }
+
+    /**
+     * producer: no more slots will be published. The consumer gets the remaining ones.
+     */
+    public void close() {
+        _closed = true;
+        wakeUp();
+    }
+
+    /**
+     * consumer: get the next published slot; waits, while the ring is empty.
+     *
+     * @return the slot or <code>null</code>, if the ring is closed and all slots have been taken or if it has been aborted.
+     */
+    public T take() throws InterruptedException {
+        final long released = _released;
+        for (int spin = 0; spin < SPIN_COUNT && released == _published && !_closed && !_aborted; ++spin) {
+            Thread.yield();
+        }
+        if (released == _published) {
+            synchronized (_lock) {
+                ++_waiting;
+                try {
+                    while (released == _published && !_closed && !_aborted) {
+                        _lock.wait();
+                    }
+                } finally {
+                    --_waiting;
+                }
+            }
+        }
+        if (_aborted || released == _published) {
+            return null;
+        }
+        return _slots[(int) released & _mask];
+    }
+
+    /**
+     * consumer: the slot returned by {@link #take()} may be reused by the producer.
+     */
+    public void release() {
+        _released = _released + 1;
+        wakeUp();
+    }
+
+    /**
+     * either side: stop the other side; claim() and take() return <code>null</code> from now on.
+     */
+    public void abort() {
+        _aborted = true;
+        synchronized (_lock) {
+            _lock.notifyAll();
+        }
+    }
+
+    public boolean isAborted() {
+        return _aborted;
+    }
+
+    private void wakeUp() {
+        if (_waiting > 0) {
+            synchronized (_lock) {
+                _lock.notifyAll();
+            }
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,137 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Estimates the number of rows of a table from the statistics the database keeps for its optimizer, so that the progress of a
+ * dump can be shown without scanning the table with 'select count(*)' first. The statistics are as recent as the last
+ * analyze of the table; they are only used for the progress display.
+ * <p>
+ * For Oracle, PostgreSQL, MySQL and SQL Server the catalog is queried directly; for other databases, the table statistic
+ * reported by {@link DatabaseMetaData#getIndexInfo(String, String, String, boolean, boolean)} is used. The catalog queries do
+ * not fail for unknown tables, so that they do not abort the current transaction on databases like PostgreSQL. Table names are
+ * looked up in the case the database stores them in, so that they are found however they are typed.
+ */
+public final class RowCountEstimator {
+
+    private RowCountEstimator() {
+    }
+
+    /**
+     * @param schema
+     *            the schema of the table or <code>null</code> for the current one.
+     * @return the approximate number of rows of the table or -1, if the database has no statistics for it.
+     */
+    public static long estimate(final Connection conn, final String schema, final String table) {
+        try {
+            final DatabaseMetaData meta = conn.getMetaData();
+            final String product = String.valueOf(meta.getDatabaseProductName()).toLowerCase();
+            final String storedSchema = storedName(meta, schema);
+            final String storedTable = storedName(meta, table);
+            long rows = -1;
+            if (product.indexOf("oracle") >= 0) {
+                rows = schema == null ? query(conn, "SELECT num_rows FROM user_tables WHERE table_name = ?", storedTable)
+                        : query(conn, "SELECT num_rows FROM all_tables WHERE owner = ? AND table_name = ?", storedSchema,
+                                storedTable);
+            } else if (product.indexOf("postgres") >= 0) {
+                rows = schema == null ? query(conn, "SELECT reltuples FROM pg_class"
+                        + " WHERE relname = ? AND relkind = 'r' AND pg_table_is_visible(oid)", storedTable) : query(conn,
+                        "SELECT c.reltuples FROM pg_class c, pg_namespace n"
+                                + " WHERE c.relnamespace = n.oid AND n.nspname = ? AND c.relname = ?", storedSchema,
+                        storedTable);
+            } else if (product.indexOf("mysql") >= 0 || product.indexOf("mariadb") >= 0) {
+                rows = schema == null ? query(conn, "SELECT table_rows FROM information_schema.tables"
+                        + " WHERE table_schema = database() AND table_name = ?", storedTable) : query(conn,
+                        "SELECT table_rows FROM information_schema.tables WHERE table_schema = ? AND table_name = ?",
+                        storedSchema, storedTable);
+            } else if (product.indexOf("sql server") >= 0) {
+                // object_id() resolves the name like the statements do.
+                rows = query(conn, "SELECT sum(rows) FROM sys.partitions WHERE object_id = object_id(?) AND index_id IN (0, 1)",
+                        schema == null ? table : schema + "." + table);
+            }
+            if (rows < 0) {
+                rows = indexStatistic(conn, meta, storedSchema, storedTable);
+            }
+            return rows;
+        } catch (final SQLException e) {
+            return -1; // no statistics then.
+        }
+    }
+
+    /**
+     * @return the name as the catalog stores it: unquoted names are folded to the case the database stores identifiers in,
+     *         e.g. upper case for Oracle and lower case for PostgreSQL; quoted names are taken as they are.
+     */
+    private static String storedName(final DatabaseMetaData meta, final String name) throws SQLException {
+        if (name == null) {
+            return null;
+        }
+        if (name.length() > 1 && name.charAt(0) == '"' && name.charAt(name.length() - 1) == '"') {
+            return name.substring(1, name.length() - 1);
+        }
+        if (meta.storesUpperCaseIdentifiers()) {
+            return name.toUpperCase();
+        }
+        if (meta.storesLowerCaseIdentifiers()) {
+            return name.toLowerCase();
+        }
+        return name;
+    }
+
+    /**
+     * @return the number in the first column of the first row or -1, if there is none.
+     */
+    private static long query(final Connection conn, final String sql, final String... params) throws SQLException {
+        final PreparedStatement stmt = conn.prepareStatement(sql);
+        try {
+            for (int i = 0; i < params.length; ++i) {
+                stmt.setString(i + 1, params[i]);
+            }
+            final ResultSet rset = stmt.executeQuery();
+            try {
+                if (!rset.next()) {
+                    return -1;
+                }
+                // PostgreSQL returns a float; -1 if the table has never been analyzed.
+                final double rows = rset.getDouble(1);
+                return rset.wasNull() || rows < 0 ? -1 : Math.round(rows);
+            } finally {
+                rset.close();
+            }
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private static long indexStatistic(final Connection conn, final DatabaseMetaData meta, final String schema,
+            final String table) throws SQLException {
+        final ResultSet rset = meta.getIndexInfo(conn.getCatalog(), schema, table, false, true);
+        if (rset == null) {
+            return -1;
+        }
+        try {
+            while (rset.next()) {
+                if (rset.getShort(7) == DatabaseMetaData.tableIndexStatistic) {
+                    final long rows = rset.getLong(11);
+                    return rset.wasNull() ? -1 : rows;
+                }
+            }
+            return -1;
+        } finally {
+            rset.close();
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,61 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.AdaptiveFetchSize;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * The values of one row on their way from the result set to the writer thread; numbers are kept as primitives, doubles as
+ * their bits.
+ */
+public final class RowSlot {
+
+    /**
+     * the size assumed for a BLOB or CLOB value when adapting the fetch size, as its length is unknown until it is read; many
+     * drivers fetch about this much of a LOB with the row.
+     */
+    private static final int LOB_FETCH_ESTIMATE = 32 * 1024;
+
+    // written and read by the column writers.
+    final long[] _numbers;
+    final boolean[] _nulls;
+    final Object[] _objects;
+
+    public RowSlot(final int columns) {
+        _numbers = new long[columns];
+        _nulls = new boolean[columns];
+        _objects = new Object[columns];
+    }
+
+    /**
+     * @return the approximate size of the row in the fetch buffer of the driver; used to adapt the fetch size.
+     */
+    public long estimateSize() {
+        long size = 0;
+        for (int i = 0; i < _objects.length; ++i) {
+            final Object value = _objects[i];
+            if (value == null) {
+                size += _nulls[i] ? 1 : 8;
+            } else if (value instanceof String) {
+                size += AdaptiveFetchSize.sizeOf((String) value);
+            } else if (value instanceof byte[]) {
+                size += ((byte[]) value).length;
+            } else if (value instanceof InputStream || value instanceof Reader) {
+                size += LOB_FETCH_ESTIMATE;
+            } else {
+                size += 16;
+            }
+        }
+        return size;
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
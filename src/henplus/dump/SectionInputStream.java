@@ -0,0 +1,109 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the dump of a single table, as found in the {@link DumpIndex}, from a dump. The stream is positioned at the beginning
+ * of the table dump and ends after its last byte; the checksum of the bytes read is checked with {@link #verify()}.
+ */
+public final class SectionInputStream extends FilterInputStream {
+
+    private final DumpIndex.Entry _entry;
+    private final CRC32 _crc;
+    private long _remaining;
+
+    /**
+     * @param in
+     *            the uncompressed dump, positioned at its beginning.
+     */
+    public SectionInputStream(final InputStream in, final DumpIndex.Entry entry) throws IOException {
+        super(in);
+        _entry = entry;
+        _crc = new CRC32();
+        _remaining = entry.getLength();
+        long toSkip = entry.getOffset();
+        while (toSkip > 0) {
+            // skip() seeks in files; compressed input is only unpacked, not parsed.
+            final long skipped = in.skip(toSkip);
+            if (skipped > 0) {
+                toSkip -= skipped;
+            } else if (in.read() >= 0) {
+                --toSkip;
+            } else {
+                throw new EOFException("dump ends before table " + entry.getTableName());
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (_remaining <= 0) {
+            return -1;
+        }
+        final int b = in.read();
+        if (b < 0) {
+            throw new EOFException("dump of table " + _entry.getTableName() + " is truncated");
+        }
+        _crc.update(b);
+        --_remaining;
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (_remaining <= 0) {
+            return -1;
+        }
+        final int n = in.read(b, off, (int) Math.min(len, _remaining));
+        if (n < 0) {
+            throw new EOFException("dump of table " + _entry.getTableName() + " is truncated");
+        }
+        _crc.update(b, off, n);
+        _remaining -= n;
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        // all bytes go into the checksum.
+        final byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+        final int read = read(buffer, 0, buffer.length);
+        return read < 0 ? 0 : read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), _remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * read the rest of the table dump and compare the checksum with the one of the index.
+     */
+    public void verify() throws IOException {
+        final byte[] buffer = new byte[8192];
+        while (read(buffer, 0, buffer.length) > 0) {
+        }
+        if (_crc.getValue() != _entry.getChecksum()) {
+            throw new IOException("checksum mismatch in dump of table " + _entry.getTableName()
+                    + "; the dump does not match its index");
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
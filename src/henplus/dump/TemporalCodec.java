@@ -0,0 +1,451 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Converts dates, times and timestamps between their JDBC values and the local fields of the dump, the text format being
+ * that of <code>toString()</code> and <code>valueOf()</code> of the JDBC classes. These go through a calendar for every value,
+ * which dominates dumping tables with many temporal columns.
+ * <p>
+ * Here the days are cached instead: the start and end of a local day are computed once with a calendar, so that the fields of
+ * any time within are found by arithmetic, and parsed dates that occur again, as usual in fact tables, even get the same
+ * java.sql.Date instance. Days with a change of the time zone offset, and fields out of their range, still go through the
+ * calendar, so the results are exactly those of the JDBC classes.
+ * <p>
+ * A codec is not thread safe; {@link #forThread()} returns the one of the current thread. It uses the default time zone at
+ * the time it is created.
+ */
+public final class TemporalCodec {
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int CACHE_SIZE = 1024;
+    /** the days before are left to the calendar, that switches to the Julian calendar in 1582. */
+    private static final int GREGORIAN_YEAR = 1583;
+    private static final long GREGORIAN_EPOCH_DAY = daysFromCivil(GREGORIAN_YEAR, 1, 1);
+    /** yyyy-mm-dd hh:mm:ss.nnnnnnnnn */
+    private static final int MAX_CHARS = 29;
+
+    private static final ThreadLocal<TemporalCodec> CODEC = new ThreadLocal<TemporalCodec>() {
+
+        @Override
+        protected TemporalCodec initialValue() {
+            return new TemporalCodec();
+        }
+    };
+
+    private final TimeZone _zone;
+    private final int _rawOffset;
+    private final Calendar _calendar;
+    private final Day[] _daysByMillis;
+    private final Day[] _daysByFields;
+    private final char[] _chars;
+
+    /* the fields of the last split. */
+    private int _year;
+    private int _month;
+    private int _day;
+    private int _hours;
+    private int _minutes;
+    private int _seconds;
+
+    private TemporalCodec() {
+        _zone = TimeZone.getDefault();
+        _rawOffset = _zone.getRawOffset();
+        _calendar = new GregorianCalendar(_zone);
+        _daysByMillis = new Day[CACHE_SIZE];
+        _daysByFields = new Day[CACHE_SIZE];
+        _chars = new char[MAX_CHARS];
+    }
+
+    /**
+     * @return the codec of the current thread.
+     */
+    public static TemporalCodec forThread() {
+        return CODEC.get();
+    }
+
+    /**
+     * split the given time into its local fields, that are then returned by the getters.
+     */
+    public void split(final long millis) {
+        final Day day = getDay(millis);
+        if (day == null) {
+            _calendar.setTimeInMillis(millis);
+            _year = _calendar.get(Calendar.YEAR);
+            if (_calendar.get(Calendar.ERA) == GregorianCalendar.BC) {
+                _year = 1 - _year;
+            }
+            _month = _calendar.get(Calendar.MONTH) + 1;
+            _day = _calendar.get(Calendar.DAY_OF_MONTH);
+            _hours = _calendar.get(Calendar.HOUR_OF_DAY);
+            _minutes = _calendar.get(Calendar.MINUTE);
+            _seconds = _calendar.get(Calendar.SECOND);
+            return;
+        }
+        _year = day.year;
+        _month = day.month;
+        _day = day.day;
+        final int seconds = (int) ((millis - day.start) / 1000);
+        _hours = seconds / 3600;
+        _minutes = seconds / 60 % 60;
+        _seconds = seconds % 60;
+    }
+
+    public int getYear() {
+        return _year;
+    }
+
+    /**
+     * @return the month, starting with 1.
+     */
+    public int getMonth() {
+        return _month;
+    }
+
+    public int getDay() {
+        return _day;
+    }
+
+    public int getHours() {
+        return _hours;
+    }
+
+    public int getMinutes() {
+        return _minutes;
+    }
+
+    public int getSeconds() {
+        return _seconds;
+    }
+
+    /**
+     * @return the time of the given local fields; out of range fields are normalized like by the calendar.
+     */
+    public long toMillis(final int year, final int month, final int day, final int hours, final int minutes,
+            final int seconds) {
+        if (month >= 1 && month <= 12 && day >= 1 && day <= 31 && hours >= 0 && hours < 24 && minutes >= 0 && minutes < 60
+                && seconds >= 0 && seconds < 60) {
+            final Day cached = getDay(year, month, day);
+            if (cached.uniform) {
+                return cached.start + (hours * 3600 + minutes * 60 + seconds) * 1000L;
+            }
+        }
+        _calendar.clear();
+        _calendar.set(year, month - 1, day, hours, minutes, seconds);
+        return _calendar.getTimeInMillis();
+    }
+
+    public java.sql.Date toDate(final int year, final int month, final int day) {
+        if (month >= 1 && month <= 12 && day >= 1 && day <= 31) {
+            return getDay(year, month, day).getDate();
+        }
+        return new java.sql.Date(toMillis(year, month, day, 0, 0, 0));
+    }
+
+    public Time toTime(final int hours, final int minutes, final int seconds) {
+        return new Time(toMillis(1970, 1, 1, hours, minutes, seconds));
+    }
+
+    public Timestamp toTimestamp(final int year, final int month, final int day, final int hours, final int minutes,
+            final int seconds, final int nanos) {
+        final Timestamp result = new Timestamp(toMillis(year, month, day, hours, minutes, seconds));
+        result.setNanos(nanos);
+        return result;
+    }
+
+    /**
+     * parse a date like {@link java.sql.Date#valueOf(String)}.
+     */
+    public java.sql.Date parseDate(final char[] chars, final int start, final int length) {
+        if (length == 10 && isDate(chars, start)) {
+            return toDate(digits(chars, start, 4), digits(chars, start + 5, 2), digits(chars, start + 8, 2));
+        }
+        return java.sql.Date.valueOf(new String(chars, start, length));
+    }
+
+    /**
+     * parse a time like {@link Time#valueOf(String)}.
+     */
+    public Time parseTime(final char[] chars, final int start, final int length) {
+        if (length == 8 && isTime(chars, start)) {
+            return toTime(digits(chars, start, 2), digits(chars, start + 3, 2), digits(chars, start + 6, 2));
+        }
+        return Time.valueOf(new String(chars, start, length));
+    }
+
+    /**
+     * parse a timestamp like {@link Timestamp#valueOf(String)}.
+     */
+    public Timestamp parseTimestamp(final char[] chars, final int start, final int length) {
+        if (length >= 19 && length != 20 && length <= MAX_CHARS && isDate(chars, start) && chars[start + 10] == ' '
+                && isTime(chars, start + 11) && (length == 19 || chars[start + 19] == '.')) {
+            int nanos = 0;
+            boolean valid = true;
+            for (int i = 20; i < MAX_CHARS; ++i) {
+                int digit = 0;
+                if (i < length) {
+                    digit = chars[start + i] - '0';
+                    valid &= digit >= 0 && digit <= 9;
+                }
+                nanos = nanos * 10 + digit;
+            }
+            if (valid) {
+                return toTimestamp(digits(chars, start, 4), digits(chars, start + 5, 2), digits(chars, start + 8, 2),
+                        digits(chars, start + 11, 2), digits(chars, start + 14, 2), digits(chars, start + 17, 2), nanos);
+            }
+        }
+        return Timestamp.valueOf(new String(chars, start, length));
+    }
+
+    /**
+     * format the value like its <code>toString()</code> into the buffer returned by {@link #getChars()}.
+     *
+     * @return the number of characters or -1, if the year has not four digits; then <code>toString()</code> is to be used.
+     */
+    public int format(final java.util.Date value) {
+        split(value.getTime());
+        if (value instanceof Time) {
+            formatTime(0);
+            return 8;
+        }
+        if (_year < 1000 || _year > 9999) {
+            return -1;
+        }
+        formatDate();
+        if (!(value instanceof Timestamp)) {
+            return 10;
+        }
+        _chars[10] = ' ';
+        formatTime(11);
+        _chars[19] = '.';
+        int nanos = ((Timestamp) value).getNanos();
+        if (nanos == 0) {
+            _chars[20] = '0';
+            return 21;
+        }
+        int length = MAX_CHARS;
+        while (nanos % 10 == 0) {
+            nanos /= 10;
+            --length;
+        }
+        for (int i = length - 1; i >= 20; --i) {
+            _chars[i] = (char) ('0' + nanos % 10);
+            nanos /= 10;
+        }
+        return length;
+    }
+
+    /**
+     * @return the characters of the last {@link #format(java.util.Date)}.
+     */
+    public char[] getChars() {
+        return _chars;
+    }
+
+    private void formatDate() {
+        putDigits(0, _year, 4);
+        _chars[4] = '-';
+        putDigits(5, _month, 2);
+        _chars[7] = '-';
+        putDigits(8, _day, 2);
+    }
+
+    private void formatTime(final int pos) {
+        putDigits(pos, _hours, 2);
+        _chars[pos + 2] = ':';
+        putDigits(pos + 3, _minutes, 2);
+        _chars[pos + 5] = ':';
+        putDigits(pos + 6, _seconds, 2);
+    }
+
+    private void putDigits(final int pos, int value, final int count) {
+        for (int i = pos + count - 1; i >= pos; --i) {
+            _chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * @return the cached day, that contains the given time, or <code>null</code>, if its offset changes within the day.
+     */
+    private Day getDay(final long millis) {
+        final int slot = (int) floorDiv(millis + _rawOffset, DAY_MILLIS) & (CACHE_SIZE - 1);
+        Day day = _daysByMillis[slot];
+        if (day == null || millis < day.start || millis >= day.end) {
+            final long epochDay = floorDiv(millis + _zone.getOffset(millis), DAY_MILLIS);
+            if (epochDay >= GREGORIAN_EPOCH_DAY) {
+                day = createDay(epochDay);
+                if (millis < day.start || millis >= day.end) {
+                    return null; // a time zone offset changes just at midnight.
+                }
+            } else {
+                _calendar.setTimeInMillis(millis);
+                int year = _calendar.get(Calendar.YEAR);
+                if (_calendar.get(Calendar.ERA) == GregorianCalendar.BC) {
+                    year = 1 - year;
+                }
+                day = createCalendarDay(year, _calendar.get(Calendar.MONTH) + 1, _calendar.get(Calendar.DAY_OF_MONTH));
+            }
+            _daysByMillis[slot] = day;
+        }
+        return day.uniform ? day : null;
+    }
+
+    private Day getDay(final int year, final int month, final int day) {
+        final int slot = ((year * 13 + month) * 32 + day) & (CACHE_SIZE - 1);
+        Day cached = _daysByFields[slot];
+        if (cached == null || cached.year != year || cached.month != month || cached.day != day) {
+            if (year >= GREGORIAN_YEAR) {
+                // a day beyond the end of the month is the same as the calendar's rollover into the next month.
+                cached = createDay(daysFromCivil(year, month, day), year, month, day);
+            } else {
+                cached = createCalendarDay(year, month, day);
+            }
+            _daysByFields[slot] = cached;
+        }
+        return cached;
+    }
+
+    private Day createDay(final long epochDay) {
+        final long days = epochDay + 719468;
+        final long era = (days >= 0 ? days : days - 146096) / 146097;
+        final int dayOfEra = (int) (days - era * 146097);
+        final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int marchMonth = (5 * dayOfYear + 2) / 153;
+        final int month = marchMonth < 10 ? marchMonth + 3 : marchMonth - 9;
+        final int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+        return createDay(epochDay, year, month, dayOfYear - (153 * marchMonth + 2) / 5 + 1);
+    }
+
+    /**
+     * the start of the local day is found with the offset of the time zone. If the offset is the same from a day before until
+     * a day after, the day is uniform; near a transition, local times of the day may be missing or repeated, so the day is
+     * left to the calendar then.
+     */
+    private Day createDay(final long epochDay, final int year, final int month, final int day) {
+        final long localStart = epochDay * DAY_MILLIS;
+        final int offset = _zone.getOffset(localStart - _rawOffset);
+        final long start = localStart - offset;
+        if (_zone.getOffset(start) != offset || _zone.getOffset(start - DAY_MILLIS) != offset
+                || _zone.getOffset(start + 2 * DAY_MILLIS) != offset) {
+            return createCalendarDay(year, month, day);
+        }
+        return new Day(year, month, day, start, start + DAY_MILLIS, true);
+    }
+
+    /**
+     * civil days since 1970-01-01 in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(final int year, final int month, final int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private Day createCalendarDay(final int year, final int month, final int day) {
+        _calendar.clear();
+        _calendar.set(year, month - 1, day);
+        final long start = _calendar.getTimeInMillis();
+        // not add(): it keeps the hour, that a missing midnight has been moved to.
+        _calendar.clear();
+        _calendar.set(year, month - 1, day + 1);
+        final long end = _calendar.getTimeInMillis();
+        final boolean uniform = end - start == DAY_MILLIS && _zone.getOffset(start) == _zone.getOffset(end - 1);
+        return new Day(year, month, day, start, end, uniform);
+    }
+
+    /**
+     * @return if the characters are a date with month and day in their range; the JDBC classes reject others.
+     */
+    private static boolean isDate(final char[] chars, final int start) {
+        if (!isDigits(chars, start, 4) || chars[start + 4] != '-' || !isDigits(chars, start + 5, 2) || chars[start + 7] != '-'
+                || !isDigits(chars, start + 8, 2)) {
+            return false;
+        }
+        final int month = digits(chars, start + 5, 2);
+        final int day = digits(chars, start + 8, 2);
+        return month >= 1 && month <= 12 && day >= 1 && day <= 31;
+    }
+
+    /**
+     * @return if the characters are a time with fields in their range; others are left to the JDBC classes.
+     */
+    private static boolean isTime(final char[] chars, final int start) {
+        return isDigits(chars, start, 2) && chars[start + 2] == ':' && isDigits(chars, start + 3, 2) && chars[start + 5] == ':'
+                && isDigits(chars, start + 6, 2) && digits(chars, start, 2) < 24 && chars[start + 3] < '6'
+                && chars[start + 6] < '6';
+    }
+
+    private static boolean isDigits(final char[] chars, final int start, final int count) {
+        for (int i = start; i < start + count; ++i) {
+            if (chars[i] < '0' || chars[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int digits(final char[] chars, final int start, final int count) {
+        int result = 0;
+        for (int i = start; i < start + count; ++i) {
+            result = result * 10 + chars[i] - '0';
+        }
+        return result;
+    }
+
+    private static long floorDiv(final long x, final long y) {
+        final long q = x / y;
+        return x % y < 0 ? q - 1 : q;
+    }
+
+    /**
+     * A local day.
+     */
+    private static final class Day {
+
+        final int year;
+        final int month;
+        final int day;
+        final long start;
+        final long end;
+        /** if the offset of the time zone is the same all day, so that the time of day is just the distance to the start. */
+        final boolean uniform;
+        private java.sql.Date _date;
+
+        Day(final int year, final int month, final int day, final long start, final long end, final boolean uniform) {
+            this.year = year;
+            this.month = month;
+            this.day = day;
+            this.start = start;
+            this.end = end;
+            this.uniform = uniform;
+        }
+
+        /**
+         * @return the day as date; the same instance for all rows, that the JDBC drivers do not change.
+         */
+        java.sql.Date getDate() {
+            if (_date == null) {
+                _date = new java.sql.Date(start);
+            }
+            return _date;
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
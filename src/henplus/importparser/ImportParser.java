@@ -40,6 +40,7 @@ public class ImportParser {
         int rowPatternPos = 0;
 
         char[] buffer = new char[INIT_SIZE];
+        int rowStart = 0;
         int fieldStart = 0;
         int pos = 0;
         int currentColumn = 0;
@@ -47,14 +48,15 @@ public class ImportParser {
 
         while (true) {
             if (buffer.length - pos == 0) { // need to adjust buffer
-                if (fieldStart > 0) { // remove unneded stuff in front
-                    System.arraycopy(buffer, fieldStart, buffer, 0, buffer.length - fieldStart);
-                    Logger.debug("**shift buffer from %s", fieldStart);
-                    pos -= fieldStart;
-                    fieldStart = 0;
-                } else { // fieldStart is already at 0, so increase size
+                if (rowStart > 0) { // remove unneded stuff in front; the current row is kept for the recipient.
+                    System.arraycopy(buffer, rowStart, buffer, 0, buffer.length - rowStart);
+                    Logger.debug("**shift buffer from %s", rowStart);
+                    pos -= rowStart;
+                    fieldStart -= rowStart;
+                    rowStart = 0;
+                } else { // rowStart is already at 0, so increase size
                     final char[] newBuffer = new char[buffer.length * 2];
-                    System.arraycopy(buffer, fieldStart, newBuffer, 0, buffer.length - fieldStart);
+                    System.arraycopy(buffer, 0, newBuffer, 0, buffer.length);
                     buffer = newBuffer;
                     Logger.debug("**larger buffer..");
                 }
@@ -100,9 +102,11 @@ public class ImportParser {
                                 colParser.parse(buffer, fieldStart, pos - fieldStart - rowPattern.length, recipient);
                             }
                         }
+                        recipient.setRowSource(buffer, rowStart, pos - rowStart - rowPattern.length);
                         if (recipient.finishRow()) {
                             return;
                         }
+                        rowStart = pos;
                         fieldStart = pos;
                         rowPatternPos = 0;
                         currentColumn = 0;
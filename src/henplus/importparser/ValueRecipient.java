@@ -18,6 +18,12 @@ public interface ValueRecipient {
 
     void setDate(int fieldNumber, Calendar cal) throws Exception;
 
+    /**
+     * The text of the row, that is finished next, without the row delimiter; the buffer is only valid until
+     * {@link #finishRow()} returns.
+     */
+    void setRowSource(char[] buffer, int start, int length);
+
     /**
      * Signal the Value Recipient, that a complete row has been read.
      * 
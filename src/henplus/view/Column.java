@@ -4,20 +4,23 @@
  */
 package henplus.view;
 
-import java.util.ArrayList;
-import java.util.StringTokenizer;
-
 /**
  * One column in the table. This column contains both: the actual data to be printed and the state to print it; this state is
  * represented by the 'position', the internal row if this is an multirow column. This is ok, since this Column is only used once to
  * be filled and once to be printed.
+ * <p>
+ * The text is not split into its lines up front: the lines are kept as start and end index into the text, the strings of the
+ * lines are only created when they are printed. A text without line breaks, the common case, needs no index at all.
  */
 public class Column {
 
     private static final String NULL_TEXT = "[NULL]";
     private static final int NULL_LENGTH = NULL_TEXT.length();
 
-    private String[] _columnText; // multi-rows
+    private String _text;
+    /** start and end index of each line in the text; <code>null</code>, if the text is a single line. */
+    private int[] _lines;
+    private int _lineCount;
     private int _width;
 
     /** This holds a state for the renderer. */
@@ -28,87 +31,122 @@ public class Column {
     }
 
     public Column(final String text) {
+        setValue(text);
+    }
+
+    /**
+     * set the text of this column, so that it can be reused for the next row, once it has been printed.
+     */
+    public void setValue(final String text) {
+        _text = text;
+        _lines = null;
+        _pos = 0;
         if (text == null) {
             _width = NULL_LENGTH;
-            _columnText = null;
-        } else {
-            _width = 0;
-            final StringTokenizer tok = new StringTokenizer(text, "\n\r");
-            _columnText = new String[tok.countTokens()];
-            for (int i = 0; i < _columnText.length; ++i) {
-                final String line = (String) tok.nextElement();
-                final int lWidth = line.length();
-                _columnText[i] = line;
-                if (lWidth > _width) {
-                    _width = lWidth;
-                }
-            }
+            _lineCount = 0;
+            return;
         }
-        _pos = 0;
+        final int length = text.length();
+        int i = 0;
+        while (i < length && !isLineBreak(text.charAt(i))) {
+            ++i;
+        }
+        if (i == length) {
+            _width = length;
+            _lineCount = length > 0 ? 1 : 0;
+            return;
+        }
+        splitLines(i);
+    }
+
+    private static boolean isLineBreak(final char c) {
+        return c == '\n' || c == '\r';
     }
 
     /**
-     * Split a line at the nearest whitespace.
+     * index the lines of the text; empty lines are skipped.
+     *
+     * @param firstBreak
+     *            the index of the first line break.
      */
-    private String[] splitLine(final String str, final int autoCol) {
-        final ArrayList<String> tmpRows = new ArrayList<String>(5);
-        int lastPos = 0;
-        int pos = lastPos + autoCol;
-        final int strLen = str.length();
-        while (pos < strLen) {
-            while (pos > lastPos && !Character.isWhitespace(str.charAt(pos))) {
-                pos--;
-            }
-            if (pos == lastPos) { // no whitespace found: hard cut
-                tmpRows.add(str.substring(lastPos, lastPos + autoCol));
-                lastPos = lastPos + autoCol;
-            } else {
-                tmpRows.add(str.substring(lastPos, pos));
-                lastPos = pos + /* skip space: */1;
+    private void splitLines(final int firstBreak) {
+        final String text = _text;
+        final int length = text.length();
+        _lines = new int[8];
+        _lineCount = 0;
+        _width = 0;
+        if (firstBreak > 0) {
+            addLine(0, firstBreak);
+        }
+        int start = firstBreak + 1;
+        for (int i = start; i < length; ++i) {
+            if (isLineBreak(text.charAt(i))) {
+                if (i > start) {
+                    addLine(start, i);
+                }
+                start = i + 1;
             }
-            pos = lastPos + autoCol;
         }
-        if (lastPos < strLen - 1) {
-            tmpRows.add(str.substring(lastPos));
+        if (start < length) {
+            addLine(start, length);
         }
-        return tmpRows.toArray(new String[tmpRows.size()]);
     }
 
-    /**
-     * replaces a row with multiple other rows.
-     */
-    private String[] replaceRow(final String[] orig, final int pos, final String[] other) {
-        final String[] result = new String[orig.length + other.length - 1];
-        System.arraycopy(orig, 0, result, 0, pos);
-        System.arraycopy(other, 0, result, pos, other.length);
-        System.arraycopy(orig, pos + 1, result, pos + other.length, orig.length - pos - 1);
-        return result;
+    private void addLine(final int start, final int end) {
+        if (2 * _lineCount == _lines.length) {
+            final int[] lines = new int[2 * _lines.length];
+            System.arraycopy(_lines, 0, lines, 0, _lines.length);
+            _lines = lines;
+        }
+        _lines[2 * _lineCount] = start;
+        _lines[2 * _lineCount + 1] = end;
+        ++_lineCount;
+        if (end - start > _width) {
+            _width = end - start;
+        }
+    }
+
+    private int lineStart(final int line) {
+        return _lines == null ? 0 : _lines[2 * line];
+    }
+
+    private int lineEnd(final int line) {
+        return _lines == null ? _text.length() : _lines[2 * line + 1];
     }
 
     /**
-     * Set autowrapping at a given column.
+     * Set autowrapping at a given column. Lines are split at the nearest whitespace before the column or cut hard, if there is
+     * none.
      */
     void setAutoWrap(final int autoWrapCol) {
-        if (autoWrapCol < 0 || _columnText == null) {
+        if (autoWrapCol <= 0 || _text == null || _width <= autoWrapCol) {
             return;
         }
+        final int[] lines = _lines;
+        final int lineCount = _lineCount;
+        final int textLength = _text.length();
+        _lines = new int[2 * (lineCount + textLength / autoWrapCol + 1)];
+        _lineCount = 0;
         _width = 0;
-        for (int i = 0; i < _columnText.length; ++i) {
-            final int colWidth = _columnText[i].length();
-            if (colWidth > autoWrapCol) {
-                final String[] multiRows = splitLine(_columnText[i], autoWrapCol);
-                for (int j = 0; j < multiRows.length; ++j) {
-                    final int l = multiRows[j].length();
-                    if (l > _width) {
-                        _width = l;
-                    }
+        for (int line = 0; line < lineCount; ++line) {
+            final int strLen = lines == null ? textLength : lines[2 * line + 1];
+            int lastPos = lines == null ? 0 : lines[2 * line];
+            int pos = lastPos + autoWrapCol;
+            while (pos < strLen) {
+                while (pos > lastPos && !Character.isWhitespace(_text.charAt(pos))) {
+                    pos--;
                 }
-                _columnText = replaceRow(_columnText, i, multiRows);
-                i += multiRows.length; // next loop pos here.
-            } else {
-                if (colWidth > _width) {
-                    _width = colWidth;
+                if (pos == lastPos) { // no whitespace found: hard cut
+                    addLine(lastPos, lastPos + autoWrapCol);
+                    lastPos = lastPos + autoWrapCol;
+                } else {
+                    addLine(lastPos, pos);
+                    lastPos = pos + /* skip space: */1;
                 }
+                pos = lastPos + autoWrapCol;
+            }
+            if (lastPos < strLen) {
+                addLine(lastPos, strLen);
             }
         }
     }
@@ -119,21 +157,23 @@ public class Column {
     }
 
     boolean hasNextLine() {
-        return _columnText != null && _pos < _columnText.length;
+        return _text != null && _pos < _lineCount;
     }
 
     boolean isNull() {
-        return _columnText == null;
+        return _text == null;
     }
 
     String getNextLine() {
         String result = "";
-        if (_columnText == null) {
+        if (_text == null) {
             if (_pos == 0) {
                 result = NULL_TEXT;
             }
-        } else if (_pos < _columnText.length) {
-            result = _columnText[_pos];
+        } else if (_pos < _lineCount) {
+            final int start = lineStart(_pos);
+            final int end = lineEnd(_pos);
+            result = start == 0 && end == _text.length() ? _text : _text.substring(start, end);
         }
         ++_pos;
         return result;
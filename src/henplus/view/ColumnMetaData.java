@@ -36,8 +36,17 @@ public final class ColumnMetaData {
      * publically available constructor for the user.
      */
     public ColumnMetaData(final String header, final int align, final int autoWrap) {
+        this(header, align, autoWrap, 0);
+    }
+
+    /**
+     * @param minWidth
+     *            the minimum width of the column, e.g. the display size of a database column, if the width is not determined
+     *            from the values.
+     */
+    public ColumnMetaData(final String header, final int align, final int autoWrap, final int minWidth) {
         _label = header;
-        _initialWidth = header.length();
+        _initialWidth = Math.max(header.length(), minWidth);
         _width = _initialWidth;
         _alignment = align;
         _display = true;
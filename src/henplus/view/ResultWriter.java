@@ -0,0 +1,326 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.view;
+
+import henplus.OutputDevice;
+
+import java.sql.Types;
+
+/**
+ * Writes rows in a format for other programs instead of an aligned table: each row is written as it is added, nothing is
+ * cached to determine column widths. <code>null</code> values are written as
+ * <ul>
+ * <li>csv: an empty field; an empty string is written as <code>""</code>.</li>
+ * <li>tsv: <code>\N</code>; tabs, line breaks and backslashes in values are escaped with a backslash.</li>
+ * <li>jsonl: <code>null</code>; each row is an object with the column labels as keys, numbers and booleans are written as
+ * such.</li>
+ * </ul>
+ */
+public abstract class ResultWriter {
+
+    public static final int FORMAT_ALIGNED = 0;
+    public static final int FORMAT_CSV = 1;
+    public static final int FORMAT_TSV = 2;
+    public static final int FORMAT_JSONL = 3;
+    public static final String[] FORMATS = { "aligned", "csv", "tsv", "jsonl" };
+
+    protected final OutputDevice out;
+    protected final String[] labels;
+    protected final StringBuilder line;
+
+    protected ResultWriter(final OutputDevice out, final String[] labels) {
+        this.out = out;
+        this.labels = labels;
+        line = new StringBuilder();
+    }
+
+    /**
+     * @param format
+     *            one of the formats but {@link #FORMAT_ALIGNED}, which is written by the {@link TableRenderer}.
+     * @param labels
+     *            the labels of the columns.
+     * @param types
+     *            the JDBC types of the columns.
+     */
+    public static ResultWriter create(final int format, final OutputDevice out, final String[] labels, final int[] types) {
+        switch (format) {
+            case FORMAT_CSV:
+                return new CsvWriter(out, labels);
+            case FORMAT_TSV:
+                return new TsvWriter(out, labels);
+            case FORMAT_JSONL:
+                return new JsonLinesWriter(out, labels, types);
+            default:
+                throw new IllegalArgumentException("no result writer for format " + format);
+        }
+    }
+
+    /**
+     * write the labels of the columns, if the format has a header.
+     */
+    public abstract void writeHeader();
+
+    /**
+     * @param values
+     *            the values of the row; <code>null</code> for NULL. The array may be reused after the call.
+     */
+    public void writeRow(final String[] values) {
+        line.setLength(0);
+        appendRow(values);
+        out.println(line.toString());
+    }
+
+    protected abstract void appendRow(String[] values);
+
+    public void close() {
+        out.flush();
+    }
+
+    private static final class CsvWriter extends ResultWriter {
+
+        CsvWriter(final OutputDevice out, final String[] labels) {
+            super(out, labels);
+        }
+
+        @Override
+        public void writeHeader() {
+            writeRow(labels);
+        }
+
+        @Override
+        protected void appendRow(final String[] values) {
+            for (int i = 0; i < values.length; ++i) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                final String value = values[i];
+                if (value == null) {
+                    continue;
+                }
+                if (value.length() > 0 && !needsQuotes(value)) {
+                    line.append(value);
+                    continue;
+                }
+                line.append('"');
+                for (int j = 0; j < value.length(); ++j) {
+                    final char c = value.charAt(j);
+                    if (c == '"') {
+                        line.append('"');
+                    }
+                    line.append(c);
+                }
+                line.append('"');
+            }
+        }
+
+        private static boolean needsQuotes(final String value) {
+            for (int i = 0; i < value.length(); ++i) {
+                final char c = value.charAt(i);
+                if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                    return true;
+                }
+            }
+            // leading or trailing spaces are kept by quoting.
+            return value.charAt(0) == ' ' || value.charAt(value.length() - 1) == ' ';
+        }
+    }
+
+    private static final class TsvWriter extends ResultWriter {
+
+        TsvWriter(final OutputDevice out, final String[] labels) {
+            super(out, labels);
+        }
+
+        @Override
+        public void writeHeader() {
+            writeRow(labels);
+        }
+
+        @Override
+        protected void appendRow(final String[] values) {
+            for (int i = 0; i < values.length; ++i) {
+                if (i > 0) {
+                    line.append('\t');
+                }
+                final String value = values[i];
+                if (value == null) {
+                    line.append("\\N");
+                    continue;
+                }
+                for (int j = 0; j < value.length(); ++j) {
+                    final char c = value.charAt(j);
+                    switch (c) {
+                        case '\t':
+                            line.append("\\t");
+                            break;
+                        case '\n':
+                            line.append("\\n");
+                            break;
+                        case '\r':
+                            line.append("\\r");
+                            break;
+                        case '\\':
+                            line.append("\\\\");
+                            break;
+                        default:
+                            line.append(c);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class JsonLinesWriter extends ResultWriter {
+
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        /** the labels as quoted keys with the colon. */
+        private final String[] _keys;
+        private final boolean[] _numeric;
+        private final boolean[] _boolean;
+
+        JsonLinesWriter(final OutputDevice out, final String[] labels, final int[] types) {
+            super(out, labels);
+            _keys = new String[labels.length];
+            _numeric = new boolean[labels.length];
+            _boolean = new boolean[labels.length];
+            for (int i = 0; i < labels.length; ++i) {
+                line.setLength(0);
+                appendString(labels[i]);
+                line.append(':');
+                _keys[i] = line.toString();
+                switch (types[i]) {
+                    case Types.TINYINT:
+                    case Types.SMALLINT:
+                    case Types.INTEGER:
+                    case Types.BIGINT:
+                    case Types.REAL:
+                    case Types.FLOAT:
+                    case Types.DOUBLE:
+                    case Types.NUMERIC:
+                    case Types.DECIMAL:
+                        _numeric[i] = true;
+                        break;
+                    case Types.BIT:
+                    case Types.BOOLEAN:
+                        _boolean[i] = true;
+                        break;
+                }
+            }
+            line.setLength(0);
+        }
+
+        /**
+         * JSON lines have no header.
+         */
+        @Override
+        public void writeHeader() {
+        }
+
+        @Override
+        protected void appendRow(final String[] values) {
+            line.append('{');
+            for (int i = 0; i < values.length; ++i) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append(_keys[i]);
+                final String value = values[i];
+                if (value == null) {
+                    line.append("null");
+                } else if (_numeric[i] && isJsonNumber(value)) {
+                    line.append(value);
+                } else if (_boolean[i] && ("true".equals(value) || "false".equals(value))) {
+                    line.append(value);
+                } else {
+                    appendString(value);
+                }
+            }
+            line.append('}');
+        }
+
+        private void appendString(final String value) {
+            line.append('"');
+            for (int i = 0; i < value.length(); ++i) {
+                final char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        line.append("\\\"");
+                        break;
+                    case '\\':
+                        line.append("\\\\");
+                        break;
+                    case '\n':
+                        line.append("\\n");
+                        break;
+                    case '\r':
+                        line.append("\\r");
+                        break;
+                    case '\t':
+                        line.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            line.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+                        } else {
+                            line.append(c);
+                        }
+                }
+            }
+            line.append('"');
+        }
+
+        /**
+         * the database may format numbers in ways JSON does not allow, e.g. <code>.5</code> or <code>NaN</code>; those are
+         * written as strings.
+         */
+        private static boolean isJsonNumber(final String value) {
+            final int length = value.length();
+            int i = 0;
+            if (i < length && value.charAt(i) == '-') {
+                ++i;
+            }
+            final int intStart = i;
+            while (i < length && isDigit(value.charAt(i))) {
+                ++i;
+            }
+            if (i == intStart || value.charAt(intStart) == '0' && i - intStart > 1) {
+                return false;
+            }
+            if (i < length && value.charAt(i) == '.') {
+                final int fractionStart = ++i;
+                while (i < length && isDigit(value.charAt(i))) {
+                    ++i;
+                }
+                if (i == fractionStart) {
+                    return false;
+                }
+            }
+            if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+                ++i;
+                if (i < length && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+                    ++i;
+                }
+                final int exponentStart = i;
+                while (i < length && isDigit(value.charAt(i))) {
+                    ++i;
+                }
+                if (i == exponentStart) {
+                    return false;
+                }
+            }
+            return i == length;
+        }
+
+        private static boolean isDigit(final char c) {
+            return c >= '0' && c <= '9';
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -15,9 +15,11 @@ import java.util.List;
  */
 public class TableRenderer {
 
-    private static final int MAX_CACHE_ELEMENTS = 500;
+    /** the rows sampled for the column widths by default. */
+    public static final int DEFAULT_SAMPLE_ROWS = 500;
 
     private final List _cacheRows;
+    private final int _sampleRows;
     private boolean _alreadyFlushed;
     private int _writtenRows;
     private final int _separatorWidth;
@@ -31,6 +33,17 @@ public class TableRenderer {
 
     public TableRenderer(final ColumnMetaData[] meta, final OutputDevice out, final String separator, final boolean enableHeader,
             final boolean enableFooter) {
+        this(meta, out, separator, enableHeader, enableFooter, DEFAULT_SAMPLE_ROWS);
+    }
+
+    /**
+     * @param sampleRows
+     *            the number of rows cached to determine the width of the columns; the rows after are printed as they are added,
+     *            so the memory needed does not grow with the size of the table. Values wider than the column widen it from
+     *            then on.
+     */
+    public TableRenderer(final ColumnMetaData[] meta, final OutputDevice out, final String separator, final boolean enableHeader,
+            final boolean enableFooter, final int sampleRows) {
         this.meta = meta;
         this.out = out;
         _enableHeader = enableHeader;
@@ -40,7 +53,8 @@ public class TableRenderer {
          * we cache the rows in order to dynamically determine the output width
          * of each column.
          */
-        _cacheRows = new ArrayList<Column[]>(MAX_CACHE_ELEMENTS);
+        _sampleRows = sampleRows;
+        _cacheRows = new ArrayList<Column[]>(Math.min(sampleRows, DEFAULT_SAMPLE_ROWS));
         _alreadyFlushed = false;
         _writtenRows = 0;
         this.colSeparator = " " + separator;
@@ -51,17 +65,24 @@ public class TableRenderer {
         this(meta, out, "|", true, true);
     }
 
-    public void addRow(final Column[] row) {
+    /**
+     * @return if the row has been printed already, so that the caller may reuse its columns for the next row.
+     */
+    public boolean addRow(final Column[] row) {
         updateColumnWidths(row);
-        addRowToCache(row);
+        return addRowToCache(row);
     }
 
-    protected void addRowToCache(final Column[] row) {
+    protected boolean addRowToCache(final Column[] row) {
+        if (_alreadyFlushed) {
+            printRow(row);
+            return true;
+        }
         _cacheRows.add(row);
-        if (_cacheRows.size() >= MAX_CACHE_ELEMENTS) {
+        if (_cacheRows.size() >= _sampleRows) {
             flush();
-            _cacheRows.clear();
         }
+        return false;
     }
 
     /**
@@ -88,6 +109,7 @@ public class TableRenderer {
         if (_writtenRows > 0 && _enableFooter) {
             printHorizontalLine();
         }
+        out.flush();
     }
 
     /**
@@ -102,15 +124,19 @@ public class TableRenderer {
         }
         final Iterator rowIterator = _cacheRows.iterator();
         while (rowIterator.hasNext()) {
-            final Column[] currentRow = (Column[]) rowIterator.next();
-            boolean hasMoreLines;
-            do {
-                hasMoreLines = false;
-                hasMoreLines = printColumns(currentRow, hasMoreLines);
-                out.println();
-            } while (hasMoreLines);
-            ++_writtenRows;
+            printRow((Column[]) rowIterator.next());
         }
+        _cacheRows.clear();
+    }
+
+    private void printRow(final Column[] currentRow) {
+        boolean hasMoreLines;
+        do {
+            hasMoreLines = false;
+            hasMoreLines = printColumns(currentRow, hasMoreLines);
+            out.println();
+        } while (hasMoreLines);
+        ++_writtenRows;
     }
 
     protected boolean printColumns(final Column[] currentRow, boolean hasMoreLines) {
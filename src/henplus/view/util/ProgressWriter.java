@@ -8,7 +8,9 @@ import henplus.OutputDevice;
 import henplus.commands.TimeRenderer;
 
 /**
- * A utility class that can write the progress of an operation to the screen.
+ * A utility class that can write the progress of an operation to the screen. Attached to a {@link Telemetry}, the progress
+ * is updated by its ticker instead of {@link #update(long)}; on a terminal it is then shown as percentage together with the
+ * current rates.
  */
 public class ProgressWriter {
 
@@ -23,13 +25,24 @@ public class ProgressWriter {
     private final OutputDevice _out;
     private final long _startTime;
     private final CancelWriter _etaWriter;
+    private final Telemetry _telemetry;
+    private final long _baseValue;
 
     private long _lastEtaUpdate;
 
     private int _progressDots;
     private int _screenWidth;
+    private boolean _finished;
 
     public ProgressWriter(final long expectedTargetValue, final OutputDevice out) {
+        this(expectedTargetValue, out, null);
+    }
+
+    /**
+     * @param telemetry
+     *            its ticker updates the progress with the rows counted from now on; may be <code>null</code>.
+     */
+    public ProgressWriter(final long expectedTargetValue, final OutputDevice out, final Telemetry telemetry) {
         _expectedTargetValue = expectedTargetValue;
         _out = out;
         _progressDots = 0;
@@ -37,6 +50,11 @@ public class ProgressWriter {
         _lastEtaUpdate = -1;
         _etaWriter = new CancelWriter(_out);
         setScreenWidth(DEFAULT_SCREEN_WIDTH);
+        _telemetry = telemetry;
+        _baseValue = telemetry != null ? telemetry.getRows() : 0;
+        if (telemetry != null) {
+            telemetry.setProgressWriter(this);
+        }
     }
 
     public void setScreenWidth(final int screenWidth) {
@@ -47,7 +65,10 @@ public class ProgressWriter {
         return _screenWidth;
     }
 
-    public void update(final long value) {
+    public synchronized void update(final long value) {
+        if (_finished) {
+            return;
+        }
         if (_expectedTargetValue > 0 && value <= _expectedTargetValue) {
             final long newDots = _screenWidth * value / _expectedTargetValue;
             if (newDots > _progressDots) {
@@ -62,8 +83,43 @@ public class ProgressWriter {
         }
     }
 
+    /**
+     * called by the ticker of the telemetry.
+     *
+     * @param rates
+     *            the current rates to show.
+     */
+    synchronized void tick(final long telemetryValue, final String rates) {
+        if (_finished) {
+            return;
+        }
+        final long value = telemetryValue - _baseValue;
+        if (!_etaWriter.isPrinting()) {
+            update(value);
+            return;
+        }
+        final StringBuilder status = new StringBuilder();
+        if (_expectedTargetValue > 0 && value <= _expectedTargetValue) {
+            status.append(100 * value / _expectedTargetValue).append("% ");
+        }
+        status.append(rates);
+        final long runningTime = System.currentTimeMillis() - _startTime;
+        if (_expectedTargetValue > 0 && value > 0 && value <= _expectedTargetValue && runningTime >= MIN_ETA_RUNNING_TIME) {
+            final long etaTime = _expectedTargetValue * runningTime / value;
+            status.append(" ETA: ").append(TimeRenderer.renderTime(etaTime - runningTime));
+        }
+        _etaWriter.print(status.toString());
+    }
+
     public void finish() {
-        _etaWriter.cancel();
+        if (_telemetry != null) {
+            // not synchronized, as the ticker holds this lock while it asks the telemetry.
+            _telemetry.setProgressWriter(null);
+        }
+        synchronized (this) {
+            _finished = true;
+            _etaWriter.cancel();
+        }
     }
 
     private void writeEta(final long value) {
@@ -0,0 +1,411 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.view.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Timestamp;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures the throughput of a long running operation like a dump: the rows and bytes transferred and the time spent in each
+ * phase of the work, e.g. waiting for the database, encoding and writing. The threads doing the work only add to counters; a
+ * background ticker samples them at a fixed rate, shows the rates of the last interval in an attached {@link ProgressWriter}
+ * and appends them to the telemetry log, if one is set, for the analysis of slow operations afterwards.
+ * <p>
+ * The times of the phases are shown as share of the elapsed time; phases that are worked on in several threads at once may
+ * exceed 100%.
+ */
+public final class Telemetry {
+
+    /** the interval the rates are sampled. */
+    private static final long TICK_MILLIS = 1000;
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private static volatile File _logFile;
+
+    private final String _operation;
+    private final String[] _phases;
+    private final AtomicLong _rows;
+    private final AtomicLong _rawBytes;
+    private final AtomicLong _compressedBytes;
+    private final AtomicLongArray _phaseNanos;
+    private final ThreadLocal<long[]> _threadIoNanos;
+    private final long _startNanos;
+    private volatile int _batchSize;
+    private volatile String _table;
+    private volatile ProgressWriter _progress;
+    private Sample _lastSample;
+    private Timer _timer;
+    private PrintStream _log;
+
+    /**
+     * @param operation
+     *            describes the operation in the log.
+     * @param phases
+     *            the names of the phases, whose time is measured; they are referred to by their index.
+     */
+    public Telemetry(final String operation, final String... phases) {
+        _operation = operation;
+        _phases = phases;
+        _rows = new AtomicLong();
+        _rawBytes = new AtomicLong();
+        _compressedBytes = new AtomicLong();
+        _phaseNanos = new AtomicLongArray(phases.length);
+        _threadIoNanos = new ThreadLocal<long[]>() {
+
+            @Override
+            protected long[] initialValue() {
+                return new long[1];
+            }
+        };
+        _startNanos = System.nanoTime();
+        _batchSize = -1;
+        _lastSample = new Sample(this, _startNanos);
+    }
+
+    /**
+     * set the file the samples of all operations are appended to; <code>null</code> to write no log.
+     */
+    public static void setLogFile(final File logFile) {
+        _logFile = logFile;
+    }
+
+    /**
+     * start the ticker; {@link #stop()} must be called when the operation is done.
+     */
+    public synchronized void start() {
+        final File logFile = _logFile;
+        if (logFile != null) {
+            try {
+                _log = new PrintStream(new FileOutputStream(logFile, true), true);
+            } catch (final IOException e) {
+                _log = null; // no log then.
+            }
+        }
+        _timer = new Timer("henplus telemetry", true);
+        _timer.scheduleAtFixedRate(new TimerTask() {
+
+            @Override
+            public void run() {
+                tick();
+            }
+        }, TICK_MILLIS, TICK_MILLIS);
+    }
+
+    /**
+     * stop the ticker and log the totals of the operation.
+     */
+    public synchronized void stop() {
+        if (_timer != null) {
+            _timer.cancel();
+            _timer = null;
+        }
+        if (_log != null) {
+            _log.println(new Timestamp(System.currentTimeMillis()) + " " + _operation + " total " + describe(
+                    new Sample(this, _startNanos, true), new Sample(this, System.nanoTime()), true));
+            _log.close();
+            _log = null;
+        }
+    }
+
+    public void addRows(final long rows) {
+        _rows.addAndGet(rows);
+    }
+
+    public long getRows() {
+        return _rows.get();
+    }
+
+    /**
+     * add the time spent in the given phase.
+     */
+    public void addTime(final int phase, final long nanos) {
+        _phaseNanos.addAndGet(phase, nanos);
+    }
+
+    /**
+     * @return a clock for the phases of the current thread.
+     */
+    public Clock createClock() {
+        return new Clock(this);
+    }
+
+    /**
+     * the number of rows fetched or inserted at once.
+     */
+    public void setBatchSize(final int batchSize) {
+        _batchSize = batchSize;
+    }
+
+    /**
+     * the table currently worked on, for the log.
+     */
+    public void setTable(final String table) {
+        _table = table;
+    }
+
+    void setProgressWriter(final ProgressWriter progress) {
+        _progress = progress;
+    }
+
+    /**
+     * count the bytes written to the stream.
+     *
+     * @param compressed
+     *            if the bytes are compressed; otherwise they are the raw data.
+     * @param phase
+     *            the phase the time spent in writing is added to or -1.
+     */
+    public OutputStream meter(final OutputStream out, final boolean compressed, final int phase) {
+        final AtomicLong bytes = compressed ? _compressedBytes : _rawBytes;
+        return new FilterOutputStream(out) {
+
+            @Override
+            public void write(final int b) throws IOException {
+                final long start = phase >= 0 ? System.nanoTime() : 0;
+                out.write(b);
+                measured(start, phase);
+                bytes.incrementAndGet();
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                final long start = phase >= 0 ? System.nanoTime() : 0;
+                out.write(b, off, len);
+                measured(start, phase);
+                bytes.addAndGet(len);
+            }
+        };
+    }
+
+    /**
+     * count the bytes read from the stream; see {@link #meter(OutputStream, boolean, int)}.
+     */
+    public InputStream meter(final InputStream in, final boolean compressed, final int phase) {
+        final AtomicLong bytes = compressed ? _compressedBytes : _rawBytes;
+        return new FilterInputStream(in) {
+
+            @Override
+            public int read() throws IOException {
+                final long start = phase >= 0 ? System.nanoTime() : 0;
+                final int result = in.read();
+                measured(start, phase);
+                if (result >= 0) {
+                    bytes.incrementAndGet();
+                }
+                return result;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final long start = phase >= 0 ? System.nanoTime() : 0;
+                final int result = in.read(b, off, len);
+                measured(start, phase);
+                if (result > 0) {
+                    bytes.addAndGet(result);
+                }
+                return result;
+            }
+        };
+    }
+
+    private void measured(final long start, final int phase) {
+        if (phase >= 0) {
+            final long nanos = System.nanoTime() - start;
+            _phaseNanos.addAndGet(phase, nanos);
+            _threadIoNanos.get()[0] += nanos;
+        }
+    }
+
+    /**
+     * @return the rates over the whole operation so far.
+     */
+    public String getSummary() {
+        return describe(new Sample(this, _startNanos, true), new Sample(this, System.nanoTime()), false);
+    }
+
+    private void tick() {
+        final Sample sample = new Sample(this, System.nanoTime());
+        final Sample last;
+        final PrintStream log;
+        synchronized (this) {
+            last = _lastSample;
+            _lastSample = sample;
+            log = _log;
+        }
+        final ProgressWriter progress = _progress;
+        if (progress != null) {
+            progress.tick(sample.rows, describe(last, sample, false));
+        }
+        if (log != null) {
+            log.println(new Timestamp(System.currentTimeMillis()) + " " + _operation + " " + describe(last, sample, true));
+        }
+    }
+
+    /**
+     * @param keyValues
+     *            in the key=value format of the log; otherwise for the screen.
+     */
+    private String describe(final Sample from, final Sample to, final boolean keyValues) {
+        final double seconds = Math.max(1, to.nanos - from.nanos) / 1e9;
+        final StringBuilder result = new StringBuilder();
+        if (keyValues) {
+            final String table = _table;
+            if (table != null) {
+                result.append("table=").append(table).append(' ');
+            }
+            result.append("rows=").append(to.rows).append(' ');
+            result.append("rows/s=").append(Math.round((to.rows - from.rows) / seconds)).append(' ');
+            result.append("raw-MB/s=").append(format((to.rawBytes - from.rawBytes) / MEGABYTE / seconds)).append(' ');
+            result.append("compressed-MB/s=").append(format((to.compressedBytes - from.compressedBytes) / MEGABYTE / seconds));
+            for (int i = 0; i < _phases.length; ++i) {
+                result.append(' ').append(_phases[i]).append('=').append(share(from, to, i)).append('%');
+            }
+            if (_batchSize > 0) {
+                result.append(" batch=").append(_batchSize);
+            }
+            return result.toString();
+        }
+        result.append(Math.round((to.rows - from.rows) / seconds)).append(" rows/s ");
+        result.append(format((to.rawBytes - from.rawBytes) / MEGABYTE / seconds)).append(" MB/s");
+        if (to.compressedBytes > 0) {
+            result.append(" (").append(format((to.compressedBytes - from.compressedBytes) / MEGABYTE / seconds))
+                    .append(" compressed)");
+        }
+        for (int i = 0; i < _phases.length; ++i) {
+            result.append(' ').append(_phases[i]).append(' ').append(share(from, to, i)).append('%');
+        }
+        if (_batchSize > 0) {
+            result.append(" batch ").append(_batchSize);
+        }
+        return result.toString();
+    }
+
+    private static long share(final Sample from, final Sample to, final int phase) {
+        return Math.round(100.0 * (to.phaseNanos[phase] - from.phaseNanos[phase]) / Math.max(1, to.nanos - from.nanos));
+    }
+
+    private static String format(final double value) {
+        return String.format(Locale.US, "%.1f", Double.valueOf(value));
+    }
+
+    /**
+     * Measures the time a single thread spends in the phases of the operation and counts the rows it handles; both are passed on
+     * to the telemetry in chunks, so that the threads do not contend for the counters with each row. The time spent in metered
+     * streams is counted for the phase of the stream only.
+     */
+    public static final class Clock {
+
+        private static final int CHUNK_ROWS = 256;
+
+        private final Telemetry _telemetry;
+        private final long[] _ioNanos;
+        private final long[] _nanos;
+        private int _phase;
+        private long _since;
+        private long _ioSince;
+        private int _rows;
+
+        Clock(final Telemetry telemetry) {
+            _telemetry = telemetry;
+            _ioNanos = telemetry._threadIoNanos.get();
+            _nanos = new long[telemetry._phases.length];
+            _phase = -1;
+        }
+
+        /**
+         * the thread works on the given phase from now on; -1 for a time not to be measured.
+         */
+        public void enter(final int phase) {
+            final long now = System.nanoTime();
+            final long io = _ioNanos[0];
+            if (_phase >= 0) {
+                _nanos[_phase] += now - _since - (io - _ioSince);
+            }
+            _phase = phase;
+            _since = now;
+            _ioSince = io;
+        }
+
+        public void addRow() {
+            if (++_rows == CHUNK_ROWS) {
+                flush();
+            }
+        }
+
+        /**
+         * pass the rest of the rows and times on to the telemetry, when the thread is done.
+         */
+        public void finish() {
+            enter(-1);
+            flush();
+        }
+
+        private void flush() {
+            enter(_phase);
+            _telemetry.addRows(_rows);
+            _rows = 0;
+            for (int i = 0; i < _nanos.length; ++i) {
+                if (_nanos[i] != 0) {
+                    _telemetry.addTime(i, _nanos[i]);
+                    _nanos[i] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * The counters at a point in time.
+     */
+    private static final class Sample {
+
+        final long nanos;
+        final long rows;
+        final long rawBytes;
+        final long compressedBytes;
+        final long[] phaseNanos;
+
+        Sample(final Telemetry telemetry, final long nanos) {
+            this(telemetry, nanos, false);
+        }
+
+        /**
+         * @param zero
+         *            the sample at the start of the operation.
+         */
+        Sample(final Telemetry telemetry, final long nanos, final boolean zero) {
+            this.nanos = nanos;
+            phaseNanos = new long[telemetry._phases.length];
+            if (zero) {
+                rows = 0;
+                rawBytes = 0;
+                compressedBytes = 0;
+                return;
+            }
+            rows = telemetry._rows.get();
+            rawBytes = telemetry._rawBytes.get();
+            compressedBytes = telemetry._compressedBytes.get();
+            for (int i = 0; i < phaseNanos.length; ++i) {
+                phaseNanos[i] = telemetry._phaseNanos.get(i);
+            }
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,62 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus;
+
+import henplus.test.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+public class PrintStreamOutputDeviceTest extends TestCase {
+
+    private final ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+
+    private String written() throws Exception {
+        return _bytes.toString("UTF-8");
+    }
+
+    private PrintStreamOutputDevice createDevice(final int bufferSize) throws Exception {
+        return new PrintStreamOutputDevice(new PrintStream(_bytes, false, "UTF-8"), bufferSize);
+    }
+
+    public void testBufferedUntilFlush() throws Exception {
+        final PrintStreamOutputDevice out = createDevice(1024);
+        out.print("a");
+        out.print("b");
+        assertEquals("", written());
+        out.flush();
+        assertEquals("ab", written());
+    }
+
+    /**
+     * a full buffer is written, even if no line is finished.
+     */
+    public void testFullBufferWrittenWithinLine() throws Exception {
+        final PrintStreamOutputDevice out = createDevice(4);
+        out.print("abc");
+        assertEquals("", written());
+        out.print("de");
+        assertEquals("abcde", written());
+    }
+
+    /**
+     * the text printed is written a moment later, though nothing else is printed; like rows printed before the query waits for
+     * the next ones.
+     */
+    public void testWrittenWhileIdle() throws Exception {
+        final PrintStreamOutputDevice out = createDevice(1024);
+        out.println("row");
+        final long timeout = System.currentTimeMillis() + 10000;
+        while (written().length() == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals("row" + System.getProperty("line.separator"), written());
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
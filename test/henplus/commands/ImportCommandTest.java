@@ -0,0 +1,108 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.commands;
+
+import henplus.test.FakeDatabase;
+import henplus.test.HenPlusStub;
+import henplus.test.TestCase;
+import henplus.view.util.Telemetry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+public class ImportCommandTest extends TestCase {
+
+    private static final String[] LINES = { "1\tgood", "2\tbad", "3\tgood", "4\tbad", "5\tgood" };
+
+    /**
+     * import the lines into the database.
+     *
+     * @return the content of the reject file.
+     */
+    private static String importLines(final FakeDatabase db, final File rejectFile) throws Exception {
+        HenPlusStub.install();
+        final ImportCommand.ImportConfiguration config = new ImportCommand.ImportConfiguration();
+        config.setTable("t");
+        config.setColumns(new String[] { "id", "name" });
+        config.setRejectFile(rejectFile != null ? rejectFile.getPath() : null);
+        final ImportCommand.SqlImportProcessor processor = new ImportCommand.SqlImportProcessor(db.getConnection(), config,
+                new Telemetry("import", "read", "insert").createClock());
+        try {
+            for (int i = 0; i < LINES.length; ++i) {
+                final String[] values = LINES[i].split("\t");
+                processor.setString(0, values[0]);
+                processor.setString(1, values[1]);
+                processor.setRowSource(LINES[i].toCharArray(), 0, LINES[i].length());
+                processor.finishRow();
+            }
+        } finally {
+            processor.close();
+        }
+        return rejectFile != null ? read(rejectFile) : null;
+    }
+
+    private static String read(final File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] bytes = new byte[(int) file.length()];
+            int pos = 0;
+            int n;
+            while (pos < bytes.length && (n = in.read(bytes, pos, bytes.length - pos)) > 0) {
+                pos += n;
+            }
+            return new String(bytes, 0, pos, "ISO-8859-1");
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * in a transaction of a database, that aborts it on the first failure, the rows after a rejected row are still inserted.
+     */
+    public void testRejectedRowsAreRolledBack() throws Exception {
+        final File rejectFile = File.createTempFile("henplus", ".rejects");
+        try {
+            final FakeDatabase db = new FakeDatabase(FakeDatabase.STOP_AT_FAILURE, false, true);
+            assertEquals("2\tbad\n4\tbad\n", importLines(db, rejectFile));
+            assertEquals(Arrays.asList("1,good", "3,good", "5,good"), db.getRows());
+            final String errors = read(new File(rejectFile.getPath() + ".errors"));
+            assertTrue(errors, errors.indexOf("aborted") < 0);
+        } finally {
+            rejectFile.delete();
+            new File(rejectFile.getPath() + ".errors").delete();
+        }
+    }
+
+    public void testAutoCommit() throws Exception {
+        final File rejectFile = File.createTempFile("henplus", ".rejects");
+        try {
+            final FakeDatabase db = new FakeDatabase(FakeDatabase.STOP_AT_FAILURE, true, false);
+            assertEquals("2\tbad\n4\tbad\n", importLines(db, rejectFile));
+            assertEquals(Arrays.asList("1,good", "3,good", "5,good"), db.getRows());
+        } finally {
+            rejectFile.delete();
+            new File(rejectFile.getPath() + ".errors").delete();
+        }
+    }
+
+    public void testFirstRejectedRowStopsWithoutRejectFile() throws Exception {
+        final FakeDatabase db = new FakeDatabase(FakeDatabase.STOP_AT_FAILURE, false, true);
+        try {
+            importLines(db, null);
+            fail("rejected row ignored");
+        } catch (final SQLException e) {
+        }
+        assertEquals(Arrays.asList("1,good"), db.getRows());
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
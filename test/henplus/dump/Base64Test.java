@@ -0,0 +1,112 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Random;
+
+public class Base64Test extends TestCase {
+
+    /** the test vectors of RFC 4648. */
+    private static final String[][] VECTORS = { { "", "" }, { "f", "Zg==" }, { "fo", "Zm8=" }, { "foo", "Zm9v" },
+            { "foob", "Zm9vYg==" }, { "fooba", "Zm9vYmE=" }, { "foobar", "Zm9vYmFy" } };
+
+    private static String encode(final byte[] bytes) throws IOException {
+        final byte[] dest = new byte[Base64.encodedLength(bytes.length)];
+        assertEquals(dest.length, Base64.encode(bytes, 0, bytes.length, dest, 0));
+        return new String(dest, "US-ASCII");
+    }
+
+    private static byte[] decode(final String text) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Base64.DecodingWriter decoder = new Base64.DecodingWriter(bytes);
+        decoder.write(text);
+        decoder.close();
+        assertEquals(bytes.size(), decoder.getLength());
+        return bytes.toByteArray();
+    }
+
+    public void testVectors() throws IOException {
+        for (int i = 0; i < VECTORS.length; ++i) {
+            final byte[] plain = VECTORS[i][0].getBytes("US-ASCII");
+            assertEquals(VECTORS[i][1], encode(plain));
+            assertEquals(plain, decode(VECTORS[i][1]));
+        }
+    }
+
+    public void testAllByteValues() throws IOException {
+        final byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) i;
+        }
+        for (int len = 250; len <= 256; ++len) {
+            final byte[] value = new byte[len];
+            System.arraycopy(bytes, 0, value, 0, len);
+            assertEquals(value, decode(encode(value)));
+        }
+    }
+
+    public void testWhitespaceIsIgnored() throws IOException {
+        assertEquals("foobar".getBytes("US-ASCII"), decode(" Zm9v\nYm\tFy "));
+    }
+
+    public void testInvalidInput() {
+        final String[] invalid = { "Zm9", "Zm9v!", "Zg==Zg==", "Z===", "Zg=", "Zm9vYmFy\u00e4" };
+        for (int i = 0; i < invalid.length; ++i) {
+            try {
+                decode(invalid[i]);
+                fail("no error for " + invalid[i]);
+            } catch (final IOException e) {
+            }
+        }
+    }
+
+    /**
+     * BLOBs of text dumps are written in chunks by the {@link DumpWriter} and decoded while they are read by the
+     * {@link DumpLexer}; the lengths around the chunk size of the writer are the interesting ones.
+     */
+    public void testDumpRoundTrip() throws IOException {
+        final int[] lengths = { 0, 1, 2, 3, 3 * 4096 - 1, 3 * 4096, 3 * 4096 + 1, 100000 };
+        final Random random = new Random(42);
+        for (int i = 0; i < lengths.length; ++i) {
+            final byte[] value = new byte[lengths[i]];
+            random.nextBytes(value);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final DumpWriter writer = new DumpWriter(new PrintStream(out, false, "UTF-8"), "UTF-8");
+            writer.writeBase64(new ByteArrayInputStream(value));
+            writer.flush();
+            final DumpLexer in = new DumpLexer(new InputStreamReader(new ByteArrayInputStream(out.toByteArray()), "UTF-8"));
+            final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            final Base64.DecodingWriter decoder = new Base64.DecodingWriter(decoded);
+            assertEquals(Base64.encodedLength(value.length), in.readString(decoder));
+            decoder.close();
+            assertEquals(value, decoded.toByteArray());
+        }
+    }
+
+    /**
+     * verify-dump decodes without an output stream; only the length is counted.
+     */
+    public void testCheckOnly() throws IOException {
+        final Base64.DecodingWriter decoder = new Base64.DecodingWriter(null);
+        for (int i = 0; i < 1000; ++i) {
+            decoder.write("Zm9vYmFy");
+        }
+        decoder.write("Zg==");
+        decoder.close();
+        assertEquals(6001, decoder.getLength());
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,291 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Random;
+
+/**
+ * Round trips of the values of a binary dump through {@link BlockWriter} and {@link BlockReader}.
+ */
+public class BlockWriterTest extends TestCase {
+
+    private static BlockReader readBack(final BlockWriter writer) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writer.writeTo(bytes);
+        final BlockReader block = BlockReader.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 1);
+        block.verify();
+        return block;
+    }
+
+    public void testNumbers() throws IOException {
+        final int[] ints = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE };
+        final long[] longs = { 0, 1, -1, 63, -64, 64, -65, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE };
+        final double[] doubles = { 0.0, -0.0, 1.5, Double.MIN_VALUE, Double.MAX_VALUE, Double.NEGATIVE_INFINITY, Double.NaN };
+        final BlockWriter writer = new BlockWriter();
+        for (int i = 0; i < ints.length; ++i) {
+            writer.writeVarInt(ints[i]);
+        }
+        for (int i = 0; i < longs.length; ++i) {
+            writer.writeVarLong(longs[i]);
+        }
+        for (int i = 0; i < doubles.length; ++i) {
+            writer.writeDouble(doubles[i]);
+        }
+        writer.endRow();
+        final BlockReader block = readBack(writer);
+        assertEquals(1, block.getRowCount());
+        for (int i = 0; i < ints.length; ++i) {
+            assertEquals(ints[i], block.readVarInt());
+        }
+        for (int i = 0; i < longs.length; ++i) {
+            assertEquals(longs[i], block.readVarLong());
+        }
+        for (int i = 0; i < doubles.length; ++i) {
+            assertEquals(doubles[i], block.readDouble());
+        }
+        assertTrue(block.isConsumed());
+    }
+
+    public void testStrings() throws IOException {
+        final String[] values = { null, "", "abc", "\u00e4\u00f6\u00fc", "\u20ac", "\ud83d\ude00 pair", "line\nbreak\u0000" };
+        final BlockWriter writer = new BlockWriter();
+        for (int i = 0; i < values.length; ++i) {
+            writer.writeString(values[i]);
+            writer.endRow();
+        }
+        final BlockReader block = readBack(writer);
+        assertEquals(values.length, block.getRowCount());
+        for (int i = 0; i < values.length; ++i) {
+            assertEquals(values[i], block.readString());
+        }
+        assertTrue(block.isConsumed());
+    }
+
+    public void testTemporals() throws IOException {
+        final java.util.Date[] values = { java.sql.Date.valueOf("1969-12-31"), java.sql.Date.valueOf("2038-01-19"),
+                Time.valueOf("00:00:00"), Time.valueOf("23:59:59"), Timestamp.valueOf("1900-02-28 12:34:56.789"),
+                Timestamp.valueOf("2000-02-29 00:00:00.000000001"), Timestamp.valueOf("9999-12-31 23:59:59.999999999") };
+        final int[] types = { MetaProperty.HP_DATE, MetaProperty.HP_DATE, MetaProperty.HP_TIME, MetaProperty.HP_TIME,
+                MetaProperty.HP_TIMESTAMP, MetaProperty.HP_TIMESTAMP, MetaProperty.HP_TIMESTAMP };
+        final BlockWriter writer = new BlockWriter();
+        for (int i = 0; i < values.length; ++i) {
+            writer.writeTemporal(types[i], values[i]);
+        }
+        writer.endRow();
+        final BlockReader block = readBack(writer);
+        for (int i = 0; i < values.length; ++i) {
+            final java.util.Date value = block.readTemporal(types[i]);
+            assertEquals(values[i].getClass(), value.getClass());
+            assertEquals(values[i], value);
+        }
+        assertTrue(block.isConsumed());
+    }
+
+    public void testEndBlock() throws IOException {
+        final BlockWriter writer = new BlockWriter();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writer.writeTo(bytes);
+        assertEquals(0, bytes.size());
+        writer.writeVarInt(5);
+        writer.endRow();
+        writer.writeTo(bytes);
+        writer.writeEnd(bytes, 1L << 40);
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        final BlockReader first = BlockReader.read(in, 1);
+        assertFalse(first.isEnd());
+        assertEquals(5, first.readVarInt());
+        final BlockReader end = BlockReader.read(in, 2);
+        end.verify();
+        assertTrue(end.isEnd());
+        assertEquals(1L << 40, end.readLong());
+        assertEquals(-1, in.read());
+    }
+
+    public void testCorruptBlocks() throws IOException {
+        final BlockWriter writer = new BlockWriter();
+        writer.writeString("some value");
+        writer.endRow();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writer.writeTo(bytes);
+        final byte[] good = bytes.toByteArray();
+        final int header = BinaryDump.SYNC.length + 12;
+
+        final byte[] badData = good.clone();
+        badData[header + 3] ^= 1;
+        try {
+            BlockReader.read(new DataInputStream(new ByteArrayInputStream(badData)), 7).verify();
+            fail("checksum mismatch not detected");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("block 7: checksum"));
+        }
+
+        final byte[] badSync = good.clone();
+        badSync[0] ^= 1;
+        assertReadFails(badSync, "sync marker");
+
+        // a huge length must not allocate more than the file holds.
+        final byte[] badLength = good.clone();
+        badLength[BinaryDump.SYNC.length + 4] = 0x7f;
+        assertReadFails(badLength, "end of file");
+
+        // a string longer than the block.
+        final BlockWriter longString = new BlockWriter();
+        longString.writeVarInt(1000);
+        longString.writeByte('x');
+        longString.endRow();
+        final BlockReader block = readBack(longString);
+        try {
+            block.readString();
+            fail("string exceeding the block not detected");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("exceeds the remaining 1 bytes") >= 0);
+        }
+    }
+
+    private static void assertReadFails(final byte[] bytes, final String expected) {
+        try {
+            BlockReader.read(new DataInputStream(new ByteArrayInputStream(bytes)), 1);
+            fail("no error, expected " + expected);
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf(expected) >= 0);
+        }
+    }
+
+    /**
+     * large LOBs are written to LOB blocks in front of the block of their row; small ones are part of the row.
+     */
+    public void testLobs() throws IOException {
+        final byte[] blob = new byte[3 * BinaryDump.LOB_CHUNK_SIZE + 5];
+        new Random(3).nextBytes(blob);
+        final StringBuilder clob = new StringBuilder();
+        for (int i = 0; i < 100000; ++i) {
+            clob.append(i % 3 == 0 ? 'x' : i % 3 == 1 ? '\u00e4' : '\u20ac');
+        }
+        // surrogate pairs across the end of the char buffer of the writer and at many chunk boundaries.
+        for (int i = 8191; i < clob.length() - 1; i += i == 8191 ? 810 : 1000) {
+            clob.setCharAt(i, '\ud83d');
+            clob.setCharAt(i + 1, '\ude00');
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final BlockWriter writer = new BlockWriter(bytes);
+        writer.writeBytes(new ByteArrayInputStream(blob));
+        writer.writeString(new StringReader(clob.toString()));
+        writer.writeBytes(new ByteArrayInputStream("small".getBytes("US-ASCII")));
+        writer.writeString(new StringReader("\u00e4\ud83d\ude00"));
+        writer.writeBytes((InputStream) null);
+        writer.writeString((Reader) null);
+        writer.endRow();
+        writer.writeTo(bytes);
+
+        final BlockReader block = BlockReader.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 1);
+        block.verify();
+        final LobBuffer readBlob = block.readBytes();
+        assertEquals(blob.length, readBlob.length());
+        assertEquals(blob, LobBufferTest.readAll(readBlob.openStream()));
+        assertFalse(block.isConsumed());
+        final LobBuffer readClob = block.readChars();
+        assertEquals(clob.length(), readClob.charLength());
+        assertEquals(clob.toString(), LobBufferTest.readAll(readClob.openReader()));
+        assertEquals("small".getBytes("US-ASCII"), LobBufferTest.readAll(block.readBytes().openStream()));
+        assertEquals("\u00e4\ud83d\ude00", LobBufferTest.readAll(block.readChars().openReader()));
+        assertNull(block.readBytes());
+        assertNull(block.readChars());
+        assertTrue(block.isConsumed());
+        readBlob.dispose();
+        readClob.dispose();
+    }
+
+    public void testLobWithoutStream() throws IOException {
+        final BlockWriter writer = new BlockWriter();
+        writer.writeBytes(new ByteArrayInputStream(new byte[BinaryDump.LOB_CHUNK_SIZE - 1]));
+        try {
+            writer.writeBytes(new ByteArrayInputStream(new byte[BinaryDump.LOB_CHUNK_SIZE]));
+            fail("large LOB written without stream for LOB blocks");
+        } catch (final IllegalStateException e) {
+        }
+    }
+
+    public void testCorruptLob() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final BlockWriter writer = new BlockWriter(bytes);
+        writer.writeBytes(new ByteArrayInputStream(new byte[2 * BinaryDump.LOB_CHUNK_SIZE]));
+        writer.endRow();
+        writer.writeTo(bytes);
+        final byte[] corrupt = bytes.toByteArray();
+        corrupt[BinaryDump.SYNC.length + 12 + 100] ^= 1;
+        assertReadFails(corrupt, "checksum mismatch in LOB 1");
+    }
+
+    /**
+     * a block decoded into column buffers is written as text dump like the values read from a text dump.
+     */
+    public void testDecoder() throws Exception {
+        final MetaProperty[] meta = { new MetaProperty("n"), new MetaProperty("s"), new MetaProperty("t") };
+        meta[0].setTypeName("NUMERIC");
+        meta[1].setTypeName("STRING");
+        meta[2].setTypeName("TIMESTAMP");
+        final BlockWriter writer = new BlockWriter();
+        writer.writeByte(BinaryDump.VALUE_LONG);
+        writer.writeVarLong(Long.MIN_VALUE);
+        writer.writeString("it's");
+        writer.writeByte(BinaryDump.VALUE_PRESENT);
+        writer.writeTemporal(MetaProperty.HP_TIMESTAMP, Timestamp.valueOf("2001-02-03 04:05:06.5"));
+        writer.endRow();
+        writer.writeByte(BinaryDump.VALUE_DECIMAL);
+        writer.writeString("-12345678901234567890.125");
+        writer.writeString((String) null);
+        writer.writeByte(BinaryDump.VALUE_NULL);
+        writer.endRow();
+        final BlockDecoder decoder = new BlockDecoder(readBack(writer), meta).call();
+        assertEquals(2, decoder.getRowCount());
+        final ColumnBuffer[] columns = decoder.getColumns();
+        assertEquals(4, columns[1].getMaxLength());
+        assertEquals(21, columns[2].getMaxLength());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DumpWriter out = new DumpWriter(new PrintStream(bytes, false, "UTF-8"), "UTF-8");
+        for (int row = 0; row < 2; ++row) {
+            for (int i = 0; i < columns.length; ++i) {
+                columns[i].write(row, out);
+                out.writeSyntax(i + 1 < columns.length ? ',' : '\n');
+            }
+        }
+        out.flush();
+        assertEquals("-9223372036854775808,'it\\'s','2001-02-03 04:05:06.5'\n-12345678901234567890.125,NULL,NULL\n",
+                bytes.toString("UTF-8"));
+    }
+
+    public void testDecoderRejectsTrailingData() throws Exception {
+        final MetaProperty[] meta = { new MetaProperty("s") };
+        meta[0].setTypeName("STRING");
+        final BlockWriter writer = new BlockWriter();
+        writer.writeString("a");
+        writer.writeString("b");
+        writer.endRow();
+        try {
+            new BlockDecoder(readBack(writer), meta).call();
+            fail("trailing data not detected");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("unexpected data after last row") >= 0);
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
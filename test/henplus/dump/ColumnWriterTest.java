@@ -0,0 +1,79 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.Stub;
+import henplus.test.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+public class ColumnWriterTest extends TestCase {
+
+    /**
+     * a BIGINT column, that is fetched like by MySQL Connector/J: getLong() fails for values beyond a long.
+     */
+    public static final class BigIntColumn {
+
+        private final boolean _signed;
+        private final BigDecimal _value;
+
+        BigIntColumn(final boolean signed, final String value) {
+            _signed = signed;
+            _value = new BigDecimal(value);
+        }
+
+        public int getColumnType(final int column) {
+            return Types.BIGINT;
+        }
+
+        public boolean isSigned(final int column) {
+            return _signed;
+        }
+
+        public long getLong(final int column) throws SQLException {
+            if (_value.toBigInteger().bitLength() > 63) {
+                throw new SQLException("Out of range value for column");
+            }
+            return _value.longValue();
+        }
+
+        public BigDecimal getBigDecimal(final int column) {
+            return _value;
+        }
+
+        public boolean wasNull() {
+            return false;
+        }
+    }
+
+    private static String dump(final BigIntColumn column) throws Exception {
+        final MetaProperty[] meta = { new MetaProperty("id", Types.BIGINT) };
+        final ColumnWriter writer = ColumnWriter.create(Stub.create(ResultSetMetaData.class, column), meta)[0];
+        final RowSlot row = new RowSlot(1);
+        writer.fetch(Stub.create(ResultSet.class, column), row);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DumpWriter out = new DumpWriter(new PrintStream(bytes, false, "UTF-8"), "UTF-8");
+        writer.write(row, out);
+        out.flush();
+        return bytes.toString("UTF-8");
+    }
+
+    public void testBigInt() throws Exception {
+        assertEquals("-9223372036854775808", dump(new BigIntColumn(true, "-9223372036854775808")));
+        assertEquals("42", dump(new BigIntColumn(false, "42")));
+        assertEquals("18446744073709551615", dump(new BigIntColumn(false, "18446744073709551615")));
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,58 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class DumpCheckpointTest extends TestCase {
+
+    public void testRoundTrip() throws IOException {
+        final File file = File.createTempFile("henplus", DumpCheckpoint.SUFFIX);
+        try {
+            new DumpCheckpoint(87557989L, "first", -1, 0).write(file);
+            // the second checkpoint replaces the first.
+            new DumpCheckpoint(1L << 40, "it's a \\ table \u00e4", 532, 350000).write(file);
+            final DumpCheckpoint checkpoint = DumpCheckpoint.read(file);
+            assertEquals(1L << 40, checkpoint.getDumpLength());
+            assertEquals("it's a \\ table \u00e4", checkpoint.getTableName());
+            assertEquals(532, checkpoint.getTableOffset());
+            assertEquals(350000, checkpoint.getRows());
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testInvalidFiles() throws IOException {
+        assertInvalid("(dump-in-checkpoint (dump-length 12))", "incomplete checkpoint");
+        assertInvalid("(dump-in-checkpoint (table 't') (rows x))", "number expected: x");
+        assertInvalid("(dump-in-checkpoint (table 't') (color 'red'))", "unknown token color");
+        assertInvalid("(tabledump 't')", "'dump-in-checkpoint' expected");
+    }
+
+    private static void assertInvalid(final String content, final String expected) throws IOException {
+        final File file = File.createTempFile("henplus", DumpCheckpoint.SUFFIX);
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write(content.getBytes("UTF-8"));
+            out.close();
+            DumpCheckpoint.read(file);
+            fail("no error for " + content);
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf(expected) >= 0);
+        } finally {
+            file.delete();
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
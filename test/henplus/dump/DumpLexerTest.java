@@ -0,0 +1,180 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.TestCase;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+
+public class DumpLexerTest extends TestCase {
+
+    private static DumpLexer lexer(final String text) {
+        return new DumpLexer(new StringReader(text));
+    }
+
+    public void testStrings() throws IOException {
+        final DumpLexer in = lexer("'abc', NULL,'', null 'it\\'s \\\\ here' ");
+        assertEquals("abc", in.readString());
+        in.expect(',');
+        assertNull(in.readString());
+        in.expect(',');
+        assertEquals("", in.readString());
+        in.expect(',');
+        assertNull(in.readString());
+        assertEquals("it's \\ here", in.readString());
+    }
+
+    public void testTokens() throws IOException {
+        final DumpLexer in = lexer("  (tabledump 'x'\n  (meta ('a')) ;");
+        in.expect('(');
+        assertEquals("tabledump", in.readToken());
+        assertEquals("x", in.readString());
+        assertEquals(1, in.getLineNumber());
+        in.expect('(');
+        assertEquals(2, in.getLineNumber());
+        assertEquals("meta", in.readToken());
+        in.expect('(');
+        assertEquals("a", in.readString());
+        in.expect(')');
+        in.expect(')');
+        in.expect(';');
+        assertFalse(in.skipWhite());
+        assertEquals(-1, in.read());
+    }
+
+    public void testLineNumbers() throws IOException {
+        final DumpLexer in = lexer("'a\nb'\n\n'c'");
+        assertEquals("a\nb", in.readString());
+        assertEquals(2, in.getLineNumber());
+        assertEquals("c", in.readString());
+        assertEquals(4, in.getLineNumber());
+        assertTrue(in.error("x").getMessage().startsWith("line 4:"));
+    }
+
+    /**
+     * strings longer than the buffer of the lexer, with escapes at the buffer boundary.
+     */
+    public void testLongString() throws IOException {
+        final StringBuilder value = new StringBuilder();
+        final StringBuilder text = new StringBuilder("'");
+        for (int i = 0; i < 200000; ++i) {
+            final char c = i % 65535 == 0 ? '\'' : (char) ('a' + i % 26);
+            value.append(c);
+            if (c == '\'') {
+                text.append('\\');
+            }
+            text.append(c);
+        }
+        text.append("',");
+        final String expected = value.toString();
+        assertEquals(expected, lexer(text.toString()).readString());
+        final StringWriter sink = new StringWriter();
+        final DumpLexer in = lexer(text.toString());
+        assertEquals(expected.length(), in.readString(sink));
+        assertEquals(expected, sink.toString());
+        in.expect(',');
+        assertEquals(expected.length(), lexer(text.toString()).skipString());
+    }
+
+    /**
+     * the lexer must cope with readers that return only a few characters at a time.
+     */
+    public void testSlowReader() throws IOException {
+        final Reader slow = new StringReader("( 12345678, 'ab\\'cd' ,NULL)") {
+            @Override
+            public int read(final char[] buf, final int off, final int len) throws IOException {
+                return super.read(buf, off, Math.min(len, 3));
+            }
+        };
+        final DumpLexer in = new DumpLexer(slow);
+        in.expect('(');
+        assertEquals(DumpLexer.NUMBER_LONG, in.readNumberToken());
+        assertEquals(12345678, in.getLongValue());
+        in.expect(',');
+        assertEquals("ab'cd", in.readString());
+        in.expect(',');
+        assertEquals(DumpLexer.NUMBER_NULL, in.readNumberToken());
+        in.expect(')');
+    }
+
+    public void testLongNumbers() throws IOException {
+        assertLong(0, "0");
+        assertLong(0, "-0");
+        assertLong(42, "+42");
+        assertLong(-42, "- 42");
+        assertLong(Long.MAX_VALUE, "9223372036854775807");
+        assertLong(Long.MIN_VALUE, "-9223372036854775808");
+        assertBigInteger("9223372036854775808");
+        assertBigInteger("-9223372036854775809");
+        assertBigInteger("123456789012345678901234567890");
+    }
+
+    private static void assertLong(final long expected, final String text) throws IOException {
+        final DumpLexer in = lexer(text + ",");
+        assertEquals(DumpLexer.NUMBER_LONG, in.readNumberToken());
+        assertEquals(expected, in.getLongValue());
+        in.expect(',');
+    }
+
+    private static void assertBigInteger(final String text) throws IOException {
+        final DumpLexer in = lexer(text);
+        assertEquals(DumpLexer.NUMBER_BIG_INTEGER, in.readNumberToken());
+        assertEquals(new BigDecimal(text), in.getDecimalValue());
+        assertEquals(Double.parseDouble(text), in.getDoubleValue());
+    }
+
+    public void testFractions() throws IOException {
+        final String[] values = { "1.5", "-0.0", "0.1", "-2.5e-3", "1E10", "3.", ".5", "1e-300", "1e400", "4.9e-324",
+                "0.30000000000000004", "123456789012345678.5", "2.2250738585072014E-308" };
+        for (int i = 0; i < values.length; ++i) {
+            final DumpLexer in = lexer(values[i]);
+            assertEquals(DumpLexer.NUMBER_FRACTION, in.readNumberToken());
+            assertEquals(Double.parseDouble(values[i]), in.getDoubleValue());
+            assertEquals(new BigDecimal(values[i]), in.getDecimalValue());
+        }
+    }
+
+    public void testInvalidNumbers() throws IOException {
+        final String[] values = { "1.2.3", "1e", "1e+", "abc", "12a", "-", "--1", "e5" };
+        for (int i = 0; i < values.length; ++i) {
+            try {
+                lexer(values[i]).readNumberToken();
+                fail("no error for " + values[i]);
+            } catch (final IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("line 1:"));
+            }
+        }
+    }
+
+    public void testUnterminatedString() throws IOException {
+        try {
+            lexer("'abc").readString();
+            fail("no error");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("unterminated") >= 0);
+        }
+        try {
+            lexer("'abc\\").readString();
+            fail("no error");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("backslash") >= 0);
+        }
+        try {
+            lexer("NUL").readString();
+            fail("no error");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("string expected") >= 0);
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,188 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+/**
+ * Writes values with the {@link DumpWriter} and reads them back with the {@link DumpLexer}, in an ASCII compatible encoding
+ * and in UTF-16, that is written through the PrintStream.
+ */
+public class DumpWriterTest extends TestCase {
+
+    private static final String[] ENCODINGS = { "UTF-8", "ISO-8859-1", "UTF-16" };
+
+    private ByteArrayOutputStream _bytes;
+    private PrintStream _print;
+    private String _encoding;
+
+    private DumpWriter writer(final String encoding) throws IOException {
+        _encoding = encoding;
+        _bytes = new ByteArrayOutputStream();
+        _print = new PrintStream(_bytes, false, encoding);
+        return new DumpWriter(_print, encoding);
+    }
+
+    private DumpLexer reader(final DumpWriter out) throws IOException {
+        out.flush();
+        return new DumpLexer(new InputStreamReader(new ByteArrayInputStream(_bytes.toByteArray()), _encoding));
+    }
+
+    private String written(final DumpWriter out) throws IOException {
+        out.flush();
+        return new String(_bytes.toByteArray(), _encoding);
+    }
+
+    public void testLongs() throws IOException {
+        final long[] values = { 0, 1, -1, 9, 10, -10, 123456789, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE,
+                Long.MIN_VALUE + 1 };
+        for (int e = 0; e < ENCODINGS.length; ++e) {
+            final DumpWriter out = writer(ENCODINGS[e]);
+            for (int i = 0; i < values.length; ++i) {
+                out.writeLong(values[i]);
+                out.writeSyntax(',');
+            }
+            final DumpLexer in = reader(out);
+            for (int i = 0; i < values.length; ++i) {
+                assertEquals(DumpLexer.NUMBER_LONG, in.readNumberToken());
+                assertEquals(values[i], in.getLongValue());
+                in.expect(',');
+            }
+        }
+        final DumpWriter out = writer("UTF-8");
+        out.writeLong(Long.MIN_VALUE);
+        assertEquals("-9223372036854775808", written(out));
+    }
+
+    public void testDoubles() throws IOException {
+        final double[] values = { 0.0, -0.0, 1.0, -1.5, 0.1, 1e15, 1e16, -1e-300, Double.MIN_VALUE, Double.MAX_VALUE,
+                123456789.125, 1.0 / 3 };
+        for (int e = 0; e < ENCODINGS.length; ++e) {
+            final DumpWriter out = writer(ENCODINGS[e]);
+            for (int i = 0; i < values.length; ++i) {
+                out.writeDouble(values[i]);
+                out.writeSyntax(',');
+            }
+            final DumpLexer in = reader(out);
+            for (int i = 0; i < values.length; ++i) {
+                in.readNumberToken();
+                assertEquals(values[i], in.getDoubleValue());
+                in.expect(',');
+            }
+        }
+        final DumpWriter out = writer("UTF-8");
+        out.writeDouble(-0.0);
+        out.writeSyntax(' ');
+        out.writeDouble(42);
+        assertEquals("-0.0 42.0", written(out));
+    }
+
+    public void testStrings() throws IOException {
+        final String[] values = { "", "plain", "it's", "back\\slash", "\\'", "line\nbreak", "\u00e4\u00f6\u00fc\u00df",
+                "\u20ac and \ud83d\ude00", "'" };
+        for (int e = 0; e < ENCODINGS.length; ++e) {
+            final DumpWriter out = writer(ENCODINGS[e]);
+            for (int i = 0; i < values.length; ++i) {
+                out.writeQuoted(values[i]);
+                out.writeSyntax(',');
+                out.writeQuoted(new StringReader(values[i]));
+                out.writeSyntax(',');
+            }
+            out.writeNull();
+            final DumpLexer in = reader(out);
+            for (int i = 0; i < values.length; ++i) {
+                final String expected = ENCODINGS[e].equals("ISO-8859-1") ? latin1(values[i]) : values[i];
+                assertEquals(expected, in.readString());
+                in.expect(',');
+                assertEquals(expected, in.readString());
+                in.expect(',');
+            }
+            assertNull(in.readString());
+        }
+    }
+
+    private static String latin1(final String s) throws IOException {
+        return new String(s.getBytes("ISO-8859-1"), "ISO-8859-1");
+    }
+
+    /**
+     * surrogate pairs, that the reader returns split across chunks, must be encoded as one character.
+     */
+    public void testSurrogatePairsAcrossChunks() throws IOException {
+        final StringBuilder value = new StringBuilder();
+        while (value.length() < 40000) {
+            // one pair at the end of the first chunk of the writer, that has 3 * 4096 characters.
+            final boolean pair = value.length() % 1000 == 999 || value.length() == 3 * 4096 - 1;
+            value.append(pair ? "\ud83d\ude00" : "x");
+        }
+        final String expected = value.toString();
+        for (int chunk = 1; chunk <= 7; chunk += 3) {
+            final int chunkSize = chunk;
+            final Reader slow = new StringReader(expected) {
+                @Override
+                public int read(final char[] buf, final int off, final int len) throws IOException {
+                    return super.read(buf, off, Math.min(len, chunkSize == 7 ? len : chunkSize));
+                }
+            };
+            final DumpWriter out = writer("UTF-8");
+            out.writeQuoted(slow);
+            assertEquals(expected, reader(out).readString());
+            assertTrue(written(out).indexOf('?') < 0);
+        }
+    }
+
+    public void testTemporals() throws IOException {
+        final java.sql.Date date = java.sql.Date.valueOf("2004-02-29");
+        final Time time = Time.valueOf("23:59:01");
+        final Timestamp stamp = Timestamp.valueOf("1999-12-31 23:59:59.000000001");
+        final Timestamp whole = Timestamp.valueOf("1970-01-01 00:00:00");
+        for (int e = 0; e < ENCODINGS.length; ++e) {
+            final DumpWriter out = writer(ENCODINGS[e]);
+            out.writeTemporal(date);
+            out.writeTemporal(time);
+            out.writeTemporal(stamp);
+            out.writeTemporal(whole);
+            final DumpLexer in = reader(out);
+            assertEquals(date, in.readDate());
+            assertEquals(time, in.readTime());
+            assertEquals(stamp, in.readTimestamp());
+            assertEquals(whole, in.readTimestamp());
+        }
+        final DumpWriter out = writer("UTF-8");
+        out.writeTemporal(stamp);
+        assertEquals("'" + stamp + "'", written(out));
+    }
+
+    /**
+     * values larger than the buffer of the writer.
+     */
+    public void testLargeValues() throws IOException {
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100000; ++i) {
+            value.append(i % 100 == 0 ? '\'' : (char) ('a' + i % 26));
+        }
+        final DumpWriter out = writer("UTF-8");
+        out.writeQuoted(value.toString());
+        out.writeSyntax(value.toString().replace('\'', '_'));
+        final DumpLexer in = reader(out);
+        assertEquals(value.toString(), in.readString());
+        assertEquals(value.toString().replace('\'', '_'), in.readToken());
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
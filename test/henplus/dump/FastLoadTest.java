@@ -0,0 +1,225 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.Stub;
+import henplus.test.TestCase;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FastLoadTest extends TestCase {
+
+    /**
+     * a database with the given indexes on its tables; the statements executed are recorded.
+     */
+    public static final class Catalog {
+
+        private final String _product;
+        private final List<Object[]> _indexes;
+        private final Map<String, String> _definitions;
+        private final List<String> _executed;
+        private final List<String> _params;
+
+        Catalog(final String product) {
+            _product = product;
+            _indexes = new ArrayList<Object[]>();
+            _definitions = new HashMap<String, String>();
+            _executed = Collections.synchronizedList(new ArrayList<String>());
+            _params = new ArrayList<String>();
+        }
+
+        /**
+         * add a column of a non-unique index as reported by getIndexInfo().
+         *
+         * @param definition
+         *            the statement the database tells to create the index.
+         */
+        void addIndex(final String schema, final String name, final short type, final String column, final String ascOrDesc,
+                final String definition) {
+            _indexes.add(new Object[] { null, schema, "t", Boolean.TRUE, null, name, Short.valueOf(type),
+                    Short.valueOf((short) 1), column, ascOrDesc, null, null, null });
+            if (definition != null) {
+                _definitions.put(schema + "." + name, definition);
+            }
+        }
+
+        Connection getConnection() {
+            return Stub.create(Connection.class, this);
+        }
+
+        public DatabaseMetaData getMetaData() {
+            return Stub.create(DatabaseMetaData.class, this);
+        }
+
+        public String getCatalog() {
+            return null;
+        }
+
+        public boolean getAutoCommit() {
+            return true;
+        }
+
+        public void commit() {
+        }
+
+        public Statement createStatement() {
+            return Stub.create(Statement.class, this);
+        }
+
+        public PreparedStatement prepareStatement(final String sql) {
+            return Stub.create(PreparedStatement.class, this);
+        }
+
+        public String getDatabaseProductName() {
+            return _product;
+        }
+
+        public ResultSet getImportedKeys(final String catalog, final String schema, final String table) {
+            return null;
+        }
+
+        public ResultSet getIndexInfo(final String catalog, final String schema, final String table, final boolean unique,
+                final boolean approximate) {
+            return Stub.create(ResultSet.class, new Rows(_indexes));
+        }
+
+        public boolean execute(final String sql) {
+            _executed.add(sql);
+            return false;
+        }
+
+        public void setString(final int index, final String value) {
+            _params.add(value);
+        }
+
+        public ResultSet executeQuery() {
+            final String definition = _definitions.get(_params.get(1) + "." + _params.get(0));
+            _params.clear();
+            final List<Object[]> rows = new ArrayList<Object[]>();
+            if (definition != null) {
+                rows.add(new Object[] { definition });
+            }
+            return Stub.create(ResultSet.class, new Rows(rows));
+        }
+
+        public void close() {
+        }
+    }
+
+    public static final class Rows {
+
+        private final List<Object[]> _rows;
+        private int _row;
+
+        Rows(final List<Object[]> rows) {
+            _rows = rows;
+            _row = -1;
+        }
+
+        public boolean next() {
+            return ++_row < _rows.size();
+        }
+
+        public String getString(final int column) {
+            return (String) _rows.get(_row)[column - 1];
+        }
+
+        public short getShort(final int column) {
+            return ((Short) _rows.get(_row)[column - 1]).shortValue();
+        }
+
+        public boolean getBoolean(final int column) {
+            return ((Boolean) _rows.get(_row)[column - 1]).booleanValue();
+        }
+
+        public void close() {
+        }
+    }
+
+    /**
+     * drop the indexes of the table and restore them.
+     *
+     * @return the statements written to the restore file.
+     */
+    private static List<String> dropAndRestore(final Catalog catalog, final String tableName, final int dropped,
+            final List<String> problems) throws Exception {
+        final File file = File.createTempFile("henplus", FastLoad.SUFFIX);
+        file.delete();
+        try {
+            final FastLoad fastLoad = new FastLoad(file);
+            assertEquals(dropped, fastLoad.prepareTable(catalog.getConnection(), tableName));
+            assertEquals(problems, fastLoad.takeProblems());
+            // as after an interruption.
+            final FastLoad resumed = new FastLoad(file);
+            assertEquals(dropped, resumed.getPendingCount());
+            final int executed = catalog._executed.size();
+            assertEquals(dropped, resumed.restore(Collections.singletonList(catalog.getConnection())));
+            assertFalse(file.exists());
+            return new ArrayList<String>(catalog._executed.subList(executed, catalog._executed.size()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * indexes are recreated as PostgreSQL tells, with their access method, operator classes and included columns.
+     */
+    public void testPostgresIndexDefinitions() throws Exception {
+        final Catalog postgres = new Catalog("PostgreSQL");
+        final String gin = "CREATE INDEX t_doc ON public.t USING gin (doc jsonb_path_ops)";
+        final String btree = "CREATE INDEX t_name ON public.t USING btree (name COLLATE \"C\") INCLUDE (id) WHERE (id > 0)";
+        postgres.addIndex("public", "t_doc", DatabaseMetaData.tableIndexOther, "doc", null, gin);
+        postgres.addIndex("public", "t_name", DatabaseMetaData.tableIndexOther, "name", "A", btree);
+        postgres.addIndex("public", "t_gone", DatabaseMetaData.tableIndexOther, "id", "A", null);
+        final List<String> restored = dropAndRestore(postgres, "public.t", 2,
+                Arrays.asList("index t_gone of public.t kept: definition not found"));
+        assertTrue(postgres._executed.contains("DROP INDEX public.t_doc"));
+        assertTrue(postgres._executed.contains("DROP INDEX public.t_name"));
+        assertFalse(postgres._executed.contains("DROP INDEX public.t_gone"));
+        assertEquals(Arrays.asList(gin, btree), restored);
+    }
+
+    /**
+     * the statements of oracle span several lines, but the restore file has one statement on each line.
+     */
+    public void testOracleIndexDefinitions() throws Exception {
+        final Catalog oracle = new Catalog("Oracle");
+        oracle.addIndex("SCOTT", "T_FLAG", DatabaseMetaData.tableIndexOther, "FLAG", null,
+                "\n  CREATE BITMAP INDEX \"SCOTT\".\"T_FLAG\" ON \"SCOTT\".\"T\" (\"FLAG\")\n  PCTFREE 10 INITRANS 2\n"
+                        + "  TABLESPACE \"USERS\" ");
+        final List<String> restored = dropAndRestore(oracle, "T", 1, Collections.<String> emptyList());
+        assertEquals(Arrays.asList("CREATE BITMAP INDEX \"SCOTT\".\"T_FLAG\" ON \"SCOTT\".\"T\" (\"FLAG\") PCTFREE 10 INITRANS 2"
+                + " TABLESPACE \"USERS\""), restored);
+    }
+
+    /**
+     * without the definitions of the database, an index without sort order is kept: it is no B-tree.
+     */
+    public void testIndexWithoutSortOrderIsKept() throws Exception {
+        final Catalog mysql = new Catalog("MySQL");
+        mysql.addIndex(null, "t_text", DatabaseMetaData.tableIndexOther, "body", null, null);
+        mysql.addIndex(null, "t_name", DatabaseMetaData.tableIndexOther, "name", "D", null);
+        final List<String> restored = dropAndRestore(mysql, "t", 1,
+                Arrays.asList("index t_text of t kept: index without sort order"));
+        assertTrue(mysql._executed.contains("DROP INDEX t_name ON t"));
+        assertEquals(Arrays.asList("CREATE INDEX t_name ON t (name DESC)"), restored);
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
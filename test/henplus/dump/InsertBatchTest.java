@@ -0,0 +1,164 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.FakeDatabase;
+import henplus.test.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class InsertBatchTest extends TestCase {
+
+    private static final int ROWS = 10;
+    private static final List<String> GOOD_ROWS = Arrays.asList("1,good", "2,good", "5,good", "6,good", "7,good", "9,good",
+            "10,good");
+    private static final List<String> BAD_ROWS = Arrays.asList("3,bad", "4,bad", "8,bad");
+
+    /**
+     * collects the rows passed to the listener.
+     */
+    private static final class Rejects implements InsertBatch.Listener {
+
+        private final List<String> _messages = new ArrayList<String>();
+        private final List<Integer> _rows = new ArrayList<Integer>();
+
+        public void rejected(final ColumnBuffer[] columns, final int row, final String msg) {
+            _messages.add(msg);
+            _rows.add(Integer.valueOf(row));
+        }
+
+        public void executed(final long nanos) {
+        }
+
+        /**
+         * @return the rejected rows, as the database saw them.
+         */
+        List<String> getRows() {
+            final List<String> rows = new ArrayList<String>();
+            for (final String msg : _messages) {
+                rows.add(msg.substring(msg.lastIndexOf(' ') + 1));
+            }
+            return rows;
+        }
+    }
+
+    private static MetaProperty[] meta() {
+        return new MetaProperty[] { new MetaProperty("id", Types.INTEGER), new MetaProperty("name", Types.VARCHAR) };
+    }
+
+    private static DumpLexer lexer(final String text) {
+        return new DumpLexer(new StringReader(text));
+    }
+
+    /**
+     * insert the rows 1 to 10, read as from a text dump in batches of 4; rows 3, 4 and 8 are rejected.
+     */
+    private static Rejects insert(final FakeDatabase db) throws SQLException, IOException {
+        final Rejects rejects = new Rejects();
+        final InsertBatch batch = new InsertBatch(db.getConnection().prepareStatement("insert"), meta(), 4, rejects);
+        for (int id = 1; id <= ROWS; ++id) {
+            final boolean bad = id == 3 || id == 4 || id == 8;
+            batch.readValue(0, lexer(String.valueOf(id)));
+            batch.readValue(1, lexer(bad ? "'bad'" : "'good'"));
+            batch.addRow();
+        }
+        batch.execute();
+        assertEquals(BAD_ROWS.size(), batch.getProblemRows());
+        return rejects;
+    }
+
+    private static void assertInserted(final FakeDatabase db) throws Exception {
+        final Rejects rejects = insert(db);
+        assertEquals(BAD_ROWS, rejects.getRows());
+        assertEquals(GOOD_ROWS, db.getRows());
+    }
+
+    public void testStopAtFailure() throws Exception {
+        assertInserted(new FakeDatabase(FakeDatabase.STOP_AT_FAILURE, false, false));
+    }
+
+    public void testContinueAfterFailure() throws Exception {
+        assertInserted(new FakeDatabase(FakeDatabase.CONTINUE_AFTER_FAILURE, false, false));
+    }
+
+    public void testReportAllFailed() throws Exception {
+        assertInserted(new FakeDatabase(FakeDatabase.REPORT_ALL_FAILED, false, false));
+    }
+
+    /**
+     * the transaction is aborted by the failure: the rows after the failed row are only inserted after the rollback to the
+     * savepoint, and fail with 'transaction is aborted' without it.
+     */
+    public void testReportNothingAbortsTransaction() throws Exception {
+        assertInserted(new FakeDatabase(FakeDatabase.REPORT_NOTHING, false, true));
+    }
+
+    public void testStopAtFailureWithoutSavepoints() throws Exception {
+        assertInserted(new FakeDatabase(FakeDatabase.STOP_AT_FAILURE, true, false));
+    }
+
+    public void testContinueAfterFailureWithoutSavepoints() throws Exception {
+        final FakeDatabase db = new FakeDatabase(FakeDatabase.CONTINUE_AFTER_FAILURE, true, false);
+        assertInserted(db);
+        // only the failed rows are executed again.
+        assertEquals(3 + BAD_ROWS.size(), db.getExecutions());
+    }
+
+    /**
+     * without savepoints, the rows the driver inserted are unknown; retrying could insert them twice.
+     */
+    public void testReportAllFailedWithoutSavepoints() throws Exception {
+        final FakeDatabase db = new FakeDatabase(FakeDatabase.REPORT_ALL_FAILED, true, false);
+        try {
+            insert(db);
+            fail("rows of a failed batch retried without knowing which are inserted");
+        } catch (final SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("does not tell which rows") >= 0);
+        }
+        assertEquals(Arrays.asList("1,good", "2,good"), db.getRows());
+    }
+
+    /**
+     * the rows of a decoded block are inserted from the given first row; the rejected rows are those of the block.
+     */
+    public void testAddRows() throws Exception {
+        final MetaProperty[] meta = meta();
+        final ColumnBuffer[] columns = ColumnBuffer.create(meta, ROWS);
+        for (int row = 0; row < ROWS; ++row) {
+            final int id = row + 1;
+            columns[0].read(lexer(String.valueOf(id)), row);
+            columns[1].read(lexer(id == 3 || id == 4 || id == 8 ? "'bad'" : "'good'"), row);
+        }
+        final FakeDatabase db = new FakeDatabase(FakeDatabase.REPORT_NOTHING, false, true);
+        final Rejects rejects = new Rejects();
+        final InsertBatch batch = new InsertBatch(db.getConnection().prepareStatement("insert"), meta, 4, rejects);
+        batch.addRows(columns, 3, ROWS);
+        assertEquals(Arrays.asList(Integer.valueOf(3), Integer.valueOf(7)), rejects._rows);
+        assertEquals(Arrays.asList("4,bad", "8,bad"), rejects.getRows());
+        assertEquals(GOOD_ROWS.subList(2, GOOD_ROWS.size()), db.getRows());
+    }
+
+    public void testIsReported() {
+        final int failed = Statement.EXECUTE_FAILED;
+        assertFalse(InsertBatch.isReported(null, 3));
+        assertFalse(InsertBatch.isReported(new int[] { failed, failed, failed }, 3));
+        assertFalse(InsertBatch.isReported(new int[] { 1, 1, 1, 1 }, 3));
+        assertTrue(InsertBatch.isReported(new int[0], 3));
+        assertTrue(InsertBatch.isReported(new int[] { 1 }, 3));
+        assertTrue(InsertBatch.isReported(new int[] { 1, failed, Statement.SUCCESS_NO_INFO }, 3));
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,104 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Random;
+
+public class LobBufferTest extends TestCase {
+
+    static byte[] readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] buf = new byte[5000];
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            result.write(buf, 0, n);
+        }
+        in.close();
+        return result.toByteArray();
+    }
+
+    static String readAll(final Reader in) throws IOException {
+        final StringBuilder result = new StringBuilder();
+        final char[] buf = new char[5000];
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            result.append(buf, 0, n);
+        }
+        in.close();
+        return result.toString();
+    }
+
+    public void testBytes() throws IOException {
+        final int[] lengths = { 0, 1, LobBuffer.MEMORY_LIMIT, LobBuffer.MEMORY_LIMIT + 1, 5 * LobBuffer.MEMORY_LIMIT };
+        final Random random = new Random(1);
+        for (int i = 0; i < lengths.length; ++i) {
+            final byte[] value = new byte[lengths[i]];
+            random.nextBytes(value);
+            final LobBuffer lob = new LobBuffer();
+            final OutputStream out = lob.getOutputStream();
+            for (int pos = 0; pos < value.length; pos += 1000) {
+                out.write(value, pos, Math.min(1000, value.length - pos));
+            }
+            out.close();
+            assertEquals(value.length, lob.length());
+            // the value can be read more than once, e.g. if a batch is retried.
+            assertEquals(value, readAll(lob.openStream()));
+            assertEquals(value, readAll(lob.openStream()));
+            lob.dispose();
+        }
+    }
+
+    public void testChars() throws IOException {
+        final StringBuilder value = new StringBuilder();
+        while (value.length() < 3 * LobBuffer.MEMORY_LIMIT) {
+            value.append("x\u00e4\u20ac\ud83d\ude00");
+        }
+        final LobBuffer lob = new LobBuffer();
+        final Writer out = lob.getWriter();
+        out.write(value.toString());
+        out.close();
+        assertEquals(value.length(), lob.charLength());
+        assertEquals(value.toString(), readAll(lob.openReader()));
+        lob.dispose();
+    }
+
+    /**
+     * a large value spills to a temporary file, that is deleted by dispose().
+     */
+    public void testDisposeDeletesFile() throws IOException {
+        final String tmpDir = System.getProperty("java.io.tmpdir");
+        final String[] before = new java.io.File(tmpDir).list();
+        final LobBuffer lob = new LobBuffer();
+        final OutputStream out = lob.getOutputStream();
+        out.write(new byte[2 * LobBuffer.MEMORY_LIMIT]);
+        out.close();
+        assertEquals(countLobFiles(before) + 1, countLobFiles(new java.io.File(tmpDir).list()));
+        lob.dispose();
+        assertEquals(countLobFiles(before), countLobFiles(new java.io.File(tmpDir).list()));
+    }
+
+    private static int countLobFiles(final String[] names) {
+        int count = 0;
+        for (int i = 0; i < names.length; ++i) {
+            if (names[i].startsWith("henplus-lob")) {
+                ++count;
+            }
+        }
+        return count;
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
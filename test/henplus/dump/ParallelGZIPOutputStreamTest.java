@@ -0,0 +1,171 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Round trips through {@link ParallelGZIPOutputStream} and {@link MultiMemberGZIPInputStream}; the files written must also
+ * be readable by the GZIPInputStream of the JDK.
+ */
+public class ParallelGZIPOutputStreamTest extends TestCase {
+
+    /**
+     * data that compresses a bit, but not too well.
+     */
+    private static byte[] data(final int len) {
+        final Random random = new Random(len);
+        final byte[] result = new byte[len];
+        for (int i = 0; i < len; ++i) {
+            result[i] = (byte) ('a' + random.nextInt(16));
+        }
+        return result;
+    }
+
+    private static byte[] compress(final byte[] data, final int flushAt) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(bytes);
+        int pos = 0;
+        // mix single bytes and arrays of different sizes.
+        while (pos < data.length) {
+            if (pos % 7 == 0) {
+                out.write(data[pos++]);
+            } else {
+                final int n = Math.min(data.length - pos, 1 + pos % 50000);
+                out.write(data, pos, n);
+                pos += n;
+            }
+            if (pos >= flushAt && pos - flushAt < 50000) {
+                out.flush();
+            }
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] buf = new byte[10000];
+        int n;
+        while ((n = in.read(buf, 0, buf.length)) >= 0) {
+            result.write(buf, 0, n);
+        }
+        in.close();
+        return result.toByteArray();
+    }
+
+    public void testRoundTrip() throws IOException {
+        final int[] sizes = { 1, 1000, 128 * 1024, 128 * 1024 + 1, 2000000 };
+        for (int i = 0; i < sizes.length; ++i) {
+            final byte[] data = data(sizes[i]);
+            final byte[] compressed = compress(data, sizes[i] / 3);
+            assertTrue(compressed.length < data.length || data.length < 100);
+            assertEquals(data, readAll(new MultiMemberGZIPInputStream(new ByteArrayInputStream(compressed))));
+            assertEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        }
+    }
+
+    public void testSingleByteReads() throws IOException {
+        final byte[] data = data(300000);
+        final InputStream in = new MultiMemberGZIPInputStream(new ByteArrayInputStream(compress(data, 1000)));
+        for (int i = 0; i < data.length; ++i) {
+            assertEquals(data[i] & 0xff, in.read());
+        }
+        assertEquals(-1, in.read());
+    }
+
+    public void testEmptyFile() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ParallelGZIPOutputStream(bytes).close();
+        assertEquals(-1, new MultiMemberGZIPInputStream(new ByteArrayInputStream(bytes.toByteArray())).read());
+        assertEquals(-1, new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray())).read());
+    }
+
+    /**
+     * concatenated files of the JDK and a member with all optional header fields.
+     */
+    public void testForeignMembers() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] first = data(5000);
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(first);
+        gzip.close();
+        final byte[] second = data(7000);
+        writeMemberWithHeaderFields(bytes, second);
+        gzip = new GZIPOutputStream(bytes);
+        gzip.close();
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        assertEquals(expected.toByteArray(),
+                readAll(new MultiMemberGZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    private static void writeMemberWithHeaderFields(final ByteArrayOutputStream out, final byte[] data) throws IOException {
+        // FHCRC | FEXTRA | FNAME | FCOMMENT
+        out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 2 | 4 | 8 | 16, 0, 0, 0, 0, 0, 3 });
+        out.write(new byte[] { 3, 0, 'x', 'y', 'z' });
+        out.write("name.dump\0".getBytes("US-ASCII"));
+        out.write("a comment\0".getBytes("US-ASCII"));
+        out.write(new byte[] { 0x12, 0x34 });
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        final byte[] buf = new byte[data.length + 100];
+        final int len = deflater.deflate(buf);
+        deflater.end();
+        out.write(buf, 0, len);
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        writeInt(out, (int) crc.getValue());
+        writeInt(out, data.length);
+    }
+
+    private static void writeInt(final ByteArrayOutputStream out, final int value) {
+        for (int i = 0; i < 4; ++i) {
+            out.write(value >>> 8 * i);
+        }
+    }
+
+    public void testCorruptFiles() throws IOException {
+        final byte[] compressed = compress(data(200000), 100000);
+        final byte[] badCrc = compressed.clone();
+        badCrc[badCrc.length - 6] ^= 1;
+        try {
+            readAll(new MultiMemberGZIPInputStream(new ByteArrayInputStream(badCrc)));
+            fail("crc mismatch not detected");
+        } catch (final ZipException e) {
+        }
+        final byte[] truncated = new byte[compressed.length - 3];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        try {
+            readAll(new MultiMemberGZIPInputStream(new ByteArrayInputStream(truncated)));
+            fail("truncated file not detected");
+        } catch (final EOFException e) {
+        }
+        try {
+            new MultiMemberGZIPInputStream(new ByteArrayInputStream("(tabledump".getBytes("US-ASCII")));
+            fail("text file accepted");
+        } catch (final ZipException e) {
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,135 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.TestCase;
+
+public class RingBufferTest extends TestCase {
+
+    private static RingBuffer<long[]> ring(final int size) {
+        final long[][] slots = new long[size][];
+        for (int i = 0; i < size; ++i) {
+            slots[i] = new long[1];
+        }
+        return new RingBuffer<long[]>(slots);
+    }
+
+    public void testSizeMustBePowerOfTwo() {
+        final int[] sizes = { 0, 3, 6, 1000 };
+        for (int i = 0; i < sizes.length; ++i) {
+            try {
+                ring(sizes[i]);
+                fail("ring of " + sizes[i] + " slots accepted");
+            } catch (final IllegalArgumentException e) {
+            }
+        }
+        ring(1);
+        ring(1024);
+    }
+
+    public void testCloseDeliversRemainingSlots() throws InterruptedException {
+        final RingBuffer<long[]> ring = ring(4);
+        for (int i = 0; i < 3; ++i) {
+            ring.claim()[0] = i;
+            ring.publish();
+        }
+        ring.close();
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(i, ring.take()[0]);
+            ring.release();
+        }
+        assertNull(ring.take());
+    }
+
+    /**
+     * the consumer gets all values in order, while the producer has to wait for the few slots most of the time.
+     */
+    public void testProducerConsumer() throws Exception {
+        final int count = 200000;
+        final RingBuffer<long[]> ring = ring(2);
+        final long[] result = new long[2];
+        final Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    long[] slot;
+                    while ((slot = ring.take()) != null) {
+                        if (slot[0] != result[0]) {
+                            break;
+                        }
+                        ++result[0];
+                        result[1] += slot[0];
+                        ring.release();
+                    }
+                } catch (final InterruptedException e) {
+                }
+            }
+        };
+        consumer.start();
+        for (long i = 0; i < count; ++i) {
+            final long[] slot = ring.claim();
+            assertTrue(slot != null);
+            slot[0] = i;
+            ring.publish();
+        }
+        ring.close();
+        consumer.join(60000);
+        assertFalse(consumer.isAlive());
+        assertEquals(count, result[0]);
+        assertEquals((long) count * (count - 1) / 2, result[1]);
+    }
+
+    public void testAbortWakesWaitingProducer() throws Exception {
+        final RingBuffer<long[]> ring = ring(1);
+        ring.claim();
+        ring.publish();
+        final Object[] claimed = { "not yet" };
+        final Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    claimed[0] = ring.claim();
+                } catch (final InterruptedException e) {
+                }
+            }
+        };
+        producer.start();
+        Thread.sleep(50);
+        assertTrue(producer.isAlive());
+        ring.abort();
+        producer.join(10000);
+        assertFalse(producer.isAlive());
+        assertNull(claimed[0]);
+        assertTrue(ring.isAborted());
+        assertNull(ring.take());
+    }
+
+    public void testAbortWakesWaitingConsumer() throws Exception {
+        final RingBuffer<long[]> ring = ring(4);
+        final Object[] taken = { "not yet" };
+        final Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    taken[0] = ring.take();
+                } catch (final InterruptedException e) {
+                }
+            }
+        };
+        consumer.start();
+        Thread.sleep(50);
+        assertTrue(consumer.isAlive());
+        ring.abort();
+        consumer.join(10000);
+        assertFalse(consumer.isAlive());
+        assertNull(taken[0]);
+        assertNull(ring.claim());
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
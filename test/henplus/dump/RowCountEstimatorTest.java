@@ -0,0 +1,132 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.Stub;
+import henplus.test.TestCase;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RowCountEstimatorTest extends TestCase {
+
+    /**
+     * a database, that has statistics for the tables stored with the given names.
+     */
+    public static final class Catalog {
+
+        private final String _product;
+        private final boolean _upperCase;
+        private final List<String> _tables;
+        private final List<String> _params;
+
+        Catalog(final String product, final boolean upperCase, final String... tables) {
+            _product = product;
+            _upperCase = upperCase;
+            _tables = Arrays.asList(tables);
+            _params = new ArrayList<String>();
+        }
+
+        public DatabaseMetaData getMetaData() {
+            return Stub.create(DatabaseMetaData.class, this);
+        }
+
+        public String getDatabaseProductName() {
+            return _product;
+        }
+
+        public boolean storesUpperCaseIdentifiers() {
+            return _upperCase;
+        }
+
+        public boolean storesLowerCaseIdentifiers() {
+            return !_upperCase;
+        }
+
+        public PreparedStatement prepareStatement(final String sql) {
+            _params.clear();
+            return Stub.create(PreparedStatement.class, this);
+        }
+
+        public void setString(final int index, final String value) {
+            _params.add(value);
+        }
+
+        public ResultSet executeQuery() {
+            return Stub.create(ResultSet.class, new Rows(_tables.contains(_params.get(_params.size() - 1))));
+        }
+
+        public void close() {
+        }
+
+        /** no table statistic, if the catalog has none. */
+        public String getCatalog() {
+            return null;
+        }
+
+        public ResultSet getIndexInfo(final String catalog, final String schema, final String table, final boolean unique,
+                final boolean approximate) {
+            return null;
+        }
+    }
+
+    public static final class Rows {
+
+        private boolean _found;
+
+        Rows(final boolean found) {
+            _found = found;
+        }
+
+        public boolean next() {
+            final boolean result = _found;
+            _found = false;
+            return result;
+        }
+
+        public double getDouble(final int column) {
+            return 1234.0;
+        }
+
+        public boolean wasNull() {
+            return false;
+        }
+
+        public void close() {
+        }
+    }
+
+    private static long estimate(final Catalog catalog, final String schema, final String table) {
+        return RowCountEstimator.estimate(Stub.create(Connection.class, catalog), schema, table);
+    }
+
+    public void testOracleStoresUpperCase() {
+        final Catalog oracle = new Catalog("Oracle", true, "FOO", "Mixed");
+        assertEquals(1234, estimate(oracle, null, "foo"));
+        assertEquals(1234, estimate(oracle, null, "FOO"));
+        assertEquals(1234, estimate(oracle, "scott", "Foo"));
+        assertEquals(Arrays.asList("SCOTT", "FOO"), oracle._params);
+        assertEquals(1234, estimate(oracle, null, "\"Mixed\""));
+        assertEquals(-1, estimate(oracle, null, "Mixed"));
+    }
+
+    public void testPostgresStoresLowerCase() {
+        final Catalog postgres = new Catalog("PostgreSQL", false, "foo");
+        assertEquals(1234, estimate(postgres, null, "FOO"));
+        assertEquals(1234, estimate(postgres, "Public", "Foo"));
+        assertEquals(Arrays.asList("public", "foo"), postgres._params);
+        assertEquals(-1, estimate(postgres, null, "\"FOO\""));
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
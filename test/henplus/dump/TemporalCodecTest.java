@@ -0,0 +1,248 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.dump;
+
+import henplus.test.TestCase;
+
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * The {@link TemporalCodec} must give exactly the results of the JDBC classes, in time zones with and without daylight
+ * saving time, for valid and invalid values.
+ */
+public class TemporalCodecTest extends TestCase {
+
+    /** zones without DST, with DST at 2:00 and with DST at midnight. */
+    private static final String[] ZONES = { "UTC", "Europe/Berlin", "America/Sao_Paulo", "Australia/Lord_Howe" };
+
+    /**
+     * run the check in a new thread, that gets a codec for the given default time zone.
+     */
+    private static void inZone(final String zone, final Runnable check) throws Throwable {
+        final TimeZone saved = TimeZone.getDefault();
+        final Throwable[] failure = new Throwable[1];
+        TimeZone.setDefault(TimeZone.getTimeZone(zone));
+        try {
+            final Thread thread = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        check.run();
+                    } catch (final Throwable t) {
+                        failure[0] = t;
+                    }
+                }
+            };
+            thread.start();
+            thread.join();
+        } finally {
+            TimeZone.setDefault(saved);
+        }
+        if (failure[0] != null) {
+            throw new AssertionError(zone + ": " + failure[0]);
+        }
+    }
+
+    /**
+     * times from before the Gregorian calendar until after 2100, and every quarter hour around the DST changes of 2010.
+     */
+    private static long[] times() {
+        final Random random = new Random(7);
+        final long[] result = new long[20000 + 2 * 35040];
+        int n = 0;
+        for (int i = 0; i < 20000; ++i) {
+            result[n++] = -15000000000000L + (long) (random.nextDouble() * 20000000000000L);
+        }
+        final long start = Timestamp.valueOf("2010-01-01 00:00:00").getTime();
+        for (int i = 0; i < 2 * 35040; ++i) {
+            result[n++] = start + i * 15 * 60 * 1000L + (i % 2 == 0 ? 0 : 999);
+        }
+        return result;
+    }
+
+    private static void assertFormat(final java.util.Date value) {
+        final TemporalCodec codec = TemporalCodec.forThread();
+        final int len = codec.format(value);
+        if (len < 0) {
+            final Calendar calendar = Calendar.getInstance();
+            calendar.setTime(value);
+            final int year = calendar.get(Calendar.YEAR);
+            assertTrue(value.toString(), year < 1000 || year > 9999 || calendar.get(Calendar.ERA) == 0);
+        } else {
+            assertEquals(value.toString(), new String(codec.getChars(), 0, len));
+        }
+    }
+
+    public void testFormat() throws Throwable {
+        final long[] times = times();
+        for (int z = 0; z < ZONES.length; ++z) {
+            inZone(ZONES[z], new Runnable() {
+
+                public void run() {
+                    for (int i = 0; i < times.length; ++i) {
+                        assertFormat(new java.sql.Date(times[i]));
+                        assertFormat(new Time(times[i]));
+                        final Timestamp timestamp = new Timestamp(times[i]);
+                        timestamp.setNanos(i % 3 == 0 ? 0 : i % 3 == 1 ? timestamp.getNanos() : i * 7919 % 1000000000);
+                        assertFormat(timestamp);
+                    }
+                }
+            });
+        }
+    }
+
+    public void testSplit() throws Throwable {
+        final long[] times = times();
+        for (int z = 0; z < ZONES.length; ++z) {
+            inZone(ZONES[z], new Runnable() {
+
+                public void run() {
+                    final TemporalCodec codec = TemporalCodec.forThread();
+                    final Calendar calendar = Calendar.getInstance();
+                    for (int i = 0; i < times.length; ++i) {
+                        codec.split(times[i]);
+                        calendar.setTimeInMillis(times[i]);
+                        int year = calendar.get(Calendar.YEAR);
+                        if (calendar.get(Calendar.ERA) == 0) {
+                            year = 1 - year;
+                        }
+                        assertEquals(year, codec.getYear());
+                        assertEquals(calendar.get(Calendar.MONTH) + 1, codec.getMonth());
+                        assertEquals(calendar.get(Calendar.DAY_OF_MONTH), codec.getDay());
+                        assertEquals(calendar.get(Calendar.HOUR_OF_DAY), codec.getHours());
+                        assertEquals(calendar.get(Calendar.MINUTE), codec.getMinutes());
+                        assertEquals(calendar.get(Calendar.SECOND), codec.getSeconds());
+                    }
+                }
+            });
+        }
+    }
+
+    public void testParseRoundTrip() throws Throwable {
+        final long[] times = times();
+        for (int z = 0; z < ZONES.length; ++z) {
+            inZone(ZONES[z], new Runnable() {
+
+                public void run() {
+                    for (int i = 0; i < times.length; ++i) {
+                        final Timestamp timestamp = new Timestamp(times[i]);
+                        timestamp.setNanos(i * 7919 % 1000000000);
+                        assertParse(Timestamp.class, timestamp.toString());
+                        assertParse(java.sql.Date.class, new java.sql.Date(times[i]).toString());
+                        assertParse(Time.class, new Time(times[i]).toString());
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * values out of range are normalized or rejected like by the JDBC classes; the codec falls back to them.
+     */
+    public void testInvalidValues() throws Throwable {
+        final String[] dates = { "2001-02-30", "2000-02-29", "1900-02-29", "2001-04-31", "2001-13-01", "2001-00-10",
+                "2001-01-32", "2001-1-5", "2001/01/01", "20010101", "0001-01-01", "1582-10-10", "abcd-ef-gh", "" };
+        final String[] times = { "24:00:00", "23:60:00", "23:59:60", "1:02:03", "12.00.00", "" };
+        final String[] timestamps = { "2001-02-30 12:00:00", "2001-13-01 00:00:00", "2001-02-03 24:00:00",
+                "2001-02-03 04:05:06.", "2001-02-03 04:05:06.1234567890", "2001-02-03 04:05:06.12a", "2001-02-03T04:05:06",
+                "2001-02-03 04:05", "2001-02-03 4:05:06.5", "0999-12-31 23:59:59.9", "2001-02-03" };
+        for (int z = 0; z < ZONES.length; ++z) {
+            inZone(ZONES[z], new Runnable() {
+
+                public void run() {
+                    for (int i = 0; i < dates.length; ++i) {
+                        assertParse(java.sql.Date.class, dates[i]);
+                    }
+                    for (int i = 0; i < times.length; ++i) {
+                        assertParse(Time.class, times[i]);
+                    }
+                    for (int i = 0; i < timestamps.length; ++i) {
+                        assertParse(Timestamp.class, timestamps[i]);
+                    }
+                }
+            });
+        }
+    }
+
+    public void testNanos() throws Throwable {
+        inZone("Europe/Berlin", new Runnable() {
+
+            public void run() {
+                final String[] values = { "2001-02-03 04:05:06.0", "2001-02-03 04:05:06.000000001",
+                        "2001-02-03 04:05:06.999999999", "2001-02-03 04:05:06.12", "1969-12-31 23:59:59.5" };
+                for (int i = 0; i < values.length; ++i) {
+                    final Timestamp value = Timestamp.valueOf(values[i]);
+                    assertEquals(value, parse(Timestamp.class, values[i]));
+                    assertFormat(value);
+                    assertEquals(values[i], value.toString());
+                }
+            }
+        });
+    }
+
+    /**
+     * dates, that occur again, are the same instance.
+     */
+    public void testDateCache() {
+        final TemporalCodec codec = TemporalCodec.forThread();
+        final char[] chars = "x2001-02-03x".toCharArray();
+        final java.sql.Date first = codec.parseDate(chars, 1, 10);
+        assertTrue(first == codec.parseDate("2001-02-03".toCharArray(), 0, 10));
+        assertEquals(java.sql.Date.valueOf("2001-02-03"), first);
+    }
+
+    private static java.util.Date parse(final Class<?> type, final String s) {
+        final TemporalCodec codec = TemporalCodec.forThread();
+        // the value within other characters, as in the buffer of the lexer.
+        final char[] chars = ("'" + s + "'").toCharArray();
+        if (type == java.sql.Date.class) {
+            return codec.parseDate(chars, 1, s.length());
+        }
+        if (type == Time.class) {
+            return codec.parseTime(chars, 1, s.length());
+        }
+        return codec.parseTimestamp(chars, 1, s.length());
+    }
+
+    private static java.util.Date valueOf(final Class<?> type, final String s) {
+        if (type == java.sql.Date.class) {
+            return java.sql.Date.valueOf(s);
+        }
+        if (type == Time.class) {
+            return Time.valueOf(s);
+        }
+        return Timestamp.valueOf(s);
+    }
+
+    /**
+     * the codec parses the string to an equal value or fails like the JDBC class.
+     */
+    private static void assertParse(final Class<?> type, final String s) {
+        java.util.Date expected = null;
+        try {
+            expected = valueOf(type, s);
+        } catch (final IllegalArgumentException e) {
+            try {
+                parse(type, s);
+                fail("no error for " + type.getName() + " " + s);
+            } catch (final IllegalArgumentException expectedError) {
+            }
+            return;
+        }
+        final java.util.Date actual = parse(type, s);
+        assertEquals(type, actual.getClass());
+        assertTrue(s + ": " + actual, expected.getTime() == actual.getTime() && expected.equals(actual));
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
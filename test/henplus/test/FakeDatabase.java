@@ -0,0 +1,233 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.test;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A database with one table for tests of inserts; rows with a value containing 'bad' are rejected. The connection, its meta
+ * data and the prepared statement are stubbed by this object; the drivers differ in how a failing batch is reported and
+ * whether a failure aborts the transaction.
+ */
+public final class FakeDatabase {
+
+    /** the driver stops at the first failed row and reports the counts of the rows before it, e.g. MySQL, DB2. */
+    public static final int STOP_AT_FAILURE = 0;
+    /** the driver executes all rows and reports each failed row as EXECUTE_FAILED, e.g. SQL Server. */
+    public static final int CONTINUE_AFTER_FAILURE = 1;
+    /** the driver stops at the first failed row, but reports all rows as EXECUTE_FAILED, e.g. Oracle before 12c. */
+    public static final int REPORT_ALL_FAILED = 2;
+    /** the driver stops at the first failed row and reports no counts, e.g. PostgreSQL after the transaction aborted. */
+    public static final int REPORT_NOTHING = 3;
+
+    private final int _batchMode;
+    private final boolean _autoCommit;
+    private final boolean _abortsTransaction;
+    private final List<String> _rows;
+    private final List<String> _batch;
+    private final Map<Integer, String> _params;
+    private final Map<Savepoint, Integer> _savepoints;
+    private boolean _aborted;
+    private int _executions;
+
+    /**
+     * @param autoCommit
+     *            without a transaction, there are no savepoints.
+     * @param abortsTransaction
+     *            a failure aborts the transaction like in PostgreSQL: all statements fail until it is rolled back.
+     */
+    public FakeDatabase(final int batchMode, final boolean autoCommit, final boolean abortsTransaction) {
+        _batchMode = batchMode;
+        _autoCommit = autoCommit;
+        _abortsTransaction = abortsTransaction;
+        _rows = new ArrayList<String>();
+        _batch = new ArrayList<String>();
+        _params = new TreeMap<Integer, String>();
+        _savepoints = new HashMap<Savepoint, Integer>();
+    }
+
+    /**
+     * the connection; also returned by the statement.
+     */
+    public Connection getConnection() {
+        return Stub.create(Connection.class, this);
+    }
+
+    /**
+     * @return the rows inserted, each row as its values separated by comma.
+     */
+    public List<String> getRows() {
+        return _rows;
+    }
+
+    /**
+     * @return the number of round trips to the database.
+     */
+    public int getExecutions() {
+        return _executions;
+    }
+
+    /* Connection */
+
+    public boolean getAutoCommit() {
+        return _autoCommit;
+    }
+
+    public DatabaseMetaData getMetaData() {
+        return Stub.create(DatabaseMetaData.class, this);
+    }
+
+    public PreparedStatement prepareStatement(final String sql) {
+        return Stub.create(PreparedStatement.class, this);
+    }
+
+    public Savepoint setSavepoint() throws SQLException {
+        if (_autoCommit) {
+            throw new SQLException("no savepoints in auto commit mode");
+        }
+        final Savepoint savepoint = Stub.create(Savepoint.class, new Object());
+        _savepoints.put(savepoint, Integer.valueOf(_rows.size()));
+        return savepoint;
+    }
+
+    public void rollback(final Savepoint savepoint) throws SQLException {
+        final Integer rows = _savepoints.get(savepoint);
+        if (rows == null) {
+            throw new SQLException("unknown savepoint");
+        }
+        _rows.subList(rows.intValue(), _rows.size()).clear();
+        _aborted = false;
+    }
+
+    public void releaseSavepoint(final Savepoint savepoint) throws SQLException {
+        if (_savepoints.remove(savepoint) == null) {
+            throw new SQLException("unknown savepoint");
+        }
+    }
+
+    /* DatabaseMetaData */
+
+    public boolean supportsSavepoints() {
+        return true;
+    }
+
+    /* PreparedStatement */
+
+    public void setString(final int index, final String value) {
+        _params.put(Integer.valueOf(index), value);
+    }
+
+    public void setInt(final int index, final int value) {
+        setString(index, String.valueOf(value));
+    }
+
+    public void setLong(final int index, final long value) {
+        setString(index, String.valueOf(value));
+    }
+
+    public void setNull(final int index, final int type) {
+        setString(index, "NULL");
+    }
+
+    public boolean execute() throws SQLException {
+        ++_executions;
+        insert(currentRow());
+        return false;
+    }
+
+    public void addBatch() {
+        _batch.add(currentRow());
+    }
+
+    public void clearBatch() {
+        _batch.clear();
+    }
+
+    public int[] executeBatch() throws SQLException {
+        ++_executions;
+        final int[] counts = new int[_batch.size()];
+        int failed = -1;
+        SQLException failure = null;
+        for (int i = 0; i < counts.length; ++i) {
+            try {
+                insert(_batch.get(i));
+                counts[i] = 1;
+            } catch (final SQLException e) {
+                counts[i] = Statement.EXECUTE_FAILED;
+                if (failure == null) {
+                    failure = e;
+                    failed = i;
+                }
+                if (_batchMode != CONTINUE_AFTER_FAILURE) {
+                    break;
+                }
+            }
+        }
+        _batch.clear();
+        if (failure == null) {
+            return counts;
+        }
+        final int[] reported;
+        switch (_batchMode) {
+            case STOP_AT_FAILURE:
+                reported = new int[failed];
+                System.arraycopy(counts, 0, reported, 0, failed);
+                break;
+            case CONTINUE_AFTER_FAILURE:
+                reported = counts;
+                break;
+            case REPORT_ALL_FAILED:
+                reported = new int[counts.length];
+                Arrays.fill(reported, Statement.EXECUTE_FAILED);
+                break;
+            default:
+                reported = new int[0];
+        }
+        throw new BatchUpdateException(failure.getMessage(), reported);
+    }
+
+    public void close() {
+    }
+
+    private String currentRow() {
+        final StringBuilder row = new StringBuilder();
+        for (final String value : _params.values()) {
+            if (row.length() > 0) {
+                row.append(',');
+            }
+            row.append(value);
+        }
+        _params.clear();
+        return row.toString();
+    }
+
+    private void insert(final String row) throws SQLException {
+        if (_aborted) {
+            throw new SQLException("current transaction is aborted, commands ignored until end of transaction block");
+        }
+        if (row.indexOf("bad") >= 0) {
+            _aborted = _abortsTransaction;
+            throw new SQLException("invalid value in row " + row);
+        }
+        _rows.add(row);
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,46 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.test;
+
+import henplus.HenPlus;
+import henplus.PrintStreamOutputDevice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+
+/**
+ * Installs a HenPlus instance without terminal and commands, for code that prints messages with {@link HenPlus#msg()}.
+ */
+public final class HenPlusStub {
+
+    private HenPlusStub() {
+    }
+
+    /**
+     * @return the stream the messages are written to.
+     */
+    public static ByteArrayOutputStream install() throws Exception {
+        HenPlus henplus = HenPlus.getInstance();
+        if (henplus == null) {
+            final Constructor<HenPlus> constructor = HenPlus.class.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            henplus = constructor.newInstance();
+            final Field instance = HenPlus.class.getDeclaredField("instance");
+            instance.setAccessible(true);
+            instance.set(null, henplus);
+        }
+        final ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        final PrintStreamOutputDevice device = new PrintStreamOutputDevice(new PrintStream(messages, true, "UTF-8"));
+        henplus.setOutput(device, device);
+        return messages;
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
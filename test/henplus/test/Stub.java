@@ -0,0 +1,57 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Implements an interface, e.g. of JDBC, by the methods with the same signature of a plain object; so a test implements only
+ * the few methods the code under test calls. Other methods throw an UnsupportedOperationException.
+ */
+public final class Stub implements InvocationHandler {
+
+    private final Object _target;
+
+    private Stub(final Object target) {
+        _target = target;
+    }
+
+    public static <T> T create(final Class<T> type, final Object target) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new Stub(target)));
+    }
+
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            // stubs are identities.
+            if ("equals".equals(method.getName())) {
+                return Boolean.valueOf(proxy == args[0]);
+            }
+            if ("hashCode".equals(method.getName())) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+            return "stub of " + _target;
+        }
+        final Method implementation;
+        try {
+            implementation = _target.getClass().getMethod(method.getName(), method.getParameterTypes());
+        } catch (final NoSuchMethodException e) {
+            throw new UnsupportedOperationException(method.getName() + " not stubbed");
+        }
+        implementation.setAccessible(true);
+        try {
+            return implementation.invoke(_target, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,73 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.test;
+
+/**
+ * Base class of the unit tests. Each public method without parameters, whose name starts with 'test', is run by the
+ * {@link TestRunner} on a new instance of the class; a test fails, if it throws.
+ */
+public abstract class TestCase {
+
+    protected static void fail(final String msg) {
+        throw new AssertionError(msg);
+    }
+
+    protected static void assertTrue(final String msg, final boolean condition) {
+        if (!condition) {
+            fail(msg);
+        }
+    }
+
+    protected static void assertTrue(final boolean condition) {
+        assertTrue("condition is false", condition);
+    }
+
+    protected static void assertFalse(final boolean condition) {
+        assertTrue("condition is true", !condition);
+    }
+
+    protected static void assertNull(final Object value) {
+        if (value != null) {
+            fail("expected null, got <" + value + ">");
+        }
+    }
+
+    protected static void assertEquals(final Object expected, final Object actual) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            fail("expected <" + expected + ">, got <" + actual + ">");
+        }
+    }
+
+    protected static void assertEquals(final long expected, final long actual) {
+        if (expected != actual) {
+            fail("expected <" + expected + ">, got <" + actual + ">");
+        }
+    }
+
+    /**
+     * compares the bits, so that -0.0 and 0.0 differ and NaN equals NaN.
+     */
+    protected static void assertEquals(final double expected, final double actual) {
+        if (Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual)) {
+            fail("expected <" + expected + ">, got <" + actual + ">");
+        }
+    }
+
+    protected static void assertEquals(final byte[] expected, final byte[] actual) {
+        if (expected.length != actual.length) {
+            fail("expected " + expected.length + " bytes, got " + actual.length);
+        }
+        for (int i = 0; i < expected.length; ++i) {
+            if (expected[i] != actual[i]) {
+                fail("bytes differ at " + i + ": expected <" + expected[i] + ">, got <" + actual[i] + ">");
+            }
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,81 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.test;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the unit tests: all classes named *Test below the given directory of compiled test classes, that extend
+ * {@link TestCase}. Exits with status 1, if a test failed.
+ */
+public final class TestRunner {
+
+    private TestRunner() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("usage: TestRunner <test-classes-directory>");
+            System.exit(2);
+        }
+        final List<String> classNames = new ArrayList<String>();
+        findTests(new File(args[0]), "", classNames);
+        Collections.sort(classNames);
+        int tests = 0;
+        int failures = 0;
+        for (final String className : classNames) {
+            final Class<?> testClass = Class.forName(className);
+            if (!TestCase.class.isAssignableFrom(testClass) || Modifier.isAbstract(testClass.getModifiers())) {
+                continue;
+            }
+            final Method[] methods = testClass.getMethods();
+            for (int i = 0; i < methods.length; ++i) {
+                final Method method = methods[i];
+                if (!method.getName().startsWith("test") || method.getParameterTypes().length > 0
+                        || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                ++tests;
+                try {
+                    method.invoke(testClass.newInstance());
+                } catch (final InvocationTargetException e) {
+                    ++failures;
+                    System.out.println("FAILED " + className + "." + method.getName() + ": " + e.getCause());
+                    e.getCause().printStackTrace(System.out);
+                }
+            }
+        }
+        System.out.println(tests + " tests, " + failures + " failures");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void findTests(final File dir, final String pkg, final List<String> classNames) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (int i = 0; i < files.length; ++i) {
+            final String name = files[i].getName();
+            if (files[i].isDirectory()) {
+                findTests(files[i], pkg + name + ".", classNames);
+            } else if (name.endsWith("Test.class")) {
+                classNames.add(pkg + name.substring(0, name.length() - ".class".length()));
+            }
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
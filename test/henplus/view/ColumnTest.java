@@ -0,0 +1,117 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.view;
+
+import henplus.test.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ColumnTest extends TestCase {
+
+    private static List<String> lines(final Column column) {
+        final List<String> result = new ArrayList<String>();
+        while (column.hasNextLine()) {
+            result.add(column.getNextLine());
+        }
+        return result;
+    }
+
+    private static void assertLines(final Column column, final int width, final String... expected) {
+        assertEquals(width, column.getWidth());
+        assertEquals(Arrays.asList(expected), lines(column));
+        assertEquals("", column.getNextLine());
+    }
+
+    public void testNull() {
+        final Column column = new Column(null);
+        assertTrue(column.isNull());
+        assertEquals(6, column.getWidth());
+        assertFalse(column.hasNextLine());
+        assertEquals("[NULL]", column.getNextLine());
+        assertEquals("", column.getNextLine());
+    }
+
+    public void testSingleLine() {
+        final String text = "a single line";
+        final Column column = new Column(text);
+        assertFalse(column.isNull());
+        assertEquals(text.length(), column.getWidth());
+        assertTrue(column.getNextLine() == text);
+        assertFalse(column.hasNextLine());
+        assertLines(new Column(-42), 3, "-42");
+        assertLines(new Column(""), 0);
+    }
+
+    /**
+     * lines are split at CR and LF; empty lines are skipped.
+     */
+    public void testLineBreaks() {
+        assertLines(new Column("a\r\nbb\n\nccc\r"), 3, "a", "bb", "ccc");
+        assertLines(new Column("\n\nx"), 1, "x");
+        assertLines(new Column("\r\n"), 0);
+        final StringBuilder text = new StringBuilder();
+        final String[] expected = new String[20];
+        for (int i = 0; i < expected.length; ++i) {
+            expected[i] = "line " + i;
+            text.append(expected[i]).append('\n');
+        }
+        assertLines(new Column(text.toString()), 7, expected);
+    }
+
+    public void testAutoWrap() {
+        Column column = new Column("the quick brown fox");
+        column.setAutoWrap(10);
+        assertLines(column, 9, "the quick", "brown fox");
+
+        column = new Column("abcdefghijkl");
+        column.setAutoWrap(5);
+        assertLines(column, 5, "abcde", "fghij", "kl");
+
+        // the last character after a wrap is kept.
+        column = new Column("abcde f");
+        column.setAutoWrap(5);
+        assertLines(column, 5, "abcde", "f");
+
+        column = new Column("short\nthe quick brown fox jumps\nend");
+        column.setAutoWrap(10);
+        assertLines(column, 9, "short", "the quick", "brown fox", "jumps", "end");
+
+        column = new Column("fits\nin");
+        column.setAutoWrap(10);
+        assertLines(column, 4, "fits", "in");
+
+        column = new Column("no wrap at all");
+        column.setAutoWrap(0);
+        assertLines(column, 14, "no wrap at all");
+
+        column = new Column(null);
+        column.setAutoWrap(2);
+        assertEquals(6, column.getWidth());
+        assertEquals("[NULL]", column.getNextLine());
+    }
+
+    /**
+     * a column is reused for the next row once it has been printed.
+     */
+    public void testSetValue() {
+        final Column column = new Column("first\nrow");
+        assertLines(column, 5, "first", "row");
+        column.setValue("2nd");
+        assertLines(column, 3, "2nd");
+        column.setValue(null);
+        assertTrue(column.isNull());
+        assertEquals("[NULL]", column.getNextLine());
+        column.setValue("a\nb");
+        assertFalse(column.isNull());
+        assertLines(column, 1, "a", "b");
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */
@@ -0,0 +1,110 @@
+/*
+ * This is free software, licensed under the Gnu Public License (GPL) get a copy from <http://www.gnu.org/licenses/gpl.html>
+ *
+ * author: Henner Zeller <H.Zeller@acm.org>
+ */
+package henplus.view;
+
+import henplus.PrintStreamOutputDevice;
+import henplus.test.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.Types;
+
+public class ResultWriterTest extends TestCase {
+
+    private static final String NL = System.getProperty("line.separator");
+
+    /**
+     * @return the output of the writer for the header and the given rows.
+     */
+    private static String write(final int format, final String[] labels, final int[] types, final String[]... rows)
+            throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ResultWriter writer = ResultWriter.create(format, new PrintStreamOutputDevice(new PrintStream(bytes, false,
+                "UTF-8")), labels, types);
+        writer.writeHeader();
+        for (int i = 0; i < rows.length; ++i) {
+            writer.writeRow(rows[i]);
+        }
+        writer.close();
+        return bytes.toString("UTF-8");
+    }
+
+    private static String lines(final String... lines) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < lines.length; ++i) {
+            result.append(lines[i]).append(NL);
+        }
+        return result.toString();
+    }
+
+    public void testCsv() throws IOException {
+        final String[] labels = { "id", "name, first" };
+        final int[] types = { Types.INTEGER, Types.VARCHAR };
+        final String output = write(ResultWriter.FORMAT_CSV, labels, types,
+                new String[] { "1", "plain" },
+                new String[] { "2", "say \"hi\"" },
+                new String[] { "3", "two\nlines" },
+                new String[] { null, "" },
+                new String[] { "4", " padded " },
+                new String[] { "5", "cr\r" },
+                new String[] { "6", "in ner" });
+        assertEquals(lines("id,\"name, first\"",
+                "1,plain",
+                "2,\"say \"\"hi\"\"\"",
+                "3,\"two\nlines\"",
+                ",\"\"",
+                "4,\" padded \"",
+                "5,\"cr\r\"",
+                "6,in ner"), output);
+    }
+
+    public void testTsv() throws IOException {
+        final String[] labels = { "a", "b\tc" };
+        final int[] types = { Types.VARCHAR, Types.VARCHAR };
+        final String output = write(ResultWriter.FORMAT_TSV, labels, types,
+                new String[] { null, "" },
+                new String[] { "x\ty\nz\r", "back\\slash \\N" });
+        assertEquals(lines("a\tb\\tc", "\\N\t", "x\\ty\\nz\\r\tback\\\\slash \\\\N"), output);
+    }
+
+    public void testJsonLines() throws IOException {
+        final String[] labels = { "n", "d", "b", "s", "quote\"d" };
+        final int[] types = { Types.INTEGER, Types.DECIMAL, Types.BOOLEAN, Types.VARCHAR, Types.VARCHAR };
+        final String output = write(ResultWriter.FORMAT_JSONL, labels, types,
+                new String[] { "-12", "0.5", "true", "42", "\"\\/" },
+                new String[] { null, "1.5E-7", "false", "\t\n\r\u0001\u001f \u00e4\ud83d\ude00", null },
+                new String[] { "007", ".5", "1", "", "x" },
+                new String[] { "1.", "NaN", "TRUE", "null", "y" },
+                new String[] { "0", "-Infinity", null, "-", "z" },
+                new String[] { "1e", "2e+", "false", "e5", "w" });
+        assertEquals(lines(json("-12", "0.5", "true", "\"42\"", "\"\\\"\\\\/\""),
+                json("null", "1.5E-7", "false", "\"\\t\\n\\r\\u0001\\u001f \u00e4\ud83d\ude00\"", "null"),
+                json("\"007\"", "\".5\"", "\"1\"", "\"\"", "\"x\""),
+                json("\"1.\"", "\"NaN\"", "\"TRUE\"", "\"null\"", "\"y\""),
+                json("0", "\"-Infinity\"", "null", "\"-\"", "\"z\""),
+                json("\"1e\"", "\"2e+\"", "false", "\"e5\"", "\"w\"")), output);
+    }
+
+    /**
+     * @return the expected line of the JSON test for the given JSON values.
+     */
+    private static String json(final String n, final String d, final String b, final String s, final String q) {
+        return "{\"n\":" + n + ",\"d\":" + d + ",\"b\":" + b + ",\"s\":" + s + ",\"quote\\\"d\":" + q + "}";
+    }
+
+    public void testUnknownFormat() {
+        try {
+            ResultWriter.create(ResultWriter.FORMAT_ALIGNED, null, new String[0], new int[0]);
+            fail("aligned format is not written by a result writer");
+        } catch (final IllegalArgumentException e) {
+        }
+    }
+}
+
+/*
+ * Local variables: c-basic-offset: 4 compile-command: "ant -emacs -find build.xml" End:
+ */